@@ -0,0 +1,238 @@
+package dev.mccue.color.foreign;
+
+import dev.mccue.color.*;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+import java.lang.foreign.ValueLayout;
+import java.util.Objects;
+
+/// Converts pixels stored in {@link MemorySegment}s from one color space
+/// and {@link PixelFormat} to another.
+///
+/// Pixels are read straight out of the source segment a chunk at a time
+/// into a small scratch buffer, converted with a {@link ConversionPlan}
+/// and written straight into the destination segment. The scratch buffer
+/// has a fixed size, so converting a whole frame takes a single call and
+/// allocates the same amount no matter how large the frame is.
+///
+/// ```java
+/// var converter = SegmentConverter.of(
+///         RGB255.class, PixelFormat.RGBA8,
+///         OkLab.class, PixelFormat.PLANAR_FLOAT32
+/// );
+/// try (var arena = Arena.ofConfined()) {
+///     var oklab = converter.convert(frame, width * height, arena);
+///     ...
+/// }
+/// ```
+///
+/// Multi-byte channels are read and written in native byte order and do
+/// not need to be aligned. Converters are immutable and can be shared
+/// between threads.
+public final class SegmentConverter {
+    // Pixels converted at a time.
+    private static final int CHUNK = 1024;
+
+    private static final ValueLayout.OfFloat FLOAT = ValueLayout.JAVA_FLOAT_UNALIGNED;
+    private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE_UNALIGNED;
+
+    private final ConversionPlan plan;
+    private final PixelFormat fromFormat;
+    private final PixelFormat toFormat;
+
+    private SegmentConverter(ConversionPlan plan, PixelFormat fromFormat, PixelFormat toFormat) {
+        this.plan = plan;
+        this.fromFormat = fromFormat;
+        this.toFormat = toFormat;
+    }
+
+    /// Makes a converter using D65 as reference white.
+    ///
+    /// @param from The color space of the source pixels.
+    /// @param fromFormat The layout of the source pixels.
+    /// @param to The color space to convert to.
+    /// @param toFormat The layout to write.
+    /// @return A converter.
+    public static SegmentConverter of(
+            Class<? extends Color> from,
+            PixelFormat fromFormat,
+            Class<? extends Color> to,
+            PixelFormat toFormat
+    ) {
+        return of(from, fromFormat, to, toFormat, ReferenceWhite.D65);
+    }
+
+    /// Makes a converter.
+    ///
+    /// @param from The color space of the source pixels.
+    /// @param fromFormat The layout of the source pixels.
+    /// @param to The color space to convert to.
+    /// @param toFormat The layout to write.
+    /// @param referenceWhite The reference white to use.
+    /// @return A converter.
+    public static SegmentConverter of(
+            Class<? extends Color> from,
+            PixelFormat fromFormat,
+            Class<? extends Color> to,
+            PixelFormat toFormat,
+            ReferenceWhite referenceWhite
+    ) {
+        Objects.requireNonNull(fromFormat, "fromFormat");
+        Objects.requireNonNull(toFormat, "toFormat");
+        var plan = Color.converter(from, to, referenceWhite);
+        if (!fromFormat.supports(from)) {
+            throw new IllegalArgumentException(fromFormat + " cannot hold " + from.getSimpleName() + " colors");
+        }
+        if (!toFormat.supports(to)) {
+            throw new IllegalArgumentException(toFormat + " cannot hold " + to.getSimpleName() + " colors");
+        }
+        return new SegmentConverter(plan, fromFormat, toFormat);
+    }
+
+    /// @return The layout this converter reads.
+    public PixelFormat fromFormat() {
+        return fromFormat;
+    }
+
+    /// @return The layout this converter writes.
+    public PixelFormat toFormat() {
+        return toFormat;
+    }
+
+    /// @return The plan used for the color math.
+    public ConversionPlan plan() {
+        return plan;
+    }
+
+    /// Converts pixels into a newly allocated segment.
+    ///
+    /// @param src The pixels to convert.
+    /// @param pixels The number of pixels in `src`.
+    /// @param allocator Where to allocate the result, usually an {@link java.lang.foreign.Arena}.
+    /// @return A segment holding the converted pixels.
+    public MemorySegment convert(MemorySegment src, long pixels, SegmentAllocator allocator) {
+        var dst = allocator.allocate(pixels * toFormat.bytesPerPixel(), toFormat.bytesPerChannel());
+        convert(src, dst, pixels);
+        return dst;
+    }
+
+    /// Converts pixels from one segment to another.
+    ///
+    /// `src` and `dst` may be the same segment if both formats are the same.
+    ///
+    /// @param src The pixels to convert.
+    /// @param dst Where to write the converted pixels.
+    /// @param pixels The number of pixels to convert.
+    public void convert(MemorySegment src, MemorySegment dst, long pixels) {
+        Objects.checkFromIndexSize(0, pixels * fromFormat.bytesPerPixel(), src.byteSize());
+        Objects.checkFromIndexSize(0, pixels * toFormat.bytesPerPixel(), dst.byteSize());
+
+        var size = (int) Math.min(CHUNK, pixels);
+        var c0 = new double[size];
+        var c1 = new double[size];
+        var c2 = new double[size];
+        for (long start = 0; start < pixels; start += CHUNK) {
+            var n = (int) Math.min(CHUNK, pixels - start);
+            read(fromFormat, src, pixels, start, n, c0, c1, c2);
+            plan.convert(c0, c1, c2, 0, n);
+            write(toFormat, dst, pixels, start, n, c0, c1, c2);
+            if (toFormat == PixelFormat.RGBA8) {
+                copyAlpha(src, dst, start, n);
+            }
+        }
+    }
+
+    private static void read(
+            PixelFormat format,
+            MemorySegment src,
+            long pixels,
+            long start,
+            int n,
+            double[] c0,
+            double[] c1,
+            double[] c2
+    ) {
+        var o0 = format.offset(start, 0, pixels);
+        var o1 = format.offset(start, 1, pixels);
+        var o2 = format.offset(start, 2, pixels);
+        var step = format.isPlanar() ? format.bytesPerChannel() : format.bytesPerPixel();
+        switch (format) {
+            case RGB8, RGBA8 -> {
+                for (int i = 0; i < n; i++) {
+                    var at = (long) i * step;
+                    c0[i] = Byte.toUnsignedInt(src.get(ValueLayout.JAVA_BYTE, o0 + at));
+                    c1[i] = Byte.toUnsignedInt(src.get(ValueLayout.JAVA_BYTE, o1 + at));
+                    c2[i] = Byte.toUnsignedInt(src.get(ValueLayout.JAVA_BYTE, o2 + at));
+                }
+            }
+            case FLOAT32, PLANAR_FLOAT32 -> {
+                for (int i = 0; i < n; i++) {
+                    var at = (long) i * step;
+                    c0[i] = src.get(FLOAT, o0 + at);
+                    c1[i] = src.get(FLOAT, o1 + at);
+                    c2[i] = src.get(FLOAT, o2 + at);
+                }
+            }
+            case FLOAT64, PLANAR_FLOAT64 -> {
+                for (int i = 0; i < n; i++) {
+                    var at = (long) i * step;
+                    c0[i] = src.get(DOUBLE, o0 + at);
+                    c1[i] = src.get(DOUBLE, o1 + at);
+                    c2[i] = src.get(DOUBLE, o2 + at);
+                }
+            }
+        }
+    }
+
+    private static void write(
+            PixelFormat format,
+            MemorySegment dst,
+            long pixels,
+            long start,
+            int n,
+            double[] c0,
+            double[] c1,
+            double[] c2
+    ) {
+        var o0 = format.offset(start, 0, pixels);
+        var o1 = format.offset(start, 1, pixels);
+        var o2 = format.offset(start, 2, pixels);
+        var step = format.isPlanar() ? format.bytesPerChannel() : format.bytesPerPixel();
+        switch (format) {
+            case RGB8, RGBA8 -> {
+                for (int i = 0; i < n; i++) {
+                    var at = (long) i * step;
+                    dst.set(ValueLayout.JAVA_BYTE, o0 + at, (byte) (int) c0[i]);
+                    dst.set(ValueLayout.JAVA_BYTE, o1 + at, (byte) (int) c1[i]);
+                    dst.set(ValueLayout.JAVA_BYTE, o2 + at, (byte) (int) c2[i]);
+                }
+            }
+            case FLOAT32, PLANAR_FLOAT32 -> {
+                for (int i = 0; i < n; i++) {
+                    var at = (long) i * step;
+                    dst.set(FLOAT, o0 + at, (float) c0[i]);
+                    dst.set(FLOAT, o1 + at, (float) c1[i]);
+                    dst.set(FLOAT, o2 + at, (float) c2[i]);
+                }
+            }
+            case FLOAT64, PLANAR_FLOAT64 -> {
+                for (int i = 0; i < n; i++) {
+                    var at = (long) i * step;
+                    dst.set(DOUBLE, o0 + at, c0[i]);
+                    dst.set(DOUBLE, o1 + at, c1[i]);
+                    dst.set(DOUBLE, o2 + at, c2[i]);
+                }
+            }
+        }
+    }
+
+    private void copyAlpha(MemorySegment src, MemorySegment dst, long start, int n) {
+        for (long i = start; i < start + n; i++) {
+            var alpha = fromFormat == PixelFormat.RGBA8
+                    ? src.get(ValueLayout.JAVA_BYTE, i * 4 + 3)
+                    : (byte) 0xFF;
+            dst.set(ValueLayout.JAVA_BYTE, i * 4 + 3, alpha);
+        }
+    }
+}
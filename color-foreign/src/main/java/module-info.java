@@ -0,0 +1,6 @@
+/// Conversions over off-heap memory for dev.mccue.color.
+module dev.mccue.color.foreign {
+    requires transitive dev.mccue.color;
+
+    exports dev.mccue.color.foreign;
+}
@@ -0,0 +1,143 @@
+package dev.mccue.color.foreign.test;
+
+import dev.mccue.color.*;
+import dev.mccue.color.foreign.SegmentConverter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SegmentConverterTest {
+    // More than one chunk, and not a multiple of it.
+    static List<RGB255> colors() {
+        var colors = new ArrayList<RGB255>();
+        for (int r = 0; r <= 255; r += 15) {
+            for (int g = 0; g <= 255; g += 15) {
+                for (int b = 0; b <= 255; b += 15) {
+                    colors.add(new RGB255(r, g, b));
+                }
+            }
+        }
+        return colors;
+    }
+
+    static MemorySegment rgba(Arena arena, List<RGB255> colors) {
+        var segment = arena.allocate(colors.size() * 4L);
+        for (int i = 0; i < colors.size(); i++) {
+            var c = colors.get(i);
+            segment.set(ValueLayout.JAVA_BYTE, i * 4L, (byte) c.R());
+            segment.set(ValueLayout.JAVA_BYTE, i * 4L + 1, (byte) c.G());
+            segment.set(ValueLayout.JAVA_BYTE, i * 4L + 2, (byte) c.B());
+            segment.set(ValueLayout.JAVA_BYTE, i * 4L + 3, (byte) i);
+        }
+        return segment;
+    }
+
+    static double channel(MemorySegment segment, PixelFormat format, long pixels, long pixel, int channel) {
+        var offset = format.offset(pixel, channel, pixels);
+        return switch (format) {
+            case RGB8, RGBA8 -> Byte.toUnsignedInt(segment.get(ValueLayout.JAVA_BYTE, offset));
+            case FLOAT32, PLANAR_FLOAT32 -> segment.get(ValueLayout.JAVA_FLOAT_UNALIGNED, offset);
+            case FLOAT64, PLANAR_FLOAT64 -> segment.get(ValueLayout.JAVA_DOUBLE_UNALIGNED, offset);
+        };
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = PixelFormat.class, names = { "FLOAT32", "FLOAT64", "PLANAR_FLOAT32", "PLANAR_FLOAT64" })
+    public void convertsToLab(PixelFormat format) {
+        var colors = colors();
+        var n = colors.size();
+        try (var arena = Arena.ofConfined()) {
+            var converter = SegmentConverter.of(RGB255.class, PixelFormat.RGBA8, Lab.class, format);
+            var lab = converter.convert(rgba(arena, colors), n, arena);
+            assertEquals(n * (long) format.bytesPerPixel(), lab.byteSize());
+            var tolerance = format.bytesPerChannel() == 4 ? 1e-6 : 1e-12;
+            for (int i = 0; i < n; i++) {
+                var expected = colors.get(i).Lab();
+                assertEquals(expected.L(), channel(lab, format, n, i, 0), tolerance);
+                assertEquals(expected.a(), channel(lab, format, n, i, 1), tolerance);
+                assertEquals(expected.b(), channel(lab, format, n, i, 2), tolerance);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = PixelFormat.class, names = { "FLOAT64", "PLANAR_FLOAT32" })
+    public void roundTripsThroughOkLab(PixelFormat format) {
+        var colors = colors();
+        var n = colors.size();
+        try (var arena = Arena.ofConfined()) {
+            var src = rgba(arena, colors);
+            var oklab = SegmentConverter.of(RGB255.class, PixelFormat.RGBA8, OkLab.class, format)
+                    .convert(src, n, arena);
+            var rgb = SegmentConverter.of(OkLab.class, format, RGB255.class, PixelFormat.RGB8)
+                    .convert(oklab, n, arena);
+            for (int i = 0; i < n; i++) {
+                var expected = colors.get(i).OkLab().RGB255();
+                assertEquals(expected.R(), channel(rgb, PixelFormat.RGB8, n, i, 0), 1);
+                assertEquals(expected.G(), channel(rgb, PixelFormat.RGB8, n, i, 1), 1);
+                assertEquals(expected.B(), channel(rgb, PixelFormat.RGB8, n, i, 2), 1);
+            }
+        }
+    }
+
+    @Test
+    public void handlesAlpha() {
+        var colors = colors();
+        var n = colors.size();
+        try (var arena = Arena.ofConfined()) {
+            var src = rgba(arena, colors);
+            var copy = SegmentConverter.of(RGB255.class, PixelFormat.RGBA8, RGB255.class, PixelFormat.RGBA8)
+                    .convert(src, n, arena);
+            assertEquals(-1, src.mismatch(copy));
+
+            var rgb = SegmentConverter.of(RGB255.class, PixelFormat.RGBA8, RGB255.class, PixelFormat.RGB8)
+                    .convert(src, n, arena);
+            var opaque = SegmentConverter.of(RGB255.class, PixelFormat.RGB8, RGB255.class, PixelFormat.RGBA8)
+                    .convert(rgb, n, arena);
+            for (int i = 0; i < n; i++) {
+                assertEquals(255, channel(opaque, PixelFormat.RGBA8, n, i, 3));
+                assertEquals(colors.get(i).G(), channel(opaque, PixelFormat.RGBA8, n, i, 1));
+            }
+        }
+    }
+
+    @Test
+    public void convertsInPlace() {
+        var color = new sRGB(0.2, 0.4, 0.6);
+        try (var arena = Arena.ofConfined()) {
+            var segment = arena.allocate(3 * 8L, 8);
+            segment.setAtIndex(ValueLayout.JAVA_DOUBLE, 0, color.R());
+            segment.setAtIndex(ValueLayout.JAVA_DOUBLE, 1, color.G());
+            segment.setAtIndex(ValueLayout.JAVA_DOUBLE, 2, color.B());
+            SegmentConverter.of(sRGB.class, PixelFormat.FLOAT64, XYZ.class, PixelFormat.FLOAT64)
+                    .convert(segment, segment, 1);
+            var expected = color.XYZ();
+            assertEquals(expected.X(), segment.getAtIndex(ValueLayout.JAVA_DOUBLE, 0), 1e-12);
+            assertEquals(expected.Y(), segment.getAtIndex(ValueLayout.JAVA_DOUBLE, 1), 1e-12);
+            assertEquals(expected.Z(), segment.getAtIndex(ValueLayout.JAVA_DOUBLE, 2), 1e-12);
+        }
+    }
+
+    @Test
+    public void rejectsBadArguments() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> SegmentConverter.of(sRGB.class, PixelFormat.RGB8, Lab.class, PixelFormat.FLOAT32)
+        );
+        var converter = SegmentConverter.of(RGB255.class, PixelFormat.RGB8, Lab.class, PixelFormat.FLOAT32);
+        try (var arena = Arena.ofConfined()) {
+            var src = arena.allocate(30);
+            var dst = arena.allocate(100);
+            assertThrows(IndexOutOfBoundsException.class, () -> converter.convert(src, dst, 11));
+            assertThrows(IndexOutOfBoundsException.class, () -> converter.convert(src, dst, 10));
+        }
+    }
+}
@@ -0,0 +1,4 @@
+open module dev.mccue.color.foreign.test {
+    requires dev.mccue.color.foreign;
+    requires org.junit.jupiter.params;
+}
@@ -0,0 +1,282 @@
+package dev.mccue.color.simd;
+
+import dev.mccue.color.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/// Converts channel arrays between color spaces using the Vector API.
+///
+/// The conversions between {@link sRGB}, {@link LinearRGB}, {@link XYZ},
+/// {@link Lab} and {@link OkLab} are almost entirely 3x3 matrices, powers
+/// and cube roots, which map directly onto SIMD lanes. Those run as vector
+/// kernels over as many lanes as the CPU supports. Every other pair of
+/// spaces, and every conversion when `jdk.incubator.vector` is not in the
+/// module graph, falls back to a {@link ConversionPlan}.
+///
+/// The powers of the sRGB transfer function only run as vector kernels
+/// when {@link jdk.incubator.vector.FloatVector#SPECIES_PREFERRED} is at
+/// least 512 bits wide. With narrower lanes the vector `POW` is slower than {@link Math#pow},
+/// so conversions to and from {@link sRGB} apply it one color at a time
+/// and vectorize only the matrices and cube roots.
+///
+/// ```java
+/// // java --add-modules jdk.incubator.vector ...
+/// var converter = SimdConverter.of(sRGB.class, OkLab.class);
+/// converter.convert(r, g, b, 0, r.length);
+/// ```
+///
+/// Results agree with the scalar conversions to within rounding, but are
+/// not guaranteed to be bit for bit the same since the vector `POW` and
+/// `CBRT` operators may round differently than {@link Math}. Converters
+/// are immutable and can be shared between threads.
+public final class SimdConverter {
+    private static final boolean VECTOR_API = ModuleLayer.boot()
+            .findModule("jdk.incubator.vector")
+            .isPresent();
+
+    // Colors converted at a time when float arrays go through the scalar plan.
+    private static final int CHUNK = 256;
+
+    private final ConversionPlan plan;
+    private final VectorStage[] stages;
+
+    private SimdConverter(ConversionPlan plan, VectorStage[] stages) {
+        this.plan = plan;
+        this.stages = stages;
+    }
+
+    /// Makes a converter using D65 as reference white.
+    ///
+    /// @param from The color space to convert from.
+    /// @param to The color space to convert to.
+    /// @return A converter.
+    public static SimdConverter of(Class<? extends Color> from, Class<? extends Color> to) {
+        return of(from, to, ReferenceWhite.D65);
+    }
+
+    /// Makes a converter.
+    ///
+    /// @param from The color space to convert from.
+    /// @param to The color space to convert to.
+    /// @param referenceWhite The reference white to use.
+    /// @return A converter.
+    public static SimdConverter of(
+            Class<? extends Color> from,
+            Class<? extends Color> to,
+            ReferenceWhite referenceWhite
+    ) {
+        var plan = Color.converter(from, to, referenceWhite);
+        var stages = VECTOR_API ? vectorStages(from, to, referenceWhite) : null;
+        return new SimdConverter(plan, stages);
+    }
+
+    /// @return Whether the Vector API is available to this process.
+    public static boolean isVectorApiAvailable() {
+        return VECTOR_API;
+    }
+
+    /// @return The number of `double` lanes the kernels use, or 1 without the Vector API.
+    public static int doubleLanes() {
+        return VECTOR_API ? VectorStages.doubleLanes() : 1;
+    }
+
+    /// @return The number of `float` lanes the kernels use, or 1 without the Vector API.
+    public static int floatLanes() {
+        return VECTOR_API ? VectorStages.floatLanes() : 1;
+    }
+
+    /// @return Whether this converter runs vector kernels, as opposed to a {@link ConversionPlan}.
+    public boolean isVectorized() {
+        return stages != null;
+    }
+
+    /// @return The color space this converter converts from.
+    public Class<? extends Color> from() {
+        return plan.from();
+    }
+
+    /// @return The color space this converter converts to.
+    public Class<? extends Color> to() {
+        return plan.to();
+    }
+
+    /// Converts the colors at `[offset, offset + length)` of the channel
+    /// arrays in place.
+    ///
+    /// @param c0 The first channel.
+    /// @param c1 The second channel.
+    /// @param c2 The third channel.
+    /// @param offset The first index to convert.
+    /// @param length The number of colors to convert.
+    public void convert(double[] c0, double[] c1, double[] c2, int offset, int length) {
+        if (stages == null) {
+            plan.convert(c0, c1, c2, offset, length);
+            return;
+        }
+        Objects.checkFromIndexSize(offset, length, c0.length);
+        Objects.checkFromIndexSize(offset, length, c1.length);
+        Objects.checkFromIndexSize(offset, length, c2.length);
+        for (var stage : stages) {
+            stage.apply(c0, c1, c2, offset, length);
+        }
+    }
+
+    /// Converts the colors at `[offset, offset + length)` of the channel
+    /// arrays in place.
+    ///
+    /// Vector kernels work on twice as many `float` lanes as `double`
+    /// lanes. Without them the colors are widened to `double` a chunk
+    /// at a time and converted with the scalar plan.
+    ///
+    /// @param c0 The first channel.
+    /// @param c1 The second channel.
+    /// @param c2 The third channel.
+    /// @param offset The first index to convert.
+    /// @param length The number of colors to convert.
+    public void convert(float[] c0, float[] c1, float[] c2, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, c0.length);
+        Objects.checkFromIndexSize(offset, length, c1.length);
+        Objects.checkFromIndexSize(offset, length, c2.length);
+        if (stages != null) {
+            for (var stage : stages) {
+                stage.apply(c0, c1, c2, offset, length);
+            }
+            return;
+        }
+
+        var d0 = new double[Math.min(CHUNK, length)];
+        var d1 = new double[d0.length];
+        var d2 = new double[d0.length];
+        for (int start = offset; start < offset + length; start += CHUNK) {
+            var n = Math.min(CHUNK, offset + length - start);
+            for (int i = 0; i < n; i++) {
+                d0[i] = c0[start + i];
+                d1[i] = c1[start + i];
+                d2[i] = c2[start + i];
+            }
+            plan.convert(d0, d1, d2, 0, n);
+            for (int i = 0; i < n; i++) {
+                c0[start + i] = (float) d0[i];
+                c1[start + i] = (float) d1[i];
+                c2[start + i] = (float) d2[i];
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SimdConverter[" + from().getSimpleName() + " -> " + to().getSimpleName()
+                + ", " + plan.referenceWhite() + ", vectorized=" + isVectorized() + "]";
+    }
+
+    // The spaces with vector kernels, as a tree rooted at XYZ.
+    private enum Node {
+        XYZ(null),
+        LINEAR_RGB(XYZ),
+        SRGB(LINEAR_RGB),
+        LAB(XYZ),
+        OKLAB(XYZ);
+
+        final Node parent;
+
+        Node(Node parent) {
+            this.parent = parent;
+        }
+
+        int depth() {
+            return parent == null ? 0 : parent.depth() + 1;
+        }
+
+        static Node of(Class<? extends Color> type) {
+            if (type == dev.mccue.color.XYZ.class) {
+                return XYZ;
+            } else if (type == LinearRGB.class) {
+                return LINEAR_RGB;
+            } else if (type == sRGB.class) {
+                return SRGB;
+            } else if (type == Lab.class) {
+                return LAB;
+            } else if (type == OkLab.class) {
+                return OKLAB;
+            } else {
+                return null;
+            }
+        }
+    }
+
+    // Returns null if either space has no vector kernels.
+    private static VectorStage[] vectorStages(
+            Class<? extends Color> from,
+            Class<? extends Color> to,
+            ReferenceWhite referenceWhite
+    ) {
+        var a = Node.of(from);
+        var b = Node.of(to);
+        if (a == null || b == null) {
+            return null;
+        }
+
+        var ups = new ArrayList<VectorStage>();
+        var downs = new ArrayList<List<VectorStage>>();
+        while (a.depth() > b.depth()) {
+            ups.addAll(up(a, referenceWhite));
+            a = a.parent;
+        }
+        while (b.depth() > a.depth()) {
+            downs.add(down(b, referenceWhite));
+            b = b.parent;
+        }
+        while (a != b) {
+            ups.addAll(up(a, referenceWhite));
+            a = a.parent;
+            downs.add(down(b, referenceWhite));
+            b = b.parent;
+        }
+        for (int i = downs.size() - 1; i >= 0; i--) {
+            ups.addAll(downs.get(i));
+        }
+
+        // Multiply together runs of adjacent matrices.
+        var fused = new ArrayList<VectorStage>();
+        for (var stage : ups) {
+            if (stage instanceof VectorStages.Matrix next
+                    && !fused.isEmpty()
+                    && fused.getLast() instanceof VectorStages.Matrix previous) {
+                fused.set(fused.size() - 1, previous.then(next));
+            } else {
+                fused.add(stage);
+            }
+        }
+        return fused.toArray(VectorStage[]::new);
+    }
+
+    private static List<VectorStage> up(Node node, ReferenceWhite wref) {
+        return switch (node) {
+            case XYZ -> List.of();
+            case LINEAR_RGB -> List.of(VectorStages.Matrix.LINEAR_RGB_TO_XYZ);
+            case SRGB -> List.of(new VectorStages.Linearize());
+            case LAB -> List.of(new VectorStages.LabToXYZ(wref.X(), wref.Y(), wref.Z()));
+            case OKLAB -> List.of(
+                    VectorStages.Matrix.OKLAB_TO_LMS,
+                    new VectorStages.Cube(),
+                    VectorStages.Matrix.LMS_TO_XYZ
+            );
+        };
+    }
+
+    private static List<VectorStage> down(Node node, ReferenceWhite wref) {
+        return switch (node) {
+            case XYZ -> List.of();
+            case LINEAR_RGB -> List.of(VectorStages.Matrix.XYZ_TO_LINEAR_RGB);
+            case SRGB -> List.of(new VectorStages.Delinearize());
+            case LAB -> List.of(new VectorStages.XYZToLab(wref.X(), wref.Y(), wref.Z()));
+            case OKLAB -> List.of(
+                    VectorStages.Matrix.XYZ_TO_LMS,
+                    new VectorStages.Cbrt(),
+                    VectorStages.Matrix.LMS_TO_OKLAB
+            );
+        };
+    }
+}
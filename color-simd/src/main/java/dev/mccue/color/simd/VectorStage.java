@@ -0,0 +1,11 @@
+package dev.mccue.color.simd;
+
+/// One step of a conversion, applied in place to a range of colors.
+///
+/// Implementations live in {@link VectorStages} and must only be loaded
+/// when `jdk.incubator.vector` is available.
+interface VectorStage {
+    void apply(double[] c0, double[] c1, double[] c2, int off, int len);
+
+    void apply(float[] c0, float[] c1, float[] c2, int off, int len);
+}
@@ -0,0 +1,474 @@
+package dev.mccue.color.simd;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/// The vector kernels behind {@link SimdConverter}.
+///
+/// Each kernel processes as many whole vectors as fit in the range and
+/// finishes the remainder with the same math one color at a time. The
+/// math mirrors the records in dev.mccue.color, down to the order of
+/// operations, so the only differences come from the lanewise `POW` and
+/// `CBRT` operators, which are not guaranteed to round exactly like
+/// {@link Math#pow} and {@link Math#cbrt}.
+final class VectorStages {
+    private static final VectorSpecies<Double> D = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> F = FloatVector.SPECIES_PREFERRED;
+
+    // Below 512 bits the lanewise POW of the sRGB transfer function is
+    // slower than Math.pow one color at a time, so Linearize and
+    // Delinearize only use vectors from there up. See the README.
+    private static final boolean VECTOR_POW = F.vectorBitSize() >= 512;
+
+    private static final double LAB_EPSILON = 6.0/29.0*6.0/29.0*6.0/29.0;
+    private static final double LAB_FINV_SCALE = 3.0 * 6.0 / 29.0 * 6.0 / 29.0;
+
+    // Scratch size for widened(...)
+    private static final int CHUNK = 256;
+
+    private VectorStages() {}
+
+    // Runs the double kernel of a stage over float channels, a chunk at a
+    // time. A scalar loop that widens each float to call Math.pow and
+    // narrows the result back runs nearly twice as slow as the same loop
+    // over doubles.
+    private static void widened(VectorStage stage, float[] c0, float[] c1, float[] c2, int off, int len) {
+        var d0 = new double[Math.min(CHUNK, len)];
+        var d1 = new double[d0.length];
+        var d2 = new double[d0.length];
+        for (int start = off; start < off + len; start += CHUNK) {
+            var n = Math.min(CHUNK, off + len - start);
+            for (int i = 0; i < n; i++) {
+                d0[i] = c0[start + i];
+                d1[i] = c1[start + i];
+                d2[i] = c2[start + i];
+            }
+            stage.apply(d0, d1, d2, 0, n);
+            for (int i = 0; i < n; i++) {
+                c0[start + i] = (float) d0[i];
+                c1[start + i] = (float) d1[i];
+                c2[start + i] = (float) d2[i];
+            }
+        }
+    }
+
+    static int doubleLanes() {
+        return D.length();
+    }
+
+    static int floatLanes() {
+        return F.length();
+    }
+
+    record Matrix(
+            double m00, double m01, double m02,
+            double m10, double m11, double m12,
+            double m20, double m21, double m22
+    ) implements VectorStage {
+        // Same coefficients as LinearRGB.XYZ()
+        static final Matrix LINEAR_RGB_TO_XYZ = new Matrix(
+                0.41239079926595948, 0.35758433938387796, 0.18048078840183429,
+                0.21263900587151036, 0.71516867876775593, 0.072192315360733715,
+                0.019330818715591851, 0.11919477979462599, 0.95053215224966058
+        );
+
+        // Same coefficients as XYZ.LinearRGB()
+        static final Matrix XYZ_TO_LINEAR_RGB = new Matrix(
+                3.2409699419045214, -1.5373831775700935, -0.49861076029300328,
+                -0.96924363628087983, 1.8759675015077207, 0.041555057407175613,
+                0.055630079696993609, -0.20397695888897657, 1.0569715142428786
+        );
+
+        // First half of XYZ.OkLab()
+        static final Matrix XYZ_TO_LMS = new Matrix(
+                0.8189330101, 0.3618667424, -0.1288597137,
+                0.0329845436, 0.9293118715, 0.0361456387,
+                0.0482003018, 0.2643662691, 0.6338517070
+        );
+
+        // Second half of XYZ.OkLab()
+        static final Matrix LMS_TO_OKLAB = new Matrix(
+                0.2104542553, 0.7936177850, -0.0040720468,
+                1.9779984951, -2.4285922050, 0.4505937099,
+                0.0259040371, 0.7827717662, -0.8086757660
+        );
+
+        // First half of OkLab.XYZ()
+        static final Matrix OKLAB_TO_LMS = new Matrix(
+                0.9999999984505196, 0.39633779217376774, 0.2158037580607588,
+                1.0000000088817607, -0.10556134232365633, -0.0638541747717059,
+                1.0000000546724108, -0.08948418209496574, -1.2914855378640917
+        );
+
+        // Second half of OkLab.XYZ()
+        static final Matrix LMS_TO_XYZ = new Matrix(
+                1.2268798733741557, -0.5578149965554813, 0.28139105017721594,
+                -0.04057576262431372, 1.1122868293970594, -0.07171106666151696,
+                -0.07637294974672142, -0.4214933239627916, 1.5869240244272422
+        );
+
+        Matrix then(Matrix next) {
+            var n = next;
+            return new Matrix(
+                    n.m00*m00 + n.m01*m10 + n.m02*m20, n.m00*m01 + n.m01*m11 + n.m02*m21, n.m00*m02 + n.m01*m12 + n.m02*m22,
+                    n.m10*m00 + n.m11*m10 + n.m12*m20, n.m10*m01 + n.m11*m11 + n.m12*m21, n.m10*m02 + n.m11*m12 + n.m12*m22,
+                    n.m20*m00 + n.m21*m10 + n.m22*m20, n.m20*m01 + n.m21*m11 + n.m22*m21, n.m20*m02 + n.m21*m12 + n.m22*m22
+            );
+        }
+
+        @Override
+        public void apply(double[] c0, double[] c1, double[] c2, int off, int len) {
+            int i = off;
+            for (int upper = off + D.loopBound(len); i < upper; i += D.length()) {
+                var x = DoubleVector.fromArray(D, c0, i);
+                var y = DoubleVector.fromArray(D, c1, i);
+                var z = DoubleVector.fromArray(D, c2, i);
+                x.mul(m00).add(y.mul(m01)).add(z.mul(m02)).intoArray(c0, i);
+                x.mul(m10).add(y.mul(m11)).add(z.mul(m12)).intoArray(c1, i);
+                x.mul(m20).add(y.mul(m21)).add(z.mul(m22)).intoArray(c2, i);
+            }
+            for (; i < off + len; i++) {
+                var x = c0[i];
+                var y = c1[i];
+                var z = c2[i];
+                c0[i] = m00*x + m01*y + m02*z;
+                c1[i] = m10*x + m11*y + m12*z;
+                c2[i] = m20*x + m21*y + m22*z;
+            }
+        }
+
+        @Override
+        public void apply(float[] c0, float[] c1, float[] c2, int off, int len) {
+            float f00 = (float) m00, f01 = (float) m01, f02 = (float) m02;
+            float f10 = (float) m10, f11 = (float) m11, f12 = (float) m12;
+            float f20 = (float) m20, f21 = (float) m21, f22 = (float) m22;
+            int i = off;
+            for (int upper = off + F.loopBound(len); i < upper; i += F.length()) {
+                var x = FloatVector.fromArray(F, c0, i);
+                var y = FloatVector.fromArray(F, c1, i);
+                var z = FloatVector.fromArray(F, c2, i);
+                x.mul(f00).add(y.mul(f01)).add(z.mul(f02)).intoArray(c0, i);
+                x.mul(f10).add(y.mul(f11)).add(z.mul(f12)).intoArray(c1, i);
+                x.mul(f20).add(y.mul(f21)).add(z.mul(f22)).intoArray(c2, i);
+            }
+            for (; i < off + len; i++) {
+                var x = c0[i];
+                var y = c1[i];
+                var z = c2[i];
+                c0[i] = f00*x + f01*y + f02*z;
+                c1[i] = f10*x + f11*y + f12*z;
+                c2[i] = f20*x + f21*y + f22*z;
+            }
+        }
+    }
+
+    // sRGB -> LinearRGB
+    record Linearize() implements VectorStage {
+        private static DoubleVector linearize(DoubleVector v) {
+            var low = v.div(12.92);
+            var high = v.add(0.055).div(1.055).lanewise(VectorOperators.POW, 2.4);
+            return high.blend(low, v.compare(VectorOperators.LE, 0.04045));
+        }
+
+        private static FloatVector linearize(FloatVector v) {
+            var low = v.div(12.92f);
+            var high = v.add(0.055f).div(1.055f).lanewise(VectorOperators.POW, 2.4f);
+            return high.blend(low, v.compare(VectorOperators.LE, 0.04045f));
+        }
+
+        private static double linearize(double v) {
+            if (v <= 0.04045) {
+                return v / 12.92;
+            }
+            return Math.pow((v+0.055)/1.055, 2.4);
+        }
+
+        @Override
+        public void apply(double[] c0, double[] c1, double[] c2, int off, int len) {
+            int i = off;
+            for (int upper = VECTOR_POW ? off + D.loopBound(len) : off; i < upper; i += D.length()) {
+                linearize(DoubleVector.fromArray(D, c0, i)).intoArray(c0, i);
+                linearize(DoubleVector.fromArray(D, c1, i)).intoArray(c1, i);
+                linearize(DoubleVector.fromArray(D, c2, i)).intoArray(c2, i);
+            }
+            for (; i < off + len; i++) {
+                c0[i] = linearize(c0[i]);
+                c1[i] = linearize(c1[i]);
+                c2[i] = linearize(c2[i]);
+            }
+        }
+
+        @Override
+        public void apply(float[] c0, float[] c1, float[] c2, int off, int len) {
+            if (!VECTOR_POW) {
+                widened(this, c0, c1, c2, off, len);
+                return;
+            }
+            int i = off;
+            for (int upper = off + F.loopBound(len); i < upper; i += F.length()) {
+                linearize(FloatVector.fromArray(F, c0, i)).intoArray(c0, i);
+                linearize(FloatVector.fromArray(F, c1, i)).intoArray(c1, i);
+                linearize(FloatVector.fromArray(F, c2, i)).intoArray(c2, i);
+            }
+            for (; i < off + len; i++) {
+                c0[i] = (float) linearize(c0[i]);
+                c1[i] = (float) linearize(c1[i]);
+                c2[i] = (float) linearize(c2[i]);
+            }
+        }
+    }
+
+    // LinearRGB -> sRGB
+    record Delinearize() implements VectorStage {
+        private static DoubleVector delinearize(DoubleVector v) {
+            var low = v.mul(12.92);
+            var high = v.lanewise(VectorOperators.POW, 1.0/2.4).mul(1.055).sub(0.055);
+            return high.blend(low, v.compare(VectorOperators.LE, 0.0031308));
+        }
+
+        private static FloatVector delinearize(FloatVector v) {
+            var low = v.mul(12.92f);
+            var high = v.lanewise(VectorOperators.POW, (float) (1.0/2.4)).mul(1.055f).sub(0.055f);
+            return high.blend(low, v.compare(VectorOperators.LE, 0.0031308f));
+        }
+
+        private static double delinearize(double v) {
+            if (v <= 0.0031308) {
+                return 12.92 * v;
+            }
+            return 1.055*Math.pow(v, 1.0/2.4) - 0.055;
+        }
+
+        @Override
+        public void apply(double[] c0, double[] c1, double[] c2, int off, int len) {
+            int i = off;
+            for (int upper = VECTOR_POW ? off + D.loopBound(len) : off; i < upper; i += D.length()) {
+                delinearize(DoubleVector.fromArray(D, c0, i)).intoArray(c0, i);
+                delinearize(DoubleVector.fromArray(D, c1, i)).intoArray(c1, i);
+                delinearize(DoubleVector.fromArray(D, c2, i)).intoArray(c2, i);
+            }
+            for (; i < off + len; i++) {
+                c0[i] = delinearize(c0[i]);
+                c1[i] = delinearize(c1[i]);
+                c2[i] = delinearize(c2[i]);
+            }
+        }
+
+        @Override
+        public void apply(float[] c0, float[] c1, float[] c2, int off, int len) {
+            if (!VECTOR_POW) {
+                widened(this, c0, c1, c2, off, len);
+                return;
+            }
+            int i = off;
+            for (int upper = off + F.loopBound(len); i < upper; i += F.length()) {
+                delinearize(FloatVector.fromArray(F, c0, i)).intoArray(c0, i);
+                delinearize(FloatVector.fromArray(F, c1, i)).intoArray(c1, i);
+                delinearize(FloatVector.fromArray(F, c2, i)).intoArray(c2, i);
+            }
+            for (; i < off + len; i++) {
+                c0[i] = (float) delinearize(c0[i]);
+                c1[i] = (float) delinearize(c1[i]);
+                c2[i] = (float) delinearize(c2[i]);
+            }
+        }
+    }
+
+    // LMS -> cbrt(LMS), the middle of XYZ -> OkLab
+    record Cbrt() implements VectorStage {
+        @Override
+        public void apply(double[] c0, double[] c1, double[] c2, int off, int len) {
+            int i = off;
+            for (int upper = off + D.loopBound(len); i < upper; i += D.length()) {
+                DoubleVector.fromArray(D, c0, i).lanewise(VectorOperators.CBRT).intoArray(c0, i);
+                DoubleVector.fromArray(D, c1, i).lanewise(VectorOperators.CBRT).intoArray(c1, i);
+                DoubleVector.fromArray(D, c2, i).lanewise(VectorOperators.CBRT).intoArray(c2, i);
+            }
+            for (; i < off + len; i++) {
+                c0[i] = Math.cbrt(c0[i]);
+                c1[i] = Math.cbrt(c1[i]);
+                c2[i] = Math.cbrt(c2[i]);
+            }
+        }
+
+        @Override
+        public void apply(float[] c0, float[] c1, float[] c2, int off, int len) {
+            int i = off;
+            for (int upper = off + F.loopBound(len); i < upper; i += F.length()) {
+                FloatVector.fromArray(F, c0, i).lanewise(VectorOperators.CBRT).intoArray(c0, i);
+                FloatVector.fromArray(F, c1, i).lanewise(VectorOperators.CBRT).intoArray(c1, i);
+                FloatVector.fromArray(F, c2, i).lanewise(VectorOperators.CBRT).intoArray(c2, i);
+            }
+            for (; i < off + len; i++) {
+                c0[i] = (float) Math.cbrt(c0[i]);
+                c1[i] = (float) Math.cbrt(c1[i]);
+                c2[i] = (float) Math.cbrt(c2[i]);
+            }
+        }
+    }
+
+    // cbrt(LMS) -> LMS, the middle of OkLab -> XYZ
+    record Cube() implements VectorStage {
+        @Override
+        public void apply(double[] c0, double[] c1, double[] c2, int off, int len) {
+            int i = off;
+            for (int upper = off + D.loopBound(len); i < upper; i += D.length()) {
+                var x = DoubleVector.fromArray(D, c0, i);
+                var y = DoubleVector.fromArray(D, c1, i);
+                var z = DoubleVector.fromArray(D, c2, i);
+                x.mul(x).mul(x).intoArray(c0, i);
+                y.mul(y).mul(y).intoArray(c1, i);
+                z.mul(z).mul(z).intoArray(c2, i);
+            }
+            for (; i < off + len; i++) {
+                c0[i] = c0[i] * c0[i] * c0[i];
+                c1[i] = c1[i] * c1[i] * c1[i];
+                c2[i] = c2[i] * c2[i] * c2[i];
+            }
+        }
+
+        @Override
+        public void apply(float[] c0, float[] c1, float[] c2, int off, int len) {
+            int i = off;
+            for (int upper = off + F.loopBound(len); i < upper; i += F.length()) {
+                var x = FloatVector.fromArray(F, c0, i);
+                var y = FloatVector.fromArray(F, c1, i);
+                var z = FloatVector.fromArray(F, c2, i);
+                x.mul(x).mul(x).intoArray(c0, i);
+                y.mul(y).mul(y).intoArray(c1, i);
+                z.mul(z).mul(z).intoArray(c2, i);
+            }
+            for (; i < off + len; i++) {
+                c0[i] = c0[i] * c0[i] * c0[i];
+                c1[i] = c1[i] * c1[i] * c1[i];
+                c2[i] = c2[i] * c2[i] * c2[i];
+            }
+        }
+    }
+
+    // XYZ -> Lab, as in XYZ.Lab(ReferenceWhite)
+    record XYZToLab(double wx, double wy, double wz) implements VectorStage {
+        private static DoubleVector f(DoubleVector t) {
+            var linear = t.div(3.0).mul(29.0).div(6.0).mul(29.0).div(6.0).add(4.0/29.0);
+            return t.lanewise(VectorOperators.CBRT).blend(linear, t.compare(VectorOperators.LE, LAB_EPSILON));
+        }
+
+        private static FloatVector f(FloatVector t) {
+            var linear = t.div(3.0f).mul(29.0f).div(6.0f).mul(29.0f).div(6.0f).add((float) (4.0/29.0));
+            return t.lanewise(VectorOperators.CBRT).blend(linear, t.compare(VectorOperators.LE, (float) LAB_EPSILON));
+        }
+
+        private static double f(double t) {
+            if (t > LAB_EPSILON) {
+                return Math.cbrt(t);
+            }
+            return t/3.0*29.0/6.0*29.0/6.0 + 4.0/29.0;
+        }
+
+        @Override
+        public void apply(double[] c0, double[] c1, double[] c2, int off, int len) {
+            int i = off;
+            for (int upper = off + D.loopBound(len); i < upper; i += D.length()) {
+                var fx = f(DoubleVector.fromArray(D, c0, i).div(wx));
+                var fy = f(DoubleVector.fromArray(D, c1, i).div(wy));
+                var fz = f(DoubleVector.fromArray(D, c2, i).div(wz));
+                fy.mul(1.16).sub(0.16).intoArray(c0, i);
+                fx.sub(fy).mul(5.0).intoArray(c1, i);
+                fy.sub(fz).mul(2.0).intoArray(c2, i);
+            }
+            for (; i < off + len; i++) {
+                var fx = f(c0[i] / wx);
+                var fy = f(c1[i] / wy);
+                var fz = f(c2[i] / wz);
+                c0[i] = 1.16*fy - 0.16;
+                c1[i] = 5.0 * (fx - fy);
+                c2[i] = 2.0 * (fy - fz);
+            }
+        }
+
+        @Override
+        public void apply(float[] c0, float[] c1, float[] c2, int off, int len) {
+            int i = off;
+            for (int upper = off + F.loopBound(len); i < upper; i += F.length()) {
+                var fx = f(FloatVector.fromArray(F, c0, i).div((float) wx));
+                var fy = f(FloatVector.fromArray(F, c1, i).div((float) wy));
+                var fz = f(FloatVector.fromArray(F, c2, i).div((float) wz));
+                fy.mul(1.16f).sub(0.16f).intoArray(c0, i);
+                fx.sub(fy).mul(5.0f).intoArray(c1, i);
+                fy.sub(fz).mul(2.0f).intoArray(c2, i);
+            }
+            for (; i < off + len; i++) {
+                var fx = f(c0[i] / wx);
+                var fy = f(c1[i] / wy);
+                var fz = f(c2[i] / wz);
+                c0[i] = (float) (1.16*fy - 0.16);
+                c1[i] = (float) (5.0 * (fx - fy));
+                c2[i] = (float) (2.0 * (fy - fz));
+            }
+        }
+    }
+
+    // Lab -> XYZ, as in Lab.XYZ(ReferenceWhite)
+    record LabToXYZ(double wx, double wy, double wz) implements VectorStage {
+        private static DoubleVector finv(DoubleVector t) {
+            var linear = t.sub(4.0/29.0).mul(LAB_FINV_SCALE);
+            return t.mul(t).mul(t).blend(linear, t.compare(VectorOperators.LE, 6.0/29.0));
+        }
+
+        private static FloatVector finv(FloatVector t) {
+            var linear = t.sub((float) (4.0/29.0)).mul((float) LAB_FINV_SCALE);
+            return t.mul(t).mul(t).blend(linear, t.compare(VectorOperators.LE, (float) (6.0/29.0)));
+        }
+
+        private static double finv(double t) {
+            if (t > 6.0/29.0) {
+                return t * t * t;
+            }
+            return LAB_FINV_SCALE * (t - 4.0/29.0);
+        }
+
+        @Override
+        public void apply(double[] c0, double[] c1, double[] c2, int off, int len) {
+            int i = off;
+            for (int upper = off + D.loopBound(len); i < upper; i += D.length()) {
+                var l2 = DoubleVector.fromArray(D, c0, i).add(0.16).div(1.16);
+                var a = DoubleVector.fromArray(D, c1, i);
+                var b = DoubleVector.fromArray(D, c2, i);
+                finv(l2.add(a.div(5.0))).mul(wx).intoArray(c0, i);
+                finv(l2).mul(wy).intoArray(c1, i);
+                finv(l2.sub(b.div(2.0))).mul(wz).intoArray(c2, i);
+            }
+            for (; i < off + len; i++) {
+                var l2 = (c0[i] + 0.16) / 1.16;
+                var a = c1[i];
+                var b = c2[i];
+                c0[i] = wx * finv(l2+a/5.0);
+                c1[i] = wy * finv(l2);
+                c2[i] = wz * finv(l2-b/2.0);
+            }
+        }
+
+        @Override
+        public void apply(float[] c0, float[] c1, float[] c2, int off, int len) {
+            int i = off;
+            for (int upper = off + F.loopBound(len); i < upper; i += F.length()) {
+                var l2 = FloatVector.fromArray(F, c0, i).add(0.16f).div(1.16f);
+                var a = FloatVector.fromArray(F, c1, i);
+                var b = FloatVector.fromArray(F, c2, i);
+                finv(l2.add(a.div(5.0f))).mul((float) wx).intoArray(c0, i);
+                finv(l2).mul((float) wy).intoArray(c1, i);
+                finv(l2.sub(b.div(2.0f))).mul((float) wz).intoArray(c2, i);
+            }
+            for (; i < off + len; i++) {
+                var l2 = (c0[i] + 0.16) / 1.16;
+                var a = c1[i];
+                var b = c2[i];
+                c0[i] = (float) (wx * finv(l2+a/5.0));
+                c1[i] = (float) (wy * finv(l2));
+                c2[i] = (float) (wz * finv(l2-b/2.0));
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+/// Vector API conversion kernels for dev.mccue.color.
+///
+/// The incubator module is optional. Without `--add-modules jdk.incubator.vector`
+/// every conversion runs on the scalar code in dev.mccue.color.
+module dev.mccue.color.simd {
+    requires transitive dev.mccue.color;
+    requires static jdk.incubator.vector;
+
+    exports dev.mccue.color.simd;
+}
@@ -0,0 +1,102 @@
+package dev.mccue.color.simd.test;
+
+import dev.mccue.color.*;
+import dev.mccue.color.simd.SimdConverter;
+
+import java.util.List;
+import java.util.Random;
+
+/// Rough throughput comparison between {@link ConversionPlan} and {@link SimdConverter}.
+///
+/// Not a substitute for JMH, but enough to see the effect of lane width.
+/// Run from `color-simd` after `mvn test-compile`:
+///
+/// ```
+/// java --add-modules jdk.incubator.vector \
+///     -cp target/classes:target/test-classes:../target/classes \
+///     dev.mccue.color.simd.test.ConversionBenchmark
+/// ```
+///
+/// Adding `-XX:MaxVectorSize=32` limits the kernels to 256-bit (AVX2) lanes
+/// on a machine that supports AVX-512.
+public final class ConversionBenchmark {
+    private static final int SIZE = 1 << 20;
+    private static final int ROUNDS = 15;
+
+    private ConversionBenchmark() {}
+
+    private interface Run {
+        void run();
+    }
+
+    private static double nanosPerColor(Run setup, Run run) {
+        var best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            setup.run();
+            var start = System.nanoTime();
+            run.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / SIZE;
+    }
+
+    public static void main(String[] args) {
+        System.out.printf(
+                "%s, vector api=%s, double lanes=%d, float lanes=%d%n",
+                System.getProperty("java.vm.version"),
+                SimdConverter.isVectorApiAvailable(),
+                SimdConverter.doubleLanes(),
+                SimdConverter.floatLanes()
+        );
+
+        var random = new Random(0);
+        var r = new double[SIZE];
+        var g = new double[SIZE];
+        var b = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            r[i] = random.nextDouble();
+            g[i] = random.nextDouble();
+            b[i] = random.nextDouble();
+        }
+        var d0 = new double[SIZE];
+        var d1 = new double[SIZE];
+        var d2 = new double[SIZE];
+        var f0 = new float[SIZE];
+        var f1 = new float[SIZE];
+        var f2 = new float[SIZE];
+        Run copy = () -> {
+            System.arraycopy(r, 0, d0, 0, SIZE);
+            System.arraycopy(g, 0, d1, 0, SIZE);
+            System.arraycopy(b, 0, d2, 0, SIZE);
+        };
+        Run copyFloat = () -> {
+            for (int i = 0; i < SIZE; i++) {
+                f0[i] = (float) r[i];
+                f1[i] = (float) g[i];
+                f2[i] = (float) b[i];
+            }
+        };
+
+        List<List<Class<? extends Color>>> pairs = List.of(
+                List.of(LinearRGB.class, XYZ.class),
+                List.of(LinearRGB.class, OkLab.class),
+                List.of(sRGB.class, Lab.class),
+                List.of(sRGB.class, OkLab.class)
+        );
+        System.out.printf("%-20s %10s %10s %10s%n", "ns/color", "scalar", "double", "float");
+        for (var pair : pairs) {
+            var plan = Color.converter(pair.get(0), pair.get(1));
+            var simd = SimdConverter.of(pair.get(0), pair.get(1));
+            var scalar = nanosPerColor(copy, () -> plan.convert(d0, d1, d2, 0, SIZE));
+            var vector = nanosPerColor(copy, () -> simd.convert(d0, d1, d2, 0, SIZE));
+            var vectorFloat = nanosPerColor(copyFloat, () -> simd.convert(f0, f1, f2, 0, SIZE));
+            System.out.printf(
+                    "%-20s %10.2f %10.2f %10.2f%n",
+                    pair.get(0).getSimpleName() + " -> " + pair.get(1).getSimpleName(),
+                    scalar,
+                    vector,
+                    vectorFloat
+            );
+        }
+    }
+}
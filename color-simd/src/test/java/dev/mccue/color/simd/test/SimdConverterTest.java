@@ -0,0 +1,120 @@
+package dev.mccue.color.simd.test;
+
+import dev.mccue.color.*;
+import dev.mccue.color.simd.SimdConverter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SimdConverterTest {
+    static List<Class<? extends Color>> spaces() {
+        return List.of(sRGB.class, LinearRGB.class, XYZ.class, Lab.class, OkLab.class, HSV.class);
+    }
+
+    // An odd number of colors, so every kernel also runs its scalar tail.
+    static List<Color> colors() {
+        var colors = new ArrayList<Color>();
+        for (int r = 0; r <= 255; r += 17) {
+            for (int g = 0; g <= 255; g += 17) {
+                for (int b = 0; b <= 255; b += 17) {
+                    colors.add(Color.RGB255(r, g, b));
+                }
+            }
+        }
+        colors.add(Color.hex("#c5a3f0"));
+        return colors;
+    }
+
+    @Test
+    public void usesTheVectorApi() {
+        assertTrue(SimdConverter.isVectorApiAvailable());
+        assertTrue(SimdConverter.of(sRGB.class, OkLab.class).isVectorized());
+        assertTrue(SimdConverter.of(Lab.class, LinearRGB.class).isVectorized());
+        assertFalse(SimdConverter.of(sRGB.class, HSV.class).isVectorized());
+        assertTrue(SimdConverter.doubleLanes() >= 1);
+        assertEquals(2 * SimdConverter.doubleLanes(), SimdConverter.floatLanes());
+    }
+
+    @ParameterizedTest
+    @MethodSource("spaces")
+    public void matchesScalarPlans(Class<? extends Color> from) {
+        for (var to : spaces()) {
+            for (var wref : List.of(ReferenceWhite.D65, ReferenceWhite.D50)) {
+                var src = ColorBuffer.of(from, colors());
+                var expected = src.convert(to);
+
+                var c0 = src.channel(0).clone();
+                var c1 = src.channel(1).clone();
+                var c2 = src.channel(2).clone();
+                var expected0 = c0.clone();
+                var expected1 = c1.clone();
+                var expected2 = c2.clone();
+                Color.converter(from, to, wref).convert(expected0, expected1, expected2, 0, c0.length);
+
+                SimdConverter.of(from, to, wref).convert(c0, c1, c2, 0, c0.length);
+                var message = from.getSimpleName() + " -> " + to.getSimpleName() + " " + wref;
+                assertArrayEquals(expected0, c0, 1e-9, message);
+                assertArrayEquals(expected1, c1, 1e-9, message);
+                assertArrayEquals(expected2, c2, 1e-9, message);
+                assertEquals(expected.size(), c0.length);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("spaces")
+    public void convertsFloats(Class<? extends Color> from) {
+        for (var to : spaces()) {
+            var src = ColorBuffer.of(from, colors());
+            var n = src.size();
+            var f0 = new float[n];
+            var f1 = new float[n];
+            var f2 = new float[n];
+            for (int i = 0; i < n; i++) {
+                f0[i] = (float) src.channel(0)[i];
+                f1[i] = (float) src.channel(1)[i];
+                f2[i] = (float) src.channel(2)[i];
+            }
+            var expected = src.convert(to);
+            SimdConverter.of(from, to).convert(f0, f1, f2, 0, n);
+
+            // Hues of near-greys are ill-conditioned, so only compare the rest.
+            var message = from.getSimpleName() + " -> " + to.getSimpleName();
+            for (int i = 0; i < n; i++) {
+                if (to == HSV.class && expected.channel(1)[i] < 1e-3) {
+                    continue;
+                }
+                if (to == HSV.class) {
+                    var dh = Math.abs(expected.channel(0)[i] - f0[i]);
+                    assertEquals(0, Math.min(dh, 360 - dh), 0.36, message);
+                } else {
+                    assertEquals(expected.channel(0)[i], f0[i], 1e-3, message);
+                }
+                assertEquals(expected.channel(1)[i], f1[i], 1e-3, message);
+                assertEquals(expected.channel(2)[i], f2[i], 1e-3, message);
+            }
+        }
+    }
+
+    @Test
+    public void convertsSlices() {
+        var converter = SimdConverter.of(sRGB.class, Lab.class);
+        var r = new double[] { 9, 9, 0.2, 0.4, 0.6, 0.8, 1.0, 9 };
+        var g = r.clone();
+        var b = r.clone();
+        converter.convert(r, g, b, 2, 5);
+        assertEquals(9, r[0]);
+        assertEquals(9, r[1]);
+        assertEquals(9, r[7]);
+        for (int i = 2; i < 7; i++) {
+            var v = 0.2 * (i - 1);
+            assertEquals(new sRGB(v, v, v).Lab().L(), r[i], 1e-9);
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> converter.convert(r, g, b, 4, 5));
+    }
+}
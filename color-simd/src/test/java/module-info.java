@@ -0,0 +1,4 @@
+open module dev.mccue.color.simd.test {
+    requires dev.mccue.color.simd;
+    requires org.junit.jupiter.params;
+}
@@ -0,0 +1,633 @@
+package dev.mccue.color;
+
+import java.util.List;
+
+/// In-place conversions over channel arrays.
+///
+/// Every kernel here converts the colors at `[off, off + len)` of the three
+/// channel arrays from one space to a neighbouring one in the {@link Space}
+/// tree, overwriting the channels. Hops with linear parts are split into
+/// {@link Matrix} stages around an elementwise kernel. The math is the same
+/// as the matching method on the records, just without a record allocated
+/// per color. Kernels that take a `fast` flag swap {@link Math} for
+/// {@link FastMath} when it is set.
+final class BulkConversions {
+    private BulkConversions() {}
+
+    /// The stages that convert from `hop.space()` to its parent, or the other
+    /// way around.
+    ///
+    /// Linear parts of a hop are returned as {@link Matrix} stages so that a
+    /// {@link ConversionPlan} can fold them into their neighbours.
+    static List<Stage> stages(Space.Hop hop, ReferenceWhite wref, ColorPrecision precision) {
+        var fast = precision != ColorPrecision.EXACT;
+        if (hop.up()) {
+            return switch (hop.space()) {
+                case XYZ -> List.of();
+                case LINEAR_RGB -> List.of(Matrix.LINEAR_RGB_TO_XYZ);
+                case SRGB -> List.of(switch (precision) {
+                    case EXACT -> BulkConversions::sRGB_LinearRGB;
+                    case FAST -> BulkConversions::sRGB_LinearRGB_fast;
+                    case TABLE -> BulkConversions::sRGB_LinearRGB_table;
+                });
+                case RGB_255 -> List.of(BulkConversions::RGB255_sRGB);
+                case HSV -> List.of(BulkConversions::HSV_sRGB);
+                case HSL -> List.of(BulkConversions::HSL_sRGB);
+                case XY_Y -> List.of(BulkConversions::xyY_XYZ);
+                case LAB -> List.of((c0, c1, c2, off, len) -> Lab_XYZ(c0, c1, c2, off, len, wref));
+                case LAB_LCH -> List.of((c0, c1, c2, off, len) -> LCh_ab(c0, c1, c2, off, len, true, fast));
+                case LUV -> List.of((c0, c1, c2, off, len) -> Luv_XYZ(c0, c1, c2, off, len, wref));
+                case LUV_LCH -> List.of((c0, c1, c2, off, len) -> LCh_ab(c0, c1, c2, off, len, false, fast));
+                case HSLUV -> List.of(BulkConversions::HSLuv_LuvLCh);
+                case HPLUV -> List.of(BulkConversions::HPLuv_LuvLCh);
+                case OKLAB -> List.of(
+                        Matrix.OKLAB_TO_LMS,
+                        (c0, c1, c2, off, len) -> cube(c0, c1, c2, off, len, fast),
+                        Matrix.LMS_TO_XYZ
+                );
+                case OKLCH -> List.of((c0, c1, c2, off, len) -> OkLch_OkLab(c0, c1, c2, off, len, fast));
+            };
+        } else {
+            return switch (hop.space()) {
+                case XYZ -> List.of();
+                case LINEAR_RGB -> List.of(Matrix.XYZ_TO_LINEAR_RGB);
+                case SRGB -> List.of(switch (precision) {
+                    case EXACT -> BulkConversions::LinearRGB_sRGB;
+                    case FAST -> BulkConversions::LinearRGB_sRGB_fast;
+                    case TABLE -> BulkConversions::LinearRGB_sRGB_table;
+                });
+                case RGB_255 -> List.of(BulkConversions::sRGB_RGB255);
+                case HSV -> List.of(BulkConversions::sRGB_HSV);
+                case HSL -> List.of(BulkConversions::sRGB_HSL);
+                case XY_Y -> List.of((c0, c1, c2, off, len) -> XYZ_xyY(c0, c1, c2, off, len, wref));
+                case LAB -> List.of((c0, c1, c2, off, len) -> XYZ_Lab(c0, c1, c2, off, len, wref, fast));
+                case LAB_LCH, LUV_LCH -> List.of((c0, c1, c2, off, len) -> ab_LCh(c0, c1, c2, off, len, fast));
+                case LUV -> List.of((c0, c1, c2, off, len) -> XYZ_Luv(c0, c1, c2, off, len, wref, fast));
+                case HSLUV -> List.of(BulkConversions::LuvLCh_HSLuv);
+                case HPLUV -> List.of(BulkConversions::LuvLCh_HPLuv);
+                case OKLAB -> List.of(
+                        Matrix.XYZ_TO_LMS,
+                        (c0, c1, c2, off, len) -> cbrt(c0, c1, c2, off, len, fast),
+                        Matrix.LMS_TO_OKLAB
+                );
+                case OKLCH -> List.of((c0, c1, c2, off, len) -> OkLab_OkLch(c0, c1, c2, off, len, fast));
+            };
+        }
+    }
+
+    static void sRGB_LinearRGB(double[] r, double[] g, double[] b, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            r[i] = sRGB.linearize(r[i]);
+            g[i] = sRGB.linearize(g[i]);
+            b[i] = sRGB.linearize(b[i]);
+        }
+    }
+
+    static void LinearRGB_sRGB(double[] r, double[] g, double[] b, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            r[i] = LinearRGB.delinearize(r[i]);
+            g[i] = LinearRGB.delinearize(g[i]);
+            b[i] = LinearRGB.delinearize(b[i]);
+        }
+    }
+
+    static void sRGB_LinearRGB_fast(double[] r, double[] g, double[] b, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            r[i] = FastMath.linearize(r[i]);
+            g[i] = FastMath.linearize(g[i]);
+            b[i] = FastMath.linearize(b[i]);
+        }
+    }
+
+    static void LinearRGB_sRGB_fast(double[] r, double[] g, double[] b, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            r[i] = FastMath.delinearize(r[i]);
+            g[i] = FastMath.delinearize(g[i]);
+            b[i] = FastMath.delinearize(b[i]);
+        }
+    }
+
+    static void sRGB_LinearRGB_table(double[] r, double[] g, double[] b, int off, int len) {
+        var table = GammaTable.standard();
+        for (int i = off; i < off + len; i++) {
+            r[i] = table.linearize(r[i]);
+            g[i] = table.linearize(g[i]);
+            b[i] = table.linearize(b[i]);
+        }
+    }
+
+    static void LinearRGB_sRGB_table(double[] r, double[] g, double[] b, int off, int len) {
+        var table = GammaTable.standard();
+        for (int i = off; i < off + len; i++) {
+            r[i] = table.delinearize(r[i]);
+            g[i] = table.delinearize(g[i]);
+            b[i] = table.delinearize(b[i]);
+        }
+    }
+
+    static void RGB255_sRGB(double[] r, double[] g, double[] b, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            r[i] = r[i] / 255.0;
+            g[i] = g[i] / 255.0;
+            b[i] = b[i] / 255.0;
+        }
+    }
+
+    // RGB255 -> sRGB -> LinearRGB in one step. Whole channel values look
+    // up the exact table, anything else is computed the long way.
+    static void RGB255_LinearRGB(double[] r, double[] g, double[] b, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            r[i] = linearize255(r[i]);
+            g[i] = linearize255(g[i]);
+            b[i] = linearize255(b[i]);
+        }
+    }
+
+    private static double linearize255(double v) {
+        var i = (int) v;
+        if (i == v && i >= 0 && i <= 255) {
+            return GammaTable.linearize(i);
+        }
+        return sRGB.linearize(v / 255.0);
+    }
+
+    static void sRGB_RGB255(double[] r, double[] g, double[] b, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            r[i] = Math.clamp((int) (r[i]*255.0 + 0.5), 0, 255);
+            g[i] = Math.clamp((int) (g[i]*255.0 + 0.5), 0, 255);
+            b[i] = Math.clamp((int) (b[i]*255.0 + 0.5), 0, 255);
+        }
+    }
+
+    static void sRGB_HSV(double[] c0, double[] c1, double[] c2, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            var R = c0[i];
+            var G = c1[i];
+            var B = c2[i];
+
+            var min = Math.min(Math.min(R, G), B);
+            var v = Math.max(Math.max(R, G), B);
+            var C = v - min;
+
+            var s = 0.0;
+            if (v != 0.0) {
+                s = C / v;
+            }
+
+            var h = 0.0;
+            if (min != v) {
+                if (v == R) {
+                    h = ((G-B)/C) % 6.0;
+                }
+                if (v == G) {
+                    h = (B-R)/C + 2.0;
+                }
+                if (v == B) {
+                    h = (R-G)/C + 4.0;
+                }
+                h *= 60.0;
+                if (h < 0.0) {
+                    h += 360.0;
+                }
+            }
+
+            c0[i] = h % 360;
+            c1[i] = s;
+            c2[i] = v;
+        }
+    }
+
+    static void HSV_sRGB(double[] c0, double[] c1, double[] c2, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            var H = c0[i] % 360;
+            var S = c1[i];
+            var V = c2[i];
+
+            var Hp = H / 60.0;
+            var C = V * S;
+            var X = C * (1.0 - Math.abs((Hp % 2.0)-1.0));
+
+            var m = V - C;
+            double r = 0;
+            double g = 0;
+            double b = 0;
+
+            if (0.0 <= Hp && Hp < 1.0) {
+                r = C;
+                g = X;
+            }
+            else if (1.0 <= Hp && Hp < 2.0) {
+                r = X;
+                g = C;
+            }
+            else if (2.0 <= Hp && Hp < 3.0) {
+                g = C;
+                b = X;
+            }
+            else if (3.0 <= Hp && Hp < 4.0) {
+                g = X;
+                b = C;
+            }
+            else if (4.0 <= Hp && Hp < 5.0) {
+                r = X;
+                b = C;
+            }
+            else if (5.0 <= Hp && Hp < 6.0) {
+                r = C;
+                b = X;
+            }
+
+            c0[i] = m + r;
+            c1[i] = m + g;
+            c2[i] = m + b;
+        }
+    }
+
+    static void sRGB_HSL(double[] c0, double[] c1, double[] c2, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            var R = c0[i];
+            var G = c1[i];
+            var B = c2[i];
+            var min = Math.min(Math.min(R, G), B);
+            var max = Math.max(Math.max(R, G), B);
+
+            double h;
+            double s;
+            var l = (max + min) / 2;
+
+            if (min == max) {
+                s = 0;
+                h = 0;
+            } else {
+                if (l < 0.5) {
+                    s = (max - min) / (max + min);
+                } else {
+                    s = (max - min) / (2.0 - max - min);
+                }
+
+                if (max == R) {
+                    h = (G - B) / (max - min);
+                } else if (max == G) {
+                    h = 2.0 + (B-R)/(max-min);
+                } else {
+                    h = 4.0 + (R-G)/(max-min);
+                }
+
+                h *= 60;
+
+                if (h < 0) {
+                    h += 360;
+                }
+            }
+
+            c0[i] = h % 360;
+            c1[i] = s;
+            c2[i] = l;
+        }
+    }
+
+    private static double hsl_channel(double t, double t1, double t2) {
+        if (t < 0) {
+            t++;
+        }
+        if (t > 1) {
+            t--;
+        }
+
+        if (6*t < 1) {
+            return t2 + (t1-t2)*6*t;
+        } else if (2*t < 1) {
+            return t1;
+        } else if (3*t < 2) {
+            return t2 + (t1-t2)*(2.0/3.0-t)*6;
+        } else {
+            return t2;
+        }
+    }
+
+    static void HSL_sRGB(double[] c0, double[] c1, double[] c2, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            var h = c0[i] % 360;
+            var s = c1[i];
+            var l = c2[i];
+
+            if (s == 0) {
+                c0[i] = l;
+                c1[i] = l;
+                c2[i] = l;
+                continue;
+            }
+
+            double t1;
+            if (l < 0.5) {
+                t1 = l * (1.0 + s);
+            } else {
+                t1 = l + s - l*s;
+            }
+
+            var t2 = 2*l - t1;
+            h /= 360;
+
+            c0[i] = hsl_channel(h + 1.0/3.0, t1, t2);
+            c1[i] = hsl_channel(h, t1, t2);
+            c2[i] = hsl_channel(h - 1.0/3.0, t1, t2);
+        }
+    }
+
+    static void XYZ_xyY(double[] c0, double[] c1, double[] c2, int off, int len, ReferenceWhite wref) {
+        for (int i = off; i < off + len; i++) {
+            var X = c0[i];
+            var Y = c1[i];
+            var Z = c2[i];
+            var N = X + Y + Z;
+
+            if (Math.abs(N) < 1e-14) {
+                // When we have black, Bruce Lindbloom recommends to use
+                // the reference white's chromacity for x and y.
+                c0[i] = wref._0 / (wref._0 + wref._1 + wref._2);
+                c1[i] = wref._1 / (wref._0 + wref._1 + wref._2);
+            } else {
+                c0[i] = X / N;
+                c1[i] = Y / N;
+            }
+            c2[i] = Y;
+        }
+    }
+
+    static void xyY_XYZ(double[] c0, double[] c1, double[] c2, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            var x = c0[i];
+            var y = c1[i];
+            var Y = c2[i];
+            if (-1e-14 < y && y < 1e-14) {
+                c0[i] = 0.0;
+                c2[i] = 0.0;
+            } else {
+                c0[i] = Y / y * x;
+                c2[i] = Y / y * (1.0 - x - y);
+            }
+            c1[i] = Y;
+        }
+    }
+
+    static void XYZ_Lab(double[] c0, double[] c1, double[] c2, int off, int len, ReferenceWhite wref, boolean fast) {
+        for (int i = off; i < off + len; i++) {
+            var fy = lab_f(c1[i] / wref._1, fast);
+            var l = 1.16*fy - 0.16;
+            var a = 5.0 * (lab_f(c0[i] / wref._0, fast) - fy);
+            var b = 2.0 * (fy - lab_f(c2[i] / wref._2, fast));
+            c0[i] = l;
+            c1[i] = a;
+            c2[i] = b;
+        }
+    }
+
+    private static double lab_f(double t, boolean fast) {
+        if (fast && t > 6.0/29.0*6.0/29.0*6.0/29.0) {
+            return FastMath.cbrt(t);
+        }
+        return XYZ.lab_f(t);
+    }
+
+    static void Lab_XYZ(double[] c0, double[] c1, double[] c2, int off, int len, ReferenceWhite wref) {
+        for (int i = off; i < off + len; i++) {
+            var L = c0[i];
+            var a = c1[i];
+            var b = c2[i];
+            var l2 = (L + 0.16) / 1.16;
+            c0[i] = wref._0 * Lab.lab_finv(l2+a/5.0);
+            c1[i] = wref._1 * Lab.lab_finv(l2);
+            c2[i] = wref._2 * Lab.lab_finv(l2-b/2.0);
+        }
+    }
+
+    static void XYZ_Luv(double[] c0, double[] c1, double[] c2, int off, int len, ReferenceWhite wref, boolean fast) {
+        var wdenom = wref._0 + 15.0*wref._1 + 3.0*wref._2;
+        var un = wdenom == 0.0 ? 0 : 4.0 * wref._0 / wdenom;
+        var vn = wdenom == 0.0 ? 0 : 9.0 * wref._1 / wdenom;
+        for (int i = off; i < off + len; i++) {
+            var X = c0[i];
+            var Y = c1[i];
+            var Z = c2[i];
+
+            double l;
+            if (Y/wref._1 <= 6.0/29.0*6.0/29.0*6.0/29.0) {
+                l = Y / wref._1 * (29.0 / 3.0 * 29.0 / 3.0 * 29.0 / 3.0) / 100.0;
+            } else {
+                l = 1.16*(fast ? FastMath.cbrt(Y/wref._1) : Math.cbrt(Y/wref._1)) - 0.16;
+            }
+
+            var denom = X + 15.0*Y + 3.0*Z;
+            var ubis = denom == 0.0 ? 0 : 4.0 * X / denom;
+            var vbis = denom == 0.0 ? 0 : 9.0 * Y / denom;
+
+            c0[i] = l;
+            c1[i] = 13.0 * l * (ubis - un);
+            c2[i] = 13.0 * l * (vbis - vn);
+        }
+    }
+
+    static void Luv_XYZ(double[] c0, double[] c1, double[] c2, int off, int len, ReferenceWhite wref) {
+        var wdenom = wref._0 + 15.0*wref._1 + 3.0*wref._2;
+        var un = wdenom == 0.0 ? 0 : 4.0 * wref._0 / wdenom;
+        var vn = wdenom == 0.0 ? 0 : 9.0 * wref._1 / wdenom;
+        for (int i = off; i < off + len; i++) {
+            var L = c0[i];
+            var u = c1[i];
+            var v = c2[i];
+
+            double x;
+            double y;
+            double z = 0;
+
+            if (L <= 0.08) {
+                y = wref._1 * L * 100.0 * 3.0 / 29.0 * 3.0 / 29.0 * 3.0 / 29.0;
+            } else {
+                var t = (L+0.16)/1.16;
+                y = wref._1 * (t * t * t);
+            }
+
+            if (L != 0.0) {
+                var ubis = u/(13.0*L) + un;
+                var vbis = v/(13.0*L) + vn;
+                x = y * 9.0 * ubis / (4.0 * vbis);
+                z = y * (12.0 - 3.0*ubis - 20.0*vbis) / (4.0 * vbis);
+            } else {
+                x = 0;
+                y = 0;
+            }
+
+            c0[i] = x;
+            c1[i] = y;
+            c2[i] = z;
+        }
+    }
+
+    /// Lab -> LabLCh and Luv -> LuvLCh are the same math.
+    static void ab_LCh(double[] c0, double[] c1, double[] c2, int off, int len, boolean fast) {
+        for (int i = off; i < off + len; i++) {
+            var a = c1[i];
+            var b = c2[i];
+
+            // Oops, floating point workaround necessary if a ~= b and both are very small (i.e. almost zero).
+            double h;
+            if (Math.abs(b-a) > 1e-4 && Math.abs(a) > 1e-4) {
+                var atan2 = fast ? FastMath.atan2(b, a) : Math.atan2(b, a);
+                h = (57.29577951308232087721*atan2+360.0) % 360.0; // Rad2Deg
+            } else {
+                h = 0.0;
+            }
+
+            c1[i] = Math.sqrt(a * a + b * b);
+            c2[i] = h;
+        }
+    }
+
+    /// LabLCh -> Lab and LuvLCh -> Luv are the same math, except
+    /// that {@link LabLCh} normalizes its hue on construction.
+    static void LCh_ab(
+            double[] c0, double[] c1, double[] c2, int off, int len, boolean normalizeHue, boolean fast
+    ) {
+        for (int i = off; i < off + len; i++) {
+            var C = c1[i];
+            var h = normalizeHue ? c2[i] % 360 : c2[i];
+            var H = 0.01745329251994329576 * h; // Deg2Rad
+            c1[i] = C * (fast ? FastMath.cos(H) : Math.cos(H));
+            c2[i] = C * (fast ? FastMath.sin(H) : Math.sin(H));
+        }
+    }
+
+    static void LuvLCh_HSLuv(double[] c0, double[] c1, double[] c2, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            // [-1..1] but the code expects it to be [-100..100]
+            var l = c0[i] * 100.0;
+            var c = c1[i] * 100.0;
+            var h = c2[i];
+
+            double s;
+            if (l > 99.9999999 || l < 0.00000001) {
+                s = 0.0;
+            } else {
+                s = c / Util.maxChromaForLH(l, h) * 100.0;
+            }
+
+            c0[i] = h;
+            c1[i] = Math.clamp(s / 100.0, 0, 1);
+            c2[i] = Math.clamp(l / 100.0, 0, 1);
+        }
+    }
+
+    static void HSLuv_LuvLCh(double[] c0, double[] c1, double[] c2, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            var H = c0[i];
+            var s = 100 * c1[i];
+            var l = 100 * c2[i];
+
+            double c;
+            if (l > 99.9999999 || l < 0.00000001) {
+                c = 0.0;
+            } else {
+                c = Util.maxChromaForLH(l, H) / 100.0 * s;
+            }
+
+            // c is [-100..100], but for LCh it's supposed to be almost [-1..1]
+            c0[i] = Math.clamp(l / 100.0, 0, 1);
+            c1[i] = c / 100.0;
+            c2[i] = H;
+        }
+    }
+
+    static void LuvLCh_HPLuv(double[] c0, double[] c1, double[] c2, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            // [-1..1] but the code expects it to be [-100..100]
+            var l = c0[i] * 100.0;
+            var c = c1[i] * 100.0;
+            var h = c2[i];
+
+            double s;
+            if (l > 99.9999999 || l < 0.00000001) {
+                s = 0.0;
+            } else {
+                s = c / Util.maxSafeChromaForL(l) * 100.0;
+            }
+
+            c0[i] = h;
+            c1[i] = s / 100.0;
+            c2[i] = l / 100.0;
+        }
+    }
+
+    static void HPLuv_LuvLCh(double[] c0, double[] c1, double[] c2, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            var H = c0[i];
+            var s = c1[i] * 100.0;
+            var l = c2[i] * 100.0;
+
+            double c;
+            if (l > 99.9999999 || l < 0.00000001) {
+                c = 0.0;
+            } else {
+                c = Util.maxSafeChromaForL(l) / 100.0 * s;
+            }
+
+            c0[i] = l / 100.0;
+            c1[i] = c / 100.0;
+            c2[i] = H;
+        }
+    }
+
+    static void cbrt(double[] c0, double[] c1, double[] c2, int off, int len, boolean fast) {
+        if (fast) {
+            for (int i = off; i < off + len; i++) {
+                c0[i] = FastMath.cbrt(c0[i]);
+                c1[i] = FastMath.cbrt(c1[i]);
+                c2[i] = FastMath.cbrt(c2[i]);
+            }
+            return;
+        }
+        for (int i = off; i < off + len; i++) {
+            c0[i] = Math.cbrt(c0[i]);
+            c1[i] = Math.cbrt(c1[i]);
+            c2[i] = Math.cbrt(c2[i]);
+        }
+    }
+
+    static void cube(double[] c0, double[] c1, double[] c2, int off, int len, boolean fast) {
+        if (fast) {
+            for (int i = off; i < off + len; i++) {
+                c0[i] = c0[i] * c0[i] * c0[i];
+                c1[i] = c1[i] * c1[i] * c1[i];
+                c2[i] = c2[i] * c2[i] * c2[i];
+            }
+            return;
+        }
+        for (int i = off; i < off + len; i++) {
+            c0[i] = Math.pow(c0[i], 3);
+            c1[i] = Math.pow(c1[i], 3);
+            c2[i] = Math.pow(c2[i], 3);
+        }
+    }
+
+    static void OkLab_OkLch(double[] c0, double[] c1, double[] c2, int off, int len, boolean fast) {
+        for (int i = off; i < off + len; i++) {
+            var a = c1[i];
+            var b = c2[i];
+            var c = Math.sqrt((a * a) + (b * b));
+            var h = fast ? FastMath.atan2(b, a) : Math.atan2(b, a);
+            if (h < 0) {
+                h += 2 * Math.PI;
+            }
+            c1[i] = c;
+            c2[i] = h * 180 / Math.PI;
+        }
+    }
+
+    static void OkLch_OkLab(double[] c0, double[] c1, double[] c2, int off, int len, boolean fast) {
+        for (int i = off; i < off + len; i++) {
+            var c = c1[i];
+            var h = c2[i] * Math.PI / 180;
+            c1[i] = c * (fast ? FastMath.cos(h) : Math.cos(h));
+            c2[i] = c * (fast ? FastMath.sin(h) : Math.sin(h));
+        }
+    }
+}
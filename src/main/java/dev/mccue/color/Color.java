@@ -1,8 +1,9 @@
 package dev.mccue.color;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.function.IntConsumer;
 import java.util.function.Predicate;
 import java.util.random.RandomGenerator;
 import static dev.mccue.color.Util.interp_angle;
@@ -29,7 +30,14 @@ import static dev.mccue.color.Util.interp_angle;
 /// - Immutable
 /// - Thread-Safe
 /// - Value Classes (ideally)
-public interface Color {
+///
+/// The interface is sealed to the color spaces in this package. That lets
+/// methods which take any {@link Color} switch over the concrete type, so
+/// each conversion is a direct call the JIT can inline even when many
+/// different color types flow through the same call site.
+public sealed interface Color permits
+        HPLuv, HSL, HSLuv, HSV, Lab, LabLCh, LinearRGB, Luv,
+        LuvLCh, OkLab, OkLch, RGB255, sRGB, xyY, XYZ {
     /// Convert this color to the {@link sRGB}
     /// color space.
     ///
@@ -41,7 +49,7 @@ public interface Color {
     ///
     /// @return This color in the {@link LinearRGB} color space.
     default LinearRGB LinearRGB() {
-        return sRGB().LinearRGB();
+        return srgb(this).LinearRGB();
     }
 
     /// Convert this color to the {@link Lab}
@@ -49,7 +57,7 @@ public interface Color {
     ///
     /// @return This color in the {@link Lab} color space.
     default Lab Lab() {
-        return sRGB().Lab();
+        return srgb(this).Lab();
     }
 
     /// Convert this color to the {@link Lab}
@@ -58,7 +66,7 @@ public interface Color {
     /// @param referenceWhite The reference white to use.
     /// @return This color in the {@link Lab} color space.
     default Lab Lab(ReferenceWhite referenceWhite) {
-        return sRGB().Lab(referenceWhite);
+        return srgb(this).Lab(referenceWhite);
     }
 
     /// Convert this color to the {@link HSLuv}
@@ -66,7 +74,7 @@ public interface Color {
     ///
     /// @return This color in the {@link HSLuv} color space.
     default HSLuv HSLuv() {
-        return sRGB().HSLuv();
+        return srgb(this).HSLuv();
     }
 
     /// Convert this color to the {@link Luv}
@@ -74,7 +82,7 @@ public interface Color {
     ///
     /// @return This color in the {@link Luv} color space.
     default Luv Luv() {
-        return sRGB().Luv();
+        return srgb(this).Luv();
     }
 
     /// Convert this color to the {@link Luv}
@@ -83,7 +91,7 @@ public interface Color {
     /// @param referenceWhite The reference white to use.
     /// @return This color in the {@link Luv} color space.
     default Luv Luv(ReferenceWhite referenceWhite) {
-        return sRGB().Luv(referenceWhite);
+        return srgb(this).Luv(referenceWhite);
     }
 
     /// Convert this color to the {@link HPLuv}
@@ -91,7 +99,7 @@ public interface Color {
     ///
     /// @return This color in the {@link HPLuv} color space.
     default HPLuv HPLuv() {
-        return sRGB().HPLuv();
+        return srgb(this).HPLuv();
     }
 
     /// Convert this color to the {@link LuvLCh}
@@ -99,7 +107,7 @@ public interface Color {
     ///
     /// @return This color in the {@link LuvLCh} color space.
     default LuvLCh LuvLCh() {
-        return sRGB().LuvLCh();
+        return srgb(this).LuvLCh();
     }
 
     /// Convert this color to the {@link HSV}
@@ -107,7 +115,7 @@ public interface Color {
     ///
     /// @return This color in the {@link HSV} color space.
     default HSV HSV() {
-        return sRGB().HSV();
+        return srgb(this).HSV();
     }
 
     /// Convert this color to the {@link LabLCh}
@@ -115,7 +123,7 @@ public interface Color {
     ///
     /// @return This color in the {@link LabLCh} color space.
     default LabLCh LabLCh() {
-        return sRGB().LabLCh();
+        return srgb(this).LabLCh();
     }
 
     /// Convert this color to the {@link LabLCh}
@@ -124,7 +132,7 @@ public interface Color {
     /// @param referenceWhite The reference white to use.
     /// @return This color in the {@link LabLCh} color space.
     default LabLCh LabLCh(ReferenceWhite referenceWhite) {
-        return sRGB().LabLCh(referenceWhite);
+        return srgb(this).LabLCh(referenceWhite);
     }
 
     /// Convert this color to the {@link RGB255}
@@ -132,7 +140,7 @@ public interface Color {
     ///
     /// @return This color in the {@link RGB255} color space.
     default RGB255 RGB255() {
-        return sRGB().RGB255();
+        return srgb(this).RGB255();
     }
 
     /// Convert this color to the {@link HSL}
@@ -140,7 +148,7 @@ public interface Color {
     ///
     /// @return This color in the {@link HSL} color space.
     default HSL HSL() {
-        return sRGB().HSL();
+        return srgb(this).HSL();
     }
 
     /// Convert this color to a hex string starting with a `#`.
@@ -155,7 +163,7 @@ public interface Color {
     ///
     /// @return This color in the {@link xyY} color space.
     default xyY xyY() {
-        return sRGB().xyY();
+        return srgb(this).xyY();
     }
 
     /// Convert this color to the {@link xyY}
@@ -164,7 +172,7 @@ public interface Color {
     /// @param referenceWhite The reference white to use.
     /// @return This color in the {@link xyY} color space.
     default xyY xyY(ReferenceWhite referenceWhite) {
-        return sRGB().xyY(referenceWhite);
+        return srgb(this).xyY(referenceWhite);
     }
 
     /// Convert this color to the {@link XYZ}
@@ -172,7 +180,7 @@ public interface Color {
     ///
     /// @return This color in the {@link XYZ} color space.
     default XYZ XYZ() {
-        return sRGB().XYZ();
+        return srgb(this).XYZ();
     }
 
     /// Convert this color to the {@link OkLab}
@@ -263,18 +271,271 @@ public interface Color {
         return new XYZ(X, Y, Z);
     }
 
+    /// Makes a reusable conversion from one color space to another.
+    ///
+    /// The returned plan is thread-safe and can convert single colors or
+    /// whole channel arrays without going through the records for every hop.
+    ///
+    /// @param from The color space to convert from.
+    /// @param to The color space to convert to.
+    /// @param referenceWhite The reference white to use.
+    /// @return A plan for converting between the two color spaces.
+    /// @throws ColorSpaceException If either color space is not supported.
+    static ConversionPlan converter(
+            Class<? extends Color> from,
+            Class<? extends Color> to,
+            ReferenceWhite referenceWhite
+    ) {
+        return ConversionPlan.of(from, to, referenceWhite);
+    }
+
+    /// Makes a reusable conversion from one color space to another that
+    /// may approximate the math for speed.
+    ///
+    /// @param from The color space to convert from.
+    /// @param to The color space to convert to.
+    /// @param referenceWhite The reference white to use.
+    /// @param precision How closely to follow the exact conversions.
+    /// @return A plan for converting between the two color spaces.
+    /// @throws ColorSpaceException If either color space is not supported.
+    static ConversionPlan converter(
+            Class<? extends Color> from,
+            Class<? extends Color> to,
+            ReferenceWhite referenceWhite,
+            ColorPrecision precision
+    ) {
+        return ConversionPlan.of(from, to, referenceWhite, precision);
+    }
+
+    /// Makes a reusable conversion from one color space to another
+    /// using {@link ReferenceWhite#D65}.
+    ///
+    /// @param from The color space to convert from.
+    /// @param to The color space to convert to.
+    /// @return A plan for converting between the two color spaces.
+    /// @throws ColorSpaceException If either color space is not supported.
+    static ConversionPlan converter(Class<? extends Color> from, Class<? extends Color> to) {
+        return converter(from, to, ReferenceWhite.D65);
+    }
+
+    // These switch over every permitted type instead of calling the
+    // conversion through the interface. Called through the interface, sites
+    // like the ones in distanceCIEDE2000 see every color type and stop
+    // inlining. In a switch each branch calls a single final type, which
+    // the JIT can always inline.
+
+    private static sRGB srgb(Color color) {
+        return switch (color) {
+            case HPLuv c -> c.sRGB();
+            case HSL c -> c.sRGB();
+            case HSLuv c -> c.sRGB();
+            case HSV c -> c.sRGB();
+            case Lab c -> c.sRGB();
+            case LabLCh c -> c.sRGB();
+            case LinearRGB c -> c.sRGB();
+            case Luv c -> c.sRGB();
+            case LuvLCh c -> c.sRGB();
+            case OkLab c -> c.sRGB();
+            case OkLch c -> c.sRGB();
+            case RGB255 c -> c.sRGB();
+            case sRGB c -> c;
+            case xyY c -> c.sRGB();
+            case XYZ c -> c.sRGB();
+        };
+    }
+
+    private static LinearRGB linearRGB(Color color) {
+        return switch (color) {
+            case HPLuv c -> c.LinearRGB();
+            case HSL c -> c.LinearRGB();
+            case HSLuv c -> c.LinearRGB();
+            case HSV c -> c.LinearRGB();
+            case Lab c -> c.LinearRGB();
+            case LabLCh c -> c.LinearRGB();
+            case LinearRGB c -> c;
+            case Luv c -> c.LinearRGB();
+            case LuvLCh c -> c.LinearRGB();
+            case OkLab c -> c.LinearRGB();
+            case OkLch c -> c.LinearRGB();
+            case RGB255 c -> c.LinearRGB();
+            case sRGB c -> c.LinearRGB();
+            case xyY c -> c.LinearRGB();
+            case XYZ c -> c.LinearRGB();
+        };
+    }
+
+    private static Lab lab(Color color) {
+        return switch (color) {
+            case HPLuv c -> c.Lab();
+            case HSL c -> c.Lab();
+            case HSLuv c -> c.Lab();
+            case HSV c -> c.Lab();
+            case Lab c -> c;
+            case LabLCh c -> c.Lab();
+            case LinearRGB c -> c.Lab();
+            case Luv c -> c.Lab();
+            case LuvLCh c -> c.Lab();
+            case OkLab c -> c.Lab();
+            case OkLch c -> c.Lab();
+            case RGB255 c -> c.Lab();
+            case sRGB c -> c.Lab();
+            case xyY c -> c.Lab();
+            case XYZ c -> c.Lab();
+        };
+    }
+
+    private static LabLCh labLCh(Color color) {
+        return switch (color) {
+            case HPLuv c -> c.LabLCh();
+            case HSL c -> c.LabLCh();
+            case HSLuv c -> c.LabLCh();
+            case HSV c -> c.LabLCh();
+            case Lab c -> c.LabLCh();
+            case LabLCh c -> c;
+            case LinearRGB c -> c.LabLCh();
+            case Luv c -> c.LabLCh();
+            case LuvLCh c -> c.LabLCh();
+            case OkLab c -> c.LabLCh();
+            case OkLch c -> c.LabLCh();
+            case RGB255 c -> c.LabLCh();
+            case sRGB c -> c.LabLCh();
+            case xyY c -> c.LabLCh();
+            case XYZ c -> c.LabLCh();
+        };
+    }
+
+    private static Luv luv(Color color) {
+        return switch (color) {
+            case HPLuv c -> c.Luv();
+            case HSL c -> c.Luv();
+            case HSLuv c -> c.Luv();
+            case HSV c -> c.Luv();
+            case Lab c -> c.Luv();
+            case LabLCh c -> c.Luv();
+            case LinearRGB c -> c.Luv();
+            case Luv c -> c;
+            case LuvLCh c -> c.Luv();
+            case OkLab c -> c.Luv();
+            case OkLch c -> c.Luv();
+            case RGB255 c -> c.Luv();
+            case sRGB c -> c.Luv();
+            case xyY c -> c.Luv();
+            case XYZ c -> c.Luv();
+        };
+    }
+
+    private static LuvLCh luvLCh(Color color) {
+        return switch (color) {
+            case HPLuv c -> c.LuvLCh();
+            case HSL c -> c.LuvLCh();
+            case HSLuv c -> c.LuvLCh();
+            case HSV c -> c.LuvLCh();
+            case Lab c -> c.LuvLCh();
+            case LabLCh c -> c.LuvLCh();
+            case LinearRGB c -> c.LuvLCh();
+            case Luv c -> c.LuvLCh();
+            case LuvLCh c -> c;
+            case OkLab c -> c.LuvLCh();
+            case OkLch c -> c.LuvLCh();
+            case RGB255 c -> c.LuvLCh();
+            case sRGB c -> c.LuvLCh();
+            case xyY c -> c.LuvLCh();
+            case XYZ c -> c.LuvLCh();
+        };
+    }
+
+    private static HSV hsv(Color color) {
+        return switch (color) {
+            case HPLuv c -> c.HSV();
+            case HSL c -> c.HSV();
+            case HSLuv c -> c.HSV();
+            case HSV c -> c;
+            case Lab c -> c.HSV();
+            case LabLCh c -> c.HSV();
+            case LinearRGB c -> c.HSV();
+            case Luv c -> c.HSV();
+            case LuvLCh c -> c.HSV();
+            case OkLab c -> c.HSV();
+            case OkLch c -> c.HSV();
+            case RGB255 c -> c.HSV();
+            case sRGB c -> c.HSV();
+            case xyY c -> c.HSV();
+            case XYZ c -> c.HSV();
+        };
+    }
+
+    private static OkLab okLab(Color color) {
+        return switch (color) {
+            case HPLuv c -> c.OkLab();
+            case HSL c -> c.OkLab();
+            case HSLuv c -> c.OkLab();
+            case HSV c -> c.OkLab();
+            case Lab c -> c.OkLab();
+            case LabLCh c -> c.OkLab();
+            case LinearRGB c -> c.OkLab();
+            case Luv c -> c.OkLab();
+            case LuvLCh c -> c.OkLab();
+            case OkLab c -> c;
+            case OkLch c -> c.OkLab();
+            case RGB255 c -> c.OkLab();
+            case sRGB c -> c.OkLab();
+            case xyY c -> c.OkLab();
+            case XYZ c -> c.OkLab();
+        };
+    }
+
+    private static HSLuv hsluv(Color color) {
+        return switch (color) {
+            case HPLuv c -> c.HSLuv();
+            case HSL c -> c.HSLuv();
+            case HSLuv c -> c;
+            case HSV c -> c.HSLuv();
+            case Lab c -> c.HSLuv();
+            case LabLCh c -> c.HSLuv();
+            case LinearRGB c -> c.HSLuv();
+            case Luv c -> c.HSLuv();
+            case LuvLCh c -> c.HSLuv();
+            case OkLab c -> c.HSLuv();
+            case OkLch c -> c.HSLuv();
+            case RGB255 c -> c.HSLuv();
+            case sRGB c -> c.HSLuv();
+            case xyY c -> c.HSLuv();
+            case XYZ c -> c.HSLuv();
+        };
+    }
+
+    private static HPLuv hpluv(Color color) {
+        return switch (color) {
+            case HPLuv c -> c;
+            case HSL c -> c.HPLuv();
+            case HSLuv c -> c.HPLuv();
+            case HSV c -> c.HPLuv();
+            case Lab c -> c.HPLuv();
+            case LabLCh c -> c.HPLuv();
+            case LinearRGB c -> c.HPLuv();
+            case Luv c -> c.HPLuv();
+            case LuvLCh c -> c.HPLuv();
+            case OkLab c -> c.HPLuv();
+            case OkLch c -> c.HPLuv();
+            case RGB255 c -> c.HPLuv();
+            case sRGB c -> c.HPLuv();
+            case xyY c -> c.HPLuv();
+            case XYZ c -> c.HPLuv();
+        };
+    }
+
     /// Computes the distance between two colors in RGB space.
     ///
     /// Note: This is not a good measure! Rather do it in Lab space.
     default double distanceRGB(Color other) {
-        return this.sRGB().distance(other.sRGB());
+        return srgb(this).distance(srgb(other));
     }
 
     /// Computes the distance between two colors in linear RGB
     /// space. This is not useful for measuring how humans perceive color, but
     /// might be useful for other things, like dithering.
     default double distanceLinearRGB(Color other) {
-        return this.LinearRGB().distance(other.LinearRGB());
+        return linearRGB(this).distance(linearRGB(other));
     }
 
     /// Color distance algorithm developed by Thiadmer Riemersma.
@@ -286,14 +547,20 @@ public interface Color {
     /// @see <a href="https://www.compuphase.com/cmetric.htm">https://www.compuphase.com/cmetric.htm</a>
     /// @see <a href="https://github.com/lucasb-eyer/go-colorful/issues/52">https://github.com/lucasb-eyer/go-colorful/issues/52</a>
     default double distanceRiemersma(Color other) {
-        return this.sRGB().distanceRiemersma(other.sRGB());
+        return srgb(this).distanceRiemersma(srgb(other));
     }
 
     /// Uses the Delta E 2000 formula to calculate color
     /// distance. It is more expensive but more accurate than both DistanceLab
     /// and DistanceCIE94.
     default double distanceCIEDE2000(Color c2) {
-        return this.Lab().distanceCIEDE2000(c2.Lab());
+        return lab(this).distanceCIEDE2000(lab(c2));
+    }
+
+    /// Approximates the Delta E 2000 formula in `float`. See
+    /// {@link Lab#distanceCIEDE2000Fast(Lab)} for how close it gets.
+    default float distanceCIEDE2000Fast(Color c2) {
+        return lab(this).distanceCIEDE2000Fast(lab(c2));
     }
 
     /// Uses the Delta E 2000 formula with custom values
@@ -305,14 +572,14 @@ public interface Color {
     /// @param kH weighting factor
     /// @return Distance between colors.
     default double distanceCIEDE2000klch(Color cr, double kL, double kC, double kH) {
-        return Lab().distanceCIEDE2000klch(cr.Lab(), kL, kC, kH);
+        return lab(this).distanceCIEDE2000klch(lab(cr), kL, kC, kH);
     }
 
     // DistanceLab is a good measure of visual similarity between two colors!
     // A result of 0 would mean identical colors, while a result of 1 or higher
     // means the colors differ a lot.
     default double distanceLab(Color c2) {
-        return this.Lab().distance(c2.Lab());
+        return lab(this).distance(lab(c2));
     }
 
     // DistanceCIE76 is the same as DistanceLab.
@@ -323,85 +590,44 @@ public interface Color {
     // Uses the CIE94 formula to calculate color distance. More accurate than
     // DistanceLab, but also more work.
     default double distanceCIE94(Color cr) {
-        return this.Lab().distanceCIE94(cr.Lab());
+        return lab(this).distanceCIE94(lab(cr));
     }
 
-
-
-    private static double[][] getBounds(double l) {
-        final double kappa = 903.2962962962963;
-        final double epsilon = 0.0088564516790356308;
-
-        final double[][] m = {
-                {3.2409699419045214, -1.5373831775700935, -0.49861076029300328},
-                {-0.96924363628087983, 1.8759675015077207, 0.041555057407175613},
-                {0.055630079696993609, -0.20397695888897657, 1.0569715142428786},
-        };
-
-        double sub2;
-        var ret = new double[6][2];
-        var sub1 = Math.pow(l+16.0, 3.0) / 1560896.0;
-        if (sub1 > epsilon) {
-            sub2 = sub1;
-        } else {
-            sub2 = l / kappa;
-        }
-        for (int i = 0; i < m.length; i++) {
-            for (int k = 0; k < 2; k++) {
-                var top1 = (284517.0*m[i][0] - 94839.0*m[i][2]) * sub2;
-                var top2 = (838422.0*m[i][2]+769860.0*m[i][1]+731718.0*m[i][0])*l*sub2 - 769860.0*((double) k)*l;
-                var bottom = (632260.0*m[i][2]-126452.0*m[i][1])*sub2 + 126452.0*((double) k);
-                ret[i*2+k][0] = top1 / bottom;
-                ret[i*2+k][1] = top2 / bottom;
-            }
-        }
-
-        return ret;
+    /// Whether {@link #distanceCIEDE2000(Color)} is at most `threshold`.
+    /// Cheap bounds decide most pairs without the full formula. See
+    /// {@link Lab#withinCIEDE2000(Lab, double)}.
+    default boolean withinCIEDE2000(Color c2, double threshold) {
+        return lab(this).withinCIEDE2000(lab(c2), threshold);
     }
 
-    private static double lengthOfRayUntilIntersect(double theta, double x, double y) {
-        return y / (Math.sin(theta) - x*Math.cos(theta));
+    /// Whether {@link #distanceCIE94(Color)} is at most `threshold`.
+    /// Cheap bounds decide most pairs without the full formula. See
+    /// {@link Lab#withinCIE94(Lab, double)}.
+    default boolean withinCIE94(Color cr, double threshold) {
+        return lab(this).withinCIE94(lab(cr), threshold);
     }
 
-    static double maxChromaForLH(double l, double h) {
-        var hRad = h / 360.0 * Math.PI * 2.0;
-        var minLength = Double.MAX_VALUE;
-        for (var line : getBounds(l)) {
-            var length = lengthOfRayUntilIntersect(hRad, line[0], line[1]);
-            if (length > 0.0 && length < minLength) {
-                minLength = length;
-            }
-        }
-        return minLength;
-    }
 
-    static double maxSafeChromaForL(double l) {
-        var minLength = Double.MAX_VALUE;
-        for (var line : getBounds(l)) {
-            var m1 = line[0];
-            var b1 = line[1];
-            var x = intersectLineLine(m1, b1, -1.0/m1, 0.0);
-            var dist = distanceFromPole(x, b1+x*m1);
-            if (dist < minLength) {
-                minLength = dist;
-            }
-        }
-        return minLength;
-    }
 
-    private static double intersectLineLine(double x1, double y1, double x2, double y2) {
-        return (y1 - y2) / (x2 - x1);
+    static double maxChromaForLH(double l, double h) {
+        return Util.maxChromaForLH(l, h);
     }
 
-    private static double distanceFromPole(double x, double y) {
-        return Math.sqrt(Math.pow(x, 2.0) + Math.pow(y, 2.0));
+    static double maxSafeChromaForL(double l) {
+        return Util.maxSafeChromaForL(l);
     }
 
     // DistanceLuv is a good measure of visual similarity between two colors!
     // A result of 0 would mean identical colors, while a result of 1 or higher
     // means the colors differ a lot.
     default double distanceLuv(Color c2) {
-        return this.Luv().distance(c2.Luv());
+        return luv(this).distance(luv(c2));
+    }
+
+    /// Computes the straight line distance between two colors in OkLab.
+    /// OkLab was built so that straight lines track perceived difference.
+    default double distanceOkLab(Color c2) {
+        return okLab(this).distance(okLab(c2));
     }
 
     // DistanceHSLuv calculates Euclidan distance in the HSLuv colorspace. No idea
@@ -410,7 +636,7 @@ public interface Color {
     // The Hue value is divided by 100 before the calculation, so that H, S, and L
     // have the same relative ranges.
     default double distanceHSLuv(Color c2) {
-        return this.HSLuv().distance(c2.HSLuv());
+        return hsluv(this).distance(hsluv(c2));
     }
 
     // DistanceHPLuv calculates Euclidean distance in the HPLuv colorspace. No idea
@@ -419,192 +645,153 @@ public interface Color {
     // The Hue value is divided by 100 before the calculation, so that H, S, and L
     // have the same relative ranges.
     default double distanceHPLuv(Color c2) {
-        return this.HPLuv().distance(c2.HPLuv());
+        return hpluv(this).distance(hpluv(c2));
     }
 
 
-    // newElement creates a singleton set and returns its sole element.
-    private static Element newElement() {
-        var s = new Element();
-        s.parent = s;
-        return s;
-    }
-
-    // find returns an arbitrary element of a set when invoked on any element of
-    // the set, The important feature is that it returns the same value when
-    // invoked on any element of the set.  Consequently, it can be used to test if
-    // two elements belong to the same set.
-    private static Element find(Element e) {
-        for (; e.parent != e; ) {
-            e.parent = e.parent.parent;
-            e = e.parent;
-        }
-        return e;
+    static <C extends Color> List<C> sort(List<C> cs) {
+        return sort(cs, ColorDistance.CIEDE2000);
     }
 
-    // union establishes the union of two sets when given an element from each set.
-    // Afterwards, the original sets no longer exist as separate entities.
-    private static void union(Element e1, Element e2) {
-        // Ensure the two elements aren't already part of the same union.
-        var e1Root = find(e1);
-        var e2Root = find(e2);
-        if (e1Root == e2Root) {
-            return;
+    @SuppressWarnings("unchecked")
+    static <C extends Color> List<C> sort(
+            List<C> cs,
+            ColorDistance colorDistance
+    ) {
+        if (cs.size() < 2) {
+            return List.copyOf(cs);
         }
 
-        // Create a union by making the shorter tree point to the root of the
-        // larger tree.
-        if (e1Root.rank < e2Root.rank) {
-            e1Root.parent = e2Root;
-        } else if (e1Root.rank > e2Root.rank) {
-            e2Root.parent = e1Root;
-        } else {
-            e2Root.parent = e1Root;
-            e1Root.rank++;
-        }
-    }
+        var newCs = new Color[cs.size()];
+        var idxs = SpanningTree.order(cs, colorDistance);
 
-    // allToAllDistancesCIEDE2000 computes the CIEDE2000 distance between each pair of
-    // colors.  It returns a map from a pair of indices (u, v) with u < v to a
-    // distance.
-    private static <C extends Color> EdgeDistances allToAllDistances(List<C> cs, ColorDistance colorDistance) {
-        var nc = cs.size();
-        var m = new HashMap<EdgeIdxs, Double>(nc * nc);
-        for (int u = 0; u < nc - 1; u++) {
-            for (int v = u + 1; v < nc; v++) {
-                m.put(new EdgeIdxs(u, v), colorDistance.distance(cs.get(u), cs.get(v)));
-            }
+        // Convert the index list to a list of colors, overwriting the input.
+        for (int i = 0; i < idxs.length; i++) {
+            var idx = idxs[i];
+            newCs[i] = cs.get(idx);
         }
-        return new EdgeDistances(m);
-    }
 
-    // sortEdges sorts all edges in a distance map by increasing vertex distance.
-    private static ArrayList<EdgeIdxs> sortEdges(EdgeDistances m) {
-        var es = new ArrayList<EdgeIdxs>(m.value().size());
-        es.addAll(m.value().keySet());
-
-        es.sort(Comparator.comparing((i) -> m.value().getOrDefault(i, 0.0)));
-        return es;
+        return List.of((C[]) newCs);
     }
 
-    // minSpanTree computes a minimum spanning tree from a vertex count and a
-    // distance-sorted edge list.  It returns the subset of edges that belong to
-    // the tree, including both (u, v) and (v, u) for each edge.
-    private static Set<EdgeIdxs> minSpanTree(int nc, List<EdgeIdxs> es) {
-        // Start with each vertex in its own set.
-        var elts = new Element[nc];
-        for (int i = 0; i < elts.length; i++) {
-            elts[i] = newElement();
-        }
-
-        // Run Kruskal's algorithm to construct a minimal spanning tree.
-        var mst = new LinkedHashSet<EdgeIdxs>(nc);
-        for (var uv : es) {
-            var u = uv._0();
-            var v = uv._1();
-            if (find(elts[u]) == find(elts[v])) {
-                continue; // Same set: edge would introduce a cycle.
-            }
-            mst.add(uv);
-            mst.add(new EdgeIdxs(v, u));
-            union(elts[u], elts[v]);
+    /// Smooths out an ordering of colors, such as the result of
+    /// {@link #sort(List, ColorDistance)}, by treating it as a path from the
+    /// first color to the last and making it shorter.
+    ///
+    /// Walking a spanning tree jumps back whenever it finishes a branch.
+    /// This repeatedly reverses stretches of the path (2-opt) and moves
+    /// runs of up to three colors elsewhere (Or-opt) wherever that
+    /// shortens it, only trying moves that put a color next to one of its
+    /// nearest neighbors. Each pass searches from every color in
+    /// parallel. The first color stays first, so a sorted list still
+    /// starts from its darkest color.
+    ///
+    /// It stops when no move helps, when a pass shortens the path by less
+    /// than `minImprovement` of its length, or when `budget` runs out.
+    /// The budget is checked between passes, after finding each color's
+    /// nearest neighbors, which compares every pair unless the distance is
+    /// a straight line in one of the spaces of {@link ColorDistance}.
+    ///
+    /// @param sorted The colors in the order to refine.
+    /// @param colorDistance What makes one step of the path long.
+    /// @param budget How long to keep making passes.
+    /// @param minImprovement The smallest fraction a pass must shorten the path by to try another, `0` to stop only when no move helps.
+    /// @param pool The pool to run in.
+    /// @return The refined order, with the path length before and after.
+    @SuppressWarnings("unchecked")
+    static <C extends Color> RefinedOrder<C> refineSort(
+            List<C> sorted,
+            ColorDistance colorDistance,
+            Duration budget,
+            double minImprovement,
+            ForkJoinPool pool
+    ) {
+        Objects.requireNonNull(budget, "budget");
+        Objects.requireNonNull(pool, "pool");
+        if (!(minImprovement >= 0)) {
+            throw new IllegalArgumentException("minImprovement must not be negative: " + minImprovement);
         }
-
-        return mst;
-    }
-
-    // traverseMST walks a minimum spanning tree in prefix order.
-    private static ArrayList<Integer> traverseMST(Set<EdgeIdxs> mst, int root) {
-        // Compute a list of neighbors for each vertex.
-        var neighs = new LinkedHashMap<Integer, ArrayList<Integer>>(mst.size());
-        for (var uv : mst) {
-            var u = uv._0();
-            var v = uv._1();
-            neighs.putIfAbsent(u, new ArrayList<>());
-            neighs.get(u).add(v);
+        // Budgets of more than a century are as good as none.
+        var nanos = budget.compareTo(Duration.ofDays(36_500)) > 0
+                ? Duration.ofDays(36_500).toNanos()
+                : budget.toNanos();
+        var deadline = System.nanoTime() + nanos;
+
+        var prepared = colorDistance.prepare(sorted);
+        var path = new int[sorted.size()];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = i;
         }
+        var before = PathRefinement.length(prepared, path);
+        var after = PathRefinement.refine(prepared, path, deadline, minImprovement, pool);
 
-        for (var vs : neighs.values()) {
-            vs.sort(Comparator.naturalOrder());
+        var newCs = new Color[path.length];
+        for (int i = 0; i < path.length; i++) {
+            newCs[i] = sorted.get(path[i]);
         }
+        return new RefinedOrder<>(List.of((C[]) newCs), before, after);
+    }
 
-        // Walk the tree from a given vertex.
-        ArrayList<Integer> order = new ArrayList<Integer>(neighs.size());
-        Set<Integer> visited = new HashSet<>();
-
-        IntConsumer walkFrom = new IntConsumer() {
-            @Override
-            public void accept(int r) {
-                // Visit the starting vertex.
-                order.add(r);
-                visited.add(r);
-
-                // Recursively visit each child in turn.
-                for (var c : neighs.get(r)) {
-                    if (!visited.contains(c)) {
-                        this.accept(c);
-                    }
-                }
-            }
-        };
-
-        walkFrom.accept(root);
-
-        return order;
+    /// Orders colors along a Hilbert curve through `space`, on the calling
+    /// thread.
+    ///
+    /// Unlike {@link #sort(List, ColorDistance)} this never compares two
+    /// colors. Each one is placed in a grid over the box that bounds them
+    /// all and sorted by where the curve visits its cell, in
+    /// `O(n log n)`. Neighbors in the result are close, but the order is
+    /// not as smooth as following a spanning tree. Colors in the same cell
+    /// keep the order they came in.
+    ///
+    /// {@link PixelFiles#sortApproximate} does the same for files of pixels
+    /// too large for the heap.
+    ///
+    /// @param cs The colors to order.
+    /// @param space Either {@link Lab} or {@link OkLab}.
+    /// @return The colors in order along the curve.
+    static <C extends Color> List<C> sortApproximate(List<C> cs, Class<? extends Color> space) {
+        return sortApproximate(cs, space, null);
     }
 
-    static <C extends Color> List<C> sort(List<C> cs) {
-        return sort(cs, Color::distanceCIEDE2000);
+    /// Orders colors along a Hilbert curve through `space`, splitting the
+    /// work across a pool. Gives the same order as
+    /// {@link #sortApproximate(List, Class)}.
+    ///
+    /// @param cs The colors to order.
+    /// @param space Either {@link Lab} or {@link OkLab}.
+    /// @param pool The pool to run in.
+    /// @return The colors in order along the curve.
+    static <C extends Color> List<C> sortApproximateParallel(
+            List<C> cs,
+            Class<? extends Color> space,
+            ForkJoinPool pool
+    ) {
+        return sortApproximate(cs, space, Objects.requireNonNull(pool, "pool"));
     }
 
     @SuppressWarnings("unchecked")
-    static <C extends Color> List<C> sort(
+    private static <C extends Color> List<C> sortApproximate(
             List<C> cs,
-            ColorDistance colorDistance
+            Class<? extends Color> space,
+            ForkJoinPool pool
     ) {
+        if (space != Lab.class && space != OkLab.class) {
+            throw new IllegalArgumentException("Can only sort along a curve in Lab or OkLab, not " + space);
+        }
         if (cs.size() < 2) {
             return List.copyOf(cs);
         }
-
-        // Do nothing in trivial cases.
-        var newCs = new Color[cs.size()];
-
-        var dists = allToAllDistances(cs, colorDistance);
-
-        var edges = sortEdges(dists);
-
-        var mst = minSpanTree(cs.size(), edges);
-
-        // Find the darkest color in the list.
-        var black = new sRGB(0, 0, 0);
-        int dIdx = 0; // Index of darkest color
-        var light = Double.MAX_VALUE; // Lightness of darkest color (distance from black)
-
-        for (int i = 0; i < cs.size(); i++) {
-            var c = cs.get(i);
-            var d = colorDistance.distance(black, c);
-            if (d < light) {
-                dIdx = i;
-                light = d;
-            }
-        }
-
-        // Traverse the tree starting from the darkest color.
-        var idxs = traverseMST(mst, dIdx);
-
-        // Convert the index list to a list of colors, overwriting the input.
-        for (int i = 0; i < idxs.size(); i++) {
-            var idx = idxs.get(i);
-            newCs[i] = cs.get(idx);
+        var order = HilbertCurve.sort(cs, space, pool);
+        var newCs = new Color[order.length];
+        for (int i = 0; i < order.length; i++) {
+            newCs[i] = cs.get(order[i]);
         }
-
         return List.of((C[]) newCs);
     }
 
     // BlendLab blends two colors in the L*a*b* color-space, which should result in a smoother blend.
     // t == 0 results in c1, t == 1 results in c2
     default Color blendLab(Color c2, double t) {
-        return this.Lab().blend(c2.Lab(), t);
+        return lab(this).blend(lab(c2), t);
     }
 
     default Color blendLab(Color c2) {
@@ -616,9 +803,9 @@ public interface Color {
     default Color blendLuv(Color c2, double t) {
         var c1 = this;
 
-        switch (c1.Luv()) {
+        switch (luv(c1)) {
             case Luv(double l1, double u1, double v1) -> {
-                switch (c2.Luv()) {
+                switch (luv(c2)) {
                     case Luv(double l2, double u2, double v2) -> {
                         return new Luv(l1 + t * (l2 - l1),
                                 u1 + t * (u2 - u1),
@@ -635,8 +822,8 @@ public interface Color {
 
     // You don't really want to use this, do you? Go for BlendLab, BlendLuv or BlendHcl.
     default Color blendRGB(Color other, double t) {
-        var c1 = this.sRGB();
-        var c2 = other.sRGB();
+        var c1 = srgb(this);
+        var c2 = srgb(other);
         return new sRGB(
                 c1.R() + t * (c2.R() - c1.R()),
                 c1.G() + t * (c2.G() - c1.G()),
@@ -653,9 +840,9 @@ public interface Color {
     // t == 0 results in c1, t == 1 results in c2
     default Color blendLinearRGB(Color c2, double t) {
         var c1 = this;
-        switch (c1.LinearRGB()) {
+        switch (linearRGB(c1)) {
             case LinearRGB(double r1, double g1, double b1) -> {
-                switch (c2.LinearRGB()) {
+                switch (linearRGB(c2)) {
                     case LinearRGB(double r2, double g2, double b2) -> {
                         return new LinearRGB(
                                 r1 + t * (r2 - r1),
@@ -676,9 +863,9 @@ public interface Color {
     // You don't really want to use this, do you? Go for BlendLab, BlendLuv or BlendHcl.
     default Color blendHSV(Color c2, double t) {
         var c1 = this;
-        switch (c1.HSV()) {
+        switch (hsv(c1)) {
             case HSV(double h1, double s1, double v1) -> {
-                switch (c2.HSV()) {
+                switch (hsv(c2)) {
                     case HSV(double h2, double s2, double v2) -> {
                         // https://github.com/lucasb-eyer/go-colorful/pull/60
                         if (s1 == 0 && s2 != 0) {
@@ -704,9 +891,9 @@ public interface Color {
     default Color blendLuvLch(Color col2, double t) {
         var col1 = this;
 
-        switch (col1.LabLCh()) {
+        switch (labLCh(col1)) {
             case LabLCh(var l1, var c1, var h1) -> {
-                switch (col2.LabLCh()) {
+                switch (labLCh(col2)) {
                     case LabLCh(var l2, var c2, var h2) -> {
                         // https://github.com/lucasb-eyer/go-colorful/pull/60
                         if (c1 <= 0.00015 && c2 >= 0.00015) {
@@ -736,11 +923,11 @@ public interface Color {
     // BlendLuvLCh blends two colors in the cylindrical CIELUV color space.
     // t == 0 results in c1, t == 1 results in c2
     default Color blendLuvLCh(Color col2, double t) {
-        return this.LuvLCh().blend(col2.LuvLCh(), t);
+        return luvLCh(this).blend(luvLCh(col2), t);
      }
 
      default Color blendLuvLCh(Color col2) {
-         return this.LuvLCh().blend(col2.LuvLCh());
+         return luvLCh(this).blend(luvLCh(col2));
      }
 
     static Color warm() {
@@ -820,8 +1007,8 @@ public interface Color {
 
     // Check for equality between colors within the tolerance Delta (1/255).
     default boolean almostEqualRGB(Color other, double delta) {
-        var c1 = this.sRGB();
-        var c2 = other.sRGB();
+        var c1 = srgb(this);
+        var c2 = srgb(other);
         return Math.abs(c1.R() - c2.R()) +
                 Math.abs(c1.G() - c2.G()) +
                 Math.abs(c1.B() - c2.B()) < 3.0 * delta;
@@ -1081,21 +1268,6 @@ public interface Color {
     }
 }
 
-// An element represents a single element of a set.  It is used to
-// implement a disjoint-set forest.
-final class Element {
-    // Parent element
-    Element parent;
-    // Rank (approximate depth) of the subtree with this element as root
-    int rank;
-}
-
-record EdgeIdxs(int _0, int _1) {
-}
-
-record EdgeDistances(Map<EdgeIdxs, Double> value) {
-}
-
 final class PaletteGenerationSettings {
     static final int DEFAULT_ITERATIONS = 50;
     LabPredicate checkColor = __ -> true;
@@ -0,0 +1,536 @@
+package dev.mccue.color;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/// A buffer of colors in a single color space, stored as three
+/// parallel channel arrays.
+///
+/// Converting a {@link Color} one record at a time allocates every
+/// intermediate along the way. {@link sRGB#Lab()} for instance makes a
+/// {@link LinearRGB}, then an {@link XYZ}, then the {@link Lab}. A
+/// `ColorBuffer` does the same math in tight loops over its channels
+/// without allocating anything per color.
+///
+/// The channels are in the same order as the components of the record
+/// for the color space, so a buffer tagged with {@link Lab} holds `L`
+/// in channel 0, `a` in channel 1 and `b` in channel 2.
+///
+/// ```java
+/// var pixels = new ColorBuffer(sRGB.class, r, g, b);
+/// var lab = new ColorBuffer(Lab.class, pixels.size());
+/// pixels.toLab(lab);
+/// ```
+///
+/// Buffers wrap the arrays they are given, so they are neither immutable
+/// nor thread-safe. Converting disjoint ranges from different threads is
+/// fine, and the `convertParallel` methods do exactly that.
+public final class ColorBuffer {
+    // Colors per unit of parallel work. Three channels of 4096 doubles is
+    // 96KB, which stays in a typical L2 cache through every stage of a plan.
+    private static final int CHUNK = 4096;
+
+    private final Space space;
+    private final double[] c0;
+    private final double[] c1;
+    private final double[] c2;
+
+    private ColorBuffer(Space space, double[] c0, double[] c1, double[] c2) {
+        if (c0.length != c1.length || c1.length != c2.length) {
+            throw new IllegalArgumentException(
+                    "Channels must all be the same length: %d, %d, %d".formatted(c0.length, c1.length, c2.length)
+            );
+        }
+        this.space = space;
+        this.c0 = c0;
+        this.c1 = c1;
+        this.c2 = c2;
+    }
+
+    /// Creates a buffer that wraps the given channel arrays.
+    ///
+    /// @param space The color space the channels are in.
+    /// @param c0 The first channel.
+    /// @param c1 The second channel.
+    /// @param c2 The third channel.
+    public ColorBuffer(Class<? extends Color> space, double[] c0, double[] c1, double[] c2) {
+        this(
+                Space.of(Objects.requireNonNull(space, "space")),
+                Objects.requireNonNull(c0, "c0"),
+                Objects.requireNonNull(c1, "c1"),
+                Objects.requireNonNull(c2, "c2")
+        );
+    }
+
+    /// Creates a zeroed buffer.
+    ///
+    /// @param space The color space the buffer holds.
+    /// @param size The number of colors the buffer holds.
+    public ColorBuffer(Class<? extends Color> space, int size) {
+        this(space, new double[size], new double[size], new double[size]);
+    }
+
+    /// Creates a buffer holding the given colors converted to `space`.
+    ///
+    /// @param space The color space the buffer holds.
+    /// @param colors The colors to put in the buffer.
+    /// @return A new buffer.
+    public static ColorBuffer of(Class<? extends Color> space, List<? extends Color> colors) {
+        var buffer = new ColorBuffer(space, colors.size());
+        for (int i = 0; i < colors.size(); i++) {
+            buffer.set(i, colors.get(i));
+        }
+        return buffer;
+    }
+
+    /// @return The color space of the colors in this buffer.
+    public Class<? extends Color> space() {
+        return space.type;
+    }
+
+    /// @return The number of colors in this buffer.
+    public int size() {
+        return c0.length;
+    }
+
+    /// Gets the backing array for a channel. Writes to the
+    /// array are visible in the buffer.
+    ///
+    /// @param channel 0, 1 or 2.
+    /// @return The backing array for the channel.
+    public double[] channel(int channel) {
+        return switch (channel) {
+            case 0 -> c0;
+            case 1 -> c1;
+            case 2 -> c2;
+            default -> throw new IndexOutOfBoundsException("Channel must be 0, 1 or 2: " + channel);
+        };
+    }
+
+    /// Makes a buffer which shares the arrays of this one but claims to be
+    /// in a different color space.
+    ///
+    /// Converting into a view of the source buffer converts in place.
+    ///
+    /// ```java
+    /// var buffer = new ColorBuffer(sRGB.class, r, g, b);
+    /// buffer.toLab(buffer.view(Lab.class));
+    /// ```
+    ///
+    /// @param space The color space the view claims to hold.
+    /// @return A buffer backed by the same arrays.
+    public ColorBuffer view(Class<? extends Color> space) {
+        return new ColorBuffer(Space.of(space), c0, c1, c2);
+    }
+
+    /// @param index The index of the color.
+    /// @return The color at `index`.
+    public Color get(int index) {
+        return space.color(c0[index], c1[index], c2[index]);
+    }
+
+    /// Converts a color into the color space of this buffer and stores it.
+    ///
+    /// @param index The index to store the color at.
+    /// @param color The color to store.
+    public void set(int index, Color color) {
+        space.channels(color, c0, c1, c2, index);
+    }
+
+    /// Converts every color into `space`.
+    ///
+    /// @param space The color space to convert to.
+    /// @return A new buffer with the converted colors.
+    public ColorBuffer convert(Class<? extends Color> space) {
+        var dst = new ColorBuffer(space, size());
+        convert(dst);
+        return dst;
+    }
+
+    /// Converts every color into the color space of `dst`.
+    ///
+    /// @param dst The buffer to write to. Must be at least as large as this one.
+    public void convert(ColorBuffer dst) {
+        convert(dst, ReferenceWhite.D65);
+    }
+
+    /// Converts every color into the color space of `dst`.
+    ///
+    /// @param dst The buffer to write to. Must be at least as large as this one.
+    /// @param referenceWhite The reference white to use.
+    public void convert(ColorBuffer dst, ReferenceWhite referenceWhite) {
+        convert(0, dst, 0, size(), referenceWhite);
+    }
+
+    /// Converts every color into the color space of `dst`.
+    ///
+    /// @param dst The buffer to write to. Must be at least as large as this one.
+    /// @param referenceWhite The reference white to use.
+    /// @param precision How closely to follow the exact conversions.
+    public void convert(ColorBuffer dst, ReferenceWhite referenceWhite, ColorPrecision precision) {
+        convert(0, dst, 0, size(), referenceWhite, precision);
+    }
+
+    /// Converts a range of colors into the color space of `dst`.
+    ///
+    /// If `dst` shares its arrays with this buffer and the ranges are the
+    /// same, the conversion happens in place.
+    ///
+    /// @param offset The first index of this buffer to convert.
+    /// @param dst The buffer to write to.
+    /// @param dstOffset The first index of `dst` to write.
+    /// @param length The number of colors to convert.
+    /// @param referenceWhite The reference white to use.
+    public void convert(int offset, ColorBuffer dst, int dstOffset, int length, ReferenceWhite referenceWhite) {
+        convert(offset, dst, dstOffset, length, referenceWhite, ColorPrecision.EXACT);
+    }
+
+    /// Converts a range of colors into the color space of `dst`.
+    ///
+    /// If `dst` shares its arrays with this buffer and the ranges are the
+    /// same, the conversion happens in place.
+    ///
+    /// @param offset The first index of this buffer to convert.
+    /// @param dst The buffer to write to.
+    /// @param dstOffset The first index of `dst` to write.
+    /// @param length The number of colors to convert.
+    /// @param referenceWhite The reference white to use.
+    /// @param precision How closely to follow the exact conversions.
+    public void convert(
+            int offset,
+            ColorBuffer dst,
+            int dstOffset,
+            int length,
+            ReferenceWhite referenceWhite,
+            ColorPrecision precision
+    ) {
+        Objects.checkFromIndexSize(offset, length, size());
+        Objects.checkFromIndexSize(dstOffset, length, dst.size());
+        Objects.requireNonNull(referenceWhite, "referenceWhite");
+
+        Color.converter(space.type, dst.space.type, referenceWhite, precision)
+                .convert(c0, c1, c2, offset, dst.c0, dst.c1, dst.c2, dstOffset, length);
+    }
+
+    /// Converts every color into `space`, splitting the work across a pool.
+    ///
+    /// @param space The color space to convert to.
+    /// @param pool The pool to run the conversion in.
+    /// @return A new buffer with the converted colors.
+    public ColorBuffer convertParallel(Class<? extends Color> space, ForkJoinPool pool) {
+        var dst = new ColorBuffer(space, size());
+        convertParallel(dst, pool);
+        return dst;
+    }
+
+    /// Converts every color into the color space of `dst`, splitting the work across a pool.
+    ///
+    /// @param dst The buffer to write to. Must be at least as large as this one.
+    /// @param pool The pool to run the conversion in.
+    public void convertParallel(ColorBuffer dst, ForkJoinPool pool) {
+        convertParallel(dst, ReferenceWhite.D65, pool);
+    }
+
+    /// Converts every color into the color space of `dst`, splitting the work across a pool.
+    ///
+    /// The colors are converted in chunks of a few thousand, small enough
+    /// for all three channels to stay in cache. The result is the same as
+    /// {@link #convert(ColorBuffer, ReferenceWhite)}.
+    ///
+    /// @param dst The buffer to write to. Must be at least as large as this one.
+    /// @param referenceWhite The reference white to use.
+    /// @param pool The pool to run the conversion in.
+    public void convertParallel(ColorBuffer dst, ReferenceWhite referenceWhite, ForkJoinPool pool) {
+        convertParallel(dst, referenceWhite, ColorPrecision.EXACT, pool);
+    }
+
+    /// Converts every color into the color space of `dst`, splitting the work across a pool.
+    ///
+    /// @param dst The buffer to write to. Must be at least as large as this one.
+    /// @param referenceWhite The reference white to use.
+    /// @param precision How closely to follow the exact conversions.
+    /// @param pool The pool to run the conversion in.
+    public void convertParallel(
+            ColorBuffer dst,
+            ReferenceWhite referenceWhite,
+            ColorPrecision precision,
+            ForkJoinPool pool
+    ) {
+        Objects.checkFromIndexSize(0, size(), dst.size());
+        Objects.requireNonNull(referenceWhite, "referenceWhite");
+        Objects.requireNonNull(pool, "pool");
+
+        var plan = Color.converter(space.type, dst.space.type, referenceWhite, precision);
+        pool.invoke(new ConvertTask(plan, this, dst, 0, size()));
+    }
+
+    @SuppressWarnings("serial") // Tasks are never serialized.
+    private static final class ConvertTask extends RecursiveAction {
+        private final ConversionPlan plan;
+        private final ColorBuffer src;
+        private final ColorBuffer dst;
+        private final int start;
+        private final int end;
+
+        ConvertTask(ConversionPlan plan, ColorBuffer src, ColorBuffer dst, int start, int end) {
+            this.plan = plan;
+            this.src = src;
+            this.dst = dst;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= CHUNK) {
+                plan.convert(
+                        src.c0, src.c1, src.c2, start,
+                        dst.c0, dst.c1, dst.c2, start,
+                        end - start
+                );
+            } else {
+                var mid = split(start, end);
+                invokeAll(
+                        new ConvertTask(plan, src, dst, start, mid),
+                        new ConvertTask(plan, src, dst, mid, end)
+                );
+            }
+        }
+    }
+
+    // Splits [start, end) roughly in half on a chunk boundary.
+    private static int split(int start, int end) {
+        var half = (end - start) / 2;
+        return start + Math.max(CHUNK, half - half % CHUNK);
+    }
+
+    /// Makes a spliterator over the colors in this buffer.
+    ///
+    /// The spliterator is {@link Spliterator#SIZED} and
+    /// {@link Spliterator#SUBSIZED}, and splits on chunks of a few
+    /// thousand colors, so parallel streams get evenly balanced work.
+    ///
+    /// @return A spliterator over the colors in this buffer.
+    public Spliterator<Color> spliterator() {
+        return new ColorSpliterator(this, 0, size());
+    }
+
+    /// Makes a sequential stream of the colors in this buffer. Call
+    /// {@link Stream#parallel()} on it for a parallel one.
+    ///
+    /// @return A stream of the colors in this buffer.
+    public Stream<Color> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    private static final class ColorSpliterator implements Spliterator<Color> {
+        private final ColorBuffer buffer;
+        private int index;
+        private final int end;
+
+        ColorSpliterator(ColorBuffer buffer, int index, int end) {
+            this.buffer = buffer;
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Color> action) {
+            Objects.requireNonNull(action, "action");
+            if (index >= end) {
+                return false;
+            }
+            action.accept(buffer.get(index++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Color> action) {
+            Objects.requireNonNull(action, "action");
+            for (; index < end; index++) {
+                action.accept(buffer.get(index));
+            }
+        }
+
+        @Override
+        public Spliterator<Color> trySplit() {
+            if (end - index <= CHUNK) {
+                return null;
+            }
+            var mid = split(index, end);
+            var prefix = new ColorSpliterator(buffer, index, mid);
+            index = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+
+    private void convertTo(Space target, ColorBuffer dst, ReferenceWhite referenceWhite) {
+        if (dst.space != target) {
+            throw new IllegalArgumentException(
+                    "Expected a buffer in " + target.type.getSimpleName() + ", got " + dst.space.type.getSimpleName()
+            );
+        }
+        convert(dst, referenceWhite);
+    }
+
+    /// Converts every color to {@link sRGB}.
+    ///
+    /// @param dst A buffer of {@link sRGB} colors to write to.
+    public void tosRGB(ColorBuffer dst) {
+        convertTo(Space.SRGB, dst, ReferenceWhite.D65);
+    }
+
+    /// Converts every color to {@link LinearRGB}.
+    ///
+    /// @param dst A buffer of {@link LinearRGB} colors to write to.
+    public void toLinearRGB(ColorBuffer dst) {
+        convertTo(Space.LINEAR_RGB, dst, ReferenceWhite.D65);
+    }
+
+    /// Converts every color to {@link RGB255}.
+    ///
+    /// @param dst A buffer of {@link RGB255} colors to write to.
+    public void toRGB255(ColorBuffer dst) {
+        convertTo(Space.RGB_255, dst, ReferenceWhite.D65);
+    }
+
+    /// Converts every color to {@link HSV}.
+    ///
+    /// @param dst A buffer of {@link HSV} colors to write to.
+    public void toHSV(ColorBuffer dst) {
+        convertTo(Space.HSV, dst, ReferenceWhite.D65);
+    }
+
+    /// Converts every color to {@link HSL}.
+    ///
+    /// @param dst A buffer of {@link HSL} colors to write to.
+    public void toHSL(ColorBuffer dst) {
+        convertTo(Space.HSL, dst, ReferenceWhite.D65);
+    }
+
+    /// Converts every color to {@link XYZ}.
+    ///
+    /// @param dst A buffer of {@link XYZ} colors to write to.
+    public void toXYZ(ColorBuffer dst) {
+        convertTo(Space.XYZ, dst, ReferenceWhite.D65);
+    }
+
+    /// Converts every color to {@link xyY}.
+    ///
+    /// @param dst A buffer of {@link xyY} colors to write to.
+    public void toxyY(ColorBuffer dst) {
+        convertTo(Space.XY_Y, dst, ReferenceWhite.D65);
+    }
+
+    /// Converts every color to {@link xyY}.
+    ///
+    /// @param dst A buffer of {@link xyY} colors to write to.
+    /// @param referenceWhite The reference white to use.
+    public void toxyY(ColorBuffer dst, ReferenceWhite referenceWhite) {
+        convertTo(Space.XY_Y, dst, referenceWhite);
+    }
+
+    /// Converts every color to {@link Lab}.
+    ///
+    /// @param dst A buffer of {@link Lab} colors to write to.
+    public void toLab(ColorBuffer dst) {
+        convertTo(Space.LAB, dst, ReferenceWhite.D65);
+    }
+
+    /// Converts every color to {@link Lab}.
+    ///
+    /// @param dst A buffer of {@link Lab} colors to write to.
+    /// @param referenceWhite The reference white to use.
+    public void toLab(ColorBuffer dst, ReferenceWhite referenceWhite) {
+        convertTo(Space.LAB, dst, referenceWhite);
+    }
+
+    /// Converts every color to {@link LabLCh}.
+    ///
+    /// @param dst A buffer of {@link LabLCh} colors to write to.
+    public void toLabLCh(ColorBuffer dst) {
+        convertTo(Space.LAB_LCH, dst, ReferenceWhite.D65);
+    }
+
+    /// Converts every color to {@link LabLCh}.
+    ///
+    /// @param dst A buffer of {@link LabLCh} colors to write to.
+    /// @param referenceWhite The reference white to use.
+    public void toLabLCh(ColorBuffer dst, ReferenceWhite referenceWhite) {
+        convertTo(Space.LAB_LCH, dst, referenceWhite);
+    }
+
+    /// Converts every color to {@link Luv}.
+    ///
+    /// @param dst A buffer of {@link Luv} colors to write to.
+    public void toLuv(ColorBuffer dst) {
+        convertTo(Space.LUV, dst, ReferenceWhite.D65);
+    }
+
+    /// Converts every color to {@link Luv}.
+    ///
+    /// @param dst A buffer of {@link Luv} colors to write to.
+    /// @param referenceWhite The reference white to use.
+    public void toLuv(ColorBuffer dst, ReferenceWhite referenceWhite) {
+        convertTo(Space.LUV, dst, referenceWhite);
+    }
+
+    /// Converts every color to {@link LuvLCh}.
+    ///
+    /// @param dst A buffer of {@link LuvLCh} colors to write to.
+    public void toLuvLCh(ColorBuffer dst) {
+        convertTo(Space.LUV_LCH, dst, ReferenceWhite.D65);
+    }
+
+    /// Converts every color to {@link LuvLCh}.
+    ///
+    /// @param dst A buffer of {@link LuvLCh} colors to write to.
+    /// @param referenceWhite The reference white to use.
+    public void toLuvLCh(ColorBuffer dst, ReferenceWhite referenceWhite) {
+        convertTo(Space.LUV_LCH, dst, referenceWhite);
+    }
+
+    /// Converts every color to {@link HSLuv}.
+    ///
+    /// @param dst A buffer of {@link HSLuv} colors to write to.
+    public void toHSLuv(ColorBuffer dst) {
+        convertTo(Space.HSLUV, dst, ReferenceWhite.D65);
+    }
+
+    /// Converts every color to {@link HPLuv}.
+    ///
+    /// @param dst A buffer of {@link HPLuv} colors to write to.
+    public void toHPLuv(ColorBuffer dst) {
+        convertTo(Space.HPLUV, dst, ReferenceWhite.D65);
+    }
+
+    /// Converts every color to {@link OkLab}.
+    ///
+    /// @param dst A buffer of {@link OkLab} colors to write to.
+    public void toOkLab(ColorBuffer dst) {
+        convertTo(Space.OKLAB, dst, ReferenceWhite.D65);
+    }
+
+    /// Converts every color to {@link OkLch}.
+    ///
+    /// @param dst A buffer of {@link OkLch} colors to write to.
+    public void toOkLch(ColorBuffer dst) {
+        convertTo(Space.OKLCH, dst, ReferenceWhite.D65);
+    }
+}
@@ -1,25 +1,83 @@
 package dev.mccue.color;
 
+import java.util.List;
+
 /// Computes the distance between two colors in some color
 /// space.
 ///
+/// The distances that come with the library are also available as
+/// constants, like {@link #CIEDE2000}. Those are the same as the methods
+/// on {@link Color}, except that {@link #prepare(List)} converts each color
+/// only once.
+///
 /// @see Color#distanceCIEDE2000(Color)
 /// @see Color#distanceCIEDE2000klch(Color, double, double, double)
+/// @see Color#distanceCIEDE2000Fast(Color)
 /// @see Color#distanceLab(Color)
 /// @see Color#distanceCIE76(Color)
 /// @see Color#distanceCIE94(Color)
 /// @see Color#distanceLinearRGB(Color)
 /// @see Color#distanceLuv(Color)
+/// @see Color#distanceOkLab(Color)
 /// @see Color#distanceRGB(Color)
 /// @see Color#distanceRiemersma(Color)
 /// @see Color#distanceHPLuv(Color)
 /// @see Color#distanceHSLuv(Color)
 @FunctionalInterface
 public interface ColorDistance {
+    /// {@link Color#distanceRGB(Color)}
+    ColorDistance RGB = StandardColorDistance.RGB;
+    /// {@link Color#distanceLinearRGB(Color)}
+    ColorDistance LINEAR_RGB = StandardColorDistance.LINEAR_RGB;
+    /// {@link Color#distanceRiemersma(Color)}
+    ColorDistance RIEMERSMA = StandardColorDistance.RIEMERSMA;
+    /// {@link Color#distanceLab(Color)}
+    ColorDistance LAB = StandardColorDistance.LAB;
+    /// {@link Color#distanceCIE76(Color)}, the same as {@link #LAB}.
+    ColorDistance CIE76 = StandardColorDistance.LAB;
+    /// {@link Color#distanceCIE94(Color)}
+    ColorDistance CIE94 = StandardColorDistance.CIE94;
+    /// {@link Color#distanceCIEDE2000(Color)}
+    ColorDistance CIEDE2000 = StandardColorDistance.CIEDE2000;
+    /// {@link Color#distanceCIEDE2000Fast(Color)}
+    ColorDistance CIEDE2000_FAST = StandardColorDistance.CIEDE2000_FAST;
+    /// {@link Color#distanceLuv(Color)}
+    ColorDistance LUV = StandardColorDistance.LUV;
+    /// {@link Color#distanceOkLab(Color)}
+    ColorDistance OKLAB = StandardColorDistance.OKLAB;
+    /// {@link Color#distanceHSLuv(Color)}
+    ColorDistance HSLUV = StandardColorDistance.HSLUV;
+    /// {@link Color#distanceHPLuv(Color)}
+    ColorDistance HPLUV = StandardColorDistance.HPLUV;
+
     /// Computes the distance between two colors.
     ///
     /// @param c1 The first color
     /// @param c2 The second color
     /// @return The distance between `c1` and `c2`
     double distance(Color c1, Color c2);
+
+    /// Gets ready to compare many pairs out of a list of colors.
+    ///
+    /// By default this just remembers the colors, so every comparison
+    /// still goes through {@link #distance(Color, Color)}. The constants
+    /// on this interface convert each color into the space they measure
+    /// in once.
+    ///
+    /// @param colors The colors to compare.
+    /// @return Distances between the colors, by index.
+    default PreparedColorDistance prepare(List<? extends Color> colors) {
+        var cs = List.copyOf(colors);
+        return new PreparedColorDistance() {
+            @Override
+            public int size() {
+                return cs.size();
+            }
+
+            @Override
+            public double distance(int i, int j) {
+                return ColorDistance.this.distance(cs.get(i), cs.get(j));
+            }
+        };
+    }
 }
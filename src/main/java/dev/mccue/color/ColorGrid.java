@@ -0,0 +1,404 @@
+package dev.mccue.color;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAccumulator;
+
+/// Colors bucketed into a grid of equal cubes in the space of a distance,
+/// for finding every color within some distance of another without
+/// comparing it to all of them.
+///
+/// With cubes as wide as the distance looked for, everything within it
+/// of a color is in the cube of that color or one of the 26 around it.
+/// That works for the straight line distances of {@link ColorDistance},
+/// like {@link ColorDistance#LAB} and {@link ColorDistance#OKLAB}. For
+/// {@link ColorDistance#CIEDE2000} the grid is in {@link Lab}, and a
+/// search looks as far out as the bound in {@link Lab#withinCIEDE2000}
+/// says a color that close can be. That is further for saturated colors,
+/// whose differences CIEDE2000 shrinks the most. Either way only the
+/// colors found in those cubes are measured exactly.
+///
+/// {@link #dedupe} uses a grid to drop near duplicates out of a list,
+/// which compares every pair of colors otherwise.
+///
+/// ```java
+/// var unique = ColorGrid.dedupe(catalogue, ColorDistance.CIEDE2000, 0.01);
+/// ```
+///
+/// Colors can be added from several threads at once, and searches run
+/// alongside them. A search sees every color whose addition finished
+/// before it started.
+public final class ColorGrid<C extends Color> {
+    // Colors per unit of parallel work.
+    private static final int CHUNK = 1024;
+
+    // How much, relative to the distances involved, rounding may move a
+    // distance by.
+    private static final double SLACK = 1e-9;
+
+    // Bits of each cell coordinate in a key. Coordinates wrap around, which
+    // only puts far apart colors in the same bucket.
+    private static final int BITS = 21;
+    private static final long MASK = (1L << BITS) - 1;
+
+    private final StandardColorDistance distance;
+    private final boolean ciede2000;
+    private final Class<? extends Color> space;
+    private final double xScale;
+    private final double cellSize;
+
+    private final ConcurrentHashMap<Long, Cell<C>> cells = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    // CIEDE2000 only: the range of lightness and the largest chroma added,
+    // to bound how far a search has to look.
+    private final DoubleAccumulator lightnessMin = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+    private final DoubleAccumulator lightnessMax = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+    private final DoubleAccumulator chromaMax = new DoubleAccumulator(Math::max, 0);
+
+    /// Makes an empty grid.
+    ///
+    /// @param distance A straight line distance of {@link ColorDistance},
+    ///                 or {@link ColorDistance#CIEDE2000}.
+    /// @param cellSize How wide each cube is, in units of `distance`.
+    ///                 Searches are quickest for distances about this large.
+    /// @throws IllegalArgumentException If the distance is not supported or
+    ///                                  the cell size is not positive.
+    public ColorGrid(ColorDistance distance, double cellSize) {
+        Objects.requireNonNull(distance, "distance");
+        if (!PaletteIndex.supports(distance)) {
+            throw new IllegalArgumentException("Cannot grid colors by " + distance);
+        }
+        if (!(cellSize > 0) || Double.isInfinite(cellSize)) {
+            throw new IllegalArgumentException("cellSize must be positive: " + cellSize);
+        }
+        this.distance = (StandardColorDistance) distance;
+        this.ciede2000 = distance == ColorDistance.CIEDE2000;
+        this.space = ciede2000 ? Lab.class : this.distance.space();
+        this.xScale = this.distance == StandardColorDistance.HSLUV || this.distance == StandardColorDistance.HPLUV
+                ? 100.0
+                : 1.0;
+        this.cellSize = cellSize;
+    }
+
+    /// @return The number of colors added.
+    public int size() {
+        return size.get();
+    }
+
+    /// Adds a color.
+    ///
+    /// @param color The color to add.
+    public void add(C color) {
+        Objects.requireNonNull(color, "color");
+        var buffer = new ColorBuffer(space, 1);
+        buffer.set(0, color);
+        add(color, size.getAndIncrement(), buffer.channel(0)[0], buffer.channel(1)[0], buffer.channel(2)[0]);
+    }
+
+    /// Adds every color of a list, converting them together.
+    ///
+    /// @param colors The colors to add.
+    public void addAll(List<? extends C> colors) {
+        var buffer = ColorBuffer.of(space, colors);
+        var first = size.getAndAdd(colors.size());
+        add(colors, buffer, first, 0, colors.size());
+    }
+
+    /// Adds every color of a list, splitting them across a pool. The grid
+    /// ends up the same as after {@link #addAll}.
+    ///
+    /// @param colors The colors to add.
+    /// @param pool The pool to run in.
+    public void addAllParallel(List<? extends C> colors, ForkJoinPool pool) {
+        var first = size.getAndAdd(colors.size());
+        pool.invoke(new AddTask<>(this, colors, first, 0, colors.size()));
+    }
+
+    /// Finds every color within a distance of another.
+    ///
+    /// @param color The color to look around.
+    /// @param radius How far to look, in units of the distance.
+    /// @return The colors at most `radius` from `color`, closest first.
+    ///         Colors equally far away are in the order they were added.
+    public List<C> withinRadius(Color color, double radius) {
+        if (!(radius >= 0)) {
+            throw new IllegalArgumentException("radius must not be negative: " + radius);
+        }
+        var buffer = new ColorBuffer(space, 1);
+        buffer.set(0, color);
+        var found = new ArrayList<Found<C>>();
+        search(buffer.channel(0)[0], buffer.channel(1)[0], buffer.channel(2)[0], radius, found, false);
+        found.sort(Found.CLOSEST_FIRST);
+        var colors = new ArrayList<C>(found.size());
+        for (var f : found) {
+            colors.add(f.color());
+        }
+        return colors;
+    }
+
+    /// Drops the colors of a list that are within a distance of an earlier
+    /// one that was kept.
+    ///
+    /// Colors are kept in order, so the first of a group of near
+    /// duplicates stays. Each color is only compared to the kept colors in
+    /// the cubes around it.
+    ///
+    /// @param colors The colors to dedupe.
+    /// @param distance A straight line distance of {@link ColorDistance},
+    ///                 or {@link ColorDistance#CIEDE2000}.
+    /// @param threshold The largest distance at which two colors count as
+    ///                  the same.
+    /// @return The colors kept, in their original order.
+    /// @throws IllegalArgumentException If the distance is not supported or
+    ///                                  the threshold is negative.
+    public static <C extends Color> List<C> dedupe(List<? extends C> colors, ColorDistance distance, double threshold) {
+        if (!(threshold >= 0)) {
+            throw new IllegalArgumentException("threshold must not be negative: " + threshold);
+        }
+        // Any positive size finds the same colors. Exact duplicates only
+        // need a small one.
+        var grid = new ColorGrid<C>(distance, threshold > 0 ? threshold : 1e-3);
+        var buffer = ColorBuffer.of(grid.space, colors);
+        var c0 = buffer.channel(0);
+        var c1 = buffer.channel(1);
+        var c2 = buffer.channel(2);
+        var kept = new ArrayList<C>();
+        var found = new ArrayList<Found<C>>();
+        for (int i = 0; i < colors.size(); i++) {
+            found.clear();
+            if (!grid.search(c0[i], c1[i], c2[i], threshold, found, true)) {
+                var color = colors.get(i);
+                kept.add(color);
+                grid.add(color, grid.size.getAndIncrement(), c0[i], c1[i], c2[i]);
+            }
+        }
+        return kept;
+    }
+
+    private void add(List<? extends C> colors, ColorBuffer buffer, int first, int from, int to) {
+        var c0 = buffer.channel(0);
+        var c1 = buffer.channel(1);
+        var c2 = buffer.channel(2);
+        for (int i = from; i < to; i++) {
+            add(colors.get(i), first + i, c0[i - from], c1[i - from], c2[i - from]);
+        }
+    }
+
+    private void add(C color, int id, double x, double y, double z) {
+        if (ciede2000) {
+            lightnessMin.accumulate(x);
+            lightnessMax.accumulate(x);
+            chromaMax.accumulate(Math.sqrt(y * y + z * z));
+        }
+        cells.computeIfAbsent(key(cell(x / xScale), cell(y), cell(z)), k -> new Cell<>())
+                .add(color, id, x, y, z);
+    }
+
+    private long cell(double v) {
+        return (long) Math.floor(v / cellSize);
+    }
+
+    private static long key(long x, long y, long z) {
+        return (x & MASK) << 2 * BITS | (y & MASK) << BITS | (z & MASK);
+    }
+
+    // Collects the colors within radius of (x, y, z). If any is true, stops
+    // at the first one and returns whether there was one.
+    private boolean search(double x, double y, double z, double radius, List<Found<C>> found, boolean any) {
+        var r = radius * (1 + SLACK);
+        var reachX = ciede2000 ? r * lightnessReach(x) : r;
+        var reachYZ = ciede2000 ? r * chromaReach(y, z, r) : r;
+        var lo0 = cell(x / xScale - reachX);
+        var hi0 = cell(x / xScale + reachX);
+        var lo1 = cell(y - reachYZ);
+        var hi1 = cell(y + reachYZ);
+        var lo2 = cell(z - reachYZ);
+        var hi2 = cell(z + reachYZ);
+        var cab = Math.sqrt((y * 100) * (y * 100) + (z * 100) * (z * 100));
+
+        var span = (double) (hi0 - lo0 + 1) * (hi1 - lo1 + 1) * (hi2 - lo2 + 1);
+        if (span > cells.size() || span > MASK) {
+            // Fewer cells than the search would look in.
+            for (var cell : cells.values()) {
+                if (cell.search(this, x, y, z, cab, radius, found, any) && any) {
+                    return true;
+                }
+            }
+            return !found.isEmpty();
+        }
+        for (var i = lo0; i <= hi0; i++) {
+            for (var j = lo1; j <= hi1; j++) {
+                for (var k = lo2; k <= hi2; k++) {
+                    if (ciede2000 && farCIEDE2000(x, y, z, cab, i, j, k, r)) {
+                        continue;
+                    }
+                    var cell = cells.get(key(i, j, k));
+                    if (cell != null && cell.search(this, x, y, z, cab, radius, found, any) && any) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return !found.isEmpty();
+    }
+
+    // Whether everything in cell (i, j, k) is more than r away in CIEDE2000.
+    // The box is padded a little, for colors rounded into the cell next door.
+    private boolean farCIEDE2000(double l, double a, double b, double cab, long i, long j, long k, double r) {
+        var pad = cellSize * 1e-6;
+        var lowerBound = Lab.lowerBoundCIEDE2000(
+                l, a, b, cab,
+                i * cellSize - pad, (i + 1) * cellSize + pad,
+                j * cellSize - pad, (j + 1) * cellSize + pad,
+                k * cellSize - pad, (k + 1) * cellSize + pad
+        );
+        return lowerBound > r;
+    }
+
+    // The lower bound in Lab#withinCIEDE2000 is at least ΔL / SL, so
+    // anything within r of a color with lightness l differs in lightness
+    // by at most r times this, SL at its worst over the grid.
+    private double lightnessReach(double l) {
+        var off = Math.max(
+                Math.abs((l + lightnessMin.get()) * 50 - 50),
+                Math.abs((l + lightnessMax.get()) * 50 - 50)
+        );
+        return Double.isFinite(off) ? 1 + (0.015 * off * off) / Math.sqrt(20 + off * off) : 1;
+    }
+
+    // The bound is also at least sqrt(ROTATION_MIN) * e / s, where e is the
+    // distance across a and b and s = 1 + 3.375 * (c + c'), from the
+    // chroma of both colors. So anything within r is at most r times this
+    // away across a and b.
+    private double chromaReach(double a, double b, double r) {
+        var c = Math.sqrt(a * a + b * b);
+        var rotation = Math.sqrt(Lab.ROTATION_MIN);
+        // With the largest chroma in the grid.
+        var reach = (1 + 3.375 * (c + chromaMax.get())) / rotation;
+        // The other color's chroma is at most c + e, which helps unless r
+        // is large.
+        if (rotation > 3.375 * r) {
+            reach = Math.min(reach, (1 + 6.75 * c) / (rotation - 3.375 * r));
+        }
+        return reach;
+    }
+
+    // The distance from (x, y, z), with chroma cab if CIEDE2000, to a color
+    // in the grid, query first.
+    private double distance(double x, double y, double z, double cab, double px, double py, double pz) {
+        if (ciede2000) {
+            // The same as Lab#distanceCIEDE2000.
+            return PreparedCIEDE2000.distance(
+                    x * 100, y * 100, z * 100, cab,
+                    px * 100, py * 100, pz * 100,
+                    1, 1, 1
+            );
+        }
+        // The same expression as StandardColorDistance.Prepared.
+        var dx = (x - px) / xScale;
+        var dy = y - py;
+        var dz = z - pz;
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private record Found<C>(C color, int id, double distance) {
+        static final Comparator<Found<?>> CLOSEST_FIRST = Comparator
+                .<Found<?>>comparingDouble(Found::distance)
+                .thenComparingInt(Found::id);
+    }
+
+    // The colors in one cube.
+    private static final class Cell<C extends Color> {
+        private Object[] colors = new Object[2];
+        private int[] ids = new int[2];
+        private double[] x = new double[2];
+        private double[] y = new double[2];
+        private double[] z = new double[2];
+        private int size;
+
+        synchronized void add(C color, int id, double px, double py, double pz) {
+            if (size == ids.length) {
+                var capacity = 2 * size;
+                colors = Arrays.copyOf(colors, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+                x = Arrays.copyOf(x, capacity);
+                y = Arrays.copyOf(y, capacity);
+                z = Arrays.copyOf(z, capacity);
+            }
+            colors[size] = color;
+            ids[size] = id;
+            x[size] = px;
+            y[size] = py;
+            z[size] = pz;
+            size++;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized boolean search(
+                ColorGrid<C> grid,
+                double qx,
+                double qy,
+                double qz,
+                double cab,
+                double radius,
+                List<Found<C>> found,
+                boolean any
+        ) {
+            var hit = false;
+            var r = radius * (1 + SLACK);
+            for (int i = 0; i < size; i++) {
+                if (grid.ciede2000 && Lab.lowerBoundCIEDE2000(qx, qy, qz, cab, x[i], x[i], y[i], y[i], z[i], z[i]) > r) {
+                    continue;
+                }
+                var d = grid.distance(qx, qy, qz, cab, x[i], y[i], z[i]);
+                if (d <= radius) {
+                    found.add(new Found<>((C) colors[i], ids[i], d));
+                    hit = true;
+                    if (any) {
+                        return true;
+                    }
+                }
+            }
+            return hit;
+        }
+    }
+
+    @SuppressWarnings("serial") // Tasks are never serialized.
+    private static final class AddTask<C extends Color> extends RecursiveAction {
+        private final ColorGrid<C> grid;
+        private final List<? extends C> colors;
+        private final int first;
+        private final int from;
+        private final int to;
+
+        AddTask(ColorGrid<C> grid, List<? extends C> colors, int first, int from, int to) {
+            this.grid = grid;
+            this.colors = colors;
+            this.first = first;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                var buffer = ColorBuffer.of(grid.space, colors.subList(from, to));
+                grid.add(colors, buffer, first, from, to);
+            } else {
+                var mid = (from + to) >>> 1;
+                invokeAll(
+                        new AddTask<>(grid, colors, first, from, mid),
+                        new AddTask<>(grid, colors, first, mid, to)
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package dev.mccue.color;
+
+/// How closely a {@link ConversionPlan} follows the exact math of the
+/// conversions on {@link Color}.
+///
+/// Most of the time in a conversion goes to a few transcendental functions:
+/// the sRGB transfer function, the cube roots of {@link Lab}, {@link Luv}
+/// and {@link OkLab}, and the `atan2`, `sin` and `cos` of the cylindrical
+/// spaces. {@link #FAST} and {@link #TABLE} replace them with cheaper
+/// kernels that are still accurate far beyond what can be rendered.
+///
+/// | Stage          | `FAST`                        | `TABLE`                    |
+/// |----------------|-------------------------------|----------------------------|
+/// | sRGB to linear | Halley fifth root, `1e-11`    | {@link GammaTable}, `8e-8` |
+/// | linear to sRGB | Halley cube root, `1e-14`     | {@link GammaTable}, `2e-5` |
+/// | cube root      | Halley, relative `1e-14`      | same as `FAST`             |
+/// | cube           | `x * x * x`, exact rounding   | same as `FAST`             |
+/// | `atan2`        | Taylor series, `2e-8` radians | same as `FAST`             |
+/// | `sin`, `cos`   | Taylor series, `3e-8`         | same as `FAST`             |
+///
+/// The Halley iterations only run between `1e-100` and `1e100`. Outside
+/// that, and for infinities and NaN, they fall back to {@link Math}.
+///
+/// Converted between every pair of spaces and back to {@link sRGB}, colors
+/// from a grid over the sRGB gamut land within `5e-7` of `EXACT` with
+/// `FAST` and within `1e-5` with `TABLE`. {@link RGB255} results can be a
+/// step apart when the exact value is within that distance of a half.
+/// 8-bit channels always linearize through an exact table, and the gamut
+/// bounds of {@link HSLuv} and {@link HPLuv} are always computed exactly.
+///
+/// Converting between {@link sRGB} and {@link Lab}, {@link OkLab} or
+/// {@link OkLch} takes roughly 40% less time with `FAST` and 60% less
+/// with `TABLE`.
+///
+/// ```java
+/// var plan = Color.converter(sRGB.class, OkLch.class, ReferenceWhite.D65, ColorPrecision.FAST);
+/// ```
+///
+/// @see Color#converter(Class, Class, ReferenceWhite, ColorPrecision)
+public enum ColorPrecision {
+    /// The same math as the methods on {@link Color}.
+    EXACT,
+    /// Halley iterations and polynomials in place of {@link Math}.
+    FAST,
+    /// Like {@link #FAST}, but with the sRGB transfer function looked up
+    /// in {@link GammaTable#standard()}.
+    TABLE
+}
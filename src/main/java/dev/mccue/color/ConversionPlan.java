@@ -0,0 +1,240 @@
+package dev.mccue.color;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/// A precomputed conversion from one color space to another.
+///
+/// Going through the methods on {@link Color} makes a record and a virtual
+/// call for every hop. {@link HSLuv} to {@link OkLab} for instance goes
+/// `LuvLCh -> Luv -> XYZ -> LinearRGB -> sRGB -> XYZ -> OkLab`. A plan finds the
+/// shortest route between the two spaces once, which never visits the same
+/// space twice, and multiplies together any adjacent linear stages, such as
+/// the {@link LinearRGB} to {@link XYZ} matrix and the first matrix of
+/// {@link XYZ} to {@link OkLab}.
+///
+/// Plans made with a {@link ColorPrecision} other than
+/// {@link ColorPrecision#EXACT} swap the transcendental functions of each
+/// stage for approximations with known error bounds.
+///
+/// Plans are immutable and can be shared between threads.
+///
+/// ```java
+/// var plan = Color.converter(sRGB.class, OkLab.class, ReferenceWhite.D65);
+/// plan.convert(r, g, b, 0, r.length);
+/// ```
+///
+/// @see Color#converter(Class, Class, ReferenceWhite)
+/// @see Color#converter(Class, Class, ReferenceWhite, ColorPrecision)
+public final class ConversionPlan {
+    private record Key(Space from, Space to, ReferenceWhite referenceWhite, ColorPrecision precision) {}
+
+    private static final ConcurrentHashMap<Key, ConversionPlan> PLANS = new ConcurrentHashMap<>();
+
+    private final Space from;
+    private final Space to;
+    private final ReferenceWhite referenceWhite;
+    private final ColorPrecision precision;
+    private final Stage[] stages;
+
+    private ConversionPlan(Key key) {
+        this.from = key.from;
+        this.to = key.to;
+        this.referenceWhite = key.referenceWhite;
+        this.precision = key.precision;
+        this.stages = fuse(stages(key)).toArray(Stage[]::new);
+    }
+
+    static ConversionPlan of(
+            Class<? extends Color> from,
+            Class<? extends Color> to,
+            ReferenceWhite referenceWhite
+    ) {
+        return of(from, to, referenceWhite, ColorPrecision.EXACT);
+    }
+
+    static ConversionPlan of(
+            Class<? extends Color> from,
+            Class<? extends Color> to,
+            ReferenceWhite referenceWhite,
+            ColorPrecision precision
+    ) {
+        var key = new Key(
+                Space.of(Objects.requireNonNull(from, "from")),
+                Space.of(Objects.requireNonNull(to, "to")),
+                Objects.requireNonNull(referenceWhite, "referenceWhite"),
+                Objects.requireNonNull(precision, "precision")
+        );
+        return PLANS.computeIfAbsent(key, ConversionPlan::new);
+    }
+
+    private static List<Stage> stages(Key key) {
+        // The HSLuv family measures Luv against a slightly different white,
+        // so going between it and Luv has to pass through XYZ. LuvLCh is
+        // the exception, it converts to and from the family directly just
+        // like LuvLCh.HSLuv() and HSLuv.LuvLCh() do.
+        var fromHSLuv = key.from.usesHSLuvWhite();
+        var toHSLuv = key.to.usesHSLuvWhite();
+        var direct = key.from == Space.LUV_LCH || key.to == Space.LUV_LCH;
+        var hops = new ArrayList<Space.Hop>();
+        if (fromHSLuv != toHSLuv && !direct) {
+            hops.addAll(Space.route(key.from, Space.XYZ));
+            hops.addAll(Space.route(Space.XYZ, key.to));
+        } else {
+            hops.addAll(Space.route(key.from, key.to));
+        }
+
+        var stages = new ArrayList<Stage>();
+        for (int i = 0; i < hops.size(); i++) {
+            var hop = hops.get(i);
+            // 8-bit channels only have 256 values, so they linearize with a table.
+            if (hop.equals(new Space.Hop(Space.RGB_255, true))
+                    && i + 1 < hops.size()
+                    && hops.get(i + 1).equals(new Space.Hop(Space.SRGB, true))) {
+                stages.add(BulkConversions::RGB255_LinearRGB);
+                i++;
+                continue;
+            }
+            var hsluvSide = hop.up() ? fromHSLuv : toHSLuv;
+            var wref = hop.space() == Space.LUV && hsluvSide
+                    ? ReferenceWhite.hSLuvD65
+                    : key.referenceWhite;
+            stages.addAll(BulkConversions.stages(hop, wref, key.precision));
+        }
+        return stages;
+    }
+
+    // Multiplies together runs of adjacent matrices.
+    private static List<Stage> fuse(List<Stage> stages) {
+        var fused = new ArrayList<Stage>(stages.size());
+        for (var stage : stages) {
+            if (stage instanceof Matrix next
+                    && !fused.isEmpty()
+                    && fused.getLast() instanceof Matrix previous) {
+                fused.set(fused.size() - 1, previous.then(next));
+            } else {
+                fused.add(stage);
+            }
+        }
+        return fused;
+    }
+
+    /// @return The color space this plan converts from.
+    public Class<? extends Color> from() {
+        return from.type;
+    }
+
+    /// @return The color space this plan converts to.
+    public Class<? extends Color> to() {
+        return to.type;
+    }
+
+    /// @return The reference white used by this plan.
+    public ReferenceWhite referenceWhite() {
+        return referenceWhite;
+    }
+
+    /// @return How closely this plan follows the exact conversions.
+    public ColorPrecision precision() {
+        return precision;
+    }
+
+    /// Converts a single color.
+    ///
+    /// If the color is not already in the color space this plan converts
+    /// from, it is first converted there with the methods on {@link Color}.
+    ///
+    /// @param color The color to convert.
+    /// @return The color in the color space this plan converts to.
+    public Color convert(Color color) {
+        var c0 = new double[1];
+        var c1 = new double[1];
+        var c2 = new double[1];
+        from.channels(color, c0, c1, c2, 0);
+        convert(c0, c1, c2, 0, 1);
+        return to.color(c0[0], c1[0], c2[0]);
+    }
+
+    /// Converts a single color given as its three channels.
+    ///
+    /// @param in The channels of the color to convert, in the color space this plan converts from.
+    /// @param out Where to write the channels of the converted color. May be the same array as `in`.
+    public void convert(double[] in, double[] out) {
+        Objects.checkFromIndexSize(0, 3, in.length);
+        Objects.checkFromIndexSize(0, 3, out.length);
+        var c0 = new double[] { in[0] };
+        var c1 = new double[] { in[1] };
+        var c2 = new double[] { in[2] };
+        convert(c0, c1, c2, 0, 1);
+        out[0] = c0[0];
+        out[1] = c1[0];
+        out[2] = c2[0];
+    }
+
+    /// Converts the colors at `[offset, offset + length)` of the channel
+    /// arrays in place.
+    ///
+    /// @param c0 The first channel.
+    /// @param c1 The second channel.
+    /// @param c2 The third channel.
+    /// @param offset The first index to convert.
+    /// @param length The number of colors to convert.
+    public void convert(double[] c0, double[] c1, double[] c2, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, c0.length);
+        Objects.checkFromIndexSize(offset, length, c1.length);
+        Objects.checkFromIndexSize(offset, length, c2.length);
+        for (var stage : stages) {
+            stage.apply(c0, c1, c2, offset, length);
+        }
+    }
+
+    /// Converts colors from one set of channel arrays into another.
+    ///
+    /// @param src0 The first source channel.
+    /// @param src1 The second source channel.
+    /// @param src2 The third source channel.
+    /// @param srcOffset The first source index to convert.
+    /// @param dst0 The first destination channel.
+    /// @param dst1 The second destination channel.
+    /// @param dst2 The third destination channel.
+    /// @param dstOffset The first destination index to write.
+    /// @param length The number of colors to convert.
+    public void convert(
+            double[] src0, double[] src1, double[] src2, int srcOffset,
+            double[] dst0, double[] dst1, double[] dst2, int dstOffset,
+            int length
+    ) {
+        if (src0 != dst0 || src1 != dst1 || src2 != dst2 || srcOffset != dstOffset) {
+            System.arraycopy(src0, srcOffset, dst0, dstOffset, length);
+            System.arraycopy(src1, srcOffset, dst1, dstOffset, length);
+            System.arraycopy(src2, srcOffset, dst2, dstOffset, length);
+        }
+        convert(dst0, dst1, dst2, dstOffset, length);
+    }
+
+    /// Converts every color in `src` and writes them to `dst`.
+    ///
+    /// @param src A buffer in the color space this plan converts from.
+    /// @param dst A buffer in the color space this plan converts to.
+    public void convert(ColorBuffer src, ColorBuffer dst) {
+        if (src.space() != from.type || dst.space() != to.type) {
+            throw new IllegalArgumentException(
+                    "Plan converts from " + from.type.getSimpleName() + " to " + to.type.getSimpleName()
+                            + ", got " + src.space().getSimpleName() + " and " + dst.space().getSimpleName()
+            );
+        }
+        convert(
+                src.channel(0), src.channel(1), src.channel(2), 0,
+                dst.channel(0), dst.channel(1), dst.channel(2), 0,
+                src.size()
+        );
+    }
+
+    @Override
+    public String toString() {
+        return "ConversionPlan[" + from.type.getSimpleName() + " -> " + to.type.getSimpleName()
+                + ", " + referenceWhite + ", " + precision + ", stages=" + stages.length + "]";
+    }
+}
@@ -0,0 +1,300 @@
+package dev.mccue.color;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/// The distance between every pair out of a list of colors, worked out
+/// once and kept.
+///
+/// Distances are symmetric and zero between a color and itself, so only
+/// the pairs `(i, j)` with `i < j` are stored, row after row in one flat
+/// array. `n` colors take `n * (n - 1) / 2` entries, each either a
+/// `double` or, to halve the memory, a `float`.
+///
+/// ```java
+/// var matrix = DistanceMatrix.of(ColorDistance.CIEDE2000.prepare(palette));
+/// var d = matrix.distance(3, 7);
+/// ```
+///
+/// An array can't hold more than about two billion entries, a bit over
+/// 65,000 colors. {@link #mapped} writes the entries to a file instead
+/// and memory maps it, so the operating system pages them in and out as
+/// they are used.
+///
+/// Distances of the same pair computed twice must come out the same, and
+/// the parallel factories call the prepared distance from several
+/// threads. The distances that come with the library are fine for both.
+public final class DistanceMatrix implements PreparedColorDistance {
+    /// How each distance is stored.
+    public enum Storage {
+        /// Eight bytes per pair. Exactly the distance that was computed.
+        DOUBLE,
+        /// Four bytes per pair, rounded to the nearest `float`.
+        FLOAT;
+
+        int bytes() {
+            return this == DOUBLE ? Double.BYTES : Float.BYTES;
+        }
+    }
+
+    // Rows per unit of parallel work.
+    private static final int ROWS = 64;
+
+    // Bytes mapped per buffer. A multiple of 8, so no entry straddles two.
+    private static final int WINDOW = 1 << 30;
+
+    // Largest array the VM will reliably allocate.
+    private static final long MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+    private final int size;
+    private final Storage storage;
+
+    // Exactly one of these holds the entries.
+    private final double[] doubles;
+    private final float[] floats;
+    private final ByteBuffer[] windows;
+
+    private DistanceMatrix(int size, Storage storage, double[] doubles, float[] floats, ByteBuffer[] windows) {
+        this.size = size;
+        this.storage = storage;
+        this.doubles = doubles;
+        this.floats = floats;
+        this.windows = windows;
+    }
+
+    /// Computes the distance between every pair of colors.
+    ///
+    /// @param colors The colors to compare.
+    /// @param distance How to compare them.
+    /// @return The distances, stored as `double`.
+    public static DistanceMatrix of(List<? extends Color> colors, ColorDistance distance) {
+        return of(distance.prepare(colors));
+    }
+
+    /// Computes the distance between every pair of prepared colors, on the
+    /// calling thread.
+    ///
+    /// @param distances The colors and how to compare them.
+    /// @return The distances, stored as `double`.
+    public static DistanceMatrix of(PreparedColorDistance distances) {
+        var matrix = allocate(distances.size(), Storage.DOUBLE);
+        matrix.fill(distances, 0, matrix.size);
+        return matrix;
+    }
+
+    /// Computes the distance between every pair of prepared colors,
+    /// splitting the rows across a pool.
+    ///
+    /// @param distances The colors and how to compare them.
+    /// @param storage How to store each distance.
+    /// @param pool The pool to run in.
+    /// @return The distances.
+    /// @throws IllegalArgumentException If there are too many pairs to fit in an array.
+    public static DistanceMatrix of(PreparedColorDistance distances, Storage storage, ForkJoinPool pool) {
+        Objects.requireNonNull(storage, "storage");
+        Objects.requireNonNull(pool, "pool");
+        var matrix = allocate(distances.size(), storage);
+        pool.invoke(new FillTask(matrix, distances, 0, matrix.size));
+        return matrix;
+    }
+
+    /// Computes the distance between every pair of prepared colors into a
+    /// memory mapped file, splitting the rows across a pool.
+    ///
+    /// The file holds the entries in the same order as in memory,
+    /// little-endian and without a header. It is replaced if it exists,
+    /// and left in place afterwards.
+    ///
+    /// @param distances The colors and how to compare them.
+    /// @param file The file to write.
+    /// @param storage How to store each distance.
+    /// @param pool The pool to run in.
+    /// @return The distances, backed by `file`.
+    /// @throws IOException If the file can't be written or mapped.
+    public static DistanceMatrix mapped(
+            PreparedColorDistance distances,
+            Path file,
+            Storage storage,
+            ForkJoinPool pool
+    ) throws IOException {
+        Objects.requireNonNull(file, "file");
+        Objects.requireNonNull(storage, "storage");
+        Objects.requireNonNull(pool, "pool");
+        var n = distances.size();
+        var bytes = pairs(n) * storage.bytes();
+        var windows = new ByteBuffer[(int) ((bytes + WINDOW - 1) / WINDOW)];
+        try (var channel = FileChannel.open(
+                file,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            for (int w = 0; w < windows.length; w++) {
+                var start = (long) w * WINDOW;
+                windows[w] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(WINDOW, bytes - start))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        var matrix = new DistanceMatrix(n, storage, null, null, windows);
+        pool.invoke(new FillTask(matrix, distances, 0, n));
+        return matrix;
+    }
+
+    private static DistanceMatrix allocate(int n, Storage storage) {
+        var pairs = pairs(n);
+        if (pairs > MAX_ARRAY) {
+            throw new IllegalArgumentException(
+                    n + " colors make " + pairs + " pairs, too many for an array. Use DistanceMatrix.mapped instead."
+            );
+        }
+        return switch (storage) {
+            case DOUBLE -> new DistanceMatrix(n, storage, new double[(int) pairs], null, null);
+            case FLOAT -> new DistanceMatrix(n, storage, null, new float[(int) pairs], null);
+        };
+    }
+
+    /// The number of pairs `n` colors make, `n * (n - 1) / 2`.
+    ///
+    /// @param n The number of colors.
+    /// @return The number of entries a matrix of them stores.
+    public static long pairs(int n) {
+        return (long) n * (n - 1) / 2;
+    }
+
+    // Where row i starts. Rows before it hold (n - 1) + (n - 2) + ... + (n - i)
+    // entries.
+    private long rowStart(int i) {
+        return (long) i * (2L * size - i - 1) / 2;
+    }
+
+    // Where the pair (i, j), i < j, goes.
+    private long index(int i, int j) {
+        return rowStart(i) + (j - i - 1);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /// @return How each distance is stored.
+    public Storage storage() {
+        return storage;
+    }
+
+    /// Looks up the distance between two of the colors.
+    ///
+    /// @param i The index of the first color.
+    /// @param j The index of the second color.
+    /// @return The stored distance, `0` if `i == j`.
+    @Override
+    public double distance(int i, int j) {
+        Objects.checkIndex(i, size);
+        Objects.checkIndex(j, size);
+        if (i == j) {
+            return 0;
+        }
+        return i < j ? get(index(i, j)) : get(index(j, i));
+    }
+
+    /// Copies the distances from one color to every color.
+    ///
+    /// @param i The index of the color.
+    /// @param out Where to write the distance to color `j`, at index `j`.
+    public void row(int i, double[] out) {
+        Objects.checkIndex(i, size);
+        Objects.checkFromIndexSize(0, size, out.length);
+        for (int j = 0; j < i; j++) {
+            out[j] = get(index(j, i));
+        }
+        out[i] = 0;
+        var base = rowStart(i);
+        for (int j = i + 1; j < size; j++) {
+            out[j] = get(base + (j - i - 1));
+        }
+    }
+
+    // The k-th entry. Row i holds the pairs (i, i + 1) through (i, n - 1).
+    private double get(long k) {
+        if (doubles != null) {
+            return doubles[(int) k];
+        }
+        if (floats != null) {
+            return floats[(int) k];
+        }
+        var offset = k * storage.bytes();
+        var window = windows[(int) (offset / WINDOW)];
+        var at = (int) (offset % WINDOW);
+        return storage == Storage.DOUBLE ? window.getDouble(at) : window.getFloat(at);
+    }
+
+    private void set(long k, double d) {
+        if (doubles != null) {
+            doubles[(int) k] = d;
+        } else if (floats != null) {
+            floats[(int) k] = (float) d;
+        } else {
+            var offset = k * storage.bytes();
+            var window = windows[(int) (offset / WINDOW)];
+            var at = (int) (offset % WINDOW);
+            if (storage == Storage.DOUBLE) {
+                window.putDouble(at, d);
+            } else {
+                window.putFloat(at, (float) d);
+            }
+        }
+    }
+
+    // Fills rows [start, end). Each row only writes its own entries, so
+    // disjoint ranges of rows can be filled at once.
+    private void fill(PreparedColorDistance distances, int start, int end) {
+        for (int i = start; i < end; i++) {
+            var k = rowStart(i);
+            for (int j = i + 1; j < size; j++) {
+                set(k++, distances.distance(i, j));
+            }
+        }
+    }
+
+    @SuppressWarnings("serial") // Tasks are never serialized.
+    private static final class FillTask extends RecursiveAction {
+        private final DistanceMatrix matrix;
+        private final PreparedColorDistance distances;
+        private final int start;
+        private final int end;
+
+        FillTask(DistanceMatrix matrix, PreparedColorDistance distances, int start, int end) {
+            this.matrix = matrix;
+            this.distances = distances;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= ROWS) {
+                matrix.fill(distances, start, end);
+            } else {
+                // Early rows are longer, so split by pairs rather than rows.
+                var mid = start + 1;
+                var half = (matrix.rowStart(start) + matrix.rowStart(end)) / 2;
+                while (mid < end - 1 && matrix.rowStart(mid) < half) {
+                    mid++;
+                }
+                invokeAll(
+                        new FillTask(matrix, distances, start, mid),
+                        new FillTask(matrix, distances, mid, end)
+                );
+            }
+        }
+    }
+}
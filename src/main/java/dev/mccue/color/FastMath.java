@@ -0,0 +1,226 @@
+package dev.mccue.color;
+
+/// Approximations of the transcendental functions used by the conversions,
+/// for {@link ColorPrecision#FAST} and {@link ColorPrecision#TABLE}, and by
+/// {@link Lab#distanceCIEDE2000Fast(Lab)}.
+///
+/// Each one trades the last few bits of {@link Math} for a handful of
+/// multiplies. The error bounds of the `double` versions are listed on
+/// {@link ColorPrecision}. Inputs they aren't built for, like infinities
+/// or magnitudes past `1e100` either way, fall back to {@link Math}. The `float` versions are only
+/// meant for the ranges CIEDE2000 feeds them.
+final class FastMath {
+    private FastMath() {}
+
+    // Dividing the bits of a double by three roughly takes the cube root of
+    // its exponent. This restores the bias, giving a first guess within 4%.
+    private static final long CBRT_BIAS = 0x2A9F7893782DA1CEL;
+    private static final long ROOT5_BIAS = (0x3FF0000000000000L / 5) * 4;
+
+    private static final double PI_2 = Math.PI / 2;
+    private static final double PI_4 = Math.PI / 4;
+    private static final double TAN_PI_8 = 0.41421356237309503;
+
+    /// Two Halley iterations from a guess built out of the bits of `x`.
+    /// Within a relative `1e-14` of {@link Math#cbrt}.
+    ///
+    /// The iteration multiplies the guess by about `x^(4/3)`, which
+    /// overflows or underflows far enough from 1, so only
+    /// `1e-100 < |x| < 1e100` is iterated.
+    static double cbrt(double x) {
+        var a = Math.abs(x);
+        if (!(a > 1e-100 && a < 1e100)) {
+            return Math.cbrt(x);
+        }
+        var y = Double.longBitsToDouble(Double.doubleToRawLongBits(a) / 3 + CBRT_BIAS);
+        var y3 = y * y * y;
+        y = y * (y3 + 2.0 * a) / (2.0 * y3 + a);
+        y3 = y * y * y;
+        y = y * (y3 + 2.0 * a) / (2.0 * y3 + a);
+        return Math.copySign(y, x);
+    }
+
+    // The same for fifth roots of positive numbers, for 0.09 <= a < 1e100.
+    // linearize only calls it with (v + 0.055) / 1.055 for v > 0.04045,
+    // which is never below 0.0905.
+    private static double root5(double a) {
+        var y = Double.longBitsToDouble(Double.doubleToRawLongBits(a) / 5 + ROOT5_BIAS);
+        for (int i = 0; i < 2; i++) {
+            var y2 = y * y;
+            var y5 = y2 * y2 * y;
+            y = y * (4.0 * y5 + 6.0 * a) / (6.0 * y5 + 4.0 * a);
+        }
+        return y;
+    }
+
+    /// {@link sRGB#linearize(double)} with `t^2.4` as `t^2 * (t^(1/5))^2`.
+    /// Within `1e-11`.
+    static double linearize(double v) {
+        if (v <= 0.04045) {
+            return v / 12.92;
+        }
+        var t = (v + 0.055) / 1.055;
+        if (!(t < 1e100)) {
+            return sRGB.linearize(v);
+        }
+        var r = root5(t);
+        return t * t * r * r;
+    }
+
+    /// {@link LinearRGB#delinearize(double)} with `v^(1/2.4)` as `c * c^(1/4)`,
+    /// where `c` is the cube root of `v`. Within `1e-14`.
+    static double delinearize(double v) {
+        if (v <= 0.0031308) {
+            return 12.92 * v;
+        }
+        var c = cbrt(v);
+        return 1.055 * c * Math.sqrt(Math.sqrt(c)) - 0.055;
+    }
+
+    /// The Taylor series of `atan` after reducing the argument to
+    /// `|z| <= tan(pi/8)`. The series alternates, so the error is less than
+    /// the first term left out, `tan(pi/8)^17 / 17 < 2e-8` radians.
+    static double atan2(double y, double x) {
+        var ax = Math.abs(x);
+        var ay = Math.abs(y);
+        if (ax == 0.0 && ay == 0.0 || !(ax < Double.POSITIVE_INFINITY && ay < Double.POSITIVE_INFINITY)) {
+            return Math.atan2(y, x);
+        }
+        var r = ay <= ax ? atan(ay / ax) : PI_2 - atan(ax / ay);
+        if (x < 0.0) {
+            r = Math.PI - r;
+        }
+        return Math.copySign(r, y);
+    }
+
+    // z in [0, 1]
+    private static double atan(double z) {
+        var offset = 0.0;
+        if (z > TAN_PI_8) {
+            offset = PI_4;
+            z = (z - 1.0) / (z + 1.0);
+        }
+        var z2 = z * z;
+        return offset + z * (1.0 + z2 * (-1.0 / 3.0 + z2 * (1.0 / 5.0 + z2 * (-1.0 / 7.0
+                + z2 * (1.0 / 9.0 + z2 * (-1.0 / 11.0 + z2 * (1.0 / 13.0 + z2 * (-1.0 / 15.0))))))));
+    }
+
+    /// The Taylor series of `sin` or `cos` after reducing the argument to
+    /// `|r| <= pi/4`, to the ninth power. Within `3e-8` for angles of a few
+    /// turns. Larger angles lose accuracy in the reduction and fall back to
+    /// {@link Math}.
+    static double sin(double x) {
+        if (!(Math.abs(x) < 1e6)) {
+            return Math.sin(x);
+        }
+        var k = Math.rint(x * (2.0 / Math.PI));
+        var r = x - k * PI_2;
+        return switch ((int) k & 3) {
+            case 0 -> sinPoly(r);
+            case 1 -> cosPoly(r);
+            case 2 -> -sinPoly(r);
+            default -> -cosPoly(r);
+        };
+    }
+
+    static double cos(double x) {
+        if (!(Math.abs(x) < 1e6)) {
+            return Math.cos(x);
+        }
+        var k = Math.rint(x * (2.0 / Math.PI));
+        var r = x - k * PI_2;
+        return switch ((int) k & 3) {
+            case 0 -> cosPoly(r);
+            case 1 -> -sinPoly(r);
+            case 2 -> -cosPoly(r);
+            default -> sinPoly(r);
+        };
+    }
+
+    private static double sinPoly(double r) {
+        var r2 = r * r;
+        return r * (1.0 + r2 * (-1.0 / 6.0 + r2 * (1.0 / 120.0 + r2 * (-1.0 / 5040.0 + r2 * (1.0 / 362880.0)))));
+    }
+
+    private static double cosPoly(double r) {
+        var r2 = r * r;
+        return 1.0 + r2 * (-0.5 + r2 * (1.0 / 24.0 + r2 * (-1.0 / 720.0 + r2 * (1.0 / 40320.0))));
+    }
+
+    /// `float` {@link #atan2(double, double)}, to the eleventh power.
+    /// The error is less than `tan(pi/8)^13 / 13 < 1e-6` radians, about
+    /// the precision of a `float` anyway.
+    static float atan2(float y, float x) {
+        var ax = Math.abs(x);
+        var ay = Math.abs(y);
+        if (ax == 0f && ay == 0f) {
+            return (float) Math.atan2(y, x);
+        }
+        var r = ay <= ax ? atan(ay / ax) : (float) PI_2 - atan(ax / ay);
+        if (x < 0f) {
+            r = (float) Math.PI - r;
+        }
+        return Math.copySign(r, y);
+    }
+
+    private static float atan(float z) {
+        var offset = 0f;
+        if (z > (float) TAN_PI_8) {
+            offset = (float) PI_4;
+            z = (z - 1f) / (z + 1f);
+        }
+        var z2 = z * z;
+        return offset + z * (1f + z2 * (-1f / 3f + z2 * (1f / 5f + z2 * (-1f / 7f
+                + z2 * (1f / 9f + z2 * (-1f / 11f))))));
+    }
+
+    /// `float` {@link #sin(double)}, to the seventh power, within `4e-7`
+    /// for angles of a few turns.
+    static float sin(float x) {
+        var k = (float) Math.rint(x * (float) (2.0 / Math.PI));
+        var r = x - k * (float) PI_2;
+        return switch ((int) k & 3) {
+            case 0 -> sinPoly(r);
+            case 1 -> cosPoly(r);
+            case 2 -> -sinPoly(r);
+            default -> -cosPoly(r);
+        };
+    }
+
+    static float cos(float x) {
+        var k = (float) Math.rint(x * (float) (2.0 / Math.PI));
+        var r = x - k * (float) PI_2;
+        return switch ((int) k & 3) {
+            case 0 -> cosPoly(r);
+            case 1 -> -sinPoly(r);
+            case 2 -> -cosPoly(r);
+            default -> sinPoly(r);
+        };
+    }
+
+    private static float sinPoly(float r) {
+        var r2 = r * r;
+        return r * (1f + r2 * (-1f / 6f + r2 * (1f / 120f + r2 * (-1f / 5040f))));
+    }
+
+    private static float cosPoly(float r) {
+        var r2 = r * r;
+        return 1f + r2 * (-0.5f + r2 * (1f / 24f + r2 * (-1f / 720f + r2 * (1f / 40320f))));
+    }
+
+    /// `e^x` for `x <= 0`, as `2^n * e^r` with `|r| <= ln(2) / 2` and the
+    /// Taylor series of `e^r` to the seventh power. `r` is found in
+    /// `double`, since rounding `x / ln(2)` to a `float` loses more of it
+    /// the larger `n` gets. Within a relative `1e-7` down to `x = -87`,
+    /// where `float`s run out, and `0` below that.
+    static float expNegative(float x) {
+        var y = x * (1 / Math.log(2));
+        if (y < -126) {
+            return 0f;
+        }
+        var n = Math.rint(y);
+        var f = (float) (x - n * Math.log(2));
+        var p = 1f + f * (1f + f * (1f / 2f + f * (1f / 6f + f * (1f / 24f + f * (1f / 120f + f * (1f / 720f + f * (1f / 5040f)))))));
+        return p * Float.intBitsToFloat(((int) n + 127) << 23);
+    }
+}
@@ -0,0 +1,227 @@
+package dev.mccue.color;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/// Sort keys that follow a Hilbert curve through a box in three
+/// dimensions.
+///
+/// The box is cut into a grid of `2^bits` cells a side and the curve
+/// passes through every cell, always stepping to one that shares a face.
+/// Points close together along the curve are close together in the box,
+/// so sorting by position along it gives a smooth order in `O(n log n)`.
+///
+/// Each key packs the position of the cell above the index of the point,
+/// so every key is different and points in the same cell keep their
+/// order. `bits` is as large as fits beside the index in 63 bits, at
+/// most 21.
+final class HilbertCurve {
+    // Points per unit of parallel work.
+    private static final int CHUNK = 1 << 14;
+
+    private final double[] lo;
+    private final double scale;
+    private final int bits;
+    private final int indexBits;
+
+    /// A curve through a cube with its low corner at `lo` that holds the
+    /// box `[lo[d], hi[d]]`, for keys of `n` points.
+    ///
+    /// The grid has the same spacing along every side, so cells stay
+    /// cubes and straight line distances between them stay in proportion.
+    /// A side that barely varies, like the chroma of grays, lands in the
+    /// first few cells instead of being stretched over all of them.
+    HilbertCurve(double[] lo, double[] hi, long n) {
+        this.indexBits = n < 2 ? 0 : 64 - Long.numberOfLeadingZeros(n - 1);
+        this.bits = Math.min(21, (63 - indexBits) / 3);
+        if (bits < 1) {
+            throw new IllegalArgumentException("Too many points for a Hilbert curve key: " + n);
+        }
+        this.lo = lo.clone();
+        var width = 0.0;
+        for (int d = 0; d < 3; d++) {
+            width = Math.max(width, hi[d] - lo[d]);
+        }
+        this.scale = width > 0 ? ((1 << bits) - 1) / width : 0;
+    }
+
+    /// The key of the point with `index` at `(c0, c1, c2)`.
+    long key(double c0, double c1, double c2, long index) {
+        return index(cell(c0, 0), cell(c1, 1), cell(c2, 2), bits) << indexBits | index;
+    }
+
+    /// The index a key was made with.
+    long index(long key) {
+        return key & ((1L << indexBits) - 1);
+    }
+
+    private int cell(double c, int d) {
+        return Math.min((1 << bits) - 1, Math.max(0, (int) ((c - lo[d]) * scale)));
+    }
+
+    /// The position of cell `(x, y, z)` along the curve through a grid of
+    /// `2^bits` cells a side.
+    ///
+    /// This is Skilling's transform from "Programming the Hilbert curve"
+    /// (2004): undo the rotations and reflections of each level from the
+    /// top down, Gray code the result, then interleave the bits.
+    static long index(int x, int y, int z, int bits) {
+        var m = 1 << (bits - 1);
+        for (int q = m; q > 1; q >>= 1) {
+            var p = q - 1;
+            if ((x & q) != 0) {
+                x ^= p;
+            }
+            if ((y & q) != 0) {
+                x ^= p;
+            } else {
+                var t = (x ^ y) & p;
+                x ^= t;
+                y ^= t;
+            }
+            if ((z & q) != 0) {
+                x ^= p;
+            } else {
+                var t = (x ^ z) & p;
+                x ^= t;
+                z ^= t;
+            }
+        }
+        y ^= x;
+        z ^= y;
+        var t = 0;
+        for (int q = m; q > 1; q >>= 1) {
+            if ((z & q) != 0) {
+                t ^= q - 1;
+            }
+        }
+        x ^= t;
+        y ^= t;
+        z ^= t;
+
+        long h = 0;
+        for (int b = bits - 1; b >= 0; b--) {
+            h = h << 3 | (x >>> b & 1) << 2 | (y >>> b & 1) << 1 | (z >>> b & 1);
+        }
+        return h;
+    }
+
+    /// The order of a list of colors along a curve through the box that
+    /// bounds them in `space`.
+    ///
+    /// @param pool The pool to run in, or `null` to run on the calling thread.
+    static int[] sort(List<? extends Color> colors, Class<? extends Color> space, ForkJoinPool pool) {
+        var n = colors.size();
+        var buffer = new ColorBuffer(space, n);
+        forRange(pool, n, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                buffer.set(i, colors.get(i));
+            }
+        });
+
+        var lo = new double[3];
+        var hi = new double[3];
+        for (int d = 0; d < 3; d++) {
+            var channel = buffer.channel(d);
+            lo[d] = Double.POSITIVE_INFINITY;
+            hi[d] = Double.NEGATIVE_INFINITY;
+            for (var c : channel) {
+                lo[d] = Math.min(lo[d], c);
+                hi[d] = Math.max(hi[d], c);
+            }
+        }
+
+        var curve = new HilbertCurve(lo, hi, n);
+        var c0 = buffer.channel(0);
+        var c1 = buffer.channel(1);
+        var c2 = buffer.channel(2);
+        var keys = new long[n];
+        forRange(pool, n, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                keys[i] = curve.key(c0[i], c1[i], c2[i], i);
+            }
+        });
+
+        if (pool == null) {
+            Arrays.sort(keys);
+        } else {
+            pool.invoke(new SortTask(keys, new long[n], 0, n));
+        }
+
+        var order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) curve.index(keys[i]);
+        }
+        return order;
+    }
+
+    private interface Range {
+        void run(int from, int to);
+    }
+
+    private static void forRange(ForkJoinPool pool, int n, Range range) {
+        if (pool == null) {
+            range.run(0, n);
+        } else {
+            pool.invoke(new RangeTask(range, 0, n));
+        }
+    }
+
+    @SuppressWarnings("serial") // Tasks are never serialized.
+    private static final class RangeTask extends RecursiveAction {
+        private final Range range;
+        private final int from;
+        private final int to;
+
+        RangeTask(Range range, int from, int to) {
+            this.range = range;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                range.run(from, to);
+            } else {
+                var mid = (from + to) >>> 1;
+                invokeAll(new RangeTask(range, from, mid), new RangeTask(range, mid, to));
+            }
+        }
+    }
+
+    // Sorts keys[from, to) by sorting each half at once and merging them
+    // through scratch.
+    @SuppressWarnings("serial") // Tasks are never serialized.
+    private static final class SortTask extends RecursiveAction {
+        private final long[] keys;
+        private final long[] scratch;
+        private final int from;
+        private final int to;
+
+        SortTask(long[] keys, long[] scratch, int from, int to) {
+            this.keys = keys;
+            this.scratch = scratch;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                Arrays.sort(keys, from, to);
+                return;
+            }
+            var mid = (from + to) >>> 1;
+            invokeAll(new SortTask(keys, scratch, from, mid), new SortTask(keys, scratch, mid, to));
+            var i = from;
+            var j = mid;
+            for (int k = from; k < to; k++) {
+                scratch[k] = j == to || (i < mid && keys[i] < keys[j]) ? keys[i++] : keys[j++];
+            }
+            System.arraycopy(scratch, from, keys, from, to - from);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package dev.mccue.color;
+
+/// The arrays of a k-d tree, wherever they are kept.
+///
+/// {@link KdTree} keeps them on the heap, and {@link MappedKdTree} in a
+/// file written by {@link PaletteIndex#write}. Positions and nodes mean
+/// the same as in {@link KdTree}.
+interface KdLayout {
+    /// @return The number of points.
+    int size();
+
+    /// @return The number of nodes.
+    int nodes();
+
+    /// @return What differences in the first coordinate are divided by.
+    double xScale();
+
+    /// @return The first coordinate of the point at a position.
+    double x(int p);
+
+    /// @return The second coordinate of the point at a position.
+    double y(int p);
+
+    /// @return The third coordinate of the point at a position.
+    double z(int p);
+
+    /// @return The index in the original arrays of the point at a position.
+    int order(int p);
+
+    /// @return The first position a node covers.
+    int start(int node);
+
+    /// @return The position after the last one a node covers.
+    int end(int node);
+
+    /// @return The left child of a node, -1 for a leaf.
+    int left(int node);
+
+    /// @return The right child of a node, -1 for a leaf.
+    int right(int node);
+
+    /// @return The low side of the box of a node in a dimension.
+    double lo(int node, int dimension);
+
+    /// @return The high side of the box of a node in a dimension.
+    double hi(int node, int dimension);
+
+    /// The distance from `(qx, qy, qz)` to the box of a node, rounding
+    /// like {@link KdTree#distanceToBox(int, double, double, double)}.
+    default double distanceToBox(int node, double qx, double qy, double qz) {
+        var dx = Math.max(0, Math.max(lo(node, 0) - qx, qx - hi(node, 0)));
+        var dy = Math.max(0, Math.max(lo(node, 1) - qy, qy - hi(node, 1)));
+        var dz = Math.max(0, Math.max(lo(node, 2) - qz, qz - hi(node, 2)));
+        var sx = dx / xScale();
+        return Math.sqrt(sx * sx + dy * dy + dz * dz);
+    }
+}
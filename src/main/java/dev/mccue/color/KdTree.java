@@ -0,0 +1,328 @@
+package dev.mccue.color;
+
+import java.util.Arrays;
+
+/// A k-d tree over points in three dimensions.
+///
+/// Nodes split their points in half across the widest side of their
+/// bounding box, down to leaves of a handful of points. The tree keeps
+/// its own copy of the coordinates, reordered so the points of every
+/// node sit next to each other. Searches that scan a leaf then read
+/// memory in order instead of jumping around the original arrays.
+///
+/// Points are referred to by their position in the tree. {@link #order}
+/// maps positions back to the indices of the original arrays.
+///
+/// The distance is the straight line, with the first coordinate divided
+/// by a scale. That is the same expression, operation for operation, as
+/// the Euclidean distances in {@link StandardColorDistance}, so
+/// {@link #distance} gives bit for bit the same results.
+final class KdTree implements KdLayout {
+    // Points per leaf.
+    static final int LEAF = 8;
+
+    // Coordinates by position.
+    final double[] x;
+    final double[] y;
+    final double[] z;
+    final double xScale;
+
+    // The index in the original arrays of the point at each position.
+    final int[] order;
+
+    // Node n covers positions start[n] until end[n]. Leaves have no
+    // children, marked by -1. The root is node 0.
+    final int[] start;
+    final int[] end;
+    final int[] left;
+    final int[] right;
+
+    // Bounding box of node n is [lo[3n + d], hi[3n + d]] in dimension d.
+    private final double[] lo;
+    private final double[] hi;
+
+    private int nodes;
+
+    /// Builds a tree over the first `n` points.
+    ///
+    /// @param xScale What to divide differences in `x` by.
+    KdTree(double[] x, double[] y, double[] z, double xScale, int n) {
+        this.xScale = xScale;
+        this.x = Arrays.copyOf(x, n);
+        this.y = Arrays.copyOf(y, n);
+        this.z = Arrays.copyOf(z, n);
+        this.order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        var capacity = Math.max(1, 4 * ((n + LEAF - 1) / LEAF));
+        this.start = new int[capacity];
+        this.end = new int[capacity];
+        this.left = new int[capacity];
+        this.right = new int[capacity];
+        this.lo = new double[3 * capacity];
+        this.hi = new double[3 * capacity];
+        build(0, n);
+    }
+
+    @Override
+    public int size() {
+        return order.length;
+    }
+
+    @Override
+    public int nodes() {
+        return nodes;
+    }
+
+    @Override
+    public double xScale() {
+        return xScale;
+    }
+
+    @Override
+    public double x(int p) {
+        return x[p];
+    }
+
+    @Override
+    public double y(int p) {
+        return y[p];
+    }
+
+    @Override
+    public double z(int p) {
+        return z[p];
+    }
+
+    @Override
+    public int order(int p) {
+        return order[p];
+    }
+
+    @Override
+    public int start(int node) {
+        return start[node];
+    }
+
+    @Override
+    public int end(int node) {
+        return end[node];
+    }
+
+    @Override
+    public int left(int node) {
+        return left[node];
+    }
+
+    @Override
+    public int right(int node) {
+        return right[node];
+    }
+
+    /// The distance between the points at two positions.
+    double distance(int p, int q) {
+        return Math.sqrt(sq((x[p] - x[q]) / xScale) + sq(y[p] - y[q]) + sq(z[p] - z[q]));
+    }
+
+    /// The distance from the point at a position to the box of a node,
+    /// `0` inside it.
+    ///
+    /// Every step rounds the same way as {@link #distance} would for the
+    /// closest corner, and rounding never reverses an order. So this is
+    /// never more than the distance to any point in the node, even after
+    /// rounding, and a search can skip a node whenever it is larger than
+    /// the best distance so far.
+    double distanceToBox(int node, int p) {
+        return distanceToBox(node, x[p], y[p], z[p]);
+    }
+
+    /// The distance from `(qx, qy, qz)` to the box of a node. See
+    /// {@link #distanceToBox(int, int)}.
+    @Override
+    public double distanceToBox(int node, double qx, double qy, double qz) {
+        var b = 3 * node;
+        var dx = Math.max(0, Math.max(lo[b] - qx, qx - hi[b]));
+        var dy = Math.max(0, Math.max(lo[b + 1] - qy, qy - hi[b + 1]));
+        var dz = Math.max(0, Math.max(lo[b + 2] - qz, qz - hi[b + 2]));
+        return Math.sqrt(sq(dx / xScale) + sq(dy) + sq(dz));
+    }
+
+    @Override
+    public double lo(int node, int dimension) {
+        return lo[3 * node + dimension];
+    }
+
+    @Override
+    public double hi(int node, int dimension) {
+        return hi[3 * node + dimension];
+    }
+
+    /// Finds the `k` points closest to the point at position `p`, leaving
+    /// out `p` itself.
+    ///
+    /// @param best Where to write their positions, closest first. Equal
+    ///             distances go to the lower original index.
+    /// @param bestD Where to write their distances.
+    /// @return How many were found, less than `k` only if there are fewer
+    ///         other points.
+    int nearest(int p, int k, int[] best, double[] bestD) {
+        return nearest(0, x[p], y[p], z[p], p, k, best, bestD, 0);
+    }
+
+    /// Finds the `k` points closest to `(qx, qy, qz)`, which need not be
+    /// in the tree. See {@link #nearest(int, int, int[], double[])}.
+    int nearest(double qx, double qy, double qz, int k, int[] best, double[] bestD) {
+        return nearest(0, qx, qy, qz, -1, k, best, bestD, 0);
+    }
+
+    private int nearest(
+            int node,
+            double qx,
+            double qy,
+            double qz,
+            int skip,
+            int k,
+            int[] best,
+            double[] bestD,
+            int found
+    ) {
+        if (found == k && distanceToBox(node, qx, qy, qz) > bestD[k - 1]) {
+            return found;
+        }
+        if (left[node] == -1) {
+            for (int q = start[node]; q < end[node]; q++) {
+                if (q == skip) {
+                    continue;
+                }
+                // The same expression as distance(p, q).
+                var d = Math.sqrt(sq((qx - x[q]) / xScale) + sq(qy - y[q]) + sq(qz - z[q]));
+                if (found == k && !closer(d, q, bestD[k - 1], best[k - 1])) {
+                    continue;
+                }
+                // Insert in order, dropping the farthest if full.
+                var i = found < k ? found++ : k - 1;
+                while (i > 0 && closer(d, q, bestD[i - 1], best[i - 1])) {
+                    best[i] = best[i - 1];
+                    bestD[i] = bestD[i - 1];
+                    i--;
+                }
+                best[i] = q;
+                bestD[i] = d;
+            }
+            return found;
+        }
+        var l = left[node];
+        var r = right[node];
+        if (distanceToBox(l, qx, qy, qz) <= distanceToBox(r, qx, qy, qz)) {
+            found = nearest(l, qx, qy, qz, skip, k, best, bestD, found);
+            return nearest(r, qx, qy, qz, skip, k, best, bestD, found);
+        } else {
+            found = nearest(r, qx, qy, qz, skip, k, best, bestD, found);
+            return nearest(l, qx, qy, qz, skip, k, best, bestD, found);
+        }
+    }
+
+    // Whether q at distance d comes before r at distance dr.
+    private boolean closer(double d, int q, double dr, int r) {
+        return d != dr ? d < dr : order[q] < order[r];
+    }
+
+    private double[] axis(int dimension) {
+        return switch (dimension) {
+            case 0 -> x;
+            case 1 -> y;
+            default -> z;
+        };
+    }
+
+    private int build(int from, int to) {
+        var node = nodes++;
+        start[node] = from;
+        end[node] = to;
+        left[node] = -1;
+        right[node] = -1;
+
+        var b = 3 * node;
+        for (int d = 0; d < 3; d++) {
+            lo[b + d] = Double.POSITIVE_INFINITY;
+            hi[b + d] = Double.NEGATIVE_INFINITY;
+        }
+        for (int d = 0; d < 3; d++) {
+            var axis = axis(d);
+            for (int p = from; p < to; p++) {
+                lo[b + d] = Math.min(lo[b + d], axis[p]);
+                hi[b + d] = Math.max(hi[b + d], axis[p]);
+            }
+        }
+
+        if (to - from > LEAF) {
+            // Widest after scaling, so the split follows the distance.
+            var widest = 0;
+            var width = (hi[b] - lo[b]) / xScale;
+            for (int d = 1; d < 3; d++) {
+                if (hi[b + d] - lo[b + d] > width) {
+                    widest = d;
+                    width = hi[b + d] - lo[b + d];
+                }
+            }
+            var mid = (from + to) >>> 1;
+            select(from, to, mid, axis(widest));
+            left[node] = build(from, mid);
+            right[node] = build(mid, to);
+        }
+        return node;
+    }
+
+    // Reorders positions [from, to) so the point at k is the one that would be
+    // there if the range were sorted along the axis, with no larger points
+    // before it and no smaller ones after.
+    private void select(int from, int to, int k, double[] axis) {
+        var l = from;
+        var r = to - 1;
+        while (l < r) {
+            var pivot = axis[(l + r) >>> 1];
+            var i = l;
+            var j = r;
+            while (i <= j) {
+                while (axis[i] < pivot) {
+                    i++;
+                }
+                while (axis[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                r = j;
+            } else if (k >= i) {
+                l = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int p, int q) {
+        var t = order[p];
+        order[p] = order[q];
+        order[q] = t;
+        var c = x[p];
+        x[p] = x[q];
+        x[q] = c;
+        c = y[p];
+        y[p] = y[q];
+        y[q] = c;
+        c = z[p];
+        z[p] = z[q];
+        z[q] = c;
+    }
+
+    private static double sq(double v) {
+        return v * v;
+    }
+}
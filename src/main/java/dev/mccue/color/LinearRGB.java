@@ -73,6 +73,47 @@ public record LinearRGB(
         );
     }
 
+    /// Converts to {@link sRGB} using {@link GammaTable#standard()}.
+    ///
+    /// @return The color in sRGB, within {@link GammaTable#maxError()} of {@link #sRGB()}.
+    public sRGB sRGB_table() {
+        return sRGB_table(GammaTable.standard());
+    }
+
+    /// Converts to {@link sRGB} by interpolating in a lookup table.
+    ///
+    /// @param table The table to use.
+    /// @return The color in sRGB, within {@link GammaTable#maxError()} of {@link #sRGB()}.
+    public sRGB sRGB_table(GammaTable table) {
+        return new sRGB(
+                table.delinearize(R()),
+                table.delinearize(G()),
+                table.delinearize(B())
+        );
+    }
+
+    /// Converts to {@link RGB255} using {@link GammaTable#standard()}.
+    ///
+    /// @return The color in 8-bit sRGB.
+    public RGB255 RGB255_table() {
+        return RGB255_table(GammaTable.standard());
+    }
+
+    /// Converts to {@link RGB255} by interpolating in a lookup table.
+    ///
+    /// The result only differs from {@link #RGB255()} when a channel is within
+    /// {@link GammaTable#maxError()} of rounding the other way, and then by one.
+    ///
+    /// @param table The table to use.
+    /// @return The color in 8-bit sRGB.
+    public RGB255 RGB255_table(GammaTable table) {
+        return new RGB255(
+                table.delinearize255(R()),
+                table.delinearize255(G()),
+                table.delinearize255(B())
+        );
+    }
+
     public double distance(LinearRGB c2) {
         var c1 = this;
         var r1 = c1.R;
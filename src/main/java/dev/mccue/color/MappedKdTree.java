@@ -0,0 +1,184 @@
+package dev.mccue.color;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/// A k-d tree read straight out of a buffer, usually a mapped file,
+/// without copying it onto the heap.
+///
+/// The buffer holds the arrays of a {@link KdTree} one after the other,
+/// little-endian: the coordinates `x`, `y` and `z`, the boxes `lo` and
+/// `hi` with three entries per node, then `order`, `start`, `end`, `left`
+/// and `right`. {@link #bytes} is their total size.
+final class MappedKdTree implements KdLayout {
+    private final int size;
+    private final int nodes;
+    private final double xScale;
+
+    private final DoubleBuffer x;
+    private final DoubleBuffer y;
+    private final DoubleBuffer z;
+    private final DoubleBuffer lo;
+    private final DoubleBuffer hi;
+    private final IntBuffer order;
+    private final IntBuffer start;
+    private final IntBuffer end;
+    private final IntBuffer left;
+    private final IntBuffer right;
+
+    /// @param buffer The buffer to read.
+    /// @param offset Where in `buffer` the arrays start. Should be a
+    ///               multiple of 8.
+    MappedKdTree(ByteBuffer buffer, int offset, int size, int nodes, double xScale) {
+        this.size = size;
+        this.nodes = nodes;
+        this.xScale = xScale;
+        var at = offset;
+        this.x = doubles(buffer, at, size);
+        at += Double.BYTES * size;
+        this.y = doubles(buffer, at, size);
+        at += Double.BYTES * size;
+        this.z = doubles(buffer, at, size);
+        at += Double.BYTES * size;
+        this.lo = doubles(buffer, at, 3 * nodes);
+        at += Double.BYTES * 3 * nodes;
+        this.hi = doubles(buffer, at, 3 * nodes);
+        at += Double.BYTES * 3 * nodes;
+        this.order = ints(buffer, at, size);
+        at += Integer.BYTES * size;
+        this.start = ints(buffer, at, nodes);
+        at += Integer.BYTES * nodes;
+        this.end = ints(buffer, at, nodes);
+        at += Integer.BYTES * nodes;
+        this.left = ints(buffer, at, nodes);
+        at += Integer.BYTES * nodes;
+        this.right = ints(buffer, at, nodes);
+    }
+
+    /// The number of bytes the arrays of a tree take.
+    static long bytes(int size, int nodes) {
+        return (long) Double.BYTES * (3L * size + 6L * nodes) + (long) Integer.BYTES * (size + 4L * nodes);
+    }
+
+    /// Writes the arrays of a tree in the order this reads them.
+    static void write(KdLayout tree, Sink sink) {
+        var n = tree.size();
+        var nodes = tree.nodes();
+        for (int p = 0; p < n; p++) {
+            sink.putDouble(tree.x(p));
+        }
+        for (int p = 0; p < n; p++) {
+            sink.putDouble(tree.y(p));
+        }
+        for (int p = 0; p < n; p++) {
+            sink.putDouble(tree.z(p));
+        }
+        for (int node = 0; node < nodes; node++) {
+            for (int d = 0; d < 3; d++) {
+                sink.putDouble(tree.lo(node, d));
+            }
+        }
+        for (int node = 0; node < nodes; node++) {
+            for (int d = 0; d < 3; d++) {
+                sink.putDouble(tree.hi(node, d));
+            }
+        }
+        for (int p = 0; p < n; p++) {
+            sink.putInt(tree.order(p));
+        }
+        for (int node = 0; node < nodes; node++) {
+            sink.putInt(tree.start(node));
+        }
+        for (int node = 0; node < nodes; node++) {
+            sink.putInt(tree.end(node));
+        }
+        for (int node = 0; node < nodes; node++) {
+            sink.putInt(tree.left(node));
+        }
+        for (int node = 0; node < nodes; node++) {
+            sink.putInt(tree.right(node));
+        }
+    }
+
+    /// Where {@link #write} puts values.
+    interface Sink {
+        void putInt(int value);
+
+        void putDouble(double value);
+    }
+
+    private static DoubleBuffer doubles(ByteBuffer buffer, int offset, int count) {
+        return buffer.slice(offset, Double.BYTES * count).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+
+    private static IntBuffer ints(ByteBuffer buffer, int offset, int count) {
+        return buffer.slice(offset, Integer.BYTES * count).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int nodes() {
+        return nodes;
+    }
+
+    @Override
+    public double xScale() {
+        return xScale;
+    }
+
+    @Override
+    public double x(int p) {
+        return x.get(p);
+    }
+
+    @Override
+    public double y(int p) {
+        return y.get(p);
+    }
+
+    @Override
+    public double z(int p) {
+        return z.get(p);
+    }
+
+    @Override
+    public int order(int p) {
+        return order.get(p);
+    }
+
+    @Override
+    public int start(int node) {
+        return start.get(node);
+    }
+
+    @Override
+    public int end(int node) {
+        return end.get(node);
+    }
+
+    @Override
+    public int left(int node) {
+        return left.get(node);
+    }
+
+    @Override
+    public int right(int node) {
+        return right.get(node);
+    }
+
+    @Override
+    public double lo(int node, int dimension) {
+        return lo.get(3 * node + dimension);
+    }
+
+    @Override
+    public double hi(int node, int dimension) {
+        return hi.get(3 * node + dimension);
+    }
+}
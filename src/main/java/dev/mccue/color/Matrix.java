@@ -0,0 +1,77 @@
+package dev.mccue.color;
+
+/// A 3x3 matrix applied to each color as a column vector.
+///
+/// Linear stages of a conversion are represented as matrices so that
+/// adjacent ones can be multiplied together once when building a
+/// {@link ConversionPlan} instead of being applied one after another for
+/// every color.
+record Matrix(
+        double m00, double m01, double m02,
+        double m10, double m11, double m12,
+        double m20, double m21, double m22
+) implements Stage {
+    // LinearRGB -> XYZ
+    static final Matrix LINEAR_RGB_TO_XYZ = new Matrix(
+            0.41239079926595948, 0.35758433938387796, 0.18048078840183429,
+            0.21263900587151036, 0.71516867876775593, 0.072192315360733715,
+            0.019330818715591851, 0.11919477979462599, 0.95053215224966058
+    );
+
+    // XYZ -> LinearRGB
+    static final Matrix XYZ_TO_LINEAR_RGB = new Matrix(
+            3.2409699419045214, -1.5373831775700935, -0.49861076029300328,
+            -0.96924363628087983, 1.8759675015077207, 0.041555057407175613,
+            0.055630079696993609, -0.20397695888897657, 1.0569715142428786
+    );
+
+    // XYZ -> LMS, the first half of XYZ -> OkLab
+    static final Matrix XYZ_TO_LMS = new Matrix(
+            0.8189330101, 0.3618667424, -0.1288597137,
+            0.0329845436, 0.9293118715, 0.0361456387,
+            0.0482003018, 0.2643662691, 0.6338517070
+    );
+
+    // cbrt(LMS) -> OkLab, the second half of XYZ -> OkLab
+    static final Matrix LMS_TO_OKLAB = new Matrix(
+            0.2104542553, 0.7936177850, -0.0040720468,
+            1.9779984951, -2.4285922050, 0.4505937099,
+            0.0259040371, 0.7827717662, -0.8086757660
+    );
+
+    // OkLab -> cbrt(LMS), the first half of OkLab -> XYZ
+    static final Matrix OKLAB_TO_LMS = new Matrix(
+            0.9999999984505196, 0.39633779217376774, 0.2158037580607588,
+            1.0000000088817607, -0.10556134232365633, -0.0638541747717059,
+            1.0000000546724108, -0.08948418209496574, -1.2914855378640917
+    );
+
+    // LMS -> XYZ, the second half of OkLab -> XYZ
+    static final Matrix LMS_TO_XYZ = new Matrix(
+            1.2268798733741557, -0.5578149965554813, 0.28139105017721594,
+            -0.04057576262431372, 1.1122868293970594, -0.07171106666151696,
+            -0.07637294974672142, -0.4214933239627916, 1.5869240244272422
+    );
+
+    /// @return The matrix that applies `this` and then `next`.
+    Matrix then(Matrix next) {
+        var n = next;
+        return new Matrix(
+                n.m00*m00 + n.m01*m10 + n.m02*m20, n.m00*m01 + n.m01*m11 + n.m02*m21, n.m00*m02 + n.m01*m12 + n.m02*m22,
+                n.m10*m00 + n.m11*m10 + n.m12*m20, n.m10*m01 + n.m11*m11 + n.m12*m21, n.m10*m02 + n.m11*m12 + n.m12*m22,
+                n.m20*m00 + n.m21*m10 + n.m22*m20, n.m20*m01 + n.m21*m11 + n.m22*m21, n.m20*m02 + n.m21*m12 + n.m22*m22
+        );
+    }
+
+    @Override
+    public void apply(double[] c0, double[] c1, double[] c2, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            var x = c0[i];
+            var y = c1[i];
+            var z = c2[i];
+            c0[i] = m00*x + m01*y + m02*z;
+            c1[i] = m10*x + m11*y + m12*z;
+            c2[i] = m20*x + m21*y + m22*z;
+        }
+    }
+}
@@ -0,0 +1,563 @@
+package dev.mccue.color;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/// Finds the colors of a fixed list closest to other colors under a
+/// {@link ColorDistance} that is a metric, including lambdas with no
+/// coordinates to build a k-d tree in.
+///
+/// The colors are kept in a vantage point tree. Each node picks one of its
+/// colors and splits the rest in half by their distance to it, nearer half
+/// inside and farther half outside. A color `q` at distance `d` from the
+/// vantage point can't be closer to anything inside than `d` minus the
+/// farthest distance inside, nor to anything outside than the nearest
+/// distance outside minus `d`, so whole halves are skipped without
+/// measuring them. Colors in leaves are skipped the same way by their
+/// distance to the vantage point above them.
+///
+/// That only holds if the distance is a metric: symmetric and obeying the
+/// triangle inequality, `d(a, c) <= d(a, b) + d(b, c)`. For one that
+/// isn't, answers may be wrong. {@link ColorDistance#RIEMERSMA},
+/// {@link ColorDistance#CIE94} and {@link ColorDistance#CIEDE2000} are not
+/// metrics. An index made with {@link #checked} checks every triangle it
+/// measures, while building and while searching, and throws instead of
+/// answering.
+///
+/// ```java
+/// ColorDistance manhattan = (a, b) -> {
+///     var x = a.sRGB();
+///     var y = b.sRGB();
+///     return Math.abs(x.R() - y.R()) + Math.abs(x.G() - y.G()) + Math.abs(x.B() - y.B());
+/// };
+/// var index = MetricColorIndex.of(swatches, manhattan);
+/// var closest = swatches.get(index.nearest(color));
+/// ```
+///
+/// Colors equally far away go to the lower index. An index is immutable
+/// and safe to query from several threads.
+public final class MetricColorIndex {
+    // Nodes this small are scanned.
+    private static final int LEAF = 8;
+
+    // Colors per unit of parallel work.
+    private static final int CHUNK = 1024;
+
+    // How much, relative to the distances involved, rounding may move a
+    // distance by.
+    private static final double SLACK = 1e-9;
+
+    private final List<Color> colors;
+    private final ColorDistance distance;
+    private final PreparedColorDistance prepared;
+    private final boolean checked;
+
+    // The indices of the colors by position. A node covers a range of
+    // positions [from, to). Unless it is a leaf, its vantage point is at
+    // from, the inside at [from + 1, split[from]) and the outside at
+    // [split[from], to).
+    private final int[] order;
+    private final int[] split;
+
+    // The range of distances from the vantage point at from to the colors
+    // inside and outside.
+    private final double[] insideLo;
+    private final double[] insideHi;
+    private final double[] outsideLo;
+    private final double[] outsideHi;
+
+    // The distance from the vantage point of the node right above each
+    // position to the color there. While building it holds the distance
+    // to the vantage point of the node being built.
+    private final double[] parent;
+
+    private MetricColorIndex(List<? extends Color> colors, ColorDistance distance, boolean checked) {
+        this.colors = List.copyOf(colors);
+        this.distance = Objects.requireNonNull(distance, "distance");
+        this.prepared = distance.prepare(this.colors);
+        this.checked = checked;
+        var n = this.colors.size();
+        this.order = new int[n];
+        for (int p = 0; p < n; p++) {
+            order[p] = p;
+        }
+        this.split = new int[n];
+        this.insideLo = new double[n];
+        this.insideHi = new double[n];
+        this.outsideLo = new double[n];
+        this.outsideHi = new double[n];
+        this.parent = new double[n];
+        Arrays.fill(parent, Double.NaN);
+    }
+
+    /// Indexes a list of colors.
+    ///
+    /// @param colors The colors to look up.
+    /// @param distance How to compare colors. Should be a metric.
+    /// @return The index.
+    public static MetricColorIndex of(List<? extends Color> colors, ColorDistance distance) {
+        var index = new MetricColorIndex(colors, distance, false);
+        index.build(0, index.order.length, -1);
+        return index;
+    }
+
+    /// Indexes a list of colors, measuring and building separate nodes
+    /// across a pool. The index is the same as {@link #of}.
+    ///
+    /// @param colors The colors to look up.
+    /// @param distance How to compare colors. Should be a metric.
+    /// @param pool The pool to run in.
+    /// @return The index.
+    public static MetricColorIndex ofParallel(List<? extends Color> colors, ColorDistance distance, ForkJoinPool pool) {
+        Objects.requireNonNull(pool, "pool");
+        var index = new MetricColorIndex(colors, distance, false);
+        pool.invoke(new BuildTask(index, 0, index.order.length, -1));
+        return index;
+    }
+
+    /// Indexes a list of colors, checking that every triangle of distances
+    /// measured along the way obeys the triangle inequality, give or take
+    /// rounding. The index is the same as {@link #of}, but lookups on it
+    /// check the same way.
+    ///
+    /// @param colors The colors to look up.
+    /// @param distance How to compare colors.
+    /// @return The index.
+    /// @throws IllegalArgumentException If the distance breaks the triangle
+    ///                                  inequality between any of the colors.
+    ///                                  Lookups throw the same if it does with
+    ///                                  the color looked up.
+    public static MetricColorIndex checked(List<? extends Color> colors, ColorDistance distance) {
+        var index = new MetricColorIndex(colors, distance, true);
+        index.build(0, index.order.length, -1);
+        return index;
+    }
+
+    /// @return The number of colors.
+    public int size() {
+        return order.length;
+    }
+
+    /// @param color The color to look up.
+    /// @return The index of the color closest to `color`, or -1 if there
+    ///         are none.
+    public int nearest(Color color) {
+        var found = nearestK(color, 1);
+        return found.length == 0 ? -1 : found[0];
+    }
+
+    /// @param color The color to look up.
+    /// @param k How many colors to find.
+    /// @return The indices of the `k` colors closest to `color`, closest
+    ///         first, or all of them if there are fewer.
+    public int[] nearestK(Color color, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        var nearest = new Nearest(Math.min(k, size()));
+        if (nearest.k > 0) {
+            search(0, size(), -1, Double.NaN, color, query(color), nearest);
+        }
+        return Arrays.copyOf(nearest.best, nearest.found);
+    }
+
+    /// @param color The color to look up.
+    /// @param radius How far away to look.
+    /// @return The indices of every color at most `radius` from `color`,
+    ///         closest first.
+    public int[] within(Color color, double radius) {
+        if (!(radius >= 0)) {
+            throw new IllegalArgumentException("radius must not be negative: " + radius);
+        }
+        var within = new Within(radius);
+        if (size() > 0) {
+            search(0, size(), -1, Double.NaN, color, query(color), within);
+        }
+        return within.sorted();
+    }
+
+    // The distance from a color to the one at an index.
+    private interface Query {
+        double to(int i);
+    }
+
+    private Query query(Color color) {
+        Objects.requireNonNull(color, "color");
+        if (prepared instanceof StandardColorDistance.Prepared palette) {
+            // Converted once, then compared like the prepared colors are.
+            var q = (StandardColorDistance.Prepared) distance.prepare(List.of(color));
+            return i -> q.distance(0, palette, i);
+        }
+        return i -> distance.distance(color, colors.get(i));
+    }
+
+    // The vantage point measures every color of its node, then the node
+    // splits at the median distance.
+    private void build(int from, int to, int above) {
+        if (!node(from, to, above, false)) {
+            return;
+        }
+        var v = order[from];
+        build(from + 1, split[from], v);
+        build(split[from], to, v);
+    }
+
+    // Measures and splits one node, returning false for a leaf. above is
+    // the color at the vantage point of the node above, -1 at the root.
+    private boolean node(int from, int to, int above, boolean parallel) {
+        if (to - from <= LEAF) {
+            return false;
+        }
+        var v = order[from];
+        // The vantage point keeps its distance from above.
+        var toAbove = parent[from];
+        if (parallel && to - from > CHUNK) {
+            RecursiveAction.invokeAll(new MeasureTask(this, v, above, toAbove, from + 1, to));
+        } else {
+            measure(v, above, toAbove, from + 1, to);
+        }
+
+        var mid = (from + 1 + to) >>> 1;
+        select(from + 1, to, mid);
+        split[from] = mid;
+        insideLo[from] = Double.POSITIVE_INFINITY;
+        insideHi[from] = Double.NEGATIVE_INFINITY;
+        for (int p = from + 1; p < mid; p++) {
+            insideLo[from] = Math.min(insideLo[from], parent[p]);
+            insideHi[from] = Math.max(insideHi[from], parent[p]);
+        }
+        outsideLo[from] = Double.POSITIVE_INFINITY;
+        outsideHi[from] = Double.NEGATIVE_INFINITY;
+        for (int p = mid; p < to; p++) {
+            outsideLo[from] = Math.min(outsideLo[from], parent[p]);
+            outsideHi[from] = Math.max(outsideHi[from], parent[p]);
+        }
+
+        // The colors farthest from this vantage point spread the others out
+        // the most, so they become the next ones.
+        farthestFirst(from + 1, mid);
+        farthestFirst(mid, to);
+        return true;
+    }
+
+    // Measures the distance from v to the colors at [from, to). toAbove is
+    // the distance from above to v.
+    private void measure(int v, int above, double toAbove, int from, int to) {
+        for (int p = from; p < to; p++) {
+            var d = prepared.distance(v, order[p]);
+            if (checked && above != -1) {
+                // parent[p] still has the distance from above.
+                check(above, v, order[p], toAbove, parent[p], d);
+            }
+            parent[p] = d;
+        }
+    }
+
+    private void farthestFirst(int from, int to) {
+        var farthest = from;
+        for (int p = from + 1; p < to; p++) {
+            if (parent[p] > parent[farthest]) {
+                farthest = p;
+            }
+        }
+        swap(from, farthest);
+    }
+
+    // Reorders positions [from, to) so the one at k has the distance it would
+    // have if they were sorted, with none larger before it and none smaller
+    // after.
+    private void select(int from, int to, int k) {
+        var l = from;
+        var r = to - 1;
+        while (l < r) {
+            var pivot = parent[(l + r) >>> 1];
+            var i = l;
+            var j = r;
+            while (i <= j) {
+                while (parent[i] < pivot) {
+                    i++;
+                }
+                while (parent[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                r = j;
+            } else if (k >= i) {
+                l = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int p, int q) {
+        var t = order[p];
+        order[p] = order[q];
+        order[q] = t;
+        var d = parent[p];
+        parent[p] = parent[q];
+        parent[q] = d;
+    }
+
+    // Visits the node [from, to). above is the color at the vantage point of
+    // the node above and toAbove the distance to it from the query.
+    private void search(int from, int to, int above, double toAbove, Color color, Query query, Results results) {
+        if (to - from <= LEAF) {
+            for (int p = from; p < to; p++) {
+                if (above != -1 && results.rejects(Math.max(gap(toAbove, parent[p]), gap(parent[p], toAbove)))) {
+                    continue;
+                }
+                var d = query.to(order[p]);
+                if (checked && above != -1) {
+                    check(color, above, order[p], toAbove, parent[p], d);
+                }
+                results.offer(order[p], d);
+            }
+            return;
+        }
+
+        var v = order[from];
+        var d = query.to(v);
+        if (checked && above != -1) {
+            check(color, above, v, toAbove, parent[from], d);
+        }
+        results.offer(v, d);
+
+        var mid = split[from];
+        var toInside = Math.max(gap(insideLo[from], d), gap(d, insideHi[from]));
+        var toOutside = Math.max(gap(outsideLo[from], d), gap(d, outsideHi[from]));
+        if (toInside <= toOutside) {
+            if (!results.rejects(toInside)) {
+                search(from + 1, mid, v, d, color, query, results);
+            }
+            if (!results.rejects(toOutside)) {
+                search(mid, to, v, d, color, query, results);
+            }
+        } else {
+            if (!results.rejects(toOutside)) {
+                search(mid, to, v, d, color, query, results);
+            }
+            if (!results.rejects(toInside)) {
+                search(from + 1, mid, v, d, color, query, results);
+            }
+        }
+    }
+
+    // A lower bound on a - b, allowing for rounding in both.
+    private static double gap(double a, double b) {
+        return a - b - SLACK * (a + b);
+    }
+
+    private void check(int a, int b, int c, double ab, double ac, double bc) {
+        if (!triangle(ab, ac, bc)) {
+            throw brokenTriangle(colors.get(a), colors.get(b), colors.get(c), ab, ac, bc);
+        }
+    }
+
+    private void check(Color query, int b, int c, double ab, double bc, double ac) {
+        if (!triangle(ab, ac, bc)) {
+            throw brokenTriangle(query, colors.get(b), colors.get(c), ab, ac, bc);
+        }
+    }
+
+    // Whether no side is longer than the other two together.
+    private static boolean triangle(double x, double y, double z) {
+        var slack = SLACK * (x + y + z);
+        return x <= y + z + slack && y <= x + z + slack && z <= x + y + slack;
+    }
+
+    private IllegalArgumentException brokenTriangle(Color a, Color b, Color c, double ab, double ac, double bc) {
+        return new IllegalArgumentException(
+                "Distance breaks the triangle inequality between " + a + ", " + b + " and " + c
+                + ": d(a, b) = " + ab + ", d(a, c) = " + ac + ", d(b, c) = " + bc
+        );
+    }
+
+    private abstract static class Results {
+        // Whether nothing at least this far away can make it in.
+        abstract boolean rejects(double lowerBound);
+
+        abstract void offer(int i, double d);
+
+        // Ties go to the lower index.
+        static boolean closer(double d, int i, double dj, int j) {
+            return d != dj ? d < dj : i < j;
+        }
+    }
+
+    private static final class Nearest extends Results {
+        final int k;
+        final int[] best;
+        final double[] bestD;
+        int found;
+
+        Nearest(int k) {
+            this.k = k;
+            this.best = new int[k];
+            this.bestD = new double[k];
+        }
+
+        @Override
+        boolean rejects(double lowerBound) {
+            return found == k && lowerBound > bestD[k - 1];
+        }
+
+        @Override
+        void offer(int i, double d) {
+            if (found == k && !closer(d, i, bestD[k - 1], best[k - 1])) {
+                return;
+            }
+            var p = found < k ? found++ : k - 1;
+            while (p > 0 && closer(d, i, bestD[p - 1], best[p - 1])) {
+                best[p] = best[p - 1];
+                bestD[p] = bestD[p - 1];
+                p--;
+            }
+            best[p] = i;
+            bestD[p] = d;
+        }
+    }
+
+    private static final class Within extends Results {
+        final double radius;
+        int[] found = new int[16];
+        double[] foundD = new double[16];
+        int size;
+
+        Within(double radius) {
+            this.radius = radius;
+        }
+
+        @Override
+        boolean rejects(double lowerBound) {
+            return lowerBound > radius;
+        }
+
+        @Override
+        void offer(int i, double d) {
+            if (d <= radius) {
+                if (size == found.length) {
+                    found = Arrays.copyOf(found, size * 2);
+                    foundD = Arrays.copyOf(foundD, size * 2);
+                }
+                found[size] = i;
+                foundD[size] = d;
+                size++;
+            }
+        }
+
+        int[] sorted() {
+            sort(0, size - 1);
+            return Arrays.copyOf(found, size);
+        }
+
+        // Quicksorts [l, r] by distance, then index. Every index is found at
+        // most once, so no two entries tie.
+        private void sort(int l, int r) {
+            while (l < r) {
+                var m = (l + r) >>> 1;
+                var pivot = found[m];
+                var pivotD = foundD[m];
+                var i = l;
+                var j = r;
+                while (i <= j) {
+                    while (closer(foundD[i], found[i], pivotD, pivot)) {
+                        i++;
+                    }
+                    while (closer(pivotD, pivot, foundD[j], found[j])) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(i, j);
+                        i++;
+                        j--;
+                    }
+                }
+                // Recurse into the smaller side to bound the stack.
+                if (j - l < r - i) {
+                    sort(l, j);
+                    l = i;
+                } else {
+                    sort(i, r);
+                    r = j;
+                }
+            }
+        }
+
+        private void swap(int p, int q) {
+            var t = found[p];
+            found[p] = found[q];
+            found[q] = t;
+            var d = foundD[p];
+            foundD[p] = foundD[q];
+            foundD[q] = d;
+        }
+    }
+
+    @SuppressWarnings("serial") // Tasks are never serialized.
+    private static final class BuildTask extends RecursiveAction {
+        private final MetricColorIndex index;
+        private final int from;
+        private final int to;
+        private final int above;
+
+        BuildTask(MetricColorIndex index, int from, int to, int above) {
+            this.index = index;
+            this.from = from;
+            this.to = to;
+            this.above = above;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                index.build(from, to, above);
+            } else if (index.node(from, to, above, true)) {
+                var v = index.order[from];
+                var mid = index.split[from];
+                invokeAll(new BuildTask(index, from + 1, mid, v), new BuildTask(index, mid, to, v));
+            }
+        }
+    }
+
+    @SuppressWarnings("serial") // Tasks are never serialized.
+    private static final class MeasureTask extends RecursiveAction {
+        private final MetricColorIndex index;
+        private final int v;
+        private final int above;
+        private final double toAbove;
+        private final int from;
+        private final int to;
+
+        MeasureTask(MetricColorIndex index, int v, int above, double toAbove, int from, int to) {
+            this.index = index;
+            this.v = v;
+            this.above = above;
+            this.toAbove = toAbove;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                index.measure(v, above, toAbove, from, to);
+            } else {
+                var mid = (from + to) >>> 1;
+                invokeAll(
+                        new MeasureTask(index, v, above, toAbove, from, mid),
+                        new MeasureTask(index, v, above, toAbove, mid, to)
+                );
+            }
+        }
+    }
+}
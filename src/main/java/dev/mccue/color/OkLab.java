@@ -50,4 +50,15 @@ public record OkLab(
     public sRGB sRGB() {
         return XYZ().sRGB();
     }
+
+    /// Computes the straight line distance to another color in OkLab.
+    ///
+    /// @param c2 The color to compare to.
+    /// @return Distance between colors.
+    public double distance(OkLab c2) {
+        var dL = L - c2.L;
+        var da = a - c2.a;
+        var db = b - c2.b;
+        return Math.sqrt(dL * dL + da * da + db * db);
+    }
 }
@@ -0,0 +1,350 @@
+package dev.mccue.color;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/// A palette that stays sorted as colors are added to it.
+///
+/// Sorting the whole palette again after every addition compares every
+/// pair of colors each time. Instead, a new color goes wherever it makes
+/// the path through the palette the least bit longer, next to the colors
+/// already there. For straight line distances in the spaces of
+/// {@link ColorDistance} only the insertion points next to its nearest
+/// neighbors are tried, found with a k-d tree. Any other distance tries
+/// every insertion point, comparing the new color to each color once.
+///
+/// Each insertion is only as good as the order it goes into, so every so
+/// often the palette should be rebuilt. A rebuild sorts every color from
+/// scratch, after which the order is exactly that of
+/// {@link Color#sort(List, ColorDistance)} on the colors in the order
+/// they were added. {@link #rebuildAsync} does the sorting on another
+/// thread while additions carry on, then puts back anything added in the
+/// meantime. Palettes made with an {@link Executor} start one on their
+/// own every so many additions.
+///
+/// ```java
+/// var palette = OrderedPalette.of(swatches, ColorDistance.CIEDE2000, 256, executor);
+/// palette.add(picked);
+/// var ordered = palette.colors();
+/// ```
+///
+/// All methods are safe to call from several threads.
+public final class OrderedPalette<C extends Color> {
+    // Nearest neighbors whose insertion points are tried.
+    private static final int NEIGHBORS = 8;
+
+    private final ColorDistance distance;
+    private final boolean standard;
+    private final int rebuildAfter;
+    private final Executor executor;
+
+    // Every color in the order it was added. Colors are referred to by
+    // their index here.
+    private final ArrayList<C> colors = new ArrayList<>();
+
+    // The order is a linked list from head, -1 at either end. edge[c] is the
+    // distance from c to next[c].
+    private int head = -1;
+    private int[] next = new int[0];
+    private int[] prev = new int[0];
+    private double[] edge = new double[0];
+
+    // For standard distances, colors before base were prepared together at
+    // the last rebuild and each one since on its own. The tree covers the
+    // ones before base, if the distance is a straight line.
+    private StandardColorDistance.Prepared prepared;
+    private final ArrayList<StandardColorDistance.Prepared> since = new ArrayList<>();
+    private KdTree kd;
+    private int base;
+
+    // Counts rebuilds started, so one that finishes after a later one
+    // started is thrown away.
+    private int generation;
+    private int rebuilding;
+
+    private OrderedPalette(ColorDistance distance, int rebuildAfter, Executor executor) {
+        this.distance = Objects.requireNonNull(distance, "distance");
+        this.standard = distance instanceof StandardColorDistance;
+        this.rebuildAfter = rebuildAfter;
+        this.executor = executor;
+        if (standard) {
+            this.prepared = (StandardColorDistance.Prepared) distance.prepare(List.of());
+        }
+    }
+
+    /// Makes an empty palette that is only rebuilt when asked.
+    ///
+    /// @param distance How to compare colors.
+    public OrderedPalette(ColorDistance distance) {
+        this(distance, 0, null);
+    }
+
+    /// Makes a palette sorted like {@link Color#sort(List, ColorDistance)}
+    /// that is only rebuilt when asked.
+    ///
+    /// @param colors The colors to start with.
+    /// @param distance How to compare colors.
+    /// @return The palette.
+    public static <C extends Color> OrderedPalette<C> of(List<? extends C> colors, ColorDistance distance) {
+        var palette = new OrderedPalette<C>(distance);
+        palette.colors.addAll(colors);
+        palette.rebuild();
+        return palette;
+    }
+
+    /// Makes a palette sorted like {@link Color#sort(List, ColorDistance)}
+    /// that rebuilds itself on `executor` once `rebuildAfter` colors have
+    /// been added since it was last rebuilt.
+    ///
+    /// @param colors The colors to start with.
+    /// @param distance How to compare colors.
+    /// @param rebuildAfter How many additions to allow between rebuilds.
+    /// @param executor Where to run rebuilds.
+    /// @return The palette.
+    public static <C extends Color> OrderedPalette<C> of(
+            List<? extends C> colors,
+            ColorDistance distance,
+            int rebuildAfter,
+            Executor executor
+    ) {
+        Objects.requireNonNull(executor, "executor");
+        if (rebuildAfter < 1) {
+            throw new IllegalArgumentException("rebuildAfter must be positive: " + rebuildAfter);
+        }
+        var palette = new OrderedPalette<C>(distance, rebuildAfter, executor);
+        palette.colors.addAll(colors);
+        palette.rebuild();
+        return palette;
+    }
+
+    /// @return The number of colors.
+    public synchronized int size() {
+        return colors.size();
+    }
+
+    /// @return The colors in order.
+    public synchronized List<C> colors() {
+        var ordered = new ArrayList<C>(colors.size());
+        for (int c = head; c != -1; c = next[c]) {
+            ordered.add(colors.get(c));
+        }
+        return List.copyOf(ordered);
+    }
+
+    /// Adds a color where it makes the path through the palette shortest.
+    ///
+    /// @param color The color to add.
+    public synchronized void add(C color) {
+        Objects.requireNonNull(color, "color");
+        var c = colors.size();
+        colors.add(color);
+        reserve();
+        if (standard) {
+            since.add((StandardColorDistance.Prepared) distance.prepare(List.of(color)));
+        }
+        insert(c);
+
+        if (executor != null && rebuilding == 0 && colors.size() - base >= rebuildAfter) {
+            rebuildAsync(executor);
+        }
+    }
+
+    /// Sorts every color again on the calling thread.
+    public synchronized void rebuild() {
+        generation++;
+        install(Rebuild.of(List.copyOf(colors), distance));
+    }
+
+    /// Sorts every color again on `executor`. Colors added while it runs
+    /// are inserted into the new order once it is done.
+    ///
+    /// @param executor Where to sort.
+    /// @return A future that completes once the new order is in place.
+    public CompletableFuture<Void> rebuildAsync(Executor executor) {
+        List<C> snapshot;
+        int started;
+        synchronized (this) {
+            snapshot = List.copyOf(colors);
+            started = ++generation;
+            rebuilding++;
+        }
+        return CompletableFuture
+                .supplyAsync(() -> Rebuild.of(snapshot, distance), executor)
+                .thenAccept(rebuild -> {
+                    synchronized (this) {
+                        if (started == generation) {
+                            install(rebuild);
+                        }
+                    }
+                })
+                .whenComplete((ignored, error) -> {
+                    synchronized (this) {
+                        rebuilding--;
+                    }
+                });
+    }
+
+    // Makes room in the links for every color.
+    private void reserve() {
+        if (colors.size() > next.length) {
+            var capacity = Math.max(16, Math.max(colors.size(), 2 * next.length));
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            edge = Arrays.copyOf(edge, capacity);
+        }
+    }
+
+    // A fresh sort of the first colors.
+    private record Rebuild(int size, int[] order, StandardColorDistance.Prepared prepared, KdTree kd) {
+        static Rebuild of(List<? extends Color> colors, ColorDistance distance) {
+            var n = colors.size();
+            int[] order;
+            if (n < 2) {
+                order = new int[n];
+            } else {
+                order = SpanningTree.order(colors, distance);
+            }
+            StandardColorDistance.Prepared prepared = null;
+            KdTree kd = null;
+            if (distance instanceof StandardColorDistance) {
+                prepared = (StandardColorDistance.Prepared) distance.prepare(colors);
+                kd = n == 0 ? null : prepared.kdTree(n);
+            }
+            return new Rebuild(n, order, prepared, kd);
+        }
+    }
+
+    // Replaces the order of the colors a rebuild covers, then inserts any
+    // added since it started.
+    private void install(Rebuild rebuild) {
+        reserve();
+        var n = rebuild.size();
+        head = n == 0 ? -1 : rebuild.order()[0];
+        for (int k = 0; k < n; k++) {
+            var c = rebuild.order()[k];
+            prev[c] = k == 0 ? -1 : rebuild.order()[k - 1];
+            next[c] = k == n - 1 ? -1 : rebuild.order()[k + 1];
+        }
+        if (standard) {
+            // Keep the colors the rebuild didn't see.
+            var later = new ArrayList<>(since.subList(since.size() - (colors.size() - n), since.size()));
+            since.clear();
+            since.addAll(later);
+        }
+        prepared = rebuild.prepared();
+        kd = rebuild.kd();
+        base = n;
+        for (int c = 0; c < n; c++) {
+            edge[c] = next[c] == -1 ? 0 : d(c, next[c]);
+        }
+        for (int c = n; c < colors.size(); c++) {
+            insert(c);
+        }
+    }
+
+    private double d(int a, int b) {
+        if (!standard) {
+            return distance.distance(colors.get(a), colors.get(b));
+        }
+        var i = Math.min(a, b);
+        var j = Math.max(a, b);
+        return preparedOf(i).distance(indexOf(i), preparedOf(j), indexOf(j));
+    }
+
+    private StandardColorDistance.Prepared preparedOf(int c) {
+        return c < base ? prepared : since.get(c - base);
+    }
+
+    private int indexOf(int c) {
+        return c < base ? c : 0;
+    }
+
+    // What putting c between a and b, either of which may be -1, adds to
+    // the length of the path.
+    private double cost(int a, int c, int b) {
+        var cost = 0.0;
+        if (a != -1) {
+            cost += d(a, c);
+        }
+        if (b != -1) {
+            cost += d(c, b);
+        }
+        if (a != -1 && b != -1) {
+            cost -= edge[a];
+        }
+        return cost;
+    }
+
+    // Links c into the path at its cheapest insertion point.
+    private void insert(int c) {
+        if (head == -1) {
+            head = c;
+            prev[c] = -1;
+            next[c] = -1;
+            edge[c] = 0;
+            return;
+        }
+
+        var after = -1;
+        var bestCost = Double.POSITIVE_INFINITY;
+        if (kd != null) {
+            // Next to one of its nearest neighbors, out of the ones in the
+            // tree and the few added since.
+            var best = new int[NEIGHBORS];
+            var bestD = new double[NEIGHBORS];
+            var found = preparedOf(c).nearest(kd, indexOf(c), NEIGHBORS, best, bestD);
+            var candidates = new int[found + (c - base)];
+            for (int k = 0; k < found; k++) {
+                candidates[k] = kd.order[best[k]];
+            }
+            for (int o = base; o < c; o++) {
+                candidates[found + o - base] = o;
+            }
+            for (var o : candidates) {
+                var before = cost(prev[o], c, o);
+                if (before < bestCost) {
+                    bestCost = before;
+                    after = prev[o];
+                }
+                var behind = cost(o, c, next[o]);
+                if (behind < bestCost) {
+                    bestCost = behind;
+                    after = o;
+                }
+            }
+        } else {
+            // Anywhere, reusing each distance to c for the insertion points
+            // on both sides of a color.
+            var toPrev = d(c, head);
+            bestCost = toPrev;
+            for (int o = head; o != -1; o = next[o]) {
+                var toNext = next[o] == -1 ? 0 : d(c, next[o]);
+                var cost = next[o] == -1 ? toPrev : toPrev + toNext - edge[o];
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    after = o;
+                }
+                toPrev = toNext;
+            }
+        }
+
+        // Link c in after `after`, or at the front if that is -1.
+        var before = after == -1 ? head : next[after];
+        prev[c] = after;
+        next[c] = before;
+        if (after == -1) {
+            head = c;
+        } else {
+            next[after] = c;
+            edge[after] = d(after, c);
+        }
+        if (before != -1) {
+            prev[before] = c;
+        }
+        edge[c] = before == -1 ? 0 : d(c, before);
+    }
+}
@@ -0,0 +1,525 @@
+package dev.mccue.color;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32C;
+
+/// Finds the colors of a fixed palette closest to other colors.
+///
+/// The palette is kept in a k-d tree in the space of the distance, so a
+/// lookup only visits the few nodes near the color it looks for instead
+/// of every entry. That works for the straight line distances of
+/// {@link ColorDistance}: {@link ColorDistance#LAB}, {@link ColorDistance#OKLAB},
+/// {@link ColorDistance#LUV} and the rest.
+///
+/// {@link ColorDistance#CIEDE2000} is not a straight line, but it can't be
+/// much shorter than one in {@link Lab}. The tree is searched in `Lab` and
+/// a node is only skipped once a lower bound on the CIEDE2000 distance to
+/// everything in it, the same one {@link Lab#withinCIEDE2000} uses, is
+/// beyond the best so far. Every other entry is measured exactly, so the
+/// answers are the same as comparing against every entry.
+///
+/// ```java
+/// var index = PaletteIndex.of(brandColors, ColorDistance.CIEDE2000);
+/// var closest = brandColors.get(index.nearest(pixel));
+/// ```
+///
+/// Building an index converts every entry and sorts them into the tree.
+/// For a big catalogue that takes a while, so an index can be saved with
+/// {@link #write} and opened again with {@link #open}. Opening maps the
+/// file and searches the tree right where it is, without reading the
+/// entries back in.
+///
+/// Entries equally far away go to the lower index. An index is immutable
+/// and safe to query from several threads.
+public final class PaletteIndex {
+    // Queries per unit of parallel work.
+    private static final int CHUNK = 1024;
+
+    // "PIDX" read as a little-endian int.
+    private static final int MAGIC = 0x58444950;
+    private static final int VERSION = 1;
+
+    // magic, version, size, nodes, xScale and the name of the distance.
+    // The tree starts right after, lined up for its doubles.
+    private static final int HEADER = 64;
+    private static final int NAME = 32;
+
+    private final StandardColorDistance distance;
+    private final boolean ciede2000;
+    private final Class<? extends Color> space;
+    private final KdLayout kd;
+
+    private PaletteIndex(StandardColorDistance distance, KdLayout kd) {
+        this.distance = distance;
+        this.ciede2000 = distance == StandardColorDistance.CIEDE2000;
+        this.space = ciede2000 ? Lab.class : distance.space();
+        this.kd = kd;
+    }
+
+    /// Indexes a palette.
+    ///
+    /// @param palette The colors to look up. Must not be empty.
+    /// @param distance A straight line distance of {@link ColorDistance},
+    ///                 or {@link ColorDistance#CIEDE2000}.
+    /// @return The index.
+    /// @throws IllegalArgumentException If the palette is empty or the distance is not supported.
+    public static PaletteIndex of(List<? extends Color> palette, ColorDistance distance) {
+        if (palette.isEmpty()) {
+            throw new IllegalArgumentException("Cannot index an empty palette");
+        }
+        if (!supports(distance)) {
+            throw new IllegalArgumentException("Cannot index palettes by " + distance);
+        }
+        var metric = treeMetric(distance);
+        var kd = ((StandardColorDistance.Prepared) metric.prepare(palette)).kdTree(palette.size());
+        return new PaletteIndex((StandardColorDistance) distance, kd);
+    }
+
+    /// Indexes a palette kept in a {@link ColorBuffer}, in any space. This
+    /// converts the whole buffer at once instead of one color at a time.
+    ///
+    /// @param palette The colors to look up. Must not be empty.
+    /// @param distance A straight line distance of {@link ColorDistance},
+    ///                 or {@link ColorDistance#CIEDE2000}.
+    /// @return The index.
+    /// @throws IllegalArgumentException If the palette is empty or the distance is not supported.
+    public static PaletteIndex of(ColorBuffer palette, ColorDistance distance) {
+        if (palette.size() == 0) {
+            throw new IllegalArgumentException("Cannot index an empty palette");
+        }
+        if (!supports(distance)) {
+            throw new IllegalArgumentException("Cannot index palettes by " + distance);
+        }
+        var kd = treeMetric(distance).prepare(palette).kdTree(palette.size());
+        return new PaletteIndex((StandardColorDistance) distance, kd);
+    }
+
+    // The distance the tree is built for.
+    private static StandardColorDistance treeMetric(ColorDistance distance) {
+        return distance == ColorDistance.CIEDE2000 ? StandardColorDistance.LAB : (StandardColorDistance) distance;
+    }
+
+    /// Whether {@link #of} can index palettes by a distance.
+    static boolean supports(ColorDistance distance) {
+        return distance == ColorDistance.CIEDE2000
+                || distance instanceof StandardColorDistance standard && standard.straight();
+    }
+
+    /// @return The number of colors in the palette.
+    public int size() {
+        return kd.size();
+    }
+
+    /// @return The color space the channels given to
+    ///         {@link #nearest(double[], double[], double[], int[])} are in.
+    public Class<? extends Color> space() {
+        return space;
+    }
+
+    /// @param color The color to look up.
+    /// @return The index of the palette color closest to `color`.
+    public int nearest(Color color) {
+        var q = new ColorBuffer(space, 1);
+        q.set(0, color);
+        return nearest(q.channel(0)[0], q.channel(1)[0], q.channel(2)[0], new int[1], new double[1]);
+    }
+
+    /// @param color The color to look up.
+    /// @param k How many palette colors to find.
+    /// @return The indices of the `k` palette colors closest to `color`,
+    ///         closest first, or all of them if there are fewer.
+    public int[] nearestK(Color color, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        k = Math.min(k, size());
+        var q = new ColorBuffer(space, 1);
+        q.set(0, color);
+        var best = new int[k];
+        var bestD = new double[k];
+        var found = k == 0 ? 0 : search(q.channel(0)[0], q.channel(1)[0], q.channel(2)[0], k, best, bestD);
+        for (int i = 0; i < found; i++) {
+            best[i] = kd.order(best[i]);
+        }
+        return best;
+    }
+
+    /// Looks up many colors given as channels in {@link #space()}.
+    ///
+    /// @param c0 The first channel of each color.
+    /// @param c1 The second channel of each color.
+    /// @param c2 The third channel of each color.
+    /// @param out Where to write the index of the closest palette color to
+    ///            each color. Its length is the number of colors.
+    public void nearest(double[] c0, double[] c1, double[] c2, int[] out) {
+        Objects.checkFromIndexSize(0, out.length, c0.length);
+        Objects.checkFromIndexSize(0, out.length, c1.length);
+        Objects.checkFromIndexSize(0, out.length, c2.length);
+        nearest(c0, c1, c2, out, 0, out.length);
+    }
+
+    /// Looks up every color of a buffer, converting them into
+    /// {@link #space()} first if they are in another space.
+    ///
+    /// @param colors The colors to look up.
+    /// @param out Where to write the index of the closest palette color to
+    ///            each color. Must be at least as long as `colors`.
+    public void nearest(ColorBuffer colors, int[] out) {
+        var in = colors.space() == space ? colors : colors.convert(space);
+        Objects.checkFromIndexSize(0, in.size(), out.length);
+        nearest(in.channel(0), in.channel(1), in.channel(2), out, 0, in.size());
+    }
+
+    /// Looks up every color of a buffer, splitting them across a pool.
+    /// See {@link #nearest(ColorBuffer, int[])}.
+    ///
+    /// @param colors The colors to look up.
+    /// @param out Where to write the index of the closest palette color to
+    ///            each color. Must be at least as long as `colors`.
+    /// @param pool The pool to run in.
+    public void nearestParallel(ColorBuffer colors, int[] out, ForkJoinPool pool) {
+        var in = colors.space() == space ? colors : colors.convertParallel(space, pool);
+        Objects.checkFromIndexSize(0, in.size(), out.length);
+        pool.invoke(new NearestTask(this, in, out, 0, in.size()));
+    }
+
+    /// Saves the index to a file, replacing it if it exists. The file is
+    /// written beside it first and then moved over it, so {@link #open}
+    /// never sees half of it.
+    ///
+    /// The file is a header with the version of the format, the tree laid
+    /// out like it is in memory, little-endian, and a CRC32C of all that.
+    ///
+    /// @param file The file to write.
+    /// @throws IOException If the file can't be written.
+    public void write(Path file) throws IOException {
+        var dir = file.toAbsolutePath().getParent();
+        var tmp = Files.createTempFile(dir, "index", ".tmp");
+        try {
+            try (var channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                var out = new Output(channel);
+                out.putInt(MAGIC);
+                out.putInt(VERSION);
+                out.putInt(size());
+                out.putInt(kd.nodes());
+                out.putDouble(kd.xScale());
+                out.put(Arrays.copyOf(distance.name().getBytes(StandardCharsets.US_ASCII), NAME));
+                out.put(new byte[HEADER - 24 - NAME]);
+                MappedKdTree.write(kd, out);
+                out.finish();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /// Opens an index saved by {@link #write}.
+    ///
+    /// The file is mapped into memory and searched where it is. Opening
+    /// only reads it through once, to check it against its checksum.
+    /// Lookups are a little slower than on an index that was built, since
+    /// the tree is read out of the mapped file.
+    ///
+    /// @param file The file to open.
+    /// @return The index.
+    /// @throws IOException If the file can't be read, is not an index, is
+    ///                     another version of the format or is damaged.
+    public static PaletteIndex open(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var length = channel.size();
+            if (length < HEADER + Integer.BYTES) {
+                throw new IOException(file + " is too short to be a palette index");
+            }
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to map");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a palette index");
+        }
+        var version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException(file + " is version " + version + " of the format, not " + VERSION);
+        }
+        var length = buffer.capacity();
+        var crc = new CRC32C();
+        crc.update(buffer.slice(0, length - Integer.BYTES));
+        if ((int) crc.getValue() != buffer.getInt(length - Integer.BYTES)) {
+            throw new IOException(file + " is damaged, its checksum doesn't match");
+        }
+
+        var size = buffer.getInt(8);
+        var nodes = buffer.getInt(12);
+        var xScale = buffer.getDouble(16);
+        if (size < 1 || nodes < 1 || length != HEADER + MappedKdTree.bytes(size, nodes) + Integer.BYTES) {
+            throw new IOException(file + " has the wrong size for its tree");
+        }
+        var name = new byte[NAME];
+        buffer.get(24, name);
+        var end = 0;
+        while (end < NAME && name[end] != 0) {
+            end++;
+        }
+        StandardColorDistance distance;
+        try {
+            distance = StandardColorDistance.valueOf(new String(name, 0, end, StandardCharsets.US_ASCII));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + " uses a distance this version doesn't know", e);
+        }
+        if (!supports(distance)) {
+            throw new IOException(file + " uses a distance this version doesn't index");
+        }
+        return new PaletteIndex(distance, new MappedKdTree(buffer, HEADER, size, nodes, xScale));
+    }
+
+    private void nearest(double[] c0, double[] c1, double[] c2, int[] out, int from, int to) {
+        var best = new int[1];
+        var bestD = new double[1];
+        for (int i = from; i < to; i++) {
+            out[i] = nearest(c0[i], c1[i], c2[i], best, bestD);
+        }
+    }
+
+    private int nearest(double q0, double q1, double q2, int[] best, double[] bestD) {
+        search(q0, q1, q2, 1, best, bestD);
+        return kd.order(best[0]);
+    }
+
+    // The k closest positions in the tree, closest first.
+    private int search(double q0, double q1, double q2, int k, int[] best, double[] bestD) {
+        if (!ciede2000) {
+            return searchStraight(0, q0, q1, q2, k, best, bestD, 0);
+        }
+        // The chroma is scaled up like Lab#distanceCIEDE2000 does it.
+        var cab = Math.sqrt((q1 * 100) * (q1 * 100) + (q2 * 100) * (q2 * 100));
+        return searchCIEDE2000(0, q0, q1, q2, cab, k, best, bestD, 0);
+    }
+
+    // The same search as KdTree#nearest, wherever the tree is kept.
+    private int searchStraight(
+            int node,
+            double qx,
+            double qy,
+            double qz,
+            int k,
+            int[] best,
+            double[] bestD,
+            int found
+    ) {
+        if (found == k && kd.distanceToBox(node, qx, qy, qz) > bestD[k - 1]) {
+            return found;
+        }
+        var left = kd.left(node);
+        if (left == -1) {
+            var xScale = kd.xScale();
+            for (int p = kd.start(node), end = kd.end(node); p < end; p++) {
+                // The same expression as KdTree#distance.
+                var dx = (qx - kd.x(p)) / xScale;
+                var dy = qy - kd.y(p);
+                var dz = qz - kd.z(p);
+                var d = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                found = offer(p, d, k, best, bestD, found);
+            }
+            return found;
+        }
+        var right = kd.right(node);
+        if (kd.distanceToBox(left, qx, qy, qz) <= kd.distanceToBox(right, qx, qy, qz)) {
+            found = searchStraight(left, qx, qy, qz, k, best, bestD, found);
+            return searchStraight(right, qx, qy, qz, k, best, bestD, found);
+        } else {
+            found = searchStraight(right, qx, qy, qz, k, best, bestD, found);
+            return searchStraight(left, qx, qy, qz, k, best, bestD, found);
+        }
+    }
+
+    // Puts position p at distance d in order among the best so far,
+    // dropping the farthest if there are already k.
+    private int offer(int p, double d, int k, int[] best, double[] bestD, int found) {
+        if (found == k && !closer(d, p, bestD[k - 1], best[k - 1])) {
+            return found;
+        }
+        var i = found < k ? found++ : k - 1;
+        while (i > 0 && closer(d, p, bestD[i - 1], best[i - 1])) {
+            best[i] = best[i - 1];
+            bestD[i] = bestD[i - 1];
+            i--;
+        }
+        best[i] = p;
+        bestD[i] = d;
+        return found;
+    }
+
+    private int searchCIEDE2000(
+            int node,
+            double l,
+            double a,
+            double b,
+            double cab,
+            int k,
+            int[] best,
+            double[] bestD,
+            int found
+    ) {
+        if (kd.left(node) == -1) {
+            for (int p = kd.start(node), end = kd.end(node); p < end; p++) {
+                var pl = kd.x(p);
+                var pa = kd.y(p);
+                var pb = kd.z(p);
+                if (found == k && rejects(Lab.lowerBoundCIEDE2000(l, a, b, cab, pl, pl, pa, pa, pb, pb), bestD[k - 1])) {
+                    continue;
+                }
+                // The same as Lab#distanceCIEDE2000, query first.
+                var d = PreparedCIEDE2000.distance(
+                        l * 100, a * 100, b * 100, cab,
+                        pl * 100, pa * 100, pb * 100,
+                        1, 1, 1
+                );
+                found = offer(p, d, k, best, bestD, found);
+            }
+            return found;
+        }
+        var left = kd.left(node);
+        var right = kd.right(node);
+        var toLeft = lowerBound(left, l, a, b, cab);
+        var toRight = lowerBound(right, l, a, b, cab);
+        var first = toLeft <= toRight ? left : right;
+        var second = toLeft <= toRight ? right : left;
+        var toSecond = Math.max(toLeft, toRight);
+        if (found < k || !rejects(Math.min(toLeft, toRight), bestD[k - 1])) {
+            found = searchCIEDE2000(first, l, a, b, cab, k, best, bestD, found);
+        }
+        if (found < k || !rejects(toSecond, bestD[k - 1])) {
+            found = searchCIEDE2000(second, l, a, b, cab, k, best, bestD, found);
+        }
+        return found;
+    }
+
+    private boolean closer(double d, int p, double dq, int q) {
+        return d != dq ? d < dq : kd.order(p) < kd.order(q);
+    }
+
+    private double lowerBound(int node, double l, double a, double b, double cab) {
+        return Lab.lowerBoundCIEDE2000(
+                l, a, b, cab,
+                kd.lo(node, 0), kd.hi(node, 0),
+                kd.lo(node, 1), kd.hi(node, 1),
+                kd.lo(node, 2), kd.hi(node, 2)
+        );
+    }
+
+    // Leaves anything too close to call to the full formula, since the
+    // bound rounds differently.
+    private static boolean rejects(double lowerBound, double best) {
+        return lowerBound > best * (1 + 1e-9);
+    }
+
+    // Buffers what is written to a file and keeps a checksum of it.
+    private static final class Output implements MappedKdTree.Sink {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32C crc = new CRC32C();
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void putInt(int value) {
+            room(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        @Override
+        public void putDouble(double value) {
+            room(Double.BYTES);
+            buffer.putDouble(value);
+        }
+
+        void put(byte[] bytes) {
+            for (var b : bytes) {
+                room(1);
+                buffer.put(b);
+            }
+        }
+
+        // Writes the checksum after everything else.
+        void finish() {
+            flush();
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            write();
+        }
+
+        private void room(int bytes) {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            write();
+        }
+
+        private void write() {
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.clear();
+        }
+    }
+
+    @SuppressWarnings("serial") // Tasks are never serialized.
+    private static final class NearestTask extends RecursiveAction {
+        private final PaletteIndex index;
+        private final ColorBuffer colors;
+        private final int[] out;
+        private final int start;
+        private final int end;
+
+        NearestTask(PaletteIndex index, ColorBuffer colors, int[] out, int start, int end) {
+            this.index = index;
+            this.colors = colors;
+            this.out = out;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= CHUNK) {
+                index.nearest(colors.channel(0), colors.channel(1), colors.channel(2), out, start, end);
+            } else {
+                var mid = (start + end) >>> 1;
+                invokeAll(
+                        new NearestTask(index, colors, out, start, mid),
+                        new NearestTask(index, colors, out, mid, end)
+                );
+            }
+        }
+    }
+}
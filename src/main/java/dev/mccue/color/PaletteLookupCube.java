@@ -0,0 +1,389 @@
+package dev.mccue.color;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32C;
+
+/// The closest palette color to every cell of an RGB grid, worked out up
+/// front, for remapping huge numbers of {@link RGB255} pixels.
+///
+/// The grid has `2^bits` cells along each channel, from 32 per channel at
+/// 5 bits to one cell for every {@link RGB255} color at 8 bits. Each cell
+/// holds the index of the palette color closest to its center, so a lookup
+/// drops the low bits of each channel and reads one byte out of an array.
+/// Below 8 bits that is only approximately the closest color, to within
+/// the size of a cell.
+///
+/// Building measures every cell. Straight line distances and
+/// {@link ColorDistance#CIEDE2000} go through a {@link PaletteIndex}, and
+/// anything else compares each cell to every palette color. At 8 bits
+/// that is 16,777,216 cells, so a cube can be written to a file with
+/// {@link #write} and read back with {@link #read} instead of being built
+/// again.
+///
+/// ```java
+/// var cube = PaletteLookupCube.ofParallel(xterm256, ColorDistance.OKLAB, 6, ForkJoinPool.commonPool());
+/// var index = cube.lookup(image.getRGB(x, y));
+/// ```
+///
+/// Palettes have at most 256 colors. Cells equally far from two of them
+/// go to the lower index. A cube is immutable and safe to use from
+/// several threads.
+public final class PaletteLookupCube {
+    // Cells measured at a time.
+    private static final int CHUNK = 4096;
+
+    // "PLCB" read as a little-endian int.
+    private static final int MAGIC = 0x42434C50;
+    private static final int VERSION = 2;
+
+    // magic, version, bits, palette size, palette checksum and the name of
+    // the distance, padded with zeros. Other distances have no name.
+    private static final int NAME = 32;
+    private static final int HEADER = 5 * Integer.BYTES + NAME;
+
+    private final int bits;
+    private final int shift;
+    private final int mask;
+    private final int paletteSize;
+    private final int paletteChecksum;
+
+    // The distance the cells were measured with, if it is one of the
+    // constants on ColorDistance.
+    private final StandardColorDistance distance;
+
+    // The palette index of cell (r, g, b) is at r << 2 * bits | g << bits | b.
+    private final byte[] table;
+
+    private PaletteLookupCube(
+            int bits,
+            int paletteSize,
+            int paletteChecksum,
+            StandardColorDistance distance,
+            byte[] table
+    ) {
+        this.bits = bits;
+        this.shift = 8 - bits;
+        this.mask = (1 << bits) - 1;
+        this.paletteSize = paletteSize;
+        this.paletteChecksum = paletteChecksum;
+        this.distance = distance;
+        this.table = table;
+    }
+
+    /// Builds a cube.
+    ///
+    /// @param palette The colors to look up. Between 1 and 256 of them.
+    /// @param distance How to compare colors.
+    /// @param bits The cells along each channel, as a power of two. Between 1 and 8.
+    /// @return The cube.
+    public static PaletteLookupCube of(List<? extends Color> palette, ColorDistance distance, int bits) {
+        var builder = new Builder(palette, distance, bits);
+        builder.fill(0, builder.table.length);
+        return builder.cube();
+    }
+
+    /// Builds a cube, measuring the cells across a pool. The cube is the
+    /// same as {@link #of}.
+    ///
+    /// @param palette The colors to look up. Between 1 and 256 of them.
+    /// @param distance How to compare colors.
+    /// @param bits The cells along each channel, as a power of two. Between 1 and 8.
+    /// @param pool The pool to run in.
+    /// @return The cube.
+    public static PaletteLookupCube ofParallel(
+            List<? extends Color> palette,
+            ColorDistance distance,
+            int bits,
+            ForkJoinPool pool
+    ) {
+        var builder = new Builder(palette, distance, bits);
+        pool.invoke(new CellTask(builder, 0, builder.table.length));
+        return builder.cube();
+    }
+
+    /// @return The cells along each channel, as a power of two.
+    public int bits() {
+        return bits;
+    }
+
+    /// @return The number of colors in the palette.
+    public int paletteSize() {
+        return paletteSize;
+    }
+
+    /// @param r The red channel, from 0 to 255.
+    /// @param g The green channel, from 0 to 255.
+    /// @param b The blue channel, from 0 to 255.
+    /// @return The index of the palette color for the cell of `(r, g, b)`.
+    public int lookup(int r, int g, int b) {
+        return table[(r >> shift & mask) << 2 * bits | (g >> shift & mask) << bits | (b >> shift & mask)] & 0xFF;
+    }
+
+    /// @param color The color to look up.
+    /// @return The index of the palette color for the cell of `color`.
+    public int lookup(RGB255 color) {
+        return lookup(color.toPackedInt());
+    }
+
+    /// @param argb A color packed like {@link RGB255#toPackedInt()}. The
+    ///             alpha channel is ignored.
+    /// @return The index of the palette color for the cell of `argb`.
+    public int lookup(int argb) {
+        return table[(argb >> 16 + shift & mask) << 2 * bits
+                | (argb >> 8 + shift & mask) << bits
+                | (argb >> shift & mask)] & 0xFF;
+    }
+
+    /// Looks up many packed colors. See {@link #lookup(int)}.
+    ///
+    /// @param argb The colors to look up.
+    /// @param out Where to write the index of the palette color for each
+    ///            one. Must be at least as long as `argb`.
+    public void lookup(int[] argb, int[] out) {
+        Objects.checkFromIndexSize(0, argb.length, out.length);
+        for (int i = 0; i < argb.length; i++) {
+            out[i] = lookup(argb[i]);
+        }
+    }
+
+    /// Writes the cube to a file, replacing it if it exists. The file is
+    /// written beside it first and then moved over it, so a reader never
+    /// sees half of it.
+    ///
+    /// @param file The file to write.
+    /// @throws IOException If the file can't be written.
+    public void write(Path file) throws IOException {
+        var bytes = ByteBuffer.allocate(HEADER + table.length + Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(bits)
+                .putInt(paletteSize)
+                .putInt(paletteChecksum)
+                .put(Arrays.copyOf(name(distance), NAME))
+                .put(table);
+        var crc = new CRC32C();
+        crc.update(bytes.array(), 0, bytes.position());
+        bytes.putInt((int) crc.getValue());
+
+        var dir = file.toAbsolutePath().getParent();
+        var tmp = Files.createTempFile(dir, "cube", ".tmp");
+        try {
+            Files.write(tmp, bytes.array());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /// Reads a cube written by {@link #write}.
+    ///
+    /// @param file The file to read.
+    /// @param palette The palette the cube was built for. It is compared,
+    ///                by its {@link sRGB} channels, with the one the cube
+    ///                was built for.
+    /// @param distance The distance the cube was built with. The constants
+    ///                 on {@link ColorDistance} are checked against the one
+    ///                 in the file. Any other distance can't be, so it is up
+    ///                 to the caller to keep using the same one.
+    /// @return The cube.
+    /// @throws IOException If the file can't be read, is not a cube, is
+    ///                     damaged or was built for another palette or
+    ///                     distance.
+    public static PaletteLookupCube read(
+            Path file,
+            List<? extends Color> palette,
+            ColorDistance distance
+    ) throws IOException {
+        Objects.requireNonNull(distance, "distance");
+        var all = Files.readAllBytes(file);
+        if (all.length < HEADER + Integer.BYTES) {
+            throw new IOException(file + " is too short to be a palette lookup cube");
+        }
+        var bytes = ByteBuffer.wrap(all).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.getInt() != MAGIC) {
+            throw new IOException(file + " is not a palette lookup cube");
+        }
+        var version = bytes.getInt();
+        if (version != VERSION) {
+            throw new IOException(file + " is version " + version + " of the format, not " + VERSION);
+        }
+        var crc = new CRC32C();
+        crc.update(all, 0, all.length - Integer.BYTES);
+        if ((int) crc.getValue() != bytes.getInt(all.length - Integer.BYTES)) {
+            throw new IOException(file + " is damaged, its checksum doesn't match");
+        }
+        var bits = bytes.getInt();
+        if (bits < 1 || bits > 8 || all.length != HEADER + (1 << 3 * bits) + Integer.BYTES) {
+            throw new IOException(file + " has the wrong size for its cells");
+        }
+        var paletteSize = bytes.getInt();
+        var paletteChecksum = bytes.getInt();
+        if (paletteSize != palette.size() || paletteChecksum != checksum(palette)) {
+            throw new IOException(file + " was built for another palette");
+        }
+        var name = new byte[NAME];
+        bytes.get(name);
+        var standard = distance instanceof StandardColorDistance d ? d : null;
+        if (!Arrays.equals(name, Arrays.copyOf(name(standard), NAME))) {
+            throw new IOException(file + " was built with another distance");
+        }
+        var table = new byte[1 << 3 * bits];
+        bytes.get(table);
+        return new PaletteLookupCube(bits, paletteSize, paletteChecksum, standard, table);
+    }
+
+    private static byte[] name(StandardColorDistance distance) {
+        return distance == null ? new byte[0] : distance.name().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static int checksum(List<? extends Color> palette) {
+        var bytes = ByteBuffer.allocate(3 * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        var crc = new CRC32C();
+        for (var color : palette) {
+            var c = color.sRGB();
+            bytes.clear();
+            bytes.putDouble(c.R()).putDouble(c.G()).putDouble(c.B());
+            crc.update(bytes.array());
+        }
+        return (int) crc.getValue();
+    }
+
+    // Measures cells into the table.
+    private static final class Builder {
+        private final List<? extends Color> palette;
+        private final ColorDistance distance;
+        private final int bits;
+        private final byte[] table;
+
+        // Whichever way the cells are measured.
+        private final PaletteIndex index;
+        private final StandardColorDistance.Prepared prepared;
+
+        Builder(List<? extends Color> palette, ColorDistance distance, int bits) {
+            Objects.requireNonNull(distance, "distance");
+            if (palette.isEmpty() || palette.size() > 256) {
+                throw new IllegalArgumentException("Palettes must have 1 to 256 colors, not " + palette.size());
+            }
+            if (bits < 1 || bits > 8) {
+                throw new IllegalArgumentException("bits must be between 1 and 8: " + bits);
+            }
+            this.palette = List.copyOf(palette);
+            this.distance = distance;
+            this.bits = bits;
+            this.table = new byte[1 << 3 * bits];
+            this.index = PaletteIndex.supports(distance) ? PaletteIndex.of(this.palette, distance) : null;
+            this.prepared = index == null && distance instanceof StandardColorDistance standard
+                    ? (StandardColorDistance.Prepared) standard.prepare(this.palette)
+                    : null;
+        }
+
+        PaletteLookupCube cube() {
+            return new PaletteLookupCube(
+                    bits,
+                    palette.size(),
+                    checksum(palette),
+                    distance instanceof StandardColorDistance standard ? standard : null,
+                    table
+            );
+        }
+
+        // Measures cells [from, to) a chunk at a time.
+        void fill(int from, int to) {
+            for (int start = from; start < to; start += CHUNK) {
+                fillChunk(start, Math.min(to, start + CHUNK));
+            }
+        }
+
+        private void fillChunk(int from, int to) {
+            // The centers of the cells, in sRGB.
+            var n = to - from;
+            var r = new double[n];
+            var g = new double[n];
+            var b = new double[n];
+            var mask = (1 << bits) - 1;
+            var size = 1 << 8 - bits;
+            for (int i = 0; i < n; i++) {
+                var cell = from + i;
+                r[i] = center(cell >> 2 * bits & mask, size);
+                g[i] = center(cell >> bits & mask, size);
+                b[i] = center(cell & mask, size);
+            }
+            var cells = new ColorBuffer(sRGB.class, r, g, b);
+
+            if (index != null) {
+                var out = new int[n];
+                index.nearest(cells, out);
+                for (int i = 0; i < n; i++) {
+                    table[from + i] = (byte) out[i];
+                }
+            } else if (prepared != null) {
+                var q = ((StandardColorDistance) distance).prepare(cells);
+                for (int i = 0; i < n; i++) {
+                    var best = 0;
+                    var bestD = q.distance(i, prepared, 0);
+                    for (int j = 1; j < palette.size(); j++) {
+                        var d = q.distance(i, prepared, j);
+                        if (d < bestD) {
+                            best = j;
+                            bestD = d;
+                        }
+                    }
+                    table[from + i] = (byte) best;
+                }
+            } else {
+                for (int i = 0; i < n; i++) {
+                    var cell = new sRGB(r[i], g[i], b[i]);
+                    var best = 0;
+                    var bestD = distance.distance(cell, palette.get(0));
+                    for (int j = 1; j < palette.size(); j++) {
+                        var d = distance.distance(cell, palette.get(j));
+                        if (d < bestD) {
+                            best = j;
+                            bestD = d;
+                        }
+                    }
+                    table[from + i] = (byte) best;
+                }
+            }
+        }
+
+        // The middle of the channel values of a cell, from 0 to 1.
+        private static double center(int cell, int size) {
+            return (cell * size + (size - 1) / 2.0) / 255.0;
+        }
+    }
+
+    @SuppressWarnings("serial") // Tasks are never serialized.
+    private static final class CellTask extends RecursiveAction {
+        private final Builder builder;
+        private final int from;
+        private final int to;
+
+        CellTask(Builder builder, int from, int to) {
+            this.builder = builder;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                builder.fill(from, to);
+            } else {
+                var mid = (from + to) >>> 1;
+                invokeAll(new CellTask(builder, from, mid), new CellTask(builder, mid, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package dev.mccue.color;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/// Shortens an ordering of colors, read as an open path from the first
+/// color to the last, with local moves.
+///
+/// A 2-opt move reverses a stretch of the path, replacing the two edges at
+/// its ends with two others. An Or-opt move cuts out a run of one to three
+/// colors and puts it back, either way round, somewhere else. Only moves
+/// that create an edge between a color and one of its nearest neighbors
+/// are tried, which finds nearly all the improving ones at a fraction of
+/// the cost of trying every pair.
+///
+/// Each pass looks for the best move around every color in parallel, then
+/// makes as many of them as touch separate stretches of the path, best
+/// first. A color only looks again once an edge next to it has changed.
+/// The first color never moves.
+final class PathRefinement {
+    // Neighbors tried for each color.
+    private static final int NEIGHBORS = 8;
+
+    // Colors per unit of parallel work.
+    private static final int CHUNK = 256;
+
+    // Longest run an Or-opt move takes.
+    private static final int RUN = 3;
+
+    private final PreparedColorDistance distance;
+    private final int n;
+
+    // path[p] is the color at position p, and where[c] the position of color c.
+    private final int[] path;
+    private final int[] where;
+
+    // The nearest neighbors of color c are neighbors[c * NEIGHBORS + k],
+    // -1 past the last one.
+    private final int[] neighbors;
+
+    // edge[p] is the length of the edge from position p to p + 1.
+    private final double[] edge;
+
+    // Whether each color should look for moves in the next pass.
+    private final boolean[] active;
+
+    private PathRefinement(PreparedColorDistance distance, int[] path, ForkJoinPool pool) {
+        this.distance = distance;
+        this.n = path.length;
+        this.path = path;
+        this.where = new int[n];
+        for (int p = 0; p < n; p++) {
+            where[path[p]] = p;
+        }
+        this.neighbors = new int[n * NEIGHBORS];
+        Arrays.fill(neighbors, -1);
+        this.edge = new double[Math.max(0, n - 1)];
+        for (int p = 0; p < n - 1; p++) {
+            edge[p] = d(p, p + 1);
+        }
+        this.active = new boolean[n];
+        Arrays.fill(active, true);
+        findNeighbors(pool);
+    }
+
+    /// Refines `path`, a permutation of the colors of `distance`, in place.
+    ///
+    /// @param deadline The value of {@link System#nanoTime()} after which
+    ///                 no new pass starts.
+    /// @param minImprovement Stop once a pass shortens the path by less
+    ///                       than this fraction of its length.
+    /// @return The length of the path afterwards.
+    static double refine(
+            PreparedColorDistance distance,
+            int[] path,
+            long deadline,
+            double minImprovement,
+            ForkJoinPool pool
+    ) {
+        if (path.length < 3) {
+            return length(distance, path);
+        }
+        var refinement = new PathRefinement(distance, path, pool);
+        var length = refinement.length();
+        while (System.nanoTime() - deadline < 0) {
+            var gained = refinement.pass(pool);
+            if (gained == 0) {
+                break;
+            }
+            var before = length;
+            length = refinement.length();
+            if (before - length < minImprovement * before) {
+                break;
+            }
+        }
+        return length;
+    }
+
+    /// The length of `path` as an open path.
+    static double length(PreparedColorDistance distance, int[] path) {
+        var length = 0.0;
+        for (int p = 0; p < path.length - 1; p++) {
+            length += distance(distance, path[p], path[p + 1]);
+        }
+        return length;
+    }
+
+    private static double distance(PreparedColorDistance distance, int i, int j) {
+        return i < j ? distance.distance(i, j) : distance.distance(j, i);
+    }
+
+    private double length() {
+        var length = 0.0;
+        for (var e : edge) {
+            length += e;
+        }
+        return length;
+    }
+
+    // The distance between the colors at two positions, 0 if either is off
+    // the end of the path.
+    private double d(int p, int q) {
+        if (p < 0 || q < 0 || p >= n || q >= n) {
+            return 0;
+        }
+        return distance(distance, path[p], path[q]);
+    }
+
+    // The edge from p to p + 1, 0 off the ends.
+    private double e(int p) {
+        return p < 0 || p >= n - 1 ? 0 : edge[p];
+    }
+
+    private void findNeighbors(ForkJoinPool pool) {
+        var kd = distance instanceof StandardColorDistance.Prepared prepared ? prepared.kdTree(n) : null;
+        // The k-d tree reorders its points, so colors are found by the
+        // inverse of its order.
+        var position = new int[kd == null ? 0 : n];
+        for (int p = 0; p < position.length; p++) {
+            position[kd.order[p]] = p;
+        }
+        pool.invoke(new ColorTask(0, n, (from, to) -> {
+            var best = new int[NEIGHBORS];
+            var bestD = new double[NEIGHBORS];
+            for (int c = from; c < to; c++) {
+                int found;
+                if (kd != null) {
+                    found = kd.nearest(position[c], NEIGHBORS, best, bestD);
+                    for (int k = 0; k < found; k++) {
+                        best[k] = kd.order[best[k]];
+                    }
+                } else {
+                    found = nearest(c, best, bestD);
+                }
+                System.arraycopy(best, 0, neighbors, c * NEIGHBORS, found);
+            }
+        }));
+    }
+
+    // Compares color c to every other color. Equal distances go to the
+    // lower index.
+    private int nearest(int c, int[] best, double[] bestD) {
+        var found = 0;
+        for (int o = 0; o < n; o++) {
+            if (o == c) {
+                continue;
+            }
+            var d = distance(distance, c, o);
+            if (found == NEIGHBORS && d >= bestD[NEIGHBORS - 1]) {
+                continue;
+            }
+            var i = found < NEIGHBORS ? found++ : NEIGHBORS - 1;
+            while (i > 0 && d < bestD[i - 1]) {
+                best[i] = best[i - 1];
+                bestD[i] = bestD[i - 1];
+                i--;
+            }
+            best[i] = o;
+            bestD[i] = d;
+        }
+        return found;
+    }
+
+    // A move and the stretch of positions [lo, hi] it reads or writes.
+    //
+    // For 2-opt, a and b are the edges p and q whose ends are swapped, so
+    // positions p + 1 through q are reversed. For Or-opt, a is where the run
+    // of length starts and b is the position it goes after.
+    private record Move(double gain, int lo, int hi, boolean twoOpt, int a, int b, int length, boolean reversed) {
+        static final Comparator<Move> BEST_FIRST = Comparator
+                .comparingDouble(Move::gain).reversed()
+                .thenComparingInt(Move::lo);
+    }
+
+    // One pass. Returns the sum of the gains of the moves made.
+    private double pass(ForkJoinPool pool) {
+        var colors = new int[n];
+        var count = 0;
+        for (int c = 0; c < n; c++) {
+            if (active[c]) {
+                colors[count++] = c;
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        var found = new Move[count];
+        pool.invoke(new ColorTask(0, count, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                found[i] = bestMove(colors[i]);
+            }
+        }));
+
+        var moves = new ArrayList<Move>();
+        for (int i = 0; i < count; i++) {
+            if (found[i] == null) {
+                active[colors[i]] = false;
+            } else {
+                moves.add(found[i]);
+            }
+        }
+        moves.sort(Move.BEST_FIRST);
+
+        // Moves on separate stretches don't change each other's gains.
+        var taken = new TreeMap<Integer, Integer>();
+        var gained = 0.0;
+        for (var move : moves) {
+            var before = taken.floorEntry(move.hi());
+            if (before != null && before.getValue() >= move.lo()) {
+                continue;
+            }
+            taken.put(move.lo(), move.hi());
+            apply(move);
+            gained += move.gain();
+        }
+        return gained;
+    }
+
+    private Move bestMove(int c) {
+        var i = where[c];
+        Move best = null;
+        for (int k = 0; k < NEIGHBORS; k++) {
+            var o = neighbors[c * NEIGHBORS + k];
+            if (o == -1) {
+                break;
+            }
+            var j = where[o];
+            var lo = Math.min(i, j);
+            var hi = Math.max(i, j);
+            // Join c and o either across the edges after them or the ones
+            // before them.
+            best = better(best, twoOpt(lo, hi));
+            best = better(best, twoOpt(lo - 1, hi - 1));
+            // Move a run that starts or ends at c next to o.
+            for (int length = 1; length <= RUN; length++) {
+                best = better(best, orOpt(i, length, j));
+                best = better(best, orOpt(i, length, j - 1));
+                best = better(best, orOpt(i - length + 1, length, j));
+                best = better(best, orOpt(i - length + 1, length, j - 1));
+            }
+        }
+        return best;
+    }
+
+    private static Move better(Move a, Move b) {
+        if (b == null) {
+            return a;
+        }
+        if (a == null || b.gain() > a.gain()) {
+            return b;
+        }
+        return a;
+    }
+
+    // Whether a gain is more than rounding could account for.
+    private static boolean improves(double gain, double removed) {
+        return gain > 1e-12 * removed;
+    }
+
+    // Reverses positions p + 1 through q.
+    private Move twoOpt(int p, int q) {
+        if (p < 0 || q > n - 1 || q < p + 2) {
+            return null;
+        }
+        var removed = e(p) + e(q);
+        var gain = removed - d(p, q) - d(p + 1, q + 1);
+        if (!improves(gain, removed)) {
+            return null;
+        }
+        return new Move(gain, p, Math.min(n - 1, q + 1), true, p, q, 0, false);
+    }
+
+    // Moves the run at start through start + length - 1 to between t and
+    // t + 1, whichever way round is shorter.
+    private Move orOpt(int start, int length, int t) {
+        var end = start + length - 1;
+        if (start < 1 || end > n - 1 || t < 0 || t > n - 1 || (t >= start - 1 && t <= end)) {
+            return null;
+        }
+        var removed = e(start - 1) + e(end) + e(t);
+        var forward = d(t, start) + d(end, t + 1);
+        var backward = d(t, end) + d(start, t + 1);
+        var gain = removed - d(start - 1, end + 1) - Math.min(forward, backward);
+        if (!improves(gain, removed)) {
+            return null;
+        }
+        var lo = t < start ? t : start - 1;
+        var hi = t < start ? end + 1 : t + 1;
+        return new Move(gain, lo, Math.min(n - 1, hi), false, start, t, length, backward < forward);
+    }
+
+    private void apply(Move move) {
+        if (move.twoOpt()) {
+            var p = move.a();
+            var q = move.b();
+            for (int l = p + 1, r = q; l < r; l++, r--) {
+                var c = path[l];
+                path[l] = path[r];
+                path[r] = c;
+            }
+            changed(p, q + 1);
+            touch(p, p + 1, q, q + 1);
+            return;
+        }
+
+        var start = move.a();
+        var length = move.length();
+        var t = move.b();
+        var run = Arrays.copyOfRange(path, start, start + length);
+        if (move.reversed()) {
+            for (int l = 0, r = length - 1; l < r; l++, r--) {
+                var c = run[l];
+                run[l] = run[r];
+                run[r] = c;
+            }
+        }
+        if (t > start) {
+            // Everything between slides back over the run.
+            System.arraycopy(path, start + length, path, start, t - start - length + 1);
+            System.arraycopy(run, 0, path, t - length + 1, length);
+            changed(start - 1, t + 1);
+            touch(start - 1, start, t - length, t - length + 1, t, t + 1);
+        } else {
+            System.arraycopy(path, t + 1, path, t + 1 + length, start - t - 1);
+            System.arraycopy(run, 0, path, t + 1, length);
+            changed(t, start + length);
+            touch(t, t + 1, t + length, t + length + 1, start + length - 1, start + length);
+        }
+    }
+
+    // Updates positions and edges after rewriting positions [lo, hi].
+    private void changed(int lo, int hi) {
+        lo = Math.max(0, lo);
+        hi = Math.min(n - 1, hi);
+        for (int p = lo; p <= hi; p++) {
+            where[path[p]] = p;
+        }
+        for (int p = lo; p < hi; p++) {
+            edge[p] = d(p, p + 1);
+        }
+    }
+
+    // Wakes up the colors at the ends of new edges.
+    private void touch(int... positions) {
+        for (var p : positions) {
+            if (p >= 0 && p < n) {
+                active[path[p]] = true;
+            }
+        }
+    }
+
+    private interface Range {
+        void run(int from, int to);
+    }
+
+    @SuppressWarnings("serial") // Tasks are never serialized.
+    private static final class ColorTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final Range range;
+
+        ColorTask(int from, int to, Range range) {
+            this.from = from;
+            this.to = to;
+            this.range = range;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                range.run(from, to);
+            } else {
+                var mid = (from + to) >>> 1;
+                invokeAll(new ColorTask(from, mid, range), new ColorTask(mid, to, range));
+            }
+        }
+    }
+}
@@ -0,0 +1,553 @@
+package dev.mccue.color;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/// Converts files of raw pixels from one color space and {@link PixelFormat}
+/// to another.
+///
+/// Both files are memory mapped a window at a time, and each window is
+/// converted in small chunks with a {@link ConversionPlan}. Only one window
+/// of each file is mapped at once and the scratch space is a fixed size,
+/// so memory use does not depend on the size of the file. That makes it
+/// possible to convert dumps far larger than the heap.
+///
+/// ```java
+/// PixelFiles.convert(
+///         Path.of("frame.rgb"), RGB255.class, PixelFormat.RGB8,
+///         Path.of("frame.lab"), Lab.class, PixelFormat.PLANAR_FLOAT32
+/// );
+/// ```
+///
+/// {@link #sortApproximate} orders a file the same way, sorting runs of
+/// it in memory and merging them through temporary files.
+///
+/// Multi-byte channels are little-endian. Files have no header, so the
+/// number of pixels is the size of the input divided by
+/// {@link PixelFormat#bytesPerPixel()}.
+public final class PixelFiles {
+    // Pixels mapped at a time.
+    private static final int WINDOW = 1 << 20;
+
+    // Pixels converted at a time.
+    private static final int CHUNK = 1024;
+
+    // Bytes of a run file read or written at a time.
+    private static final int RUN_BUFFER = 1 << 16;
+
+    private PixelFiles() {}
+
+    /// Converts a file of pixels using D65 as reference white.
+    ///
+    /// @param src The file to read.
+    /// @param from The color space of the pixels in `src`.
+    /// @param fromFormat The layout of the pixels in `src`.
+    /// @param dst The file to write. It is replaced if it exists.
+    /// @param to The color space to convert to.
+    /// @param toFormat The layout to write.
+    /// @return The number of pixels converted.
+    /// @throws IOException If either file can't be accessed, or `src` is not a whole number of pixels.
+    public static long convert(
+            Path src,
+            Class<? extends Color> from,
+            PixelFormat fromFormat,
+            Path dst,
+            Class<? extends Color> to,
+            PixelFormat toFormat
+    ) throws IOException {
+        return convert(src, from, fromFormat, dst, to, toFormat, ReferenceWhite.D65);
+    }
+
+    /// Converts a file of pixels.
+    ///
+    /// @param src The file to read.
+    /// @param from The color space of the pixels in `src`.
+    /// @param fromFormat The layout of the pixels in `src`.
+    /// @param dst The file to write. It is replaced if it exists.
+    /// @param to The color space to convert to.
+    /// @param toFormat The layout to write.
+    /// @param referenceWhite The reference white to use.
+    /// @return The number of pixels converted.
+    /// @throws IOException If either file can't be accessed, or `src` is not a whole number of pixels.
+    public static long convert(
+            Path src,
+            Class<? extends Color> from,
+            PixelFormat fromFormat,
+            Path dst,
+            Class<? extends Color> to,
+            PixelFormat toFormat,
+            ReferenceWhite referenceWhite
+    ) throws IOException {
+        Objects.requireNonNull(src, "src");
+        Objects.requireNonNull(dst, "dst");
+        Objects.requireNonNull(fromFormat, "fromFormat");
+        Objects.requireNonNull(toFormat, "toFormat");
+        var plan = Color.converter(from, to, referenceWhite);
+        if (!fromFormat.supports(from)) {
+            throw new IllegalArgumentException(fromFormat + " cannot hold " + from.getSimpleName() + " colors");
+        }
+        if (!toFormat.supports(to)) {
+            throw new IllegalArgumentException(toFormat + " cannot hold " + to.getSimpleName() + " colors");
+        }
+        if (Files.exists(dst) && Files.isSameFile(src, dst)) {
+            throw new IllegalArgumentException("Cannot convert a file into itself: " + src);
+        }
+
+        try (var in = FileChannel.open(src, StandardOpenOption.READ);
+             var out = FileChannel.open(
+                     dst,
+                     StandardOpenOption.READ,
+                     StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING
+             )) {
+            var size = in.size();
+            if (size % fromFormat.bytesPerPixel() != 0) {
+                throw new IOException(
+                        src + " is " + size + " bytes, which is not a whole number of " + fromFormat + " pixels"
+                );
+            }
+            var pixels = size / fromFormat.bytesPerPixel();
+
+            var c0 = new double[CHUNK];
+            var c1 = new double[CHUNK];
+            var c2 = new double[CHUNK];
+            for (long start = 0; start < pixels; start += WINDOW) {
+                var count = (int) Math.min(WINDOW, pixels - start);
+                var input = Window.map(in, FileChannel.MapMode.READ_ONLY, fromFormat, pixels, start, count);
+                var output = Window.map(out, FileChannel.MapMode.READ_WRITE, toFormat, pixels, start, count);
+                for (int i = 0; i < count; i += CHUNK) {
+                    var n = Math.min(CHUNK, count - i);
+                    input.read(i, n, c0, c1, c2);
+                    plan.convert(c0, c1, c2, 0, n);
+                    output.write(i, n, c0, c1, c2);
+                    if (toFormat == PixelFormat.RGBA8) {
+                        output.alpha(i, n, fromFormat == PixelFormat.RGBA8 ? input : null);
+                    }
+                }
+            }
+            return pixels;
+        }
+    }
+
+    /// Orders a file of pixels along a Hilbert curve through `space`,
+    /// using D65 as reference white, sorting a million pixels in memory at
+    /// a time. See {@link #sortApproximate(Path, Class, PixelFormat, Path, Class, int)}.
+    ///
+    /// @param src The file to read.
+    /// @param from The color space of the pixels in `src`.
+    /// @param format The layout of the pixels in `src` and `dst`.
+    /// @param dst The file to write. It is replaced if it exists.
+    /// @param space Either {@link Lab} or {@link OkLab}.
+    /// @return The number of pixels sorted.
+    /// @throws IOException If either file or a temporary file can't be accessed, or `src` is not a whole number of pixels.
+    public static long sortApproximate(
+            Path src,
+            Class<? extends Color> from,
+            PixelFormat format,
+            Path dst,
+            Class<? extends Color> space
+    ) throws IOException {
+        return sortApproximate(src, from, format, dst, space, WINDOW);
+    }
+
+    /// Orders a file of pixels along a Hilbert curve through `space`,
+    /// using D65 as reference white.
+    ///
+    /// This is {@link Color#sortApproximate(List, Class)} for files too
+    /// large for the heap, as an external merge sort. A first pass finds
+    /// the box that bounds the pixels in `space`. The second sorts runs of
+    /// `runPixels` pixels in memory and writes each to a temporary file
+    /// next to `dst`, as the key of each pixel followed by its bytes. A
+    /// last pass merges the runs into `dst`. Pixels are copied byte for
+    /// byte, so `dst` holds exactly the pixels of `src`, alpha included.
+    ///
+    /// Sorting a run takes 8 bytes of heap per pixel for its keys. The rest
+    /// goes through mapped windows of `src` and `dst` and small buffers of
+    /// the run files, so runs are not limited by the 2GB a single mapping
+    /// can hold.
+    ///
+    /// @param src The file to read.
+    /// @param from The color space of the pixels in `src`.
+    /// @param format The layout of the pixels in `src` and `dst`.
+    /// @param dst The file to write. It is replaced if it exists.
+    /// @param space Either {@link Lab} or {@link OkLab}.
+    /// @param runPixels How many pixels to sort in memory at once.
+    /// @return The number of pixels sorted.
+    /// @throws IOException If either file or a temporary file can't be accessed, or `src` is not a whole number of pixels.
+    public static long sortApproximate(
+            Path src,
+            Class<? extends Color> from,
+            PixelFormat format,
+            Path dst,
+            Class<? extends Color> space,
+            int runPixels
+    ) throws IOException {
+        Objects.requireNonNull(src, "src");
+        Objects.requireNonNull(dst, "dst");
+        Objects.requireNonNull(format, "format");
+        if (space != Lab.class && space != OkLab.class) {
+            throw new IllegalArgumentException("Can only sort along a curve in Lab or OkLab, not " + space);
+        }
+        var plan = Color.converter(from, space);
+        if (!format.supports(from)) {
+            throw new IllegalArgumentException(format + " cannot hold " + from.getSimpleName() + " colors");
+        }
+        if (runPixels < 1) {
+            throw new IllegalArgumentException("runPixels must be positive: " + runPixels);
+        }
+        if (Files.exists(dst) && Files.isSameFile(src, dst)) {
+            throw new IllegalArgumentException("Cannot sort a file into itself: " + src);
+        }
+
+        var runs = new ArrayList<Path>();
+        try (var in = FileChannel.open(src, StandardOpenOption.READ)) {
+            var size = in.size();
+            if (size % format.bytesPerPixel() != 0) {
+                throw new IOException(
+                        src + " is " + size + " bytes, which is not a whole number of " + format + " pixels"
+                );
+            }
+            var pixels = size / format.bytesPerPixel();
+            var c0 = new double[CHUNK];
+            var c1 = new double[CHUNK];
+            var c2 = new double[CHUNK];
+
+            // The box that bounds the pixels.
+            var lo = new double[] { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+            var hi = new double[] { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+            for (long start = 0; start < pixels; start += WINDOW) {
+                var count = (int) Math.min(WINDOW, pixels - start);
+                var input = Window.map(in, FileChannel.MapMode.READ_ONLY, format, pixels, start, count);
+                for (int i = 0; i < count; i += CHUNK) {
+                    var n = Math.min(CHUNK, count - i);
+                    input.read(i, n, c0, c1, c2);
+                    plan.convert(c0, c1, c2, 0, n);
+                    for (int k = 0; k < n; k++) {
+                        lo[0] = Math.min(lo[0], c0[k]);
+                        hi[0] = Math.max(hi[0], c0[k]);
+                        lo[1] = Math.min(lo[1], c1[k]);
+                        hi[1] = Math.max(hi[1], c1[k]);
+                        lo[2] = Math.min(lo[2], c2[k]);
+                        hi[2] = Math.max(hi[2], c2[k]);
+                    }
+                }
+            }
+            var curve = new HilbertCurve(lo, hi, pixels);
+
+            // Sorted runs, each record a key and then the bytes of its pixel.
+            var record = Long.BYTES + format.bytesPerPixel();
+            var directory = dst.toAbsolutePath().getParent();
+            var pixel = new byte[format.bytesPerPixel()];
+            var keys = new long[(int) Math.min(runPixels, pixels)];
+            var buffer = ByteBuffer.allocate(Math.max(1, RUN_BUFFER / record) * record).order(ByteOrder.LITTLE_ENDIAN);
+            for (long start = 0; start < pixels; start += runPixels) {
+                var count = (int) Math.min(runPixels, pixels - start);
+                var windows = new Window[(count - 1) / WINDOW + 1];
+                for (int w = 0; w < windows.length; w++) {
+                    var first = w * WINDOW;
+                    var inWindow = Math.min(WINDOW, count - first);
+                    windows[w] = Window.map(in, FileChannel.MapMode.READ_ONLY, format, pixels, start + first, inWindow);
+                    for (int i = 0; i < inWindow; i += CHUNK) {
+                        var n = Math.min(CHUNK, inWindow - i);
+                        windows[w].read(i, n, c0, c1, c2);
+                        plan.convert(c0, c1, c2, 0, n);
+                        for (int k = 0; k < n; k++) {
+                            keys[first + i + k] = curve.key(c0[k], c1[k], c2[k], start + first + i + k);
+                        }
+                    }
+                }
+                Arrays.sort(keys, 0, count);
+
+                var run = Files.createTempFile(directory, "sort", ".run");
+                runs.add(run);
+                try (var out = FileChannel.open(run, StandardOpenOption.WRITE)) {
+                    buffer.clear();
+                    for (int k = 0; k < count; k++) {
+                        var i = (int) (curve.index(keys[k]) - start);
+                        windows[i / WINDOW].get(i % WINDOW, pixel);
+                        buffer.putLong(keys[k]);
+                        buffer.put(pixel);
+                        if (!buffer.hasRemaining()) {
+                            writeFully(out, buffer);
+                        }
+                    }
+                    writeFully(out, buffer);
+                }
+            }
+
+            merge(runs, record, format, pixels, dst);
+            return pixels;
+        } finally {
+            for (var run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    // Writes out what is in buffer and empties it.
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Merges sorted runs into dst, always taking the smallest key at the
+    // front of any run. The runs sit in a binary heap ordered by that key.
+    // Each run is read a buffer at a time and closed before this returns,
+    // so the files can be deleted.
+    private static void merge(
+            List<Path> runs,
+            int record,
+            PixelFormat format,
+            long pixels,
+            Path dst
+    ) throws IOException {
+        var readers = new RunReader[runs.size()];
+        try {
+            for (int r = 0; r < readers.length; r++) {
+                readers[r] = new RunReader(runs.get(r), record);
+            }
+            merge(readers, format, pixels, dst);
+        } finally {
+            for (var reader : readers) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+        }
+    }
+
+    private static void merge(RunReader[] readers, PixelFormat format, long pixels, Path dst) throws IOException {
+        var heap = new int[readers.length];
+        var heads = new long[readers.length];
+        var size = 0;
+        for (int r = 0; r < readers.length; r++) {
+            readers[r].next();
+            heads[r] = readers[r].buffer.getLong();
+            heap[size] = r;
+            siftUp(heap, heads, size++);
+        }
+
+        var pixel = new byte[format.bytesPerPixel()];
+        try (var out = FileChannel.open(
+                dst,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            for (long start = 0; start < pixels; start += WINDOW) {
+                var count = (int) Math.min(WINDOW, pixels - start);
+                var output = Window.map(out, FileChannel.MapMode.READ_WRITE, format, pixels, start, count);
+                for (int i = 0; i < count; i++) {
+                    var r = heap[0];
+                    readers[r].buffer.get(pixel);
+                    output.put(i, pixel);
+                    if (readers[r].next()) {
+                        heads[r] = readers[r].buffer.getLong();
+                    } else {
+                        heap[0] = heap[--size];
+                    }
+                    siftDown(heap, heads, size);
+                }
+            }
+        }
+    }
+
+    // Reads the records of a run file a buffer at a time.
+    private static final class RunReader implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        RunReader(Path run, int record) throws IOException {
+            this.channel = FileChannel.open(run, StandardOpenOption.READ);
+            this.buffer = ByteBuffer.allocate(Math.max(1, RUN_BUFFER / record) * record).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.limit(0);
+        }
+
+        // Whether there is another record, refilling the buffer if it is
+        // used up. The buffer holds a whole number of records and the file
+        // is read until the buffer is full, so records are never split.
+        boolean next() throws IOException {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+            buffer.clear();
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // Keep reading.
+            }
+            buffer.flip();
+            return buffer.hasRemaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static void siftUp(int[] heap, long[] heads, int i) {
+        while (i > 0 && heads[heap[i]] < heads[heap[(i - 1) / 2]]) {
+            var parent = (i - 1) / 2;
+            var t = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = t;
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, long[] heads, int size) {
+        var i = 0;
+        while (true) {
+            var smallest = i;
+            var l = 2 * i + 1;
+            var r = l + 1;
+            if (l < size && heads[heap[l]] < heads[heap[smallest]]) {
+                smallest = l;
+            }
+            if (r < size && heads[heap[r]] < heads[heap[smallest]]) {
+                smallest = r;
+            }
+            if (smallest == i) {
+                return;
+            }
+            var t = heap[i];
+            heap[i] = heap[smallest];
+            heap[smallest] = t;
+            i = smallest;
+        }
+    }
+
+    // The mapped part of a file holding pixels [start, start + count).
+    // Interleaved formats map one region, planar formats one per channel.
+    private record Window(PixelFormat format, ByteBuffer[] channels, int[] bases, int step) {
+        static Window map(
+                FileChannel channel,
+                FileChannel.MapMode mode,
+                PixelFormat format,
+                long pixels,
+                long start,
+                int count
+        ) throws IOException {
+            var channels = new ByteBuffer[3];
+            var bases = new int[3];
+            if (format.isPlanar()) {
+                for (int c = 0; c < 3; c++) {
+                    channels[c] = channel.map(mode, format.offset(start, c, pixels), (long) count * format.bytesPerChannel())
+                            .order(ByteOrder.LITTLE_ENDIAN);
+                }
+                return new Window(format, channels, bases, format.bytesPerChannel());
+            }
+
+            var buffer = channel.map(mode, format.offset(start, 0, pixels), (long) count * format.bytesPerPixel())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            for (int c = 0; c < 3; c++) {
+                channels[c] = buffer;
+                bases[c] = c * format.bytesPerChannel();
+            }
+            return new Window(format, channels, bases, format.bytesPerPixel());
+        }
+
+        void read(int first, int n, double[] c0, double[] c1, double[] c2) {
+            read(0, first, n, c0);
+            read(1, first, n, c1);
+            read(2, first, n, c2);
+        }
+
+        private void read(int c, int first, int n, double[] values) {
+            var buffer = channels[c];
+            var at = bases[c] + first * step;
+            switch (format) {
+                case RGB8, RGBA8 -> {
+                    for (int i = 0; i < n; i++, at += step) {
+                        values[i] = Byte.toUnsignedInt(buffer.get(at));
+                    }
+                }
+                case FLOAT32, PLANAR_FLOAT32 -> {
+                    for (int i = 0; i < n; i++, at += step) {
+                        values[i] = buffer.getFloat(at);
+                    }
+                }
+                case FLOAT64, PLANAR_FLOAT64 -> {
+                    for (int i = 0; i < n; i++, at += step) {
+                        values[i] = buffer.getDouble(at);
+                    }
+                }
+            }
+        }
+
+        void write(int first, int n, double[] c0, double[] c1, double[] c2) {
+            write(0, first, n, c0);
+            write(1, first, n, c1);
+            write(2, first, n, c2);
+        }
+
+        private void write(int c, int first, int n, double[] values) {
+            var buffer = channels[c];
+            var at = bases[c] + first * step;
+            switch (format) {
+                case RGB8, RGBA8 -> {
+                    for (int i = 0; i < n; i++, at += step) {
+                        buffer.put(at, (byte) (int) values[i]);
+                    }
+                }
+                case FLOAT32, PLANAR_FLOAT32 -> {
+                    for (int i = 0; i < n; i++, at += step) {
+                        buffer.putFloat(at, (float) values[i]);
+                    }
+                }
+                case FLOAT64, PLANAR_FLOAT64 -> {
+                    for (int i = 0; i < n; i++, at += step) {
+                        buffer.putDouble(at, values[i]);
+                    }
+                }
+            }
+        }
+
+        // Copies the bytes of pixel i, all channels and any alpha, into pixel.
+        void get(int i, byte[] pixel) {
+            if (format.isPlanar()) {
+                var n = format.bytesPerChannel();
+                for (int c = 0; c < 3; c++) {
+                    channels[c].get(bases[c] + i * step, pixel, c * n, n);
+                }
+            } else {
+                channels[0].get(i * step, pixel, 0, step);
+            }
+        }
+
+        // Overwrites the bytes of pixel i with the ones get copied.
+        void put(int i, byte[] pixel) {
+            if (format.isPlanar()) {
+                var n = format.bytesPerChannel();
+                for (int c = 0; c < 3; c++) {
+                    channels[c].put(bases[c] + i * step, pixel, c * n, n);
+                }
+            } else {
+                channels[0].put(i * step, pixel, 0, step);
+            }
+        }
+
+        // Copies alpha from an RGBA8 source, or makes the pixels opaque if there is none.
+        void alpha(int first, int n, Window src) {
+            var buffer = channels[0];
+            for (int i = first; i < first + n; i++) {
+                var alpha = src == null ? (byte) 0xFF : src.channels[0].get(i * 4 + 3);
+                buffer.put(i * 4 + 3, alpha);
+            }
+        }
+    }
+}
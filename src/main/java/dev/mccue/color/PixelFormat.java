@@ -0,0 +1,74 @@
+package dev.mccue.color;
+
+/// How the channels of colors are laid out in raw memory.
+///
+/// Interleaved formats store the channels of each pixel next to each
+/// other, `c0 c1 c2 c0 c1 c2 ...`. Planar formats store every pixel's first
+/// channel, then every pixel's second channel, then every pixel's third
+/// channel, so where a channel starts depends on how many pixels there are.
+///
+/// The 8-bit formats store unsigned bytes and only hold {@link RGB255}
+/// colors. The floating point formats hold the channels of any color space
+/// in the same order as the components of its record.
+///
+/// Multi-byte values are in whatever byte order the buffer they are read
+/// from uses.
+public enum PixelFormat {
+    /// Interleaved `R G B` bytes.
+    RGB8(1, 3, false),
+    /// Interleaved `R G B A` bytes. Alpha is ignored when reading. When
+    /// writing it is copied from an `RGBA8` source and is otherwise 255.
+    RGBA8(1, 4, false),
+    /// Interleaved 32-bit floats.
+    FLOAT32(4, 3, false),
+    /// Interleaved 64-bit doubles.
+    FLOAT64(8, 3, false),
+    /// Planar 32-bit floats.
+    PLANAR_FLOAT32(4, 3, true),
+    /// Planar 64-bit doubles.
+    PLANAR_FLOAT64(8, 3, true);
+
+    private final int bytesPerChannel;
+    private final int channels;
+    private final boolean planar;
+
+    PixelFormat(int bytesPerChannel, int channels, boolean planar) {
+        this.bytesPerChannel = bytesPerChannel;
+        this.channels = channels;
+        this.planar = planar;
+    }
+
+    /// @return The size of a single channel in bytes.
+    public int bytesPerChannel() {
+        return bytesPerChannel;
+    }
+
+    /// @return The size of a whole pixel in bytes, including any alpha.
+    public int bytesPerPixel() {
+        return bytesPerChannel * channels;
+    }
+
+    /// @return Whether this format stores each channel in its own plane.
+    public boolean isPlanar() {
+        return planar;
+    }
+
+    /// @param space A color space.
+    /// @return Whether this format can hold colors in `space`.
+    public boolean supports(Class<? extends Color> space) {
+        return bytesPerChannel != 1 || space == RGB255.class;
+    }
+
+    /// Finds the byte offset of a channel.
+    ///
+    /// @param pixel The index of the pixel.
+    /// @param channel The channel, 0 to 2, or 3 for the alpha of {@link #RGBA8}.
+    /// @param pixels The total number of pixels in the buffer. Only used by planar formats.
+    /// @return The offset of the first byte of the channel.
+    public long offset(long pixel, int channel, long pixels) {
+        if (planar) {
+            return (channel * pixels + pixel) * bytesPerChannel;
+        }
+        return pixel * bytesPerPixel() + (long) channel * bytesPerChannel;
+    }
+}
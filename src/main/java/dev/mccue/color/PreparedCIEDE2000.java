@@ -0,0 +1,328 @@
+package dev.mccue.color;
+
+import java.util.Objects;
+
+/// A reference color ready to be compared against many others with
+/// CIEDE2000.
+///
+/// {@link Lab#distanceCIEDE2000klch(Lab, double, double, double)} works
+/// everything out for both colors on every call. When one color is
+/// compared against a whole palette, the parts that only depend on that
+/// color, its channels scaled up to the range the formula expects and its
+/// chroma, are the same every time. A `PreparedCIEDE2000` computes them
+/// once, so each comparison only does the work that depends on the pair.
+///
+/// The rest can't be cached. The `G` factor that skews `a` depends on the
+/// mean chroma of both colors, and with it `a'`, `C'` and `h'` of the
+/// reference.
+///
+/// ```java
+/// var query = PreparedCIEDE2000.of(color.Lab());
+/// query.distances(L, a, b, out);
+/// ```
+///
+/// Results are exactly the same as {@link Lab#distanceCIEDE2000klch}.
+/// {@link #distancesFast(float[], float[], float[], float[])} gives the
+/// same results as {@link Lab#distanceCIEDE2000Fast(Lab)} instead.
+public final class PreparedCIEDE2000 {
+    // 25^7, exactly.
+    private static final double POW_25_7 = 6103515625.0;
+    private static final float POW_25_7_F = 6103515625.0f;
+
+    private static final double DEG2RAD = Math.PI / 180;
+    private static final double RAD2DEG = 180 / Math.PI;
+
+    private final Lab reference;
+    private final double kL;
+    private final double kC;
+    private final double kH;
+
+    private final double l1;
+    private final double a1;
+    private final double b1;
+    private final double cab1;
+
+    private final float l1f;
+    private final float a1f;
+    private final float b1f;
+    private final float cab1f;
+
+    private PreparedCIEDE2000(Lab reference, double kL, double kC, double kH) {
+        this.reference = reference;
+        this.kL = kL;
+        this.kC = kC;
+        this.kH = kH;
+        this.l1 = reference.L() * 100;
+        this.a1 = reference.a() * 100;
+        this.b1 = reference.b() * 100;
+        this.cab1 = Math.sqrt(a1 * a1 + b1 * b1);
+        this.l1f = (float) reference.L() * 100f;
+        this.a1f = (float) reference.a() * 100f;
+        this.b1f = (float) reference.b() * 100f;
+        this.cab1f = chroma(a1f, b1f);
+    }
+
+    /// Prepares a color to be compared with {@link Lab#distanceCIEDE2000(Lab)}.
+    ///
+    /// @param reference The color to compare against.
+    /// @return The prepared color.
+    public static PreparedCIEDE2000 of(Lab reference) {
+        return of(reference, 1, 1, 1);
+    }
+
+    /// Prepares a color to be compared with {@link Lab#distanceCIEDE2000klch(Lab, double, double, double)}.
+    ///
+    /// @param reference The color to compare against.
+    /// @param kL The weight of lightness.
+    /// @param kC The weight of chroma.
+    /// @param kH The weight of hue.
+    /// @return The prepared color.
+    public static PreparedCIEDE2000 of(Lab reference, double kL, double kC, double kH) {
+        Objects.requireNonNull(reference, "reference");
+        return new PreparedCIEDE2000(reference, kL, kC, kH);
+    }
+
+    /// @return The color distances are measured from.
+    public Lab reference() {
+        return reference;
+    }
+
+    /// @param other A color.
+    /// @return The CIEDE2000 distance from the reference to `other`.
+    public double distanceTo(Lab other) {
+        return distance(
+                l1, a1, b1, cab1,
+                other.L() * 100, other.a() * 100, other.b() * 100,
+                kL, kC, kH
+        );
+    }
+
+    /// Measures the distance from the reference to every color in a set of
+    /// {@link Lab} channel arrays.
+    ///
+    /// @param L The lightness of each color.
+    /// @param a The `a` channel of each color.
+    /// @param b The `b` channel of each color.
+    /// @param out Where to write the distance to each color. As many colors are measured as it is long.
+    public void distances(double[] L, double[] a, double[] b, double[] out) {
+        Objects.checkFromIndexSize(0, out.length, L.length);
+        Objects.checkFromIndexSize(0, out.length, a.length);
+        Objects.checkFromIndexSize(0, out.length, b.length);
+        for (int i = 0; i < out.length; i++) {
+            out[i] = distance(
+                    l1, a1, b1, cab1,
+                    L[i] * 100, a[i] * 100, b[i] * 100,
+                    kL, kC, kH
+            );
+        }
+    }
+
+    /// Approximately measures the distance from the reference to every color
+    /// in a set of {@link Lab} channel arrays, the same way as
+    /// {@link Lab#distanceCIEDE2000Fast(Lab)}. Only works with `kL`, `kC`
+    /// and `kH` of 1.
+    ///
+    /// @param L The lightness of each color.
+    /// @param a The `a` channel of each color.
+    /// @param b The `b` channel of each color.
+    /// @param out Where to write the distance to each color. As many colors are measured as it is long.
+    /// @throws IllegalStateException If the reference was prepared with other weights.
+    public void distancesFast(float[] L, float[] a, float[] b, float[] out) {
+        if (kL != 1 || kC != 1 || kH != 1) {
+            throw new IllegalStateException("Fast distances are only unweighted: " + this);
+        }
+        Objects.checkFromIndexSize(0, out.length, L.length);
+        Objects.checkFromIndexSize(0, out.length, a.length);
+        Objects.checkFromIndexSize(0, out.length, b.length);
+        for (int i = 0; i < out.length; i++) {
+            var a2 = a[i] * 100f;
+            var b2 = b[i] * 100f;
+            out[i] = distanceFast(l1f, a1f, b1f, cab1f, L[i] * 100f, a2, b2, chroma(a2, b2));
+        }
+    }
+
+    /// The CIEDE2000 formula with the channels already scaled up by 100 and
+    /// the chroma of the first color already known.
+    static double distance(
+            double l1, double a1, double b1, double cab1,
+            double l2, double a2, double b2,
+            double kL, double kC, double kH
+    ) {
+        var cab2 = Math.sqrt(a2 * a2 + b2 * b2);
+        var cabmean = (cab1 + cab2) / 2;
+
+        var cabmean7 = pow7(cabmean);
+        var g = 0.5 * (1 - Math.sqrt(cabmean7 / (cabmean7 + POW_25_7)));
+        var ap1 = (1 + g) * a1;
+        var ap2 = (1 + g) * a2;
+        var cp1 = Math.sqrt(ap1 * ap1 + b1 * b1);
+        var cp2 = Math.sqrt(ap2 * ap2 + b2 * b2);
+
+        var hp1 = 0.0;
+        if (b1 != ap1 || ap1 != 0) {
+            hp1 = Math.atan2(b1, ap1);
+            if (hp1 < 0) {
+                hp1 += Math.PI * 2;
+            }
+            hp1 *= RAD2DEG;
+        }
+        var hp2 = 0.0;
+        if (b2 != ap2 || ap2 != 0) {
+            hp2 = Math.atan2(b2, ap2);
+            if (hp2 < 0) {
+                hp2 += Math.PI * 2;
+            }
+            hp2 *= RAD2DEG;
+        }
+
+        var deltaLp = l2 - l1;
+        var deltaCp = cp2 - cp1;
+        var dhp = 0.0;
+        var cpProduct = cp1 * cp2;
+        if (cpProduct != 0) {
+            dhp = hp2 - hp1;
+            if (dhp > 180) {
+                dhp -= 360;
+            } else if (dhp < -180) {
+                dhp += 360;
+            }
+        }
+        var deltaHp = 2 * Math.sqrt(cpProduct) * Math.sin(dhp / 2 * DEG2RAD);
+
+        var lpmean = (l1 + l2) / 2;
+        var cpmean = (cp1 + cp2) / 2;
+        var hpmean = hp1 + hp2;
+        if (cpProduct != 0) {
+            hpmean /= 2;
+            if (Math.abs(hp1 - hp2) > 180) {
+                if (hp1 + hp2 < 360) {
+                    hpmean += 180;
+                } else {
+                    hpmean -= 180;
+                }
+            }
+        }
+
+        var t = 1 - 0.17 * Math.cos((hpmean - 30) * DEG2RAD)
+                + 0.24 * Math.cos(2 * hpmean * DEG2RAD)
+                + 0.32 * Math.cos((3 * hpmean + 6) * DEG2RAD)
+                - 0.2 * Math.cos((4 * hpmean - 63) * DEG2RAD);
+        var deltaTheta = 30 * Math.exp(-sq((hpmean - 275) / 25));
+        var cpmean7 = pow7(cpmean);
+        var rc = 2 * Math.sqrt(cpmean7 / (cpmean7 + POW_25_7));
+        var sl = 1 + (0.015 * sq(lpmean - 50)) / Math.sqrt(20 + sq(lpmean - 50));
+        var sc = 1 + 0.045 * cpmean;
+        var sh = 1 + 0.015 * cpmean * t;
+        var rt = -Math.sin(2 * deltaTheta * DEG2RAD) * rc;
+
+        var dl = deltaLp / (kL * sl);
+        var dc = deltaCp / (kC * sc);
+        var dh = deltaHp / (kH * sh);
+        return Math.sqrt(dl * dl + dc * dc + dh * dh + rt * dc * dh) * 0.01;
+    }
+
+    static float chroma(float a, float b) {
+        return (float) Math.sqrt(a * a + b * b);
+    }
+
+    /// {@link #distance} in `float`, with {@link FastMath} in place of
+    /// {@link Math}, and `kL`, `kC` and `kH` of 1.
+    static float distanceFast(
+            float l1, float a1, float b1, float cab1,
+            float l2, float a2, float b2, float cab2
+    ) {
+        var cabmean = (cab1 + cab2) * 0.5f;
+
+        var g = 0.5f * (1f - pow7Ratio(cabmean));
+        var ap1 = (1f + g) * a1;
+        var ap2 = (1f + g) * a2;
+        var cp1 = chroma(ap1, b1);
+        var cp2 = chroma(ap2, b2);
+
+        // Hues stay in radians, only the comparisons against 180 degrees
+        // need converting.
+        var hp1 = 0f;
+        if (b1 != ap1 || ap1 != 0) {
+            hp1 = FastMath.atan2(b1, ap1);
+            if (hp1 < 0) {
+                hp1 += (float) (Math.PI * 2);
+            }
+        }
+        var hp2 = 0f;
+        if (b2 != ap2 || ap2 != 0) {
+            hp2 = FastMath.atan2(b2, ap2);
+            if (hp2 < 0) {
+                hp2 += (float) (Math.PI * 2);
+            }
+        }
+
+        var pi = (float) Math.PI;
+        var deltaLp = l2 - l1;
+        var deltaCp = cp2 - cp1;
+        var dhp = 0f;
+        var cpProduct = cp1 * cp2;
+        if (cpProduct != 0) {
+            dhp = hp2 - hp1;
+            if (dhp > pi) {
+                dhp -= 2 * pi;
+            } else if (dhp < -pi) {
+                dhp += 2 * pi;
+            }
+        }
+        var deltaHp = 2f * (float) Math.sqrt(cpProduct) * FastMath.sin(dhp * 0.5f);
+
+        var lpmean = (l1 + l2) * 0.5f;
+        var cpmean = (cp1 + cp2) * 0.5f;
+        var hpmean = hp1 + hp2;
+        if (cpProduct != 0) {
+            hpmean *= 0.5f;
+            if (Math.abs(hp1 - hp2) > pi) {
+                if (hp1 + hp2 < 2 * pi) {
+                    hpmean += pi;
+                } else {
+                    hpmean -= pi;
+                }
+            }
+        }
+
+        var deg2rad = (float) DEG2RAD;
+        var t = 1f - 0.17f * FastMath.cos(hpmean - 30 * deg2rad)
+                + 0.24f * FastMath.cos(2 * hpmean)
+                + 0.32f * FastMath.cos(3 * hpmean + 6 * deg2rad)
+                - 0.2f * FastMath.cos(4 * hpmean - 63 * deg2rad);
+        var theta = (hpmean * (float) RAD2DEG - 275f) / 25f;
+        var deltaTheta = 30f * FastMath.expNegative(-theta * theta);
+        var rc = 2f * pow7Ratio(cpmean);
+        var lp50 = (lpmean - 50f) * (lpmean - 50f);
+        var sl = 1f + (0.015f * lp50) / (float) Math.sqrt(20f + lp50);
+        var sc = 1f + 0.045f * cpmean;
+        var sh = 1f + 0.015f * cpmean * t;
+        var rt = -FastMath.sin(2f * deltaTheta * deg2rad) * rc;
+
+        var dl = deltaLp / sl;
+        var dc = deltaCp / sc;
+        var dh = deltaHp / sh;
+        return (float) Math.sqrt(dl * dl + dc * dc + dh * dh + rt * dc * dh) * 0.01f;
+    }
+
+    // sqrt(c^7 / (c^7 + 25^7)), the weight both G and R_C are built on.
+    private static float pow7Ratio(float c) {
+        var c2 = c * c;
+        var c7 = c2 * c2 * c2 * c;
+        return (float) Math.sqrt(c7 / (c7 + POW_25_7_F));
+    }
+
+    private static double pow7(double v) {
+        var v2 = v * v;
+        return v2 * v2 * v2 * v;
+    }
+
+    private static double sq(double v) {
+        return v * v;
+    }
+
+    @Override
+    public String toString() {
+        return "PreparedCIEDE2000[" + reference + ", kL=" + kL + ", kC=" + kC + ", kH=" + kH + "]";
+    }
+}
@@ -0,0 +1,50 @@
+package dev.mccue.color;
+
+import java.util.List;
+import java.util.Objects;
+
+/// A {@link ColorDistance} over a fixed list of colors, referred to by
+/// their index in the list.
+///
+/// Made by {@link ColorDistance#prepare(List)}. The distances
+/// that come with the library convert every color into the space they
+/// measure in once, up front, instead of on every comparison.
+///
+/// ```java
+/// var distance = ColorDistance.CIEDE2000.prepare(palette);
+/// var closest = distance.nearest(0);
+/// ```
+public interface PreparedColorDistance {
+    /// @return The number of colors.
+    int size();
+
+    /// Computes the distance between two of the colors.
+    ///
+    /// @param i The index of the first color.
+    /// @param j The index of the second color.
+    /// @return The distance between them, the same as {@link ColorDistance#distance(Color, Color)}.
+    double distance(int i, int j);
+
+    /// Finds the color closest to one of the others.
+    ///
+    /// Ties go to the lowest index.
+    ///
+    /// @param i The index of a color.
+    /// @return The index of the closest other color, or -1 if there are no others.
+    default int nearest(int i) {
+        Objects.checkIndex(i, size());
+        var nearest = -1;
+        var best = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < size(); j++) {
+            if (j == i) {
+                continue;
+            }
+            var d = distance(i, j);
+            if (nearest == -1 || d < best) {
+                nearest = j;
+                best = d;
+            }
+        }
+        return nearest;
+    }
+}
@@ -3,14 +3,17 @@ package dev.mccue.color;
 import java.util.Objects;
 
 public final class RGB255 implements Color {
-    private final byte R;
-    private final byte G;
-    private final byte B;
+    // Pixels packed at a time by the bulk conversions.
+    private static final int CHUNK = 1024;
 
+    // 0x00RRGGBB
+    private final int value;
+
+    /// Creates a color from an int in the form `0xRRGGBB`. The top byte is ignored.
+    ///
+    /// @param value The packed color.
     public RGB255(int value) {
-        this.R = (byte) ((value & 0xFF0000) >> 4);
-        this.G = (byte) ((value & 0x00FF00) >> 2);
-        this.B = (byte) (value & 0x0000FF);
+        this.value = value & 0xFFFFFF;
     }
 
     public RGB255(
@@ -18,9 +21,9 @@ public final class RGB255 implements Color {
             int G,
             int B
     ) {
-        this.R = (byte) Math.clamp(R, 0, 255);
-        this.G = (byte) Math.clamp(G, 0, 255);
-        this.B = (byte) Math.clamp(B, 0, 255);
+        this.value = Math.clamp(R, 0, 255) << 16
+                | Math.clamp(G, 0, 255) << 8
+                | Math.clamp(B, 0, 255);
     }
 
     public RGB255(
@@ -31,16 +34,32 @@ public final class RGB255 implements Color {
         this(Byte.toUnsignedInt(R), Byte.toUnsignedInt(G), Byte.toUnsignedInt(B));
     }
 
+    /// Unpacks a color from an ARGB int, as returned by `BufferedImage.getRGB`.
+    /// The alpha channel is ignored.
+    ///
+    /// @param argb The packed color.
+    /// @return The color.
+    public static RGB255 fromPackedInt(int argb) {
+        return new RGB255(argb);
+    }
+
+    /// Packs this color into an opaque ARGB int, `0xFFRRGGBB`.
+    ///
+    /// @return The packed color.
+    public int toPackedInt() {
+        return 0xFF000000 | value;
+    }
+
     public int R() {
-        return Byte.toUnsignedInt(R);
+        return (value >> 16) & 0xFF;
     }
 
     public int G() {
-        return Byte.toUnsignedInt(G);
+        return (value >> 8) & 0xFF;
     }
 
     public int B() {
-        return Byte.toUnsignedInt(B);
+        return value & 0xFF;
     }
 
     @Override
@@ -57,6 +76,158 @@ public final class RGB255 implements Color {
         );
     }
 
+    @Override
+    public LinearRGB LinearRGB() {
+        return new LinearRGB(
+                GammaTable.linearize(R()),
+                GammaTable.linearize(G()),
+                GammaTable.linearize(B())
+        );
+    }
+
+    /// Converts packed ARGB pixels to {@link Lab} using D65 as reference white.
+    ///
+    /// ```java
+    /// var pixels = image.getRGB(0, 0, w, h, null, 0, w);
+    /// var L = new double[pixels.length];
+    /// var a = new double[pixels.length];
+    /// var b = new double[pixels.length];
+    /// RGB255.toLab(pixels, L, a, b);
+    /// ```
+    ///
+    /// @param argb The pixels. Alpha is ignored.
+    /// @param L Where to write `L`. At least as long as `argb`.
+    /// @param a Where to write `a`. At least as long as `argb`.
+    /// @param b Where to write `b`. At least as long as `argb`.
+    public static void toLab(int[] argb, double[] L, double[] a, double[] b) {
+        toLab(argb, L, a, b, ReferenceWhite.D65);
+    }
+
+    /// Converts packed ARGB pixels to {@link Lab}.
+    ///
+    /// @param argb The pixels. Alpha is ignored.
+    /// @param L Where to write `L`. At least as long as `argb`.
+    /// @param a Where to write `a`. At least as long as `argb`.
+    /// @param b Where to write `b`. At least as long as `argb`.
+    /// @param referenceWhite The reference white to use.
+    public static void toLab(int[] argb, double[] L, double[] a, double[] b, ReferenceWhite referenceWhite) {
+        unpack(argb, L, a, b, Lab.class, referenceWhite);
+    }
+
+    /// Converts {@link Lab} channels to opaque packed ARGB pixels using D65 as reference white.
+    ///
+    /// @param L The `L` channel, at least as long as `argb`.
+    /// @param a The `a` channel, at least as long as `argb`.
+    /// @param b The `b` channel, at least as long as `argb`.
+    /// @param argb Where to write the pixels.
+    public static void fromLab(double[] L, double[] a, double[] b, int[] argb) {
+        fromLab(L, a, b, argb, ReferenceWhite.D65);
+    }
+
+    /// Converts {@link Lab} channels to opaque packed ARGB pixels.
+    ///
+    /// @param L The `L` channel, at least as long as `argb`.
+    /// @param a The `a` channel, at least as long as `argb`.
+    /// @param b The `b` channel, at least as long as `argb`.
+    /// @param argb Where to write the pixels.
+    /// @param referenceWhite The reference white to use.
+    public static void fromLab(double[] L, double[] a, double[] b, int[] argb, ReferenceWhite referenceWhite) {
+        pack(L, a, b, argb, Lab.class, referenceWhite);
+    }
+
+    /// Converts packed ARGB pixels to {@link OkLab}.
+    ///
+    /// @param argb The pixels. Alpha is ignored.
+    /// @param L Where to write `L`. At least as long as `argb`.
+    /// @param a Where to write `a`. At least as long as `argb`.
+    /// @param b Where to write `b`. At least as long as `argb`.
+    public static void toOkLab(int[] argb, double[] L, double[] a, double[] b) {
+        unpack(argb, L, a, b, OkLab.class, ReferenceWhite.D65);
+    }
+
+    /// Converts {@link OkLab} channels to opaque packed ARGB pixels.
+    ///
+    /// @param L The `L` channel, at least as long as `argb`.
+    /// @param a The `a` channel, at least as long as `argb`.
+    /// @param b The `b` channel, at least as long as `argb`.
+    /// @param argb Where to write the pixels.
+    public static void fromOkLab(double[] L, double[] a, double[] b, int[] argb) {
+        pack(L, a, b, argb, OkLab.class, ReferenceWhite.D65);
+    }
+
+    /// Converts packed ARGB pixels to {@link HSV}.
+    ///
+    /// @param argb The pixels. Alpha is ignored.
+    /// @param H Where to write `H`. At least as long as `argb`.
+    /// @param S Where to write `S`. At least as long as `argb`.
+    /// @param V Where to write `V`. At least as long as `argb`.
+    public static void toHSV(int[] argb, double[] H, double[] S, double[] V) {
+        unpack(argb, H, S, V, HSV.class, ReferenceWhite.D65);
+    }
+
+    /// Converts {@link HSV} channels to opaque packed ARGB pixels.
+    ///
+    /// @param H The `H` channel, at least as long as `argb`.
+    /// @param S The `S` channel, at least as long as `argb`.
+    /// @param V The `V` channel, at least as long as `argb`.
+    /// @param argb Where to write the pixels.
+    public static void fromHSV(double[] H, double[] S, double[] V, int[] argb) {
+        pack(H, S, V, argb, HSV.class, ReferenceWhite.D65);
+    }
+
+    // Spreads the pixels into the output channels and converts them there.
+    private static void unpack(
+            int[] argb,
+            double[] c0,
+            double[] c1,
+            double[] c2,
+            Class<? extends Color> space,
+            ReferenceWhite referenceWhite
+    ) {
+        var n = argb.length;
+        Objects.checkFromIndexSize(0, n, c0.length);
+        Objects.checkFromIndexSize(0, n, c1.length);
+        Objects.checkFromIndexSize(0, n, c2.length);
+        for (int i = 0; i < n; i++) {
+            var pixel = argb[i];
+            c0[i] = (pixel >> 16) & 0xFF;
+            c1[i] = (pixel >> 8) & 0xFF;
+            c2[i] = pixel & 0xFF;
+        }
+        ConversionPlan.of(RGB255.class, space, referenceWhite).convert(c0, c1, c2, 0, n);
+    }
+
+    // Converts a chunk at a time in scratch channels, so the inputs are
+    // left alone without copying all of them.
+    private static void pack(
+            double[] c0,
+            double[] c1,
+            double[] c2,
+            int[] argb,
+            Class<? extends Color> space,
+            ReferenceWhite referenceWhite
+    ) {
+        var n = argb.length;
+        Objects.checkFromIndexSize(0, n, c0.length);
+        Objects.checkFromIndexSize(0, n, c1.length);
+        Objects.checkFromIndexSize(0, n, c2.length);
+        var plan = ConversionPlan.of(space, RGB255.class, referenceWhite);
+        var chunk = Math.min(CHUNK, n);
+        var r = new double[chunk];
+        var g = new double[chunk];
+        var b = new double[chunk];
+        for (int start = 0; start < n; start += chunk) {
+            var count = Math.min(chunk, n - start);
+            System.arraycopy(c0, start, r, 0, count);
+            System.arraycopy(c1, start, g, 0, count);
+            System.arraycopy(c2, start, b, 0, count);
+            plan.convert(r, g, b, 0, count);
+            for (int i = 0; i < count; i++) {
+                argb[start + i] = 0xFF000000 | (int) r[i] << 16 | (int) g[i] << 8 | (int) b[i];
+            }
+        }
+    }
+
     /// Parses a "html" hex color-string, either in the 3 "#f0c" or 6 "#ff1034" digits form.
     public static RGB255 hex(String s) {
         if (s.length() != 7 && s.length() != 4) {
@@ -121,13 +292,11 @@ public final class RGB255 implements Color {
     @Override
     public boolean equals(Object obj) {
         return obj instanceof RGB255 rgb255
-                && R == rgb255.R
-                && G == rgb255.G
-                && B == rgb255.B;
+                && value == rgb255.value;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(R, G, B);
+        return Integer.hashCode(value);
     }
 }
@@ -28,6 +28,21 @@ public final class ReferenceWhite {
     //	https://github.com/hsluv/hsluv/issues/79
     static final ReferenceWhite hSLuvD65 = new ReferenceWhite(0.95045592705167, 1.0, 1.089057750759878);
 
+    /// @return The `X` tristimulus value of this white.
+    public double X() {
+        return _0;
+    }
+
+    /// @return The `Y` tristimulus value of this white.
+    public double Y() {
+        return _1;
+    }
+
+    /// @return The `Z` tristimulus value of this white.
+    public double Z() {
+        return _2;
+    }
+
     @Override
     public boolean equals(Object o) {
         return o instanceof ReferenceWhite that
@@ -0,0 +1,18 @@
+package dev.mccue.color;
+
+import java.util.List;
+
+/// The result of {@link Color#refineSort}: the colors in their new order,
+/// and the length of the path through them before and after.
+///
+/// The length of a path is the sum of the distances between consecutive
+/// colors, measured with the distance the order was refined with.
+///
+/// @param colors The colors in their refined order.
+/// @param lengthBefore The length of the path through them as given.
+/// @param lengthAfter The length of the path through them now.
+public record RefinedOrder<C extends Color>(List<C> colors, double lengthBefore, double lengthAfter) {
+    public RefinedOrder {
+        colors = List.copyOf(colors);
+    }
+}
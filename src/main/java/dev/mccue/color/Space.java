@@ -0,0 +1,206 @@
+package dev.mccue.color;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/// The color spaces that bulk conversions know how to route between.
+///
+/// The spaces form a tree rooted at {@link XYZ}. Each space knows its
+/// parent, and converting between two spaces walks up from the source
+/// to the nearest common ancestor and then down to the target. The edges
+/// of the tree are the same conversions the records themselves use, so
+/// {@link sRGB} to {@link Lab} goes `sRGB -> LinearRGB -> XYZ -> Lab` just
+/// like {@link sRGB#Lab()}.
+enum Space {
+    XYZ(dev.mccue.color.XYZ.class, null),
+    LINEAR_RGB(LinearRGB.class, XYZ),
+    SRGB(sRGB.class, LINEAR_RGB),
+    RGB_255(RGB255.class, SRGB),
+    HSV(dev.mccue.color.HSV.class, SRGB),
+    HSL(dev.mccue.color.HSL.class, SRGB),
+    XY_Y(xyY.class, XYZ),
+    LAB(Lab.class, XYZ),
+    LAB_LCH(LabLCh.class, LAB),
+    LUV(Luv.class, XYZ),
+    LUV_LCH(LuvLCh.class, LUV),
+    HSLUV(HSLuv.class, LUV_LCH),
+    HPLUV(HPLuv.class, LUV_LCH),
+    OKLAB(OkLab.class, XYZ),
+    OKLCH(OkLch.class, OKLAB);
+
+    final Class<? extends Color> type;
+    final Space parent;
+    final int depth;
+
+    Space(Class<? extends Color> type, Space parent) {
+        this.type = type;
+        this.parent = parent;
+        this.depth = parent == null ? 0 : parent.depth + 1;
+    }
+
+    static Space of(Class<? extends Color> type) {
+        for (var space : values()) {
+            if (space.type == type) {
+                return space;
+            }
+        }
+        throw new ColorSpaceException("Unsupported color space: " + type);
+    }
+
+    /// A single edge in the tree. If `up` is true this converts from
+    /// `space` to its parent, otherwise from the parent to `space`.
+    record Hop(Space space, boolean up) {}
+
+    /// The hops needed to get from `from` to `to`.
+    static List<Hop> route(Space from, Space to) {
+        var ups = new ArrayList<Hop>();
+        var downs = new ArrayList<Hop>();
+        var a = from;
+        var b = to;
+        while (a.depth > b.depth) {
+            ups.add(new Hop(a, true));
+            a = a.parent;
+        }
+        while (b.depth > a.depth) {
+            downs.add(new Hop(b, false));
+            b = b.parent;
+        }
+        while (a != b) {
+            ups.add(new Hop(a, true));
+            a = a.parent;
+            downs.add(new Hop(b, false));
+            b = b.parent;
+        }
+
+        var hops = new ArrayList<>(ups);
+        for (int i = downs.size() - 1; i >= 0; i--) {
+            hops.add(downs.get(i));
+        }
+        return hops;
+    }
+
+    /// Whether this space is in the HSLuv family, which always uses
+    /// {@link ReferenceWhite#hSLuvD65} for its trip through {@link Luv}.
+    boolean usesHSLuvWhite() {
+        return this == HSLUV || this == HPLUV;
+    }
+
+    /// Builds a color in this space from its three channels, in record
+    /// component order.
+    Color color(double c0, double c1, double c2) {
+        return switch (this) {
+            case XYZ -> new XYZ(c0, c1, c2);
+            case LINEAR_RGB -> new LinearRGB(c0, c1, c2);
+            case SRGB -> new sRGB(c0, c1, c2);
+            case RGB_255 -> new RGB255((int) c0, (int) c1, (int) c2);
+            case HSV -> new HSV(c0, c1, c2);
+            case HSL -> new HSL(c0, c1, c2);
+            case XY_Y -> new xyY(c0, c1, c2);
+            case LAB -> new Lab(c0, c1, c2);
+            case LAB_LCH -> new LabLCh(c0, c1, c2);
+            case LUV -> new Luv(c0, c1, c2);
+            case LUV_LCH -> new LuvLCh(c0, c1, c2);
+            case HSLUV -> new HSLuv(c0, c1, c2);
+            case HPLUV -> new HPLuv(c0, c1, c2);
+            case OKLAB -> new OkLab(c0, c1, c2);
+            case OKLCH -> new OkLch(c0, c1, c2);
+        };
+    }
+
+    /// Converts `color` into this space and writes its channels to index `i`
+    /// of the given arrays.
+    void channels(Color color, double[] c0, double[] c1, double[] c2, int i) {
+        switch (this) {
+            case XYZ -> {
+                var c = color.XYZ();
+                c0[i] = c.X();
+                c1[i] = c.Y();
+                c2[i] = c.Z();
+            }
+            case LINEAR_RGB -> {
+                var c = color.LinearRGB();
+                c0[i] = c.R();
+                c1[i] = c.G();
+                c2[i] = c.B();
+            }
+            case SRGB -> {
+                var c = color.sRGB();
+                c0[i] = c.R();
+                c1[i] = c.G();
+                c2[i] = c.B();
+            }
+            case RGB_255 -> {
+                var c = color.RGB255();
+                c0[i] = c.R();
+                c1[i] = c.G();
+                c2[i] = c.B();
+            }
+            case HSV -> {
+                var c = color.HSV();
+                c0[i] = c.H();
+                c1[i] = c.S();
+                c2[i] = c.V();
+            }
+            case HSL -> {
+                var c = color.HSL();
+                c0[i] = c.H();
+                c1[i] = c.S();
+                c2[i] = c.L();
+            }
+            case XY_Y -> {
+                var c = color.xyY();
+                c0[i] = c.x();
+                c1[i] = c.y();
+                c2[i] = c.Y();
+            }
+            case LAB -> {
+                var c = color.Lab();
+                c0[i] = c.L();
+                c1[i] = c.a();
+                c2[i] = c.b();
+            }
+            case LAB_LCH -> {
+                var c = color.LabLCh();
+                c0[i] = c.L();
+                c1[i] = c.C();
+                c2[i] = c.h();
+            }
+            case LUV -> {
+                var c = color.Luv();
+                c0[i] = c.L();
+                c1[i] = c.u();
+                c2[i] = c.v();
+            }
+            case LUV_LCH -> {
+                var c = color.LuvLCh();
+                c0[i] = c.L();
+                c1[i] = c.C();
+                c2[i] = c.h();
+            }
+            case HSLUV -> {
+                var c = color.HSLuv();
+                c0[i] = c.H();
+                c1[i] = c.S();
+                c2[i] = c.L();
+            }
+            case HPLUV -> {
+                var c = color.HPLuv();
+                c0[i] = c.H();
+                c1[i] = c.S();
+                c2[i] = c.L();
+            }
+            case OKLAB -> {
+                var c = color.OkLab();
+                c0[i] = c.L();
+                c1[i] = c.a();
+                c2[i] = c.b();
+            }
+            case OKLCH -> {
+                var c = color.OkLch();
+                c0[i] = c.L();
+                c1[i] = c.c();
+                c2[i] = c.h();
+            }
+        }
+    }
+}
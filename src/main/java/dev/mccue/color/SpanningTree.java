@@ -0,0 +1,399 @@
+package dev.mccue.color;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/// A minimum spanning tree over a list of colors, as its edges `(u[k], v[k])`.
+///
+/// Edges are ordered by distance, and edges of the same length in the
+/// order {@link #before} gives them. With a strict order there is exactly
+/// one minimum spanning tree, so every way of building it here gives the
+/// same edges, ties included.
+record SpanningTree(int[] u, int[] v) {
+    // Points per unit of parallel work in Borůvka's algorithm.
+    private static final int CHUNK = 1024;
+
+    // The most buckets a HashMap has.
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /// Whether the edge `(u1, v1)` of length `d1` comes before `(u2, v2)`
+    /// of length `d2`, in a tree over `nc` colors.
+    ///
+    /// Ties go the way {@link Color#sort(List, ColorDistance)} has always
+    /// broken them, so orderings people stored don't change. It used to
+    /// stably sort the keys of a `HashMap<EdgeIdxs, Double>` made with a
+    /// capacity of `nc * nc`, so edges of the same length came in the
+    /// iteration order of that map: by bucket, then in the order they were
+    /// put in, which was by lower index, then higher.
+    ///
+    /// A bucket holding more than eight edges, which takes at least 258
+    /// colors, was turned into a tree ordered by identity hash codes.
+    /// Its order changed from run to run, so there is no old order to keep.
+    static boolean before(int nc, double d1, int u1, int v1, double d2, int u2, int v2) {
+        var c = Double.compare(d1, d2);
+        if (c != 0) {
+            return c < 0;
+        }
+        var lo1 = Math.min(u1, v1);
+        var hi1 = Math.max(u1, v1);
+        var lo2 = Math.min(u2, v2);
+        var hi2 = Math.max(u2, v2);
+        var b1 = bucket(nc, lo1, hi1);
+        var b2 = bucket(nc, lo2, hi2);
+        if (b1 != b2) {
+            return b1 < b2;
+        }
+        if (lo1 != lo2) {
+            return lo1 < lo2;
+        }
+        return hi1 < hi2;
+    }
+
+    // The bucket of the edge (lo, hi) in that map: the hash code of
+    // new EdgeIdxs(lo, hi), spread the way HashMap spreads it, in a table
+    // of the smallest power of two at least nc * nc. There were few enough
+    // edges that the table never grew.
+    private static int bucket(int nc, int lo, int hi) {
+        var h = 31 * lo + hi;
+        h ^= h >>> 16;
+        var capacity = (long) nc * nc;
+        var mask = capacity >= MAXIMUM_CAPACITY
+                ? MAXIMUM_CAPACITY - 1
+                : -1 >>> Integer.numberOfLeadingZeros((int) capacity - 1);
+        return h & mask;
+    }
+
+    /// The order {@link Color#sort(List, ColorDistance)} puts at least two
+    /// colors in, as indices into `cs`: a walk of their minimum spanning
+    /// tree from the darkest color.
+    static int[] order(List<? extends Color> cs, ColorDistance colorDistance) {
+        // Every color is compared to every other, so convert each one
+        // into the space of the distance once up front. Black goes last
+        // for finding the darkest color.
+        var black = new sRGB(0, 0, 0);
+        var withBlack = new ArrayList<Color>(cs.size() + 1);
+        withBlack.addAll(cs);
+        withBlack.add(black);
+        var prepared = colorDistance.prepare(withBlack);
+
+        // Straight line distances only need each color's nearest neighbors,
+        // which a spatial index finds without comparing every pair.
+        var kd = prepared instanceof StandardColorDistance.Prepared p ? p.kdTree(cs.size()) : null;
+        var mst = kd == null
+                ? prim(cs.size(), prepared)
+                : boruvka(kd, ForkJoinPool.commonPool());
+
+        // Find the darkest color in the list.
+        int dIdx = 0; // Index of darkest color
+        var light = Double.MAX_VALUE; // Lightness of darkest color (distance from black)
+
+        for (int i = 0; i < cs.size(); i++) {
+            var d = prepared.distance(cs.size(), i);
+            if (d < light) {
+                dIdx = i;
+                light = d;
+            }
+        }
+
+        // Traverse the tree starting from the darkest color.
+        return traverse(cs.size(), mst, dIdx);
+    }
+
+    // Walks a tree in prefix order, visiting the neighbors of each color
+    // from the lowest index to the highest.
+    private static int[] traverse(int nc, SpanningTree mst, int root) {
+        // Neighbors of color v are neighs[start[v]] until neighs[start[v + 1]].
+        var start = new int[nc + 1];
+        for (int k = 0; k < mst.u().length; k++) {
+            start[mst.u()[k] + 1]++;
+            start[mst.v()[k] + 1]++;
+        }
+        for (int v = 0; v < nc; v++) {
+            start[v + 1] += start[v];
+        }
+        var neighs = new int[start[nc]];
+        var fill = Arrays.copyOf(start, nc);
+        for (int k = 0; k < mst.u().length; k++) {
+            var u = mst.u()[k];
+            var v = mst.v()[k];
+            neighs[fill[u]++] = v;
+            neighs[fill[v]++] = u;
+        }
+        for (int v = 0; v < nc; v++) {
+            Arrays.sort(neighs, start[v], start[v + 1]);
+        }
+
+        // Walk the tree from the root with a stack instead of recursion, so
+        // long chains of colors can't overflow the call stack. Neighbors are
+        // pushed highest first so the lowest is visited next.
+        var order = new int[nc];
+        var visited = new boolean[nc];
+        var stack = new int[nc];
+        var top = 0;
+        var count = 0;
+        stack[top++] = root;
+        visited[root] = true;
+        while (top > 0) {
+            var r = stack[--top];
+            order[count++] = r;
+            for (int i = start[r + 1] - 1; i >= start[r]; i--) {
+                var c = neighs[i];
+                if (!visited[c]) {
+                    visited[c] = true;
+                    stack[top++] = c;
+                }
+            }
+        }
+        return order;
+    }
+
+    /// Builds the tree of the first `nc` colors with Prim's algorithm.
+    ///
+    /// Each color outside the tree only keeps its closest color inside.
+    /// That computes every distance once, like filling a matrix would,
+    /// but needs no more than a few arrays of `nc` entries.
+    static SpanningTree prim(int nc, PreparedColorDistance d) {
+        var parent = new int[nc];
+        var best = new double[nc];
+        var inTree = new boolean[nc];
+        Arrays.fill(parent, -1);
+        Arrays.fill(best, Double.POSITIVE_INFINITY);
+
+        var tree = new SpanningTree(new int[Math.max(0, nc - 1)], new int[Math.max(0, nc - 1)]);
+        var u = 0;
+        inTree[u] = true;
+        for (int added = 1; added < nc; added++) {
+            // Every color outside the tree moves closer if u is closer than
+            // the closest color it had so far.
+            var next = -1;
+            for (int v = 0; v < nc; v++) {
+                if (inTree[v]) {
+                    continue;
+                }
+                var dv = u < v ? d.distance(u, v) : d.distance(v, u);
+                if (parent[v] == -1 || before(nc, dv, u, v, best[v], parent[v], v)) {
+                    best[v] = dv;
+                    parent[v] = u;
+                }
+                if (next == -1 || before(nc, best[v], parent[v], v, best[next], parent[next], next)) {
+                    next = v;
+                }
+            }
+            u = next;
+            inTree[u] = true;
+            tree.u[added - 1] = parent[u];
+            tree.v[added - 1] = u;
+        }
+        return tree;
+    }
+
+    /// Builds the tree of the points of a k-d tree with Borůvka's
+    /// algorithm.
+    ///
+    /// Every round, each point finds its nearest point in another
+    /// component of the forest so far. The shortest of those edges out of
+    /// each component are all in the tree. Each round at least halves the
+    /// number of components, so there are at most `log2(n)` rounds of `n`
+    /// nearest neighbor searches instead of `n^2 / 2` distances.
+    ///
+    /// {@link KdTree#distance} is the same as the prepared distance the
+    /// points came from, so this gives the same tree as {@link #prim}.
+    static SpanningTree boruvka(KdTree kd, ForkJoinPool pool) {
+        var n = kd.size();
+        var tree = new SpanningTree(new int[Math.max(0, n - 1)], new int[Math.max(0, n - 1)]);
+        var edges = 0;
+
+        // Everything here is by position in the k-d tree.
+        var parent = new int[n];
+        for (int p = 0; p < n; p++) {
+            parent[p] = p;
+        }
+        var label = new int[n];
+        var nodeLabel = new int[kd.nodes()];
+        var nearest = new int[n];
+        var nearestD = new double[n];
+        var compBest = new int[n];
+        var compBound = new double[n];
+
+        while (edges < n - 1) {
+            for (int p = 0; p < n; p++) {
+                label[p] = find(parent, p);
+            }
+            labelNodes(kd, label, nodeLabel, 0);
+            Arrays.fill(compBound, Double.POSITIVE_INFINITY);
+
+            pool.invoke(new NearestTask(kd, label, nodeLabel, compBound, nearest, nearestD, 0, n));
+
+            // The shortest edge out of each component, by the root of the
+            // component.
+            Arrays.fill(compBest, -1);
+            for (int p = 0; p < n; p++) {
+                var c = label[p];
+                var b = compBest[c];
+                if (nearest[p] == -1) {
+                    continue;
+                }
+                if (b == -1 || before(
+                        n, nearestD[p], kd.order[p], kd.order[nearest[p]],
+                        nearestD[b], kd.order[b], kd.order[nearest[b]]
+                )) {
+                    compBest[c] = p;
+                }
+            }
+            for (int c = 0; c < n; c++) {
+                var p = compBest[c];
+                if (p == -1) {
+                    continue;
+                }
+                var q = nearest[p];
+                var rp = find(parent, p);
+                var rq = find(parent, q);
+                if (rp == rq) {
+                    continue; // Both components picked the same edge.
+                }
+                parent[rp] = rq;
+                tree.u[edges] = Math.min(kd.order[p], kd.order[q]);
+                tree.v[edges] = Math.max(kd.order[p], kd.order[q]);
+                edges++;
+            }
+        }
+        return tree;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    // Marks each node with the component all of its points are in, or -1 if
+    // they are in several. Searches skip nodes in their own component.
+    private static int labelNodes(KdTree kd, int[] label, int[] nodeLabel, int node) {
+        int l;
+        if (kd.left[node] == -1) {
+            l = label[kd.start[node]];
+            for (int p = kd.start[node] + 1; p < kd.end[node]; p++) {
+                if (label[p] != l) {
+                    l = -1;
+                    break;
+                }
+            }
+        } else {
+            var a = labelNodes(kd, label, nodeLabel, kd.left[node]);
+            var b = labelNodes(kd, label, nodeLabel, kd.right[node]);
+            l = a == b ? a : -1;
+        }
+        nodeLabel[node] = l;
+        return l;
+    }
+
+    // Opaque access makes reads and writes of the bounds whole, even when
+    // tasks race on them.
+    private static final VarHandle BOUND = MethodHandles.arrayElementVarHandle(double[].class);
+
+    // Finds, for each point, the nearest point in another component. Only
+    // the shortest edge out of each component matters, so a point can give
+    // up once it can't beat an edge another point of its component already
+    // found. Those points are left at -1.
+    @SuppressWarnings("serial") // Tasks are never serialized.
+    private static final class NearestTask extends RecursiveAction {
+        private final KdTree kd;
+        private final int[] label;
+        private final int[] nodeLabel;
+        private final double[] compBound;
+        private final int[] nearest;
+        private final double[] nearestD;
+        private final int from;
+        private final int to;
+
+        // The search in progress.
+        private int point;
+        private int best;
+        private double bestD;
+
+        NearestTask(
+                KdTree kd,
+                int[] label,
+                int[] nodeLabel,
+                double[] compBound,
+                int[] nearest,
+                double[] nearestD,
+                int from,
+                int to
+        ) {
+            this.kd = kd;
+            this.label = label;
+            this.nodeLabel = nodeLabel;
+            this.compBound = compBound;
+            this.nearest = nearest;
+            this.nearestD = nearestD;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK) {
+                var mid = (from + to) >>> 1;
+                invokeAll(
+                        new NearestTask(kd, label, nodeLabel, compBound, nearest, nearestD, from, mid),
+                        new NearestTask(kd, label, nodeLabel, compBound, nearest, nearestD, mid, to)
+                );
+                return;
+            }
+            for (int p = from; p < to; p++) {
+                point = p;
+                best = -1;
+                bestD = (double) BOUND.getOpaque(compBound, label[p]);
+                search(0, 0);
+                nearest[p] = best;
+                nearestD[p] = bestD;
+                if (best != -1 && bestD < (double) BOUND.getOpaque(compBound, label[p])) {
+                    // A race can put back a larger bound. That only prunes
+                    // less, since it is still the length of a real edge.
+                    BOUND.setOpaque(compBound, label[p], bestD);
+                }
+            }
+        }
+
+        // Ties with the bound are looked at rather than skipped, since the
+        // order of ties can pick them.
+        private void search(int node, double toBox) {
+            if (nodeLabel[node] == label[point] || toBox > bestD) {
+                return;
+            }
+            if (kd.left[node] == -1) {
+                var i = kd.order[point];
+                for (int q = kd.start[node]; q < kd.end[node]; q++) {
+                    if (label[q] == label[point]) {
+                        continue;
+                    }
+                    var dq = kd.distance(point, q);
+                    if (best == -1 ? dq <= bestD : before(kd.size(), dq, i, kd.order[q], bestD, i, kd.order[best])) {
+                        best = q;
+                        bestD = dq;
+                    }
+                }
+                return;
+            }
+            var l = kd.left[node];
+            var r = kd.right[node];
+            var toLeft = kd.distanceToBox(l, point);
+            var toRight = kd.distanceToBox(r, point);
+            if (toLeft <= toRight) {
+                search(l, toLeft);
+                search(r, toRight);
+            } else {
+                search(r, toRight);
+                search(l, toLeft);
+            }
+        }
+    }
+}
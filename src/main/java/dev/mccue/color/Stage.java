@@ -0,0 +1,10 @@
+package dev.mccue.color;
+
+/// One step of a {@link ConversionPlan}, applied in place to the colors at
+/// `[off, off + len)` of three channel arrays.
+///
+/// Stages must be immutable so that plans can be shared between threads.
+@FunctionalInterface
+interface Stage {
+    void apply(double[] c0, double[] c1, double[] c2, int off, int len);
+}
@@ -0,0 +1,177 @@
+package dev.mccue.color;
+
+import java.util.List;
+
+/// The distances behind the constants on {@link ColorDistance}.
+///
+/// Preparing one converts every color into the space it measures in and
+/// keeps the channels in a {@link ColorBuffer}. The math on the channels
+/// is the same as the matching method on the records.
+enum StandardColorDistance implements ColorDistance {
+    RGB(sRGB.class),
+    LINEAR_RGB(LinearRGB.class),
+    RIEMERSMA(sRGB.class),
+    LAB(Lab.class),
+    CIE94(Lab.class),
+    CIEDE2000(Lab.class),
+    CIEDE2000_FAST(Lab.class),
+    LUV(Luv.class),
+    OKLAB(OkLab.class),
+    HSLUV(HSLuv.class),
+    HPLUV(HPLuv.class);
+
+    private final Class<? extends Color> space;
+
+    StandardColorDistance(Class<? extends Color> space) {
+        this.space = space;
+    }
+
+    /// @return The color space this measures in.
+    Class<? extends Color> space() {
+        return space;
+    }
+
+    @Override
+    public double distance(Color c1, Color c2) {
+        return switch (this) {
+            case RGB -> c1.distanceRGB(c2);
+            case LINEAR_RGB -> c1.distanceLinearRGB(c2);
+            case RIEMERSMA -> c1.distanceRiemersma(c2);
+            case LAB -> c1.distanceLab(c2);
+            case CIE94 -> c1.distanceCIE94(c2);
+            case CIEDE2000 -> c1.distanceCIEDE2000(c2);
+            case CIEDE2000_FAST -> c1.distanceCIEDE2000Fast(c2);
+            case LUV -> c1.distanceLuv(c2);
+            case OKLAB -> c1.distanceOkLab(c2);
+            case HSLUV -> c1.distanceHSLuv(c2);
+            case HPLUV -> c1.distanceHPLuv(c2);
+        };
+    }
+
+    @Override
+    public PreparedColorDistance prepare(List<? extends Color> colors) {
+        return new Prepared(this, ColorBuffer.of(space, colors));
+    }
+
+    /// Prepares the colors of a buffer, which is left as it is.
+    Prepared prepare(ColorBuffer colors) {
+        return new Prepared(this, colors.convert(space));
+    }
+
+    /// Whether this is the straight line distance in its space, so
+    /// {@link Prepared#kdTree} can build a tree for it.
+    boolean straight() {
+        return switch (this) {
+            case RGB, LINEAR_RGB, LAB, LUV, OKLAB, HSLUV, HPLUV -> true;
+            case RIEMERSMA, CIE94, CIEDE2000, CIEDE2000_FAST -> false;
+        };
+    }
+
+    static final class Prepared implements PreparedColorDistance {
+        private final StandardColorDistance metric;
+        private final double[] c0;
+        private final double[] c1;
+        private final double[] c2;
+
+        // CIEDE2000 only: the channels scaled up by 100 and the chroma.
+        private final double[] chroma;
+
+        // CIEDE2000_FAST only: the same in float.
+        private final float[] f0;
+        private final float[] f1;
+        private final float[] f2;
+        private final float[] chromaF;
+
+        Prepared(StandardColorDistance metric, ColorBuffer colors) {
+            this.metric = metric;
+            this.c0 = colors.channel(0);
+            this.c1 = colors.channel(1);
+            this.c2 = colors.channel(2);
+            if (metric == CIEDE2000) {
+                this.chroma = new double[colors.size()];
+                for (int i = 0; i < colors.size(); i++) {
+                    c0[i] *= 100;
+                    c1[i] *= 100;
+                    c2[i] *= 100;
+                    chroma[i] = Math.sqrt(c1[i] * c1[i] + c2[i] * c2[i]);
+                }
+            } else {
+                this.chroma = null;
+            }
+            if (metric == CIEDE2000_FAST) {
+                var n = colors.size();
+                this.f0 = new float[n];
+                this.f1 = new float[n];
+                this.f2 = new float[n];
+                this.chromaF = new float[n];
+                for (int i = 0; i < n; i++) {
+                    f0[i] = (float) c0[i] * 100f;
+                    f1[i] = (float) c1[i] * 100f;
+                    f2[i] = (float) c2[i] * 100f;
+                    chromaF[i] = PreparedCIEDE2000.chroma(f1[i], f2[i]);
+                }
+            } else {
+                this.f0 = null;
+                this.f1 = null;
+                this.f2 = null;
+                this.chromaF = null;
+            }
+        }
+
+        @Override
+        public int size() {
+            return c0.length;
+        }
+
+        @Override
+        public double distance(int i, int j) {
+            return distance(i, this, j);
+        }
+
+        /// The distance from color `i` of these to color `j` of `o`, which
+        /// must have been prepared by the same metric.
+        double distance(int i, Prepared o, int j) {
+            return switch (metric) {
+                case RGB, LINEAR_RGB, LAB, LUV, OKLAB -> Math.sqrt(
+                        sq(c0[i] - o.c0[j]) + sq(c1[i] - o.c1[j]) + sq(c2[i] - o.c2[j])
+                );
+                case HSLUV, HPLUV -> Math.sqrt(
+                        sq((c0[i] - o.c0[j]) / 100.0) + sq(c1[i] - o.c1[j]) + sq(c2[i] - o.c2[j])
+                );
+                case RIEMERSMA -> new sRGB(c0[i], c1[i], c2[i])
+                        .distanceRiemersma(new sRGB(o.c0[j], o.c1[j], o.c2[j]));
+                case CIE94 -> new Lab(c0[i], c1[i], c2[i])
+                        .distanceCIE94(new Lab(o.c0[j], o.c1[j], o.c2[j]));
+                case CIEDE2000 -> PreparedCIEDE2000.distance(
+                        c0[i], c1[i], c2[i], chroma[i],
+                        o.c0[j], o.c1[j], o.c2[j],
+                        1, 1, 1
+                );
+                case CIEDE2000_FAST -> PreparedCIEDE2000.distanceFast(
+                        f0[i], f1[i], f2[i], chromaF[i],
+                        o.f0[j], o.f1[j], o.f2[j], o.chromaF[j]
+                );
+            };
+        }
+
+        /// The `k` colors of a tree from {@link #kdTree} closest to color
+        /// `i` of these. See {@link KdTree#nearest(double, double, double, int, int[], double[])}.
+        int nearest(KdTree kd, int i, int k, int[] best, double[] bestD) {
+            return kd.nearest(c0[i], c1[i], c2[i], k, best, bestD);
+        }
+
+        /// A k-d tree over the first `n` colors, if this measures the
+        /// straight line between them, or `null` if it doesn't.
+        KdTree kdTree(int n) {
+            return switch (metric) {
+                case RGB, LINEAR_RGB, LAB, LUV, OKLAB -> new KdTree(c0, c1, c2, 1.0, n);
+                case HSLUV, HPLUV -> new KdTree(c0, c1, c2, 100.0, n);
+                case RIEMERSMA, CIE94, CIEDE2000, CIEDE2000_FAST -> null;
+            };
+        }
+
+        private static double sq(double v) {
+            return v * v;
+        }
+    }
+}
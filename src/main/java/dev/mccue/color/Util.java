@@ -14,4 +14,80 @@ final class Util {
     static double sq(double v) {
         return v * v;
     }
+
+    // The XYZ -> Linear RGB matrix, as used by the HSLuv reference implementation
+    // to find the edges of the RGB gamut.
+    private static final double[][] HSLUV_M = {
+            {3.2409699419045214, -1.5373831775700935, -0.49861076029300328},
+            {-0.96924363628087983, 1.8759675015077207, 0.041555057407175613},
+            {0.055630079696993609, -0.20397695888897657, 1.0569715142428786},
+    };
+
+    // For a lightness l there are six lines (two per RGB channel) that bound the
+    // gamut in the (u, v) plane. These used to be materialized into a double[6][2]
+    // on every call; they are computed in place now so the HSLuv and HPLuv
+    // conversions don't allocate.
+    private static double boundsSub2(double l) {
+        final double kappa = 903.2962962962963;
+        final double epsilon = 0.0088564516790356308;
+
+        var sub1 = Math.pow(l+16.0, 3.0) / 1560896.0;
+        if (sub1 > epsilon) {
+            return sub1;
+        } else {
+            return l / kappa;
+        }
+    }
+
+    private static double boundSlope(double[] m, double sub2, double bottom) {
+        var top1 = (284517.0*m[0] - 94839.0*m[2]) * sub2;
+        return top1 / bottom;
+    }
+
+    private static double boundIntercept(double[] m, int k, double l, double sub2, double bottom) {
+        var top2 = (838422.0*m[2]+769860.0*m[1]+731718.0*m[0])*l*sub2 - 769860.0*((double) k)*l;
+        return top2 / bottom;
+    }
+
+    private static double boundBottom(double[] m, int k, double sub2) {
+        return (632260.0*m[2]-126452.0*m[1])*sub2 + 126452.0*((double) k);
+    }
+
+    static double maxChromaForLH(double l, double h) {
+        var hRad = h / 360.0 * Math.PI * 2.0;
+        var sub2 = boundsSub2(l);
+        var minLength = Double.MAX_VALUE;
+        for (var m : HSLUV_M) {
+            for (int k = 0; k < 2; k++) {
+                var bottom = boundBottom(m, k, sub2);
+                var x = boundSlope(m, sub2, bottom);
+                var y = boundIntercept(m, k, l, sub2, bottom);
+                var length = y / (Math.sin(hRad) - x*Math.cos(hRad));
+                if (length > 0.0 && length < minLength) {
+                    minLength = length;
+                }
+            }
+        }
+        return minLength;
+    }
+
+    static double maxSafeChromaForL(double l) {
+        var sub2 = boundsSub2(l);
+        var minLength = Double.MAX_VALUE;
+        for (var m : HSLUV_M) {
+            for (int k = 0; k < 2; k++) {
+                var bottom = boundBottom(m, k, sub2);
+                var m1 = boundSlope(m, sub2, bottom);
+                var b1 = boundIntercept(m, k, l, sub2, bottom);
+                // Intersect the bound with the line through the pole perpendicular to it.
+                var x = (b1 - 0.0) / (-1.0/m1 - m1);
+                var y = b1+x*m1;
+                var dist = Math.sqrt(Math.pow(x, 2.0) + Math.pow(y, 2.0));
+                if (dist < minLength) {
+                    minLength = dist;
+                }
+            }
+        }
+        return minLength;
+    }
 }
@@ -33,7 +33,7 @@ public record XYZ(
         return Lab(ReferenceWhite.D65);
     }
 
-    private static double lab_f(double t) {
+    static double lab_f(double t) {
         if (t > 6.0/29.0*6.0/29.0*6.0/29.0) {
             return Math.cbrt(t);
         }
@@ -0,0 +1,113 @@
+package dev.mccue.color.test;
+
+import dev.mccue.color.*;
+
+import java.util.ArrayList;
+
+/// Compares {@link Lab#distanceCIEDE2000Fast(Lab)} to the exact distance
+/// for every color of {@link RGB255} against a grid of references.
+///
+/// Pairs whose hues are within `0.001` degrees of opposite sit on the
+/// discontinuity of CIEDE2000, where the exact distance itself jumps. They
+/// are reported separately.
+///
+/// Not run as part of the tests since it takes a few minutes.
+///
+/// ```
+/// java -cp target/classes:target/test-classes dev.mccue.color.test.CIEDE2000FastReport [step]
+/// ```
+public final class CIEDE2000FastReport {
+    public static void main(String[] args) {
+        var step = args.length > 0 ? Integer.parseInt(args[0]) : 85;
+        var references = new ArrayList<Lab>();
+        for (int r = 0; r < 256; r += step) {
+            for (int g = 0; g < 256; g += step) {
+                for (int b = 0; b < 256; b += step) {
+                    references.add(new RGB255(r, g, b).Lab());
+                }
+            }
+        }
+
+        var plan = Color.converter(RGB255.class, Lab.class);
+        var L = new double[256 * 256];
+        var a = new double[L.length];
+        var b = new double[L.length];
+        var fL = new float[L.length];
+        var fa = new float[L.length];
+        var fb = new float[L.length];
+        var exact = new double[L.length];
+        var fast = new float[L.length];
+
+        var worst = 0.0;
+        var worstSmooth = 0.0;
+        var sum = 0.0;
+        long count = 0;
+        long over = 0;
+        long opposite = 0;
+        String worstPair = "";
+        String worstSmoothPair = "";
+        for (int r = 0; r < 256; r++) {
+            for (int i = 0; i < L.length; i++) {
+                L[i] = r;
+                a[i] = i >> 8;
+                b[i] = i & 0xFF;
+            }
+            plan.convert(L, a, b, 0, L.length);
+            for (int i = 0; i < L.length; i++) {
+                fL[i] = (float) L[i];
+                fa[i] = (float) a[i];
+                fb[i] = (float) b[i];
+            }
+            for (var reference : references) {
+                var prepared = PreparedCIEDE2000.of(reference);
+                prepared.distances(L, a, b, exact);
+                prepared.distancesFast(fL, fa, fb, fast);
+                for (int i = 0; i < L.length; i++) {
+                    var error = Math.abs(exact[i] - fast[i]);
+                    sum += error;
+                    count++;
+                    var pair = "";
+                    if (error > 1e-4 || error > worstSmooth) {
+                        pair = reference.RGB255() + " vs " + new RGB255(r, i >> 8, i & 0xFF);
+                    }
+                    var onDiscontinuity = error > 1e-4
+                            && opposite(reference, new Lab(L[i], a[i], b[i]));
+                    if (error > 1e-4) {
+                        over++;
+                        if (onDiscontinuity) {
+                            opposite++;
+                        }
+                    }
+                    if (error > worst) {
+                        worst = error;
+                        worstPair = pair;
+                    }
+                    if (!onDiscontinuity && error > worstSmooth) {
+                        worstSmooth = error;
+                        worstSmoothPair = pair;
+                    }
+                }
+            }
+        }
+
+        System.out.printf("pairs:         %d (%d references)%n", count, references.size());
+        System.out.printf("mean error:    %.3g%n", sum / count);
+        System.out.printf("max error:     %.3g at %s%n", worst, worstPair);
+        System.out.printf("over 1e-4:     %d (%.3g%%), %d on the discontinuity%n", over, 100.0 * over / count, opposite);
+        System.out.printf("max elsewhere: %.3g at %s%n", worstSmooth, worstSmoothPair);
+    }
+
+    // Whether the hues CIEDE2000 compares are within 0.001 degrees of opposite.
+    private static boolean opposite(Lab c1, Lab c2) {
+        var a1 = c1.a() * 100;
+        var b1 = c1.b() * 100;
+        var a2 = c2.a() * 100;
+        var b2 = c2.b() * 100;
+        var cabmean = (Math.hypot(a1, b1) + Math.hypot(a2, b2)) / 2;
+        var cabmean7 = Math.pow(cabmean, 7);
+        var g = 0.5 * (1 - Math.sqrt(cabmean7 / (cabmean7 + Math.pow(25, 7))));
+        var h1 = Math.toDegrees(Math.atan2(b1, (1 + g) * a1));
+        var h2 = Math.toDegrees(Math.atan2(b2, (1 + g) * a2));
+        return Math.abs(Math.abs(h1 - h2) - 180) < 1e-3;
+    }
+}
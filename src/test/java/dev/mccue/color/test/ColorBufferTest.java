@@ -0,0 +1,176 @@
+package dev.mccue.color.test;
+
+import dev.mccue.color.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColorBufferTest {
+    static List<Class<? extends Color>> spaces() {
+        return List.of(
+                sRGB.class,
+                LinearRGB.class,
+                RGB255.class,
+                HSV.class,
+                HSL.class,
+                XYZ.class,
+                xyY.class,
+                Lab.class,
+                LabLCh.class,
+                Luv.class,
+                LuvLCh.class,
+                HSLuv.class,
+                HPLuv.class,
+                OkLab.class,
+                OkLch.class
+        );
+    }
+
+    static List<Color> colors() {
+        var colors = new ArrayList<Color>();
+        for (int r = 0; r < 256; r += 51) {
+            for (int g = 0; g < 256; g += 51) {
+                for (int b = 0; b < 256; b += 51) {
+                    colors.add(Color.RGB255(r, g, b).sRGB());
+                }
+            }
+        }
+        colors.add(Color.hex("#1a1a46").sRGB());
+        colors.add(Color.hex("#c5a3f0").sRGB());
+        return colors;
+    }
+
+    private static void assertSameColors(ColorBuffer expected, ColorBuffer actual, double delta) {
+        assertEquals(expected.space(), actual.space());
+        assertEquals(expected.size(), actual.size());
+        for (int channel = 0; channel < 3; channel++) {
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(
+                        expected.channel(channel)[i],
+                        actual.channel(channel)[i],
+                        delta,
+                        expected.space().getSimpleName() + " channel " + channel + " of " + expected.get(i)
+                );
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("spaces")
+    public void fromSRGBMatchesRecords(Class<? extends Color> space) {
+        var colors = colors();
+        var expected = ColorBuffer.of(space, colors);
+        var actual = ColorBuffer.of(sRGB.class, colors).convert(space);
+        assertSameColors(expected, actual, 1e-9);
+    }
+
+    @ParameterizedTest
+    @MethodSource("spaces")
+    public void toSRGBMatchesRecords(Class<? extends Color> space) {
+        var colors = ColorBuffer.of(space, colors());
+        var expected = new ColorBuffer(sRGB.class, colors.size());
+        for (int i = 0; i < colors.size(); i++) {
+            expected.set(i, colors.get(i).sRGB());
+        }
+        var actual = colors.convert(sRGB.class);
+        assertSameColors(expected, actual, 1e-9);
+    }
+
+    @Test
+    public void convertsSlicesInPlace() {
+        var colors = colors();
+        var buffer = ColorBuffer.of(sRGB.class, colors);
+        buffer.convert(3, buffer.view(Lab.class), 3, 5, ReferenceWhite.D65);
+
+        for (int i = 0; i < colors.size(); i++) {
+            var expected = (i >= 3 && i < 8) ? colors.get(i).Lab() : colors.get(i).sRGB();
+            var actual = (i >= 3 && i < 8) ? buffer.view(Lab.class).get(i) : buffer.get(i);
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void respectsReferenceWhite() {
+        var colors = colors();
+        var lab = new ColorBuffer(Lab.class, colors.size());
+        ColorBuffer.of(sRGB.class, colors).toLab(lab, ReferenceWhite.D50);
+        for (int i = 0; i < colors.size(); i++) {
+            assertEquals(colors.get(i).Lab(ReferenceWhite.D50), lab.get(i));
+        }
+    }
+
+    @Test
+    public void rejectsMismatchedBuffers() {
+        var buffer = new ColorBuffer(sRGB.class, 4);
+        assertThrows(IllegalArgumentException.class, () -> buffer.toLab(new ColorBuffer(Luv.class, 4)));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.convert(new ColorBuffer(Lab.class, 3)));
+        assertThrows(IllegalArgumentException.class, () -> new ColorBuffer(sRGB.class, new double[1], new double[2], new double[1]));
+    }
+
+    static ColorBuffer random(int size) {
+        var random = new Random(0);
+        var buffer = new ColorBuffer(sRGB.class, size);
+        for (int i = 0; i < size; i++) {
+            buffer.channel(0)[i] = random.nextDouble();
+            buffer.channel(1)[i] = random.nextDouble();
+            buffer.channel(2)[i] = random.nextDouble();
+        }
+        return buffer;
+    }
+
+    @Test
+    public void convertsInParallel() {
+        var buffer = random(100_003);
+        var expected = buffer.convert(Lab.class);
+        var pool = new ForkJoinPool(4);
+        try {
+            var actual = buffer.convertParallel(Lab.class, pool);
+            for (int c = 0; c < 3; c++) {
+                assertArrayEquals(expected.channel(c), actual.channel(c));
+            }
+
+            var d50 = new ColorBuffer(Lab.class, buffer.size() + 10);
+            buffer.convertParallel(d50, ReferenceWhite.D50, pool);
+            assertEquals(buffer.get(99_999).Lab(ReferenceWhite.D50), d50.get(99_999));
+            assertEquals(0, d50.channel(0)[buffer.size()]);
+
+            assertThrows(IndexOutOfBoundsException.class, () -> buffer.convertParallel(new ColorBuffer(Lab.class, 5), pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void splitsEvenly() {
+        var buffer = random(100_003);
+        var spliterator = buffer.spliterator();
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED));
+        assertEquals(buffer.size(), spliterator.getExactSizeIfKnown());
+
+        var prefix = spliterator.trySplit();
+        assertNotNull(prefix);
+        assertEquals(buffer.size(), prefix.getExactSizeIfKnown() + spliterator.getExactSizeIfKnown());
+        assertTrue(Math.abs(prefix.estimateSize() - spliterator.estimateSize()) < 8192);
+
+        assertNull(random(100).spliterator().trySplit());
+    }
+
+    @Test
+    public void streamsInOrder() {
+        var buffer = random(20_000);
+        var colors = buffer.stream().parallel().toList();
+        assertEquals(buffer.size(), colors.size());
+        for (int i = 0; i < buffer.size(); i += 997) {
+            assertEquals(buffer.get(i), colors.get(i));
+        }
+        assertEquals(buffer.size(), buffer.stream().count());
+    }
+}
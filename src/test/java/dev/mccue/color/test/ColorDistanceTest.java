@@ -0,0 +1,151 @@
+package dev.mccue.color.test;
+
+import dev.mccue.color.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColorDistanceTest {
+    static List<Map.Entry<ColorDistance, ColorDistance>> distances() {
+        return List.of(
+                Map.entry(ColorDistance.RGB, Color::distanceRGB),
+                Map.entry(ColorDistance.LINEAR_RGB, Color::distanceLinearRGB),
+                Map.entry(ColorDistance.RIEMERSMA, Color::distanceRiemersma),
+                Map.entry(ColorDistance.LAB, Color::distanceLab),
+                Map.entry(ColorDistance.CIE76, Color::distanceCIE76),
+                Map.entry(ColorDistance.CIE94, Color::distanceCIE94),
+                Map.entry(ColorDistance.CIEDE2000, Color::distanceCIEDE2000),
+                Map.entry(ColorDistance.CIEDE2000_FAST, Color::distanceCIEDE2000Fast),
+                Map.entry(ColorDistance.LUV, Color::distanceLuv),
+                Map.entry(ColorDistance.OKLAB, Color::distanceOkLab),
+                Map.entry(ColorDistance.HSLUV, Color::distanceHSLuv),
+                Map.entry(ColorDistance.HPLUV, Color::distanceHPLuv)
+        );
+    }
+
+    static List<Color> colors() {
+        var colors = new ArrayList<Color>(ColorBufferTest.colors());
+        colors.add(Color.hex("#1a1a46").Lab());
+        colors.add(Color.hex("#c5a3f0").HSLuv());
+        colors.add(Color.hex("#8040c0").OkLch());
+        return colors;
+    }
+
+    @ParameterizedTest
+    @MethodSource("distances")
+    public void preparedMatchesColorMethods(Map.Entry<ColorDistance, ColorDistance> entry) {
+        var metric = entry.getKey();
+        var expected = entry.getValue();
+        var colors = colors();
+        var prepared = metric.prepare(colors);
+        assertEquals(colors.size(), prepared.size());
+        for (int i = 0; i < colors.size(); i++) {
+            for (int j = 0; j < colors.size(); j++) {
+                var d = expected.distance(colors.get(i), colors.get(j));
+                assertEquals(d, metric.distance(colors.get(i), colors.get(j)));
+                assertEquals(d, prepared.distance(i, j), metric + " " + colors.get(i) + " " + colors.get(j));
+            }
+        }
+    }
+
+    @Test
+    public void preparingCustomDistancesCallsThem() {
+        var calls = new AtomicInteger();
+        ColorDistance custom = (c1, c2) -> {
+            calls.incrementAndGet();
+            return c1.distanceRGB(c2);
+        };
+        var colors = colors();
+        var prepared = custom.prepare(colors);
+        assertEquals(0, calls.get());
+        assertEquals(colors.get(0).distanceRGB(colors.get(5)), prepared.distance(0, 5));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void findsNearest() {
+        var colors = List.<Color>of(
+                new sRGB(0, 0, 0),
+                new sRGB(1, 1, 1),
+                new sRGB(0.1, 0.1, 0.1),
+                new sRGB(0.9, 0.9, 0.9)
+        );
+        var prepared = ColorDistance.CIEDE2000.prepare(colors);
+        assertEquals(2, prepared.nearest(0));
+        assertEquals(3, prepared.nearest(1));
+        assertEquals(0, prepared.nearest(2));
+        assertEquals(1, prepared.nearest(3));
+        assertEquals(-1, ColorDistance.LAB.prepare(List.of(new sRGB(0, 0, 0))).nearest(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> prepared.nearest(4));
+    }
+
+    @Test
+    public void sortMatchesEitherWay() {
+        var colors = colors();
+        assertEquals(
+                Color.sort(colors, Color::distanceCIEDE2000),
+                Color.sort(colors, ColorDistance.CIEDE2000)
+        );
+        assertEquals(Color.sort(colors, Color::distanceLuv), Color.sort(colors, ColorDistance.LUV));
+    }
+
+    @Test
+    public void euclideanSortMatchesComparingEveryPair() {
+        // Few distinct levels, so there are lots of ties and duplicates.
+        var random = new Random(11);
+        var colors = new ArrayList<Color>();
+        for (int i = 0; i < 800; i++) {
+            colors.add(new RGB255(random.nextInt(5) * 63, random.nextInt(5) * 63, random.nextInt(256)));
+        }
+        for (var entry : distances()) {
+            assertEquals(
+                    Color.sort(colors, entry.getValue()),
+                    Color.sort(colors, entry.getKey()),
+                    entry.getKey().toString()
+            );
+        }
+    }
+
+    @Test
+    public void withinAgreesWithDistance() {
+        var colors = new ArrayList<Lab>();
+        for (int r = 0; r < 256; r += 51) {
+            for (int g = 0; g < 256; g += 51) {
+                for (int b = 0; b < 256; b += 51) {
+                    colors.add(new RGB255(r, g, b).Lab());
+                }
+            }
+        }
+        var random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            colors.add(new Lab(random.nextDouble(), random.nextDouble() * 3 - 1.5, random.nextDouble() * 3 - 1.5));
+        }
+        var thresholds = new double[] { -1, 0, 0.005, 0.01, 0.02, 0.05, 0.2, 1 };
+        for (var c1 : colors) {
+            for (var c2 : colors) {
+                var de2000 = c1.distanceCIEDE2000(c2);
+                var de94 = c1.distanceCIE94(c2);
+                for (var t : thresholds) {
+                    assertEquals(de2000 <= t, c1.withinCIEDE2000(c2, t));
+                    assertEquals(de94 <= t, c1.withinCIE94(c2, t));
+                }
+                assertTrue(c1.withinCIEDE2000(c2, de2000));
+                assertFalse(c1.withinCIEDE2000(c2, Math.nextDown(de2000)));
+                assertTrue(c1.withinCIE94(c2, de94));
+                assertFalse(c1.withinCIE94(c2, Math.nextDown(de94)));
+            }
+        }
+        Color c = new sRGB(0.2, 0.4, 0.6);
+        assertTrue(c.withinCIEDE2000(c, 0));
+        assertFalse(c.withinCIEDE2000(new sRGB(0.2, 0.4, 0.61), 0));
+        assertFalse(c.withinCIE94(new sRGB(0.2, 0.4, 0.6), Double.NaN));
+    }
+}
@@ -0,0 +1,107 @@
+package dev.mccue.color.test;
+
+import dev.mccue.color.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColorGridTest {
+    @Test
+    public void findsEverythingWithinTheRadius() {
+        var random = new Random(25);
+        for (var distance : List.of(
+                ColorDistance.LAB, ColorDistance.OKLAB, ColorDistance.HSLUV, ColorDistance.HPLUV, ColorDistance.CIEDE2000
+        )) {
+            var colors = TestColors.random(random, 3000);
+            var grid = new ColorGrid<Color>(distance, distance == ColorDistance.OKLAB ? 0.03 : 0.05);
+            grid.addAll(colors);
+            assertEquals(3000, grid.size());
+            for (var query : TestColors.random(random, 100)) {
+                for (var radius : new double[] { 0.02, 0.05, 0.12 }) {
+                    var expected = IntStream.range(0, colors.size())
+                            .filter(i -> distance.distance(query, colors.get(i)) <= radius)
+                            .boxed()
+                            .sorted(Comparator.comparingDouble(i -> distance.distance(query, colors.get(i))))
+                            .map(colors::get)
+                            .toList();
+                    assertEquals(expected, grid.withinRadius(query, radius), distance.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void dedupeKeepsTheFirstOfEachGroup() {
+        var random = new Random(26);
+        for (var distance : List.of(ColorDistance.LAB, ColorDistance.HSLUV, ColorDistance.HPLUV, ColorDistance.CIEDE2000)) {
+            // Few distinct colors, so most are near duplicates.
+            var colors = new ArrayList<Color>();
+            for (int i = 0; i < 2000; i++) {
+                colors.add(new RGB255(random.nextInt(16) * 16, random.nextInt(16) * 16, random.nextInt(4) * 64 + random.nextInt(3)));
+            }
+            var threshold = 0.02;
+            var expected = new ArrayList<Color>();
+            for (var color : colors) {
+                if (expected.stream().noneMatch(kept -> distance.distance(color, kept) <= threshold)) {
+                    expected.add(color);
+                }
+            }
+            var kept = ColorGrid.dedupe(colors, distance, threshold);
+            assertTrue(kept.size() < colors.size());
+            assertEquals(expected, kept, distance.toString());
+        }
+        var same = List.<Color>of(Color.sRGB(0.5, 0.5, 0.5), Color.sRGB(0.5, 0.5, 0.5), Color.sRGB(0, 0, 0));
+        assertEquals(List.of(same.get(0), same.get(2)), ColorGrid.dedupe(same, ColorDistance.OKLAB, 0));
+    }
+
+    @Test
+    public void addsFromSeveralThreads() throws Exception {
+        var random = new Random(27);
+        var colors = TestColors.random(random, 20000);
+        var sequential = new ColorGrid<Color>(ColorDistance.LAB, 0.04);
+        sequential.addAll(colors);
+
+        var parallel = new ColorGrid<Color>(ColorDistance.LAB, 0.04);
+        parallel.addAllParallel(colors, new ForkJoinPool(4));
+        assertEquals(colors.size(), parallel.size());
+
+        var threads = new ColorGrid<Color>(ColorDistance.LAB, 0.04);
+        try (var executor = Executors.newFixedThreadPool(4)) {
+            var futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < 4; t++) {
+                var part = colors.subList(t * 5000, (t + 1) * 5000);
+                futures.add(executor.submit(() -> part.forEach(threads::add)));
+            }
+            for (var future : futures) {
+                future.get();
+            }
+        }
+        assertEquals(colors.size(), threads.size());
+
+        for (var query : TestColors.random(random, 100)) {
+            var expected = sequential.withinRadius(query, 0.05);
+            assertEquals(expected, parallel.withinRadius(query, 0.05));
+            assertEquals(new HashSet<>(expected), new HashSet<>(threads.withinRadius(query, 0.05)));
+        }
+    }
+
+    @Test
+    public void rejectsWhatItCannotGrid() {
+        assertThrows(IllegalArgumentException.class, () -> new ColorGrid<Color>(ColorDistance.CIE94, 0.1));
+        assertThrows(IllegalArgumentException.class, () -> new ColorGrid<Color>(ColorDistance.LAB, 0));
+        assertThrows(IllegalArgumentException.class, () -> ColorGrid.dedupe(List.of(), ColorDistance.LAB, -1));
+        var grid = new ColorGrid<Color>(ColorDistance.LAB, 0.1);
+        assertEquals(List.of(), grid.withinRadius(Color.sRGB(0, 0, 0), 1));
+        assertThrows(IllegalArgumentException.class, () -> grid.withinRadius(Color.sRGB(0, 0, 0), -1));
+    }
+}
@@ -0,0 +1,138 @@
+package dev.mccue.color.test;
+
+import dev.mccue.color.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColorPrecisionTest {
+    static List<Color> colors() {
+        var colors = new ArrayList<Color>();
+        for (int r = 0; r <= 12; r++) {
+            for (int g = 0; g <= 12; g++) {
+                for (int b = 0; b <= 12; b++) {
+                    colors.add(new sRGB(r / 12.0, g / 12.0, b / 12.0));
+                }
+            }
+        }
+        return colors;
+    }
+
+    @ParameterizedTest
+    @CsvSource({ "FAST, 1e-6", "TABLE, 1e-5" })
+    public void staysCloseToExact(ColorPrecision precision, double delta) {
+        var colors = colors();
+        for (var from : ColorBufferTest.spaces()) {
+            var src = ColorBuffer.of(from, colors);
+            for (var to : ColorBufferTest.spaces()) {
+                var expected = new ColorBuffer(to, src.size());
+                var actual = new ColorBuffer(to, src.size());
+                src.convert(expected, ReferenceWhite.D65, ColorPrecision.EXACT);
+                src.convert(actual, ReferenceWhite.D65, precision);
+
+                for (int i = 0; i < src.size(); i++) {
+                    var message = from.getSimpleName() + " -> " + to.getSimpleName() + " of " + colors.get(i);
+                    if (to == RGB255.class) {
+                        // Exact halves can round either way.
+                        for (int c = 0; c < 3; c++) {
+                            assertEquals(expected.channel(c)[i], actual.channel(c)[i], 1, message);
+                        }
+                        continue;
+                    }
+                    if (to == HSL.class && Math.abs(expected.channel(2)[i] - 0.5) > 0.5 - 1e-6) {
+                        // Saturation is undefined at black and white.
+                        continue;
+                    }
+                    var e = expected.get(i).sRGB();
+                    var a = actual.get(i).sRGB();
+                    assertEquals(e.R(), a.R(), delta, message);
+                    assertEquals(e.G(), a.G(), delta, message);
+                    assertEquals(e.B(), a.B(), delta, message);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void fastCylindricalChannelsMatch() {
+        var plan = Color.converter(sRGB.class, OkLch.class, ReferenceWhite.D65, ColorPrecision.FAST);
+        for (var color : colors()) {
+            var expected = color.OkLch();
+            var actual = (OkLch) plan.convert(color);
+            assertEquals(expected.L(), actual.L(), 1e-9);
+            assertEquals(expected.c(), actual.c(), 1e-9);
+            if (expected.c() > 1e-3) {
+                var dh = Math.abs(expected.h() - actual.h()) % 360;
+                assertEquals(0, Math.min(dh, 360 - dh), 1e-5, color.toString());
+            }
+        }
+    }
+
+    @Test
+    public void exactIsTheDefault() {
+        var plan = Color.converter(sRGB.class, Lab.class, ReferenceWhite.D65);
+        assertEquals(ColorPrecision.EXACT, plan.precision());
+        assertSame(plan, Color.converter(sRGB.class, Lab.class, ReferenceWhite.D65, ColorPrecision.EXACT));
+
+        var src = ColorBuffer.of(sRGB.class, colors());
+        var expected = src.convert(Lab.class);
+        var actual = new ColorBuffer(Lab.class, src.size());
+        src.convert(actual, ReferenceWhite.D65, ColorPrecision.EXACT);
+        for (int c = 0; c < 3; c++) {
+            assertArrayEquals(expected.channel(c), actual.channel(c));
+        }
+    }
+
+    @Test
+    public void plansAreSharedPerPrecision() {
+        for (var precision : ColorPrecision.values()) {
+            var plan = Color.converter(OkLch.class, sRGB.class, ReferenceWhite.D65, precision);
+            assertEquals(precision, plan.precision());
+            assertSame(plan, Color.converter(OkLch.class, sRGB.class, ReferenceWhite.D65, precision));
+        }
+        assertNotSame(
+                Color.converter(OkLch.class, sRGB.class, ReferenceWhite.D65, ColorPrecision.FAST),
+                Color.converter(OkLch.class, sRGB.class, ReferenceWhite.D65, ColorPrecision.TABLE)
+        );
+        assertThrows(
+                NullPointerException.class,
+                () -> Color.converter(OkLch.class, sRGB.class, ReferenceWhite.D65, null)
+        );
+    }
+
+    @Test
+    public void handlesOutOfRangeChannels() {
+        var plan = Color.converter(XYZ.class, OkLab.class, ReferenceWhite.D65, ColorPrecision.FAST);
+        for (var color : List.of(
+                new XYZ(0, 0, 0),
+                new XYZ(-0.2, 0.1, 0.05),
+                new XYZ(2.5, 3, 4),
+                new XYZ(1e-310, 1e-310, 1e-310)
+        )) {
+            var expected = color.OkLab();
+            var actual = (OkLab) plan.convert(color);
+            assertEquals(expected.L(), actual.L(), 1e-9, color.toString());
+            assertEquals(expected.a(), actual.a(), 1e-9, color.toString());
+            assertEquals(expected.b(), actual.b(), 1e-9, color.toString());
+        }
+    }
+
+    @Test
+    public void fastCubeRootsKeepTheirScale() {
+        var plan = Color.converter(XYZ.class, OkLab.class, ReferenceWhite.D65, ColorPrecision.FAST);
+        for (var v : new double[] { 1.67e278, 2.39e-275, 1e100, 1e-100, 1e300, 1e-300 }) {
+            var color = new XYZ(v, v, v);
+            var expected = color.OkLab();
+            var actual = (OkLab) plan.convert(color);
+            var delta = Math.abs(expected.L()) * 1e-12;
+            assertEquals(expected.L(), actual.L(), delta, color.toString());
+            assertEquals(expected.a(), actual.a(), delta, color.toString());
+            assertEquals(expected.b(), actual.b(), delta, color.toString());
+        }
+    }
+}
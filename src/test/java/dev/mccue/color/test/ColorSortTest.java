@@ -1,12 +1,16 @@
 package dev.mccue.color.test;
 
-import dev.mccue.color.Color;
+import dev.mccue.color.*;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class ColorSortTest {
     @Test
@@ -32,4 +36,129 @@ public class ColorSortTest {
                 out
         );
     }
+
+    @Test
+    public void sortKeepsTheOrderOfTies() {
+        // Every pair of these is the same distance apart in sRGB.
+        var in = List.<Color>of(
+                Color.sRGB(0.5, 0, 0),
+                Color.sRGB(0, 0.5, 0),
+                Color.sRGB(0, 0, 0.5)
+        );
+        var out = Color.sort(in, Color::distanceRGB);
+        assertEquals(Color.sort(in, Color::distanceRGB), out);
+        assertEquals(in, out);
+    }
+
+    // Colors from a few levels per channel, so many pairs are the same
+    // distance apart.
+    static List<Color> tiedPalette(long seed, int n) {
+        var random = new Random(seed);
+        var levels = 2 + random.nextInt(3);
+        var colors = new ArrayList<Color>();
+        for (int i = 0; i < n; i++) {
+            colors.add(new RGB255(
+                    random.nextInt(levels) * 255 / (levels - 1),
+                    random.nextInt(levels) * 255 / (levels - 1),
+                    random.nextInt(levels) * 255 / (levels - 1)
+            ));
+        }
+        return colors;
+    }
+
+    @Test
+    public void sortKeepsReleasedOrderings() {
+        // Orderings from the released Color.sort, which took distances as
+        // method references.
+        ColorDistance redGreen = (a, b) ->
+                Math.abs(a.sRGB().R() - b.sRGB().R()) + Math.abs(a.sRGB().G() - b.sRGB().G());
+        record Released(ColorDistance distance, long seed, int[] order) {
+        }
+        var released = List.of(
+                new Released(ColorDistance.CIEDE2000, 1003, new int[] { 9, 4, 2, 11, 8, 3, 1, 0, 6, 10, 7, 5 }),
+                new Released(ColorDistance.LAB, 2002, new int[] { 3, 2, 0, 6, 4, 1, 5, 7 }),
+                new Released(ColorDistance.RGB, 1002, new int[] { 3, 7, 4, 2, 1, 0, 5, 6 }),
+                new Released(ColorDistance.RGB, 4001, new int[] { 1, 0, 4, 2, 3 }),
+                new Released(ColorDistance.CIE94, 1002, new int[] { 3, 7, 6, 0, 1, 2, 4, 5 }),
+                new Released(ColorDistance.HSLUV, 1003, new int[] { 9, 5, 10, 0, 1, 7, 2, 4, 6, 11, 8, 3 }),
+                new Released(redGreen, 3, new int[] { 4, 0, 2, 3, 10, 8, 1, 11, 5, 6, 9, 7 }),
+                new Released(ColorDistance.RIEMERSMA, 9, new int[] {
+                        29, 47, 10, 26, 46, 22, 1, 7, 3, 0, 2, 6, 39, 16, 28, 4,
+                        5, 11, 14, 15, 42, 19, 35, 61, 52, 18, 36, 41, 50, 13, 23, 24,
+                        49, 54, 27, 56, 30, 32, 20, 45, 34, 9, 17, 37, 44, 25, 38, 59,
+                        31, 21, 48, 43, 60, 62, 63, 8, 12, 58, 33, 40, 51, 55, 53, 57
+                })
+        );
+        for (var r : released) {
+            var in = tiedPalette(r.seed(), r.order().length);
+            var expected = new ArrayList<Color>();
+            for (var i : r.order()) {
+                expected.add(in.get(i));
+            }
+            assertEquals(expected, Color.sort(in, r.distance()), r.distance().toString());
+        }
+    }
+
+    @Test
+    public void sortWalksLongChains() {
+        // The tree of a gradient is one long chain from dark to light.
+        var in = new ArrayList<Color>();
+        for (int i = 20_000; i > 0; i--) {
+            in.add(Color.sRGB(i / 20_000.0, i / 20_000.0, i / 20_000.0));
+        }
+        var out = Color.sort(in, ColorDistance.RGB);
+        assertEquals(in.reversed(), out);
+    }
+
+    static double pathLength(List<Color> colors, ColorDistance distance) {
+        var length = 0.0;
+        for (int i = 1; i < colors.size(); i++) {
+            length += distance.distance(colors.get(i - 1), colors.get(i));
+        }
+        return length;
+    }
+
+    @Test
+    public void sortApproximateKeepsNeighborsClose() {
+        var random = new Random(7);
+        var in = new ArrayList<Color>();
+        for (int i = 0; i < 20_000; i++) {
+            in.add(new RGB255(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+        }
+        for (var space : List.<Class<? extends Color>>of(Lab.class, OkLab.class)) {
+            var out = Color.sortApproximate(in, space);
+            assertEquals(Color.sortApproximateParallel(in, space, ForkJoinPool.commonPool()), out);
+            assertEquals(new HashSet<>(in), new HashSet<>(out));
+            assertEquals(in.size(), out.size());
+            assertTrue(pathLength(out, ColorDistance.LAB) < pathLength(in, ColorDistance.LAB) / 10, space.getSimpleName());
+        }
+        assertThrows(IllegalArgumentException.class, () -> Color.sortApproximate(in, HSLuv.class));
+        assertEquals(List.of(), Color.sortApproximate(List.of(), Lab.class));
+    }
+
+    @Test
+    public void refineSortShortensThePath() {
+        var random = new Random(11);
+        var in = new ArrayList<Color>();
+        for (int i = 0; i < 600; i++) {
+            in.add(new RGB255(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+        }
+        for (var distance : List.of(ColorDistance.LAB, ColorDistance.CIEDE2000)) {
+            var sorted = Color.sort(in, distance);
+            var refined = Color.refineSort(sorted, distance, Duration.ofMinutes(1), 0, ForkJoinPool.commonPool());
+            assertEquals(pathLength(sorted, distance), refined.lengthBefore(), 1e-9);
+            assertEquals(pathLength(refined.colors(), distance), refined.lengthAfter(), 1e-9);
+            assertTrue(refined.lengthAfter() < refined.lengthBefore() * 0.95);
+            assertEquals(sorted.getFirst(), refined.colors().getFirst());
+            assertEquals(new HashSet<>(sorted), new HashSet<>(refined.colors()));
+            assertEquals(
+                    refined,
+                    Color.refineSort(sorted, distance, Duration.ofMinutes(1), 0, ForkJoinPool.commonPool())
+            );
+
+            var untouched = Color.refineSort(sorted, distance, Duration.ZERO, 0, ForkJoinPool.commonPool());
+            assertEquals(sorted, untouched.colors());
+            assertEquals(untouched.lengthBefore(), untouched.lengthAfter());
+        }
+    }
 }
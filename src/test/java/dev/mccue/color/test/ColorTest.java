@@ -7,6 +7,7 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -495,6 +496,15 @@ public class ColorTest {
         assertEquals(c1.blendLuvLCh(c2, 1).hex(), c2hex);
     }
 
+    @Test
+    public void colorIsSealedToTheColorSpaces() {
+        assertTrue(Color.class.isSealed());
+        assertEquals(
+                new HashSet<>(ColorBufferTest.spaces()),
+                new HashSet<>(Arrays.asList(Color.class.getPermittedSubclasses()))
+        );
+    }
+
     @Test
     public void allColorMethodsCallable() throws Exception {
         var colors = List.of(
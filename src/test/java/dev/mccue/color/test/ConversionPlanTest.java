@@ -0,0 +1,88 @@
+package dev.mccue.color.test;
+
+import dev.mccue.color.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConversionPlanTest {
+    static List<Class<? extends Color>> spaces() {
+        return ColorBufferTest.spaces();
+    }
+
+    @ParameterizedTest
+    @MethodSource("spaces")
+    public void everyRouteMatchesRecords(Class<? extends Color> from) {
+        var colors = ColorBuffer.of(from, ColorBufferTest.colors());
+        for (var to : spaces()) {
+            var plan = Color.converter(from, to);
+            assertEquals(from, plan.from());
+            assertEquals(to, plan.to());
+            for (int i = 0; i < colors.size(); i++) {
+                var color = colors.get(i);
+                var expected = ColorBuffer.of(to, List.of(color)).get(0).sRGB();
+                var actual = plan.convert(color);
+                assertEquals(to, actual.getClass());
+                var actualRGB = actual.sRGB();
+                var message = from.getSimpleName() + " -> " + to.getSimpleName() + " of " + color;
+                assertEquals(expected.R(), actualRGB.R(), 1e-4, message);
+                assertEquals(expected.G(), actualRGB.G(), 1e-4, message);
+                assertEquals(expected.B(), actualRGB.B(), 1e-4, message);
+            }
+        }
+    }
+
+    @Test
+    public void fusedMatricesMatchOkLab() {
+        var plan = Color.converter(sRGB.class, OkLab.class);
+        for (var color : ColorBufferTest.colors()) {
+            var expected = color.OkLab();
+            var actual = (OkLab) plan.convert(color);
+            assertEquals(expected.L(), actual.L(), 1e-12);
+            assertEquals(expected.a(), actual.a(), 1e-12);
+            assertEquals(expected.b(), actual.b(), 1e-12);
+        }
+    }
+
+    @Test
+    public void convertsChannelArrays() {
+        var plan = Color.converter(HSLuv.class, OkLab.class);
+        var hsluv = Color.hex("#c5a3f0").HSLuv();
+        var expected = hsluv.OkLab();
+
+        var out = new double[3];
+        plan.convert(new double[] { hsluv.H(), hsluv.S(), hsluv.L() }, out);
+        assertEquals(expected.L(), out[0], 1e-9);
+        assertEquals(expected.a(), out[1], 1e-9);
+        assertEquals(expected.b(), out[2], 1e-9);
+
+        var h = new double[] { 0, hsluv.H(), 0 };
+        var s = new double[] { 0, hsluv.S(), 0 };
+        var l = new double[] { 0, hsluv.L(), 0 };
+        plan.convert(h, s, l, 1, 1);
+        assertArrayEquals(out, new double[] { h[1], s[1], l[1] });
+        assertEquals(0, h[0]);
+        assertEquals(0, h[2]);
+    }
+
+    @Test
+    public void plansAreShared() {
+        assertSame(
+                Color.converter(sRGB.class, Lab.class, ReferenceWhite.D50),
+                Color.converter(sRGB.class, Lab.class, ReferenceWhite.D50)
+        );
+        assertNotSame(
+                Color.converter(sRGB.class, Lab.class, ReferenceWhite.D50),
+                Color.converter(sRGB.class, Lab.class, ReferenceWhite.D65)
+        );
+    }
+
+    @Test
+    public void rejectsUnknownSpaces() {
+        assertThrows(ColorSpaceException.class, () -> Color.converter(Color.class, Lab.class));
+    }
+}
@@ -0,0 +1,92 @@
+package dev.mccue.color.test;
+
+import dev.mccue.color.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DistanceMatrixTest {
+    @TempDir
+    Path dir;
+
+    static List<Color> colors() {
+        var colors = new ArrayList<Color>();
+        for (int i = 0; i < 300; i++) {
+            colors.add(new RGB255(i * 7 % 256, i * 13 % 256, i * 29 % 256));
+        }
+        return colors;
+    }
+
+    @Test
+    public void matchesPreparedDistances() {
+        var prepared = ColorDistance.CIEDE2000.prepare(colors());
+        var matrix = DistanceMatrix.of(prepared);
+        var parallel = DistanceMatrix.of(prepared, DistanceMatrix.Storage.DOUBLE, ForkJoinPool.commonPool());
+        var floats = DistanceMatrix.of(prepared, DistanceMatrix.Storage.FLOAT, ForkJoinPool.commonPool());
+        assertEquals(prepared.size(), matrix.size());
+        assertEquals(DistanceMatrix.Storage.FLOAT, floats.storage());
+        for (int i = 0; i < prepared.size(); i++) {
+            for (int j = 0; j < prepared.size(); j++) {
+                var d = i == j ? 0 : prepared.distance(Math.min(i, j), Math.max(i, j));
+                assertEquals(d, matrix.distance(i, j));
+                assertEquals(d, parallel.distance(i, j));
+                assertEquals((float) d, floats.distance(i, j));
+            }
+        }
+        for (int i = 0; i < prepared.size(); i += 17) {
+            assertEquals(prepared.nearest(i), matrix.nearest(i));
+        }
+    }
+
+    @Test
+    public void copiesRows() {
+        var matrix = DistanceMatrix.of(colors(), ColorDistance.LAB);
+        var row = new double[matrix.size()];
+        for (int i : new int[] { 0, 1, 150, matrix.size() - 1 }) {
+            matrix.row(i, row);
+            for (int j = 0; j < matrix.size(); j++) {
+                assertEquals(matrix.distance(i, j), row[j]);
+            }
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> matrix.row(0, new double[3]));
+        assertThrows(IndexOutOfBoundsException.class, () -> matrix.distance(0, matrix.size()));
+    }
+
+    @Test
+    public void spillsToAFile() throws IOException {
+        var prepared = ColorDistance.LAB.prepare(colors());
+        var file = dir.resolve("distances.bin");
+        var mapped = DistanceMatrix.mapped(prepared, file, DistanceMatrix.Storage.FLOAT, ForkJoinPool.commonPool());
+        assertEquals(DistanceMatrix.pairs(prepared.size()) * Float.BYTES, Files.size(file));
+        for (int i = 0; i < prepared.size(); i += 7) {
+            for (int j = i + 1; j < prepared.size(); j += 5) {
+                assertEquals((float) prepared.distance(i, j), mapped.distance(i, j));
+                assertEquals(mapped.distance(i, j), mapped.distance(j, i));
+            }
+        }
+
+        // The pair (0, 1) comes first, then (0, 2).
+        var bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals((float) prepared.distance(0, 1), bytes.getFloat(0));
+        assertEquals((float) prepared.distance(0, 2), bytes.getFloat(4));
+    }
+
+    @Test
+    public void countsPairs() {
+        assertEquals(0, DistanceMatrix.pairs(0));
+        assertEquals(0, DistanceMatrix.pairs(1));
+        assertEquals(3, DistanceMatrix.pairs(3));
+        assertEquals(199_990_000L, DistanceMatrix.pairs(20_000));
+        assertEquals(0, DistanceMatrix.of(List.of(), ColorDistance.RGB).size());
+    }
+}
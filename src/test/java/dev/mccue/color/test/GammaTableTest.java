@@ -0,0 +1,79 @@
+package dev.mccue.color.test;
+
+import dev.mccue.color.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GammaTableTest {
+    @Test
+    public void linearizesEveryByteExactly() {
+        for (int v = 0; v < 256; v++) {
+            var expected = new RGB255(v, v, v).sRGB().LinearRGB();
+            assertEquals(expected.R(), GammaTable.linearize(v));
+            assertEquals(expected, new RGB255(v, v, v).LinearRGB());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 2, 256, 1024, 4096, 16384 })
+    public void staysWithinMaxError(int size) {
+        var table = GammaTable.of(size);
+        assertEquals(size, table.size());
+        for (int i = 0; i <= 100_000; i++) {
+            var v = i / 100_000.0;
+            var expected = new LinearRGB(v, v, v).sRGB().R();
+            assertEquals(expected, table.delinearize(v), table.maxError() + 1e-15);
+            var linear = new sRGB(v, v, v).LinearRGB().R();
+            assertEquals(linear, table.linearize(v), table.maxError() + 1e-15);
+        }
+    }
+
+    @Test
+    public void standardTableIsAccurate() {
+        assertSame(GammaTable.standard(), GammaTable.of(4096));
+        assertTrue(GammaTable.standard().maxError() < 2e-5, String.valueOf(GammaTable.standard().maxError()));
+    }
+
+    @Test
+    public void roundsTo8BitsLikeExactConversion() {
+        var table = GammaTable.standard();
+        var mismatches = 0;
+        for (int i = 0; i <= 100_000; i++) {
+            var v = i / 100_000.0;
+            var linear = new LinearRGB(v, v, v);
+            var expected = linear.RGB255().R();
+            var actual = linear.RGB255_table(table).R();
+            assertTrue(Math.abs(expected - actual) <= 1);
+            if (expected != actual) {
+                mismatches++;
+            }
+        }
+        assertTrue(mismatches < 100, String.valueOf(mismatches));
+    }
+
+    @Test
+    public void handlesOutOfRangeChannels() {
+        var linear = new LinearRGB(-0.5, 1.5, 2);
+        assertEquals(linear.sRGB(), linear.sRGB_table());
+    }
+
+    @Test
+    public void rejectsTinyTables() {
+        assertThrows(IllegalArgumentException.class, () -> GammaTable.of(1));
+    }
+
+    @Test
+    public void plansUseExactTable() {
+        var plan = Color.converter(RGB255.class, LinearRGB.class);
+        var r = new double[] { 0, 10, 128, 255, 127.5 };
+        var g = r.clone();
+        var b = r.clone();
+        plan.convert(r, g, b, 0, r.length);
+        assertEquals(GammaTable.linearize(10), r[1]);
+        assertEquals(GammaTable.linearize(255), r[3]);
+        assertEquals(new sRGB(127.5 / 255.0, 0, 0).LinearRGB().R(), r[4]);
+    }
+}
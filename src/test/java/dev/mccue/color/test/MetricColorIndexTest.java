@@ -0,0 +1,91 @@
+package dev.mccue.color.test;
+
+import dev.mccue.color.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricColorIndexTest {
+    @Test
+    public void matchesComparingAgainstEveryColor() {
+        var random = new Random(22);
+        for (var distance : List.of(TestColors.MANHATTAN, ColorDistance.RGB, ColorDistance.HSLUV, ColorDistance.LAB)) {
+            var colors = TestColors.random(random, 2000);
+            // Repeats, so ties come up.
+            colors.addAll(colors.subList(0, 100));
+            var index = MetricColorIndex.of(colors, distance);
+            assertEquals(2100, index.size());
+
+            var queries = TestColors.random(random, 60);
+            queries.addAll(colors.subList(0, 20));
+            for (var query : queries) {
+                var all = TestColors.byDistance(colors, distance, query);
+                assertEquals(all[0], index.nearest(query));
+                assertArrayEquals(Arrays.copyOf(all, 6), index.nearestK(query, 6));
+
+                var radius = distance.distance(query, colors.get(all[30]));
+                var within = index.within(query, radius);
+                assertTrue(within.length >= 31);
+                assertArrayEquals(Arrays.copyOf(all, within.length), within);
+                assertTrue(distance.distance(query, colors.get(all[within.length])) > radius);
+            }
+        }
+    }
+
+    @Test
+    public void buildsTheSameInParallel() {
+        var random = new Random(23);
+        var colors = TestColors.random(random, 5000);
+        var sequential = MetricColorIndex.of(colors, TestColors.MANHATTAN);
+        var parallel = MetricColorIndex.ofParallel(colors, TestColors.MANHATTAN, new ForkJoinPool(4));
+        for (var query : TestColors.random(random, 200)) {
+            assertArrayEquals(sequential.nearestK(query, 4), parallel.nearestK(query, 4));
+            assertArrayEquals(sequential.within(query, 0.2), parallel.within(query, 0.2));
+        }
+    }
+
+    @Test
+    public void withinCanReturnEveryColor() {
+        var random = new Random(25);
+        var colors = TestColors.random(random, 1000);
+        colors.addAll(colors.subList(0, 300));
+        var index = MetricColorIndex.of(colors, TestColors.MANHATTAN);
+        var query = colors.get(0);
+        assertArrayEquals(TestColors.byDistance(colors, TestColors.MANHATTAN, query), index.within(query, 3));
+    }
+
+    @Test
+    public void checkedReportsBrokenTriangles() {
+        var random = new Random(24);
+        var colors = TestColors.random(random, 500);
+        var checked = MetricColorIndex.checked(colors, TestColors.MANHATTAN);
+        var plain = MetricColorIndex.of(colors, TestColors.MANHATTAN);
+        for (var query : TestColors.random(random, 50)) {
+            assertArrayEquals(plain.nearestK(query, 3), checked.nearestK(query, 3));
+        }
+
+        // Squaring a distance breaks the triangle inequality.
+        ColorDistance squared = (a, b) -> Math.pow(TestColors.MANHATTAN.distance(a, b), 2);
+        assertThrows(IllegalArgumentException.class, () -> MetricColorIndex.checked(colors, squared));
+        // So does weighting the channels by the mean red.
+        assertThrows(IllegalArgumentException.class, () -> MetricColorIndex.checked(colors, ColorDistance.RIEMERSMA));
+    }
+
+    @Test
+    public void handlesEmptyAndSmallLists() {
+        var empty = MetricColorIndex.of(List.of(), TestColors.MANHATTAN);
+        assertEquals(-1, empty.nearest(Color.sRGB(0, 0, 0)));
+        assertArrayEquals(new int[0], empty.within(Color.sRGB(0, 0, 0), 1));
+
+        var two = MetricColorIndex.of(List.of(Color.sRGB(0, 0, 0), Color.sRGB(1, 1, 1)), TestColors.MANHATTAN);
+        assertArrayEquals(new int[] { 1, 0 }, two.nearestK(Color.sRGB(0.9, 0.9, 0.9), 5));
+        assertThrows(IllegalArgumentException.class, () -> two.nearestK(Color.sRGB(0, 0, 0), -1));
+        assertThrows(IllegalArgumentException.class, () -> two.within(Color.sRGB(0, 0, 0), -1));
+        assertThrows(NullPointerException.class, () -> MetricColorIndex.ofParallel(List.of(), TestColors.MANHATTAN, null));
+    }
+}
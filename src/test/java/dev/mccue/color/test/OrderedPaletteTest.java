@@ -0,0 +1,76 @@
+package dev.mccue.color.test;
+
+import dev.mccue.color.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderedPaletteTest {
+    @Test
+    public void matchesSortAfterARebuild() {
+        var random = new Random(5);
+        for (var distance : List.of(ColorDistance.LAB, ColorDistance.CIEDE2000, ColorDistance.RIEMERSMA)) {
+            var all = TestColors.random(random, 300);
+            var palette = OrderedPalette.<Color>of(all.subList(0, 200), distance);
+            assertEquals(Color.sort(all.subList(0, 200), distance), palette.colors());
+            for (var color : all.subList(200, 300)) {
+                palette.add(color);
+            }
+            assertEquals(300, palette.size());
+            assertEquals(new HashSet<>(all), new HashSet<>(palette.colors()));
+            palette.rebuild();
+            assertEquals(Color.sort(all, distance), palette.colors());
+        }
+    }
+
+    @Test
+    public void insertsWhereThePathGrowsLeast() {
+        // Not a standard distance, so every insertion point is tried.
+        ColorDistance gray = (a, b) -> Math.abs(a.sRGB().R() - b.sRGB().R());
+        var palette = new OrderedPalette<Color>(gray);
+        for (var v : new double[] { 0.5, 0.1, 0.9, 0.3, 0.7, 0.2, 1.0, 0.0 }) {
+            palette.add(Color.sRGB(v, v, v));
+        }
+        var out = palette.colors();
+        for (int i = 1; i < out.size(); i++) {
+            assertTrue(out.get(i - 1).sRGB().R() < out.get(i).sRGB().R(), out.toString());
+        }
+
+        // The same through the k-d tree.
+        var rgb = OrderedPalette.<Color>of(List.of(Color.sRGB(0, 0, 0), Color.sRGB(1, 1, 1)), ColorDistance.RGB);
+        rgb.add(Color.sRGB(0.5, 0.5, 0.5));
+        assertEquals(List.of(Color.sRGB(0, 0, 0), Color.sRGB(0.5, 0.5, 0.5), Color.sRGB(1, 1, 1)), rgb.colors());
+    }
+
+    @Test
+    public void rebuildsEverySoOften() {
+        var random = new Random(9);
+        var all = TestColors.random(random, 250);
+        // Runs each rebuild as soon as it starts.
+        var palette = OrderedPalette.<Color>of(all.subList(0, 100), ColorDistance.LAB, 50, Runnable::run);
+        for (int i = 100; i < 250; i++) {
+            palette.add(all.get(i));
+            if ((i + 1) % 50 == 0) {
+                assertEquals(Color.sort(all.subList(0, i + 1), ColorDistance.LAB), palette.colors());
+            }
+        }
+
+        try (var executor = Executors.newSingleThreadExecutor()) {
+            var more = TestColors.random(random, 50);
+            var rebuilt = palette.rebuildAsync(executor);
+            more.forEach(palette::add);
+            rebuilt.join();
+            var everything = new ArrayList<>(all);
+            everything.addAll(more);
+            assertEquals(new HashSet<>(everything), new HashSet<>(palette.colors()));
+            palette.rebuild();
+            assertEquals(Color.sort(everything, ColorDistance.LAB), palette.colors());
+        }
+    }
+}
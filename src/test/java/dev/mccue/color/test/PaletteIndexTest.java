@@ -0,0 +1,122 @@
+package dev.mccue.color.test;
+
+import dev.mccue.color.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PaletteIndexTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void matchesComparingAgainstEveryEntry() {
+        var random = new Random(21);
+        for (var distance : List.of(ColorDistance.LAB, ColorDistance.OKLAB, ColorDistance.LUV, ColorDistance.CIEDE2000)) {
+            var palette = TestColors.random(random, 500);
+            // Repeats, so ties come up.
+            palette.addAll(palette.subList(0, 50));
+            var index = PaletteIndex.of(palette, distance);
+            assertEquals(550, index.size());
+
+            var queries = TestColors.random(random, 300);
+            queries.addAll(palette.subList(0, 20));
+            var expected = new int[queries.size()];
+            for (int i = 0; i < queries.size(); i++) {
+                var all = TestColors.byDistance(palette, distance, queries.get(i));
+                expected[i] = all[0];
+                assertEquals(all[0], index.nearest(queries.get(i)), distance.toString());
+                assertArrayEquals(
+                        Arrays.copyOf(all, 5),
+                        index.nearestK(queries.get(i), 5),
+                        distance.toString()
+                );
+            }
+
+            var buffer = ColorBuffer.of(sRGB.class, queries);
+            var out = new int[queries.size()];
+            index.nearest(buffer, out);
+            assertArrayEquals(expected, out, distance.toString());
+
+            var parallel = new int[queries.size()];
+            index.nearestParallel(buffer, parallel, ForkJoinPool.commonPool());
+            assertArrayEquals(expected, parallel, distance.toString());
+
+            var converted = buffer.convert(index.space());
+            var channels = new int[queries.size()];
+            index.nearest(converted.channel(0), converted.channel(1), converted.channel(2), channels);
+            assertArrayEquals(expected, channels, distance.toString());
+        }
+    }
+
+    @Test
+    public void nearestKStopsAtThePaletteSize() {
+        var palette = List.<Color>of(Color.sRGB(0, 0, 0), Color.sRGB(1, 1, 1));
+        var index = PaletteIndex.of(palette, ColorDistance.CIEDE2000);
+        assertArrayEquals(new int[] { 1, 0 }, index.nearestK(Color.sRGB(0.9, 0.9, 0.9), 5));
+        assertArrayEquals(new int[0], index.nearestK(Color.sRGB(0.9, 0.9, 0.9), 0));
+        assertThrows(IllegalArgumentException.class, () -> index.nearestK(Color.sRGB(0, 0, 0), -1));
+    }
+
+    @Test
+    public void rejectsWhatItCannotIndex() {
+        assertThrows(IllegalArgumentException.class, () -> PaletteIndex.of(List.of(), ColorDistance.LAB));
+        var palette = List.<Color>of(Color.sRGB(0, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> PaletteIndex.of(palette, ColorDistance.CIE94));
+        assertThrows(IllegalArgumentException.class, () -> PaletteIndex.of(palette, (a, b) -> 0));
+    }
+
+    @Test
+    public void opensWhatItWrites() throws IOException {
+        var random = new Random(24);
+        for (var distance : List.of(ColorDistance.OKLAB, ColorDistance.HSLUV, ColorDistance.CIEDE2000)) {
+            var palette = TestColors.random(random, 2000);
+            var built = PaletteIndex.of(ColorBuffer.of(Lab.class, palette), distance);
+            var file = dir.resolve("palette.index");
+            built.write(file);
+            var opened = PaletteIndex.open(file);
+            assertEquals(built.size(), opened.size());
+            assertEquals(built.space(), opened.space());
+
+            var queries = TestColors.random(random, 500);
+            var buffer = ColorBuffer.of(sRGB.class, queries);
+            var expected = new int[queries.size()];
+            PaletteIndex.of(palette, distance).nearest(buffer, expected);
+            var out = new int[queries.size()];
+            opened.nearest(buffer, out);
+            assertArrayEquals(expected, out, distance.toString());
+            for (var query : queries.subList(0, 50)) {
+                assertArrayEquals(built.nearestK(query, 4), opened.nearestK(query, 4));
+            }
+        }
+    }
+
+    @Test
+    public void refusesDamagedFiles() throws IOException {
+        var file = dir.resolve("palette.index");
+        PaletteIndex.of(TestColors.random(new Random(25), 100), ColorDistance.LAB).write(file);
+        var bytes = Files.readAllBytes(file);
+
+        var damaged = bytes.clone();
+        damaged[200] ^= 1;
+        Files.write(file, damaged);
+        assertThrows(IOException.class, () -> PaletteIndex.open(file));
+
+        var version = bytes.clone();
+        version[4] = 2;
+        Files.write(file, version);
+        assertThrows(IOException.class, () -> PaletteIndex.open(file));
+
+        Files.write(file, Arrays.copyOf(bytes, 40));
+        assertThrows(IOException.class, () -> PaletteIndex.open(file));
+    }
+}
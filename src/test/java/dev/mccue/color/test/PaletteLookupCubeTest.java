@@ -0,0 +1,116 @@
+package dev.mccue.color.test;
+
+import dev.mccue.color.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PaletteLookupCubeTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void holdsTheClosestColorToEachCellCenter() {
+        var random = new Random(23);
+        for (var distance : List.of(ColorDistance.OKLAB, ColorDistance.CIEDE2000, ColorDistance.RIEMERSMA, TestColors.MANHATTAN)) {
+            var palette = TestColors.random(random, 40);
+            var cube = PaletteLookupCube.of(palette, distance, 6);
+            assertEquals(6, cube.bits());
+            assertEquals(40, cube.paletteSize());
+            for (int k = 0; k < 300; k++) {
+                var color = new RGB255(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+                // Cells are 4 values wide, so the center is 1.5 past the start.
+                var center = new sRGB(
+                        ((color.R() & ~3) + 1.5) / 255,
+                        ((color.G() & ~3) + 1.5) / 255,
+                        ((color.B() & ~3) + 1.5) / 255
+                );
+                var best = Double.POSITIVE_INFINITY;
+                for (var p : palette) {
+                    best = Math.min(best, distance.distance(center, p));
+                }
+                var found = cube.lookup(color);
+                assertEquals(found, cube.lookup(color.R(), color.G(), color.B()));
+                assertEquals(found, cube.lookup(color.toPackedInt()));
+                assertEquals(best, distance.distance(center, palette.get(found)), 1e-9 * best);
+            }
+        }
+    }
+
+    @Test
+    public void eightBitsIsExact() {
+        var random = new Random(24);
+        var palette = TestColors.random(random, 3);
+        var cube = PaletteLookupCube.ofParallel(palette, ColorDistance.RGB, 8, ForkJoinPool.commonPool());
+        var argb = new int[1000];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = random.nextInt();
+        }
+        var out = new int[argb.length];
+        cube.lookup(argb, out);
+        var index = PaletteIndex.of(palette, ColorDistance.RGB);
+        for (int i = 0; i < argb.length; i++) {
+            assertEquals(index.nearest(RGB255.fromPackedInt(argb[i])), out[i]);
+        }
+    }
+
+    @Test
+    public void buildsTheSameInParallelAndReadsBack() throws IOException {
+        var random = new Random(25);
+        var palette = TestColors.random(random, 256);
+        var cube = PaletteLookupCube.of(palette, ColorDistance.CIE94, 5);
+        var parallel = PaletteLookupCube.ofParallel(palette, ColorDistance.CIE94, 5, new ForkJoinPool(4));
+
+        var file = dir.resolve("palette.cube");
+        cube.write(file);
+        var other = dir.resolve("parallel.cube");
+        parallel.write(other);
+        assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(other));
+        assertEquals(2, Files.list(dir).count());
+
+        var read = PaletteLookupCube.read(file, palette, ColorDistance.CIE94);
+        for (int r = 0; r < 256; r += 3) {
+            for (int g = 0; g < 256; g += 5) {
+                for (int b = 0; b < 256; b += 7) {
+                    assertEquals(cube.lookup(r, g, b), read.lookup(r, g, b));
+                }
+            }
+        }
+
+        var changed = new ArrayList<>(palette);
+        changed.set(100, Color.sRGB(0.5, 0.5, 0.5));
+        assertThrows(IOException.class, () -> PaletteLookupCube.read(file, changed, ColorDistance.CIE94));
+
+        assertThrows(IOException.class, () -> PaletteLookupCube.read(file, palette, ColorDistance.CIEDE2000));
+        assertThrows(IOException.class, () -> PaletteLookupCube.read(file, palette, (a, b) -> a.distanceCIE94(b)));
+
+        // Nothing can be checked about other distances.
+        var custom = dir.resolve("custom.cube");
+        PaletteLookupCube.of(palette, TestColors.MANHATTAN, 3).write(custom);
+        assertEquals(3, PaletteLookupCube.read(custom, palette, TestColors.MANHATTAN).bits());
+        assertThrows(IOException.class, () -> PaletteLookupCube.read(custom, palette, ColorDistance.RGB));
+
+        var bytes = Files.readAllBytes(file);
+        bytes[1000] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> PaletteLookupCube.read(file, palette, ColorDistance.CIE94));
+    }
+
+    @Test
+    public void rejectsBadArguments() {
+        var palette = TestColors.random(new Random(26), 257);
+        assertThrows(IllegalArgumentException.class, () -> PaletteLookupCube.of(palette, ColorDistance.LAB, 5));
+        assertThrows(IllegalArgumentException.class, () -> PaletteLookupCube.of(List.of(), ColorDistance.LAB, 5));
+        assertThrows(IllegalArgumentException.class, () -> PaletteLookupCube.of(palette.subList(0, 4), ColorDistance.LAB, 0));
+        assertThrows(IllegalArgumentException.class, () -> PaletteLookupCube.of(palette.subList(0, 4), ColorDistance.LAB, 9));
+    }
+}
@@ -0,0 +1,155 @@
+package dev.mccue.color.test;
+
+import dev.mccue.color.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PixelFilesTest {
+    @TempDir
+    Path dir;
+
+    static RGB255 pixel(int i) {
+        return new RGB255(i * 7, i * 13, i * 29);
+    }
+
+    @Test
+    public void convertsAcrossWindows() throws IOException {
+        // Just over one mapped window.
+        var pixels = (1 << 20) + 123;
+        var bytes = new byte[pixels * 3];
+        for (int i = 0; i < pixels; i++) {
+            var c = pixel(i);
+            bytes[i * 3] = (byte) c.R();
+            bytes[i * 3 + 1] = (byte) c.G();
+            bytes[i * 3 + 2] = (byte) c.B();
+        }
+        var src = dir.resolve("in.rgb");
+        var dst = dir.resolve("out.lab");
+        Files.write(src, bytes);
+
+        var converted = PixelFiles.convert(src, RGB255.class, PixelFormat.RGB8, dst, Lab.class, PixelFormat.PLANAR_FLOAT32);
+        assertEquals(pixels, converted);
+        assertEquals(pixels * 12L, Files.size(dst));
+
+        var out = ByteBuffer.wrap(Files.readAllBytes(dst)).order(ByteOrder.LITTLE_ENDIAN);
+        var format = PixelFormat.PLANAR_FLOAT32;
+        for (int i : new int[] { 0, 1, 1023, 1024, (1 << 20) - 1, 1 << 20, pixels - 1 }) {
+            var expected = pixel(i).Lab();
+            assertEquals(expected.L(), out.getFloat((int) format.offset(i, 0, pixels)), 1e-6);
+            assertEquals(expected.a(), out.getFloat((int) format.offset(i, 1, pixels)), 1e-6);
+            assertEquals(expected.b(), out.getFloat((int) format.offset(i, 2, pixels)), 1e-6);
+        }
+    }
+
+    @Test
+    public void roundTripsThroughOkLch() throws IOException {
+        var pixels = 5000;
+        var in = ByteBuffer.allocate(pixels * 4);
+        for (int i = 0; i < pixels; i++) {
+            in.putInt(pixel(i).toPackedInt() << 8 | (i & 0xFF));
+        }
+        var src = dir.resolve("in.rgba");
+        var mid = dir.resolve("mid.oklch");
+        var dst = dir.resolve("out.rgba");
+        Files.write(src, in.array());
+
+        PixelFiles.convert(src, RGB255.class, PixelFormat.RGBA8, mid, OkLch.class, PixelFormat.FLOAT64);
+        var oklch = ByteBuffer.wrap(Files.readAllBytes(mid)).order(ByteOrder.LITTLE_ENDIAN);
+        var expected = pixel(4321).OkLch();
+        assertEquals(expected.L(), oklch.getDouble(4321 * 24), 1e-12);
+        assertEquals(expected.c(), oklch.getDouble(4321 * 24 + 8), 1e-12);
+        assertEquals(expected.h(), oklch.getDouble(4321 * 24 + 16), 1e-9);
+
+        PixelFiles.convert(mid, OkLch.class, PixelFormat.FLOAT64, dst, RGB255.class, PixelFormat.RGBA8);
+        var out = ByteBuffer.wrap(Files.readAllBytes(dst));
+        for (int i = 0; i < pixels; i++) {
+            var pixel = out.getInt(i * 4);
+            assertEquals(pixel(i).OkLch().RGB255(), new RGB255(pixel >>> 8), String.valueOf(i));
+            assertEquals(0xFF, pixel & 0xFF);
+        }
+    }
+
+    @Test
+    public void rejectsPartialPixels() throws IOException {
+        var src = dir.resolve("in.rgb");
+        Files.write(src, new byte[10]);
+        assertThrows(
+                IOException.class,
+                () -> PixelFiles.convert(src, RGB255.class, PixelFormat.RGB8, dir.resolve("out"), Lab.class, PixelFormat.FLOAT32)
+        );
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> PixelFiles.convert(src, sRGB.class, PixelFormat.RGB8, dir.resolve("out"), Lab.class, PixelFormat.FLOAT32)
+        );
+    }
+
+    @Test
+    public void sortsApproximatelyThroughRuns() throws IOException {
+        var pixels = 10_000;
+        var in = ByteBuffer.allocate(pixels * 4);
+        for (int i = 0; i < pixels; i++) {
+            in.putInt(pixel(i).toPackedInt() << 8 | (i & 0xFF));
+        }
+        var src = dir.resolve("in.rgba");
+        var oneRun = dir.resolve("one.rgba");
+        var manyRuns = dir.resolve("many.rgba");
+        Files.write(src, in.array());
+
+        assertEquals(pixels, PixelFiles.sortApproximate(src, RGB255.class, PixelFormat.RGBA8, oneRun, OkLab.class));
+        assertEquals(pixels, PixelFiles.sortApproximate(src, RGB255.class, PixelFormat.RGBA8, manyRuns, OkLab.class, 999));
+        assertArrayEquals(Files.readAllBytes(oneRun), Files.readAllBytes(manyRuns));
+        try (var files = Files.list(dir)) {
+            assertEquals(3, files.count());
+        }
+
+        // Alpha travels with its pixel, and every pixel comes out once.
+        var out = ByteBuffer.wrap(Files.readAllBytes(oneRun));
+        var seen = new boolean[pixels];
+        var colors = new ArrayList<Color>();
+        for (int i = 0; i < pixels; i++) {
+            var pixel = out.getInt(i * 4);
+            var color = new RGB255(pixel >>> 8);
+            colors.add(color);
+            for (int j = pixel & 0xFF; j < pixels; j += 256) {
+                if (!seen[j] && pixel(j).equals(color)) {
+                    seen[j] = true;
+                    break;
+                }
+            }
+        }
+        for (int i = 0; i < pixels; i++) {
+            assertTrue(seen[i], String.valueOf(i));
+        }
+        assertEquals(Color.sortApproximate(colors, OkLab.class), colors);
+    }
+
+    @Test
+    public void sortsRunsLargerThanAWindow() throws IOException {
+        // More pixels than are mapped at a time.
+        var pixels = 1_200_000;
+        var random = new Random(18);
+        var bytes = new byte[pixels * 3];
+        random.nextBytes(bytes);
+        var src = dir.resolve("in.rgb");
+        Files.write(src, bytes);
+
+        var oneRun = dir.resolve("one.rgb");
+        var twoRuns = dir.resolve("two.rgb");
+        assertEquals(pixels, PixelFiles.sortApproximate(src, RGB255.class, PixelFormat.RGB8, oneRun, Lab.class, pixels));
+        assertEquals(pixels, PixelFiles.sortApproximate(src, RGB255.class, PixelFormat.RGB8, twoRuns, Lab.class, 700_000));
+        assertArrayEquals(Files.readAllBytes(oneRun), Files.readAllBytes(twoRuns));
+        try (var files = Files.list(dir)) {
+            assertEquals(3, files.count());
+        }
+    }
+}
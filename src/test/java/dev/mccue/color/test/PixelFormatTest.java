@@ -0,0 +1,35 @@
+package dev.mccue.color.test;
+
+import dev.mccue.color.*;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PixelFormatTest {
+    @Test
+    public void interleavedOffsets() {
+        assertEquals(3, PixelFormat.RGB8.bytesPerPixel());
+        assertEquals(4, PixelFormat.RGBA8.bytesPerPixel());
+        assertEquals(4 * 5 + 2, PixelFormat.RGBA8.offset(5, 2, 100));
+        assertEquals(4 + 3, PixelFormat.RGBA8.offset(1, 3, 100));
+        assertEquals(12 * 7 + 4, PixelFormat.FLOAT32.offset(7, 1, 100));
+        assertEquals(24 * 7 + 16, PixelFormat.FLOAT64.offset(7, 2, 100));
+    }
+
+    @Test
+    public void planarOffsets() {
+        assertTrue(PixelFormat.PLANAR_FLOAT32.isPlanar());
+        assertEquals(4 * 7, PixelFormat.PLANAR_FLOAT32.offset(7, 0, 100));
+        assertEquals(4 * (200 + 7), PixelFormat.PLANAR_FLOAT32.offset(7, 2, 100));
+        assertEquals(8 * (100 + 7), PixelFormat.PLANAR_FLOAT64.offset(7, 1, 100));
+        assertEquals(8L * 3_000_000_000L, PixelFormat.PLANAR_FLOAT64.offset(0, 2, 1_500_000_000L));
+    }
+
+    @Test
+    public void eightBitFormatsOnlyHoldRGB255() {
+        assertTrue(PixelFormat.RGB8.supports(RGB255.class));
+        assertFalse(PixelFormat.RGBA8.supports(sRGB.class));
+        assertTrue(PixelFormat.FLOAT32.supports(Lab.class));
+        assertTrue(PixelFormat.PLANAR_FLOAT64.supports(RGB255.class));
+    }
+}
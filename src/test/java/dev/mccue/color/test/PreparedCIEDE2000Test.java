@@ -0,0 +1,101 @@
+package dev.mccue.color.test;
+
+import dev.mccue.color.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PreparedCIEDE2000Test {
+    static List<Lab> colors() {
+        var colors = new ArrayList<Lab>();
+        for (var color : ColorBufferTest.colors()) {
+            colors.add(color.Lab());
+        }
+        colors.add(new Lab(0.5, 0, 0));
+        colors.add(new Lab(0.5, 0, 0.2));
+        colors.add(new Lab(0.5, -0.2, 0));
+        return colors;
+    }
+
+    @Test
+    public void matchesLab() {
+        for (var reference : colors()) {
+            var prepared = PreparedCIEDE2000.of(reference);
+            var weighted = PreparedCIEDE2000.of(reference, 2, 1, 0.5);
+            assertSame(reference, prepared.reference());
+            for (var other : colors()) {
+                assertEquals(reference.distanceCIEDE2000(other), prepared.distanceTo(other));
+                assertEquals(reference.distanceCIEDE2000klch(other, 2, 1, 0.5), weighted.distanceTo(other));
+            }
+        }
+    }
+
+    @Test
+    public void measuresChannelArrays() {
+        var colors = colors();
+        var buffer = ColorBuffer.of(Lab.class, colors);
+        var reference = Color.hex("#c5a3f0").Lab();
+        var out = new double[colors.size()];
+        PreparedCIEDE2000.of(reference).distances(buffer.channel(0), buffer.channel(1), buffer.channel(2), out);
+        for (int i = 0; i < colors.size(); i++) {
+            assertEquals(reference.distanceCIEDE2000(colors.get(i)), out[i]);
+        }
+    }
+
+    @Test
+    public void measuresAsManyColorsAsOut() {
+        var prepared = PreparedCIEDE2000.of(new Lab(0.5, 0.1, 0.1));
+        var L = new double[] { 0.5, 0.2, 0.9 };
+        var a = new double[] { 0.1, 0.0, -0.3 };
+        var b = new double[] { 0.1, 0.4, 0.0 };
+
+        var out = new double[] { -1, -1 };
+        prepared.distances(L, a, b, out);
+        assertEquals(0, out[0]);
+        assertEquals(new Lab(0.5, 0.1, 0.1).distanceCIEDE2000(new Lab(0.2, 0.0, 0.4)), out[1]);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> prepared.distances(L, a, new double[2], new double[3]));
+        assertThrows(NullPointerException.class, () -> PreparedCIEDE2000.of(null));
+    }
+
+    @Test
+    public void fastIsCloseToExact() {
+        var colors = new ArrayList<Lab>();
+        for (int r = 0; r < 256; r += 15) {
+            for (int g = 0; g < 256; g += 15) {
+                for (int b = 0; b < 256; b += 15) {
+                    colors.add(new RGB255(r, g, b).Lab());
+                }
+            }
+        }
+        var buffer = ColorBuffer.of(Lab.class, colors);
+        var L = new float[colors.size()];
+        var a = new float[colors.size()];
+        var b = new float[colors.size()];
+        for (int i = 0; i < colors.size(); i++) {
+            L[i] = (float) buffer.channel(0)[i];
+            a[i] = (float) buffer.channel(1)[i];
+            b[i] = (float) buffer.channel(2)[i];
+        }
+        var out = new float[colors.size()];
+        for (int i = 0; i < colors.size(); i += 37) {
+            var reference = colors.get(i);
+            PreparedCIEDE2000.of(reference).distancesFast(L, a, b, out);
+            for (int j = 0; j < colors.size(); j++) {
+                var other = colors.get(j);
+                assertEquals(reference.distanceCIEDE2000Fast(other), out[j]);
+                assertEquals(reference.distanceCIEDE2000(other), out[j], 1e-4);
+            }
+        }
+    }
+
+    @Test
+    public void fastOnlyMeasuresUnweighted() {
+        var weighted = PreparedCIEDE2000.of(new Lab(0.5, 0.1, 0.1), 2, 1, 1);
+        var out = new float[1];
+        assertThrows(IllegalStateException.class, () -> weighted.distancesFast(out, out, out, out));
+    }
+}
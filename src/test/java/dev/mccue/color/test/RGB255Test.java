@@ -0,0 +1,132 @@
+package dev.mccue.color.test;
+
+import dev.mccue.color.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RGB255Test {
+    static int[] pixels() {
+        var pixels = new int[6 * 6 * 6 + 1];
+        int i = 0;
+        for (int r = 0; r <= 255; r += 51) {
+            for (int g = 0; g <= 255; g += 51) {
+                for (int b = 0; b <= 255; b += 51) {
+                    pixels[i++] = 0x80000000 | r << 16 | g << 8 | b;
+                }
+            }
+        }
+        pixels[i] = 0xFFc5a3f0;
+        return pixels;
+    }
+
+    @Test
+    public void unpacksHexInts() {
+        var color = new RGB255(0x12AB34);
+        assertEquals(0x12, color.R());
+        assertEquals(0xAB, color.G());
+        assertEquals(0x34, color.B());
+        assertEquals(Color.hex("#12ab34"), color);
+    }
+
+    @Test
+    public void packsOpaqueARGB() {
+        var color = RGB255.fromPackedInt(0x00c5a3f0);
+        assertEquals(0xFFc5a3f0, color.toPackedInt());
+        assertEquals(color, RGB255.fromPackedInt(color.toPackedInt()));
+        assertEquals(new RGB255(0xc5, 0xa3, 0xf0), color);
+        assertEquals(new RGB255(0xc5, 0xa3, 0xf0).hashCode(), color.hashCode());
+        assertEquals(new RGB255((byte) 0xc5, (byte) 0xa3, (byte) 0xf0), color);
+    }
+
+    @Test
+    public void clampsComponents() {
+        assertEquals(new RGB255(0, 255, 10), new RGB255(-4, 300, 10));
+    }
+
+    @Test
+    public void convertsPackedArraysToLab() {
+        var pixels = pixels();
+        var L = new double[pixels.length];
+        var a = new double[pixels.length];
+        var b = new double[pixels.length];
+        RGB255.toLab(pixels, L, a, b, ReferenceWhite.D50);
+        for (int i = 0; i < pixels.length; i++) {
+            var expected = RGB255.fromPackedInt(pixels[i]).Lab(ReferenceWhite.D50);
+            assertEquals(expected.L(), L[i], 1e-9);
+            assertEquals(expected.a(), a[i], 1e-9);
+            assertEquals(expected.b(), b[i], 1e-9);
+        }
+
+        var back = new int[pixels.length];
+        RGB255.fromLab(L, a, b, back, ReferenceWhite.D50);
+        for (int i = 0; i < pixels.length; i++) {
+            assertEquals(pixels[i] | 0xFF000000, back[i]);
+        }
+    }
+
+    @Test
+    public void packsMoreThanAChunkWithoutTouchingTheInput() {
+        var random = new Random(4);
+        var pixels = new int[2500];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(1 << 24);
+        }
+        var L = new double[pixels.length];
+        var a = new double[pixels.length];
+        var b = new double[pixels.length];
+        RGB255.toOkLab(pixels, L, a, b);
+        var copy = L.clone();
+        var back = new int[pixels.length];
+        RGB255.fromOkLab(L, a, b, back);
+        for (int i = 0; i < pixels.length; i++) {
+            assertEquals(RGB255.fromPackedInt(pixels[i]).OkLab().RGB255().toPackedInt(), back[i]);
+        }
+        assertArrayEquals(copy, L);
+    }
+
+    @Test
+    public void convertsPackedArraysToOkLabAndHSV() {
+        var pixels = pixels();
+        var L = new double[pixels.length];
+        var a = new double[pixels.length];
+        var b = new double[pixels.length];
+        RGB255.toOkLab(pixels, L, a, b);
+        var H = new double[pixels.length];
+        var S = new double[pixels.length];
+        var V = new double[pixels.length];
+        RGB255.toHSV(pixels, H, S, V);
+        for (int i = 0; i < pixels.length; i++) {
+            var color = RGB255.fromPackedInt(pixels[i]);
+            var oklab = color.OkLab();
+            assertEquals(oklab.L(), L[i], 1e-9);
+            assertEquals(oklab.a(), a[i], 1e-9);
+            assertEquals(oklab.b(), b[i], 1e-9);
+            var hsv = color.HSV();
+            assertEquals(hsv.H(), H[i], 1e-9);
+            assertEquals(hsv.S(), S[i], 1e-9);
+            assertEquals(hsv.V(), V[i], 1e-9);
+        }
+
+        var fromOkLab = new int[pixels.length];
+        RGB255.fromOkLab(L, a, b, fromOkLab);
+        var fromHSV = new int[pixels.length];
+        RGB255.fromHSV(H, S, V, fromHSV);
+        for (int i = 0; i < pixels.length; i++) {
+            var color = RGB255.fromPackedInt(pixels[i]);
+            assertEquals(color.OkLab().RGB255().toPackedInt(), fromOkLab[i]);
+            assertEquals(pixels[i] | 0xFF000000, fromHSV[i]);
+        }
+    }
+
+    @Test
+    public void rejectsShortChannels() {
+        var pixels = pixels();
+        var shorter = new double[pixels.length - 1];
+        var full = new double[pixels.length];
+        assertThrows(IndexOutOfBoundsException.class, () -> RGB255.toLab(pixels, full, shorter, full));
+        assertThrows(IndexOutOfBoundsException.class, () -> RGB255.fromLab(full, full, shorter, pixels));
+    }
+}
@@ -0,0 +1,39 @@
+package dev.mccue.color.test;
+
+import dev.mccue.color.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/// Colors and distances shared by the tests of palette lookups.
+final class TestColors {
+    private TestColors() {}
+
+    // Sums the differences of the sRGB channels, a metric with no k-d tree.
+    static final ColorDistance MANHATTAN = (a, b) -> {
+        var x = a.sRGB();
+        var y = b.sRGB();
+        return Math.abs(x.R() - y.R()) + Math.abs(x.G() - y.G()) + Math.abs(x.B() - y.B());
+    };
+
+    static List<Color> random(Random random, int n) {
+        var colors = new ArrayList<Color>();
+        for (int i = 0; i < n; i++) {
+            colors.add(new RGB255(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+        }
+        return colors;
+    }
+
+    // Every color, closest first, ties to the lower index.
+    static int[] byDistance(List<Color> colors, ColorDistance distance, Color color) {
+        var d = colors.stream().mapToDouble(c -> distance.distance(color, c)).toArray();
+        return IntStream.range(0, colors.size())
+                .boxed()
+                .sorted(Comparator.comparingDouble(i -> d[i]))
+                .mapToInt(i -> i)
+                .toArray();
+    }
+}